@@ -23,6 +23,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
@@ -86,7 +87,16 @@ public class Agent {
             androidDebugBridgeManager.setAndroidDebugBridgePath(pathToAdb);
             androidDebugBridgeManager.startAndroidDebugBridge();
 
-            scheduldedExecutorService = Executors.newSingleThreadScheduledExecutor();
+            // the recycler deletes files in the background, so it should not take the CPU from the device actions
+            scheduldedExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "file-recycler");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
             fileRecycler = new FileRecycler();
 
             scheduldedExecutorService.scheduleWithFixedDelay(fileRecycler,
@@ -177,6 +187,9 @@ public class Agent {
      */
     public void stop() {
         scheduldedExecutorService.shutdown();
+        LOGGER.info(String.format("The file recycler reclaimed %d bytes, %d files are left for removal.",
+                                  fileRecycler.getReclaimedBytes(),
+                                  fileRecycler.getPendingFilesCount()));
 
         if (isRunning) {
             agentManager.close();
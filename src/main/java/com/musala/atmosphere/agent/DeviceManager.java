@@ -17,16 +17,22 @@
 package com.musala.atmosphere.agent;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.log4j.Logger;
 import org.openqa.selenium.chrome.ChromeDriverService;
@@ -38,6 +44,10 @@ import com.musala.atmosphere.agent.devicewrapper.RealWrapDevice;
 import com.musala.atmosphere.agent.devicewrapper.util.BackgroundShellCommandExecutor;
 import com.musala.atmosphere.agent.devicewrapper.util.PortForwardingService;
 import com.musala.atmosphere.agent.devicewrapper.util.PreconditionsManager;
+import com.musala.atmosphere.agent.devicewrapper.util.ScreenStreamer;
+import com.musala.atmosphere.agent.devicewrapper.util.input.InputRecording;
+import com.musala.atmosphere.agent.devicewrapper.util.input.InputReplayReport;
+import com.musala.atmosphere.agent.devicewrapper.util.input.InputReplayer;
 import com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent.ServiceCommunicator;
 import com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent.ServiceRequestSender;
 import com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent.UIAutomatorCommunicator;
@@ -52,6 +62,9 @@ import com.musala.atmosphere.agent.util.FileRecycler;
 import com.musala.atmosphere.agent.util.FtpConnectionManager;
 import com.musala.atmosphere.agent.util.FtpFileTransferService;
 import com.musala.atmosphere.agent.util.FtpServerPropertiesLoader;
+import com.musala.atmosphere.agent.util.artifact.ArtifactStore;
+import com.musala.atmosphere.agent.util.image.DeviceScreenshot;
+import com.musala.atmosphere.agent.util.image.ScreenshotManifest;
 import com.musala.atmosphere.commons.DeviceInformation;
 import com.musala.atmosphere.commons.RoutingAction;
 import com.musala.atmosphere.commons.ad.service.ConnectionConstants;
@@ -82,10 +95,15 @@ public class DeviceManager {
 
     private static final int NO_AVAIBLE_API_LEVEL = -1;
 
-    private static final int FTP_TRANSFER_SERVICE_DELAY = 3;
-
     private static final String QUEUE_FILE_NAME = "pending_transfers.txt";
 
+    private static final int DEFAULT_SCREENSHOT_CONCURRENCY = 8;
+
+    /**
+     * The time in milliseconds a single screenshot capture is given before its device is reported as failed.
+     */
+    private static final long SCREENSHOT_CAPTURE_TIMEOUT = 30000;
+
     private static String agentId;
 
     private static AndroidDebugBridgeManager androidDebugBridgeManager;
@@ -105,12 +123,12 @@ public class DeviceManager {
 
     private static FtpFileTransferService ftpFileTransferService;
 
-    private static ScheduledExecutorService fileTransferServiceScheduler;
-
     /**
      * Maps a device serial number to a {@link IWrapDevice} device wrapper
      */
-    private static Map<String, IWrapDevice> deviceSerialToDeviceWrapper = new HashMap<>();
+    private static Map<String, IWrapDevice> deviceSerialToDeviceWrapper = new ConcurrentHashMap<>();
+
+    private static Map<String, ScreenStreamer> deviceSerialToScreenStreamer = new HashMap<>();
 
     public DeviceManager() {
     }
@@ -118,18 +136,21 @@ public class DeviceManager {
     public DeviceManager(FileRecycler fileRecycler) {
         if (AgentPropertiesLoader.hasFtpServer() && ftpFileTransferService == null) {
             boolean isSecuredFtp = FtpServerPropertiesLoader.isFtps();
-            FtpConnectionManager ftpConnectionManager = new FtpConnectionManager(isSecuredFtp);
-            ftpConnectionManager.connectToFtpServer();
+            int connectionsCount = FtpServerPropertiesLoader.getConnectionsCount();
 
-            fileTransferServiceScheduler = Executors.newSingleThreadScheduledExecutor();
+            List<FtpConnectionManager> ftpConnectionManagers = new ArrayList<>();
+            for (int i = 0; i < connectionsCount; i++) {
+                FtpConnectionManager ftpConnectionManager = new FtpConnectionManager(isSecuredFtp);
+                ftpConnectionManager.connectToFtpServer();
+                ftpConnectionManagers.add(ftpConnectionManager);
+            }
 
             try {
-                ftpFileTransferService = new FtpFileTransferService(QUEUE_FILE_NAME, ftpConnectionManager);
-
-                fileTransferServiceScheduler.scheduleAtFixedRate(ftpFileTransferService,
-                                                                 0,
-                                                                 FTP_TRANSFER_SERVICE_DELAY,
-                                                                 TimeUnit.SECONDS);
+                ftpFileTransferService = new FtpFileTransferService(QUEUE_FILE_NAME,
+                                                                    ftpConnectionManagers,
+                                                                    FtpServerPropertiesLoader.getRetriesCount(),
+                                                                    ArtifactStore.getDefault());
+                ftpFileTransferService.start();
             } catch (IOException e) {
                 LOGGER.error("The FTP file transfer service failed to initialize.", e);
             }
@@ -316,6 +337,14 @@ public class DeviceManager {
         }
 
         connectedDevicesList.remove(disconnectedDeviceSerialNumber);
+
+        synchronized (deviceSerialToScreenStreamer) {
+            ScreenStreamer screenStreamer = deviceSerialToScreenStreamer.remove(disconnectedDeviceSerialNumber);
+            if (screenStreamer != null) {
+                screenStreamer.stop();
+            }
+        }
+
         LOGGER.info("Device with Id [" + disconnectedDeviceSerialNumber + "] is unregistered.");
 
         return disconnectedDeviceSerialNumber;
@@ -543,7 +572,6 @@ public class DeviceManager {
 
     public void stopFtpFileTransferService() {
         ftpFileTransferService.stop();
-        fileTransferServiceScheduler.shutdown();
     }
 
     /**
@@ -557,4 +585,245 @@ public class DeviceManager {
     public IWrapDevice getDeviceWrapperByDeviceId(String deviceId) {
         return deviceSerialToDeviceWrapper.get(deviceId);
     }
+
+    /**
+     * Gets the screen streamer of a device, creating it on first use.
+     *
+     * @param serialNumber
+     *        - serial number of the device
+     * @return the {@link ScreenStreamer} of the device
+     * @throws CommandFailedException
+     *         if no device with the given serial number is connected
+     */
+    public ScreenStreamer getScreenStreamer(String serialNumber) throws CommandFailedException {
+        IDevice device = connectedDevicesList.get(serialNumber);
+        if (device == null) {
+            throw new CommandFailedException(String.format("Device %s is not connected.", serialNumber));
+        }
+
+        synchronized (deviceSerialToScreenStreamer) {
+            ScreenStreamer screenStreamer = deviceSerialToScreenStreamer.get(serialNumber);
+            if (screenStreamer == null) {
+                screenStreamer = new ScreenStreamer(device);
+                deviceSerialToScreenStreamer.put(serialNumber, screenStreamer);
+            }
+
+            return screenStreamer;
+        }
+    }
+
+    /**
+     * Replays a stored input recording on several devices in parallel.
+     *
+     * @param recordingId
+     *        - the id of the input recording
+     * @param deviceSerialNumbers
+     *        - serial numbers of the devices the recording will be replayed on
+     * @param timeScale
+     *        - multiplier of the recorded pauses between the actions
+     * @return the replay reports mapped by device serial number; devices where the replay failed are missing and the
+     *         replays which did not finish in time are cancelled and reported as {@link InputReplayReport#isTimedOut()
+     *         timed out}
+     * @throws CommandFailedException
+     *         if any of the devices is not connected, the recording can not be read or the wait is interrupted
+     */
+    public Map<String, InputReplayReport> replayInputRecording(final String recordingId,
+                                                               List<String> deviceSerialNumbers,
+                                                               final double timeScale)
+        throws CommandFailedException {
+        for (String serialNumber : deviceSerialNumbers) {
+            if (!deviceSerialToDeviceWrapper.containsKey(serialNumber)) {
+                throw new CommandFailedException(String.format("Device %s is not connected.", serialNumber));
+            }
+        }
+
+        final InputRecording recording = InputReplayer.readRecording(recordingId);
+        int actionsCount = recording.getEntries().size();
+        long replayTimeout = InputReplayer.getReplayTimeout(recording, timeScale);
+
+        Map<String, Future<InputReplayReport>> replays = new LinkedHashMap<>();
+        DeviceManagerExecutor replayExecutor = new DeviceManagerExecutor();
+
+        for (final String serialNumber : deviceSerialNumbers) {
+            final IWrapDevice deviceWrapper = deviceSerialToDeviceWrapper.get(serialNumber);
+
+            replays.put(serialNumber, replayExecutor.execute(new Callable<InputReplayReport>() {
+                @Override
+                public InputReplayReport call() throws CommandFailedException {
+                    return InputReplayer.replay(deviceWrapper, serialNumber, recording, timeScale);
+                }
+            }));
+        }
+
+        replayExecutor.releaseResources();
+
+        Map<String, InputReplayReport> reports = new HashMap<>();
+        long deadline = System.currentTimeMillis() + replayTimeout;
+
+        try {
+            for (Entry<String, Future<InputReplayReport>> replay : replays.entrySet()) {
+                String serialNumber = replay.getKey();
+                Future<InputReplayReport> replayResult = replay.getValue();
+
+                try {
+                    long remainingTime = Math.max(0, deadline - System.currentTimeMillis());
+                    reports.put(serialNumber, replayResult.get(remainingTime, TimeUnit.MILLISECONDS));
+                } catch (TimeoutException e) {
+                    replayResult.cancel(true);
+                    LOGGER.error(String.format("Replaying input recording %s on %s timed out after %d ms.",
+                                               recordingId,
+                                               serialNumber,
+                                               replayTimeout));
+                    reports.put(serialNumber,
+                                InputReplayReport.createTimedOutReport(serialNumber, actionsCount, replayTimeout));
+                } catch (ExecutionException e) {
+                    String message = String.format("Replaying input recording %s on %s failed.",
+                                                   recordingId,
+                                                   serialNumber);
+                    LOGGER.error(message, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<InputReplayReport> replayResult : replays.values()) {
+                replayResult.cancel(true);
+            }
+
+            Thread.currentThread().interrupt();
+            throw new CommandFailedException("Waiting for the input recording replays was interrupted.", e);
+        }
+
+        return reports;
+    }
+
+    /**
+     * Captures a screenshot of several devices in parallel, so the capture takes about as long as the capture on the
+     * slowest device.
+     *
+     * @param deviceSerialNumbers
+     *        - serial numbers of the devices to capture; all connected devices are captured if <code>null</code> or
+     *        empty
+     * @param concurrencyLimit
+     *        - the maximum number of devices captured at the same time; a default limit is used if not positive
+     * @param screenshotArguments
+     *        - the arguments of the {@link RoutingAction#GET_ENCODED_SCREENSHOT} action used on each device
+     * @return manifest with the screenshot and the timing of each device; the captures which did not finish in time
+     *         are cancelled and reported as failed
+     * @throws CommandFailedException
+     *         if any of the devices is not connected or the wait for the captures is interrupted
+     */
+    public ScreenshotManifest captureScreenshots(List<String> deviceSerialNumbers,
+                                                 int concurrencyLimit,
+                                                 final Object[] screenshotArguments)
+        throws CommandFailedException {
+        List<String> serialNumbers = new ArrayList<>();
+        if (deviceSerialNumbers == null || deviceSerialNumbers.isEmpty()) {
+            serialNumbers.addAll(deviceSerialToDeviceWrapper.keySet());
+        } else {
+            for (String serialNumber : deviceSerialNumbers) {
+                if (!deviceSerialToDeviceWrapper.containsKey(serialNumber)) {
+                    throw new CommandFailedException(String.format("Device %s is not connected.", serialNumber));
+                }
+            }
+            serialNumbers.addAll(deviceSerialNumbers);
+        }
+
+        int threadsCount = concurrencyLimit > 0 ? concurrencyLimit : DEFAULT_SCREENSHOT_CONCURRENCY;
+        threadsCount = Math.max(1, Math.min(threadsCount, serialNumbers.size()));
+
+        // the captures run in waves of the concurrency limit, so each wave is given the time of a single capture
+        int wavesCount = (serialNumbers.size() + threadsCount - 1) / threadsCount;
+        long capturesTimeout = wavesCount * SCREENSHOT_CAPTURE_TIMEOUT;
+
+        final long startTime = System.currentTimeMillis();
+        ScreenshotManifest manifest = new ScreenshotManifest(startTime, threadsCount);
+        DeviceManagerExecutor captureExecutor = new DeviceManagerExecutor(threadsCount);
+        Map<String, Future<DeviceScreenshot>> captures = new LinkedHashMap<>();
+
+        for (final String serialNumber : serialNumbers) {
+            final IWrapDevice deviceWrapper = deviceSerialToDeviceWrapper.get(serialNumber);
+
+            captures.put(serialNumber, captureExecutor.execute(new Callable<DeviceScreenshot>() {
+                @Override
+                public DeviceScreenshot call() {
+                    DeviceScreenshot screenshot = new DeviceScreenshot(serialNumber);
+                    long captureStartTime = System.currentTimeMillis();
+                    screenshot.setWaitTime(captureStartTime - startTime);
+
+                    try {
+                        if (deviceWrapper == null) {
+                            throw new CommandFailedException("The device was disconnected.");
+                        }
+
+                        Object image = deviceWrapper.route(RoutingAction.GET_ENCODED_SCREENSHOT, screenshotArguments);
+                        screenshot.setScreenshot((String) image);
+                    } catch (Exception e) {
+                        screenshot.setErrorMessage(e.getMessage() != null ? e.getMessage() : e.toString());
+                        LOGGER.error("Capturing a screenshot of " + serialNumber + " failed.", e);
+                    } finally {
+                        screenshot.setCaptureTime(System.currentTimeMillis() - captureStartTime);
+                    }
+
+                    return screenshot;
+                }
+            }));
+        }
+
+        captureExecutor.releaseResources();
+
+        // a capture which does not finish in time is cancelled and its device is reported as failed, so a single hung
+        // device can not block the whole request
+        long deadline = startTime + capturesTimeout;
+        try {
+            for (Entry<String, Future<DeviceScreenshot>> capture : captures.entrySet()) {
+                String serialNumber = capture.getKey();
+                Future<DeviceScreenshot> captureResult = capture.getValue();
+
+                try {
+                    long remainingTime = Math.max(0, deadline - System.currentTimeMillis());
+                    manifest.addScreenshot(captureResult.get(remainingTime, TimeUnit.MILLISECONDS));
+                } catch (TimeoutException e) {
+                    captureResult.cancel(true);
+                    String message = String.format("The capture timed out after %d ms.", capturesTimeout);
+                    LOGGER.error(String.format("Capturing a screenshot of %s failed. %s", serialNumber, message));
+                    manifest.addScreenshot(createFailedScreenshot(serialNumber, startTime, message));
+                } catch (ExecutionException e) {
+                    // the captures catch their own exceptions, so only errors get here
+                    LOGGER.error("A screenshot capture failed unexpectedly.", e.getCause());
+                    manifest.addScreenshot(createFailedScreenshot(serialNumber, startTime, e.getCause().toString()));
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<DeviceScreenshot> captureResult : captures.values()) {
+                captureResult.cancel(true);
+            }
+
+            Thread.currentThread().interrupt();
+            throw new CommandFailedException("Waiting for the screenshot captures was interrupted.", e);
+        }
+
+        manifest.setDuration(System.currentTimeMillis() - startTime);
+
+        LOGGER.info(manifest);
+
+        return manifest;
+    }
+
+    /**
+     * Creates the result of a capture which failed before it could report its own result.
+     *
+     * @param serialNumber
+     *        - serial number of the device
+     * @param startTime
+     *        - the time the captures were started
+     * @param errorMessage
+     *        - the reason the capture failed
+     * @return the failed screenshot result
+     */
+    private static DeviceScreenshot createFailedScreenshot(String serialNumber, long startTime, String errorMessage) {
+        DeviceScreenshot screenshot = new DeviceScreenshot(serialNumber);
+        screenshot.setErrorMessage(errorMessage);
+        screenshot.setCaptureTime(System.currentTimeMillis() - startTime);
+
+        return screenshot;
+    }
 }
@@ -16,6 +16,7 @@
 
 package com.musala.atmosphere.agent;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -38,6 +39,17 @@ public class DeviceManagerExecutor {
         executor = Executors.newCachedThreadPool();
     }
 
+    /**
+     * Creates a thread pool that executes at most the given number of tasks at the same time. The other tasks wait in
+     * a queue until a thread is available.
+     *
+     * @param threadsCount
+     *        - the maximum number of concurrently executed tasks
+     */
+    DeviceManagerExecutor(int threadsCount) {
+        executor = Executors.newFixedThreadPool(threadsCount);
+    }
+
     /**
      * Executes the runnable task in new thread.
      *
@@ -50,6 +62,17 @@ public class DeviceManagerExecutor {
         return future;
     }
 
+    /**
+     * Executes the callable task in new thread.
+     *
+     * @param task
+     *        - a task that will be executed
+     * @return - the result of an asynchronous computation, which holds the value returned by the task
+     */
+    public <T> Future<T> execute(Callable<T> task) {
+        return executor.submit(task);
+    }
+
     /**
      * Initiates an orderly shutdown in which previously submitted tasks are executed, but no new tasks will be
      * accepted.
@@ -16,23 +16,23 @@
 
 package com.musala.atmosphere.agent.devicewrapper;
 
-import java.io.BufferedReader;
+import java.awt.Rectangle;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
@@ -59,11 +59,17 @@ import com.musala.atmosphere.agent.DevicePropertyStringConstants;
 import com.musala.atmosphere.agent.devicewrapper.util.ApkInstaller;
 import com.musala.atmosphere.agent.devicewrapper.util.BackgroundPullFileTask;
 import com.musala.atmosphere.agent.devicewrapper.util.BackgroundShellCommandExecutor;
-import com.musala.atmosphere.agent.devicewrapper.util.Buffer;
 import com.musala.atmosphere.agent.devicewrapper.util.DeviceProfiler;
 import com.musala.atmosphere.agent.devicewrapper.util.FileTransferService;
 import com.musala.atmosphere.agent.devicewrapper.util.ImeManager;
+import com.musala.atmosphere.agent.devicewrapper.util.LogcatSession;
+import com.musala.atmosphere.agent.devicewrapper.util.LogcatStream;
+import com.musala.atmosphere.agent.devicewrapper.util.ScreenRecordSegmentPuller;
+import com.musala.atmosphere.agent.devicewrapper.util.ScreenRecorder;
 import com.musala.atmosphere.agent.devicewrapper.util.ShellCommandExecutor;
+import com.musala.atmosphere.agent.devicewrapper.util.ShellOutputBuffer;
+import com.musala.atmosphere.agent.devicewrapper.util.input.InputRecorder;
+import com.musala.atmosphere.agent.devicewrapper.util.input.InputReplayer;
 import com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent.ServiceCommunicator;
 import com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent.UIAutomatorCommunicator;
 import com.musala.atmosphere.agent.entity.DeviceSettingsEntity;
@@ -75,9 +81,19 @@ import com.musala.atmosphere.agent.entity.ImageEntity;
 import com.musala.atmosphere.agent.entity.ImeEntity;
 import com.musala.atmosphere.agent.exception.OnDeviceServiceTerminationException;
 import com.musala.atmosphere.agent.exception.UnresolvedEntityTypeException;
+import com.musala.atmosphere.agent.util.ContentFingerprint;
 import com.musala.atmosphere.agent.util.DeviceScreenResolutionParser;
 import com.musala.atmosphere.agent.util.FileRecycler;
 import com.musala.atmosphere.agent.util.FtpFileTransferService;
+import com.musala.atmosphere.agent.util.Mp4SegmentConcatenator;
+import com.musala.atmosphere.agent.util.TaggedContent;
+import com.musala.atmosphere.agent.util.artifact.Artifact;
+import com.musala.atmosphere.agent.util.artifact.ArtifactStore;
+import com.musala.atmosphere.agent.util.artifact.ArtifactType;
+import com.musala.atmosphere.agent.util.image.ScreenshotComparison;
+import com.musala.atmosphere.agent.util.image.ScreenshotFormat;
+import com.musala.atmosphere.agent.util.image.ScreenshotOptions;
+import com.musala.atmosphere.agent.util.image.TemplateMatch;
 import com.musala.atmosphere.agent.webview.WebElementManager;
 import com.musala.atmosphere.commons.DeviceInformation;
 import com.musala.atmosphere.commons.PowerProperties;
@@ -92,24 +108,30 @@ import com.musala.atmosphere.commons.beans.MobileDataState;
 import com.musala.atmosphere.commons.beans.PhoneNumber;
 import com.musala.atmosphere.commons.beans.SwipeDirection;
 import com.musala.atmosphere.commons.exceptions.CommandFailedException;
+import com.musala.atmosphere.commons.geometry.Bounds;
 import com.musala.atmosphere.commons.geometry.Point;
 import com.musala.atmosphere.commons.gesture.Gesture;
 import com.musala.atmosphere.commons.ui.UiElementPropertiesContainer;
 import com.musala.atmosphere.commons.ui.selector.UiElementSelector;
 import com.musala.atmosphere.commons.ui.tree.AccessibilityElement;
 import com.musala.atmosphere.commons.util.Pair;
+import com.musala.atmosphere.commons.util.structure.tree.Tree;
 import com.musala.atmosphere.commons.webelement.action.WebElementAction;
 import com.musala.atmosphere.commons.webelement.action.WebElementWaitCondition;
+import com.musala.atmosphere.commons.websocket.util.GsonUtil;
+import com.musala.atmosphere.commons.websocket.util.IJsonUtil;
 import com.musala.atmosphere.commons.webview.selection.WebViewSelectionCriterion;
 
 public abstract class AbstractWrapDevice implements IWrapDevice {
     private static final Logger LOGGER = Logger.getLogger(AbstractWrapDevice.class.getCanonicalName());
 
+    private static final IJsonUtil jsonUtil = new GsonUtil();
+
     // WARNING : do not change the remote folder unless you really know what you
     // are doing.
     private static final String XMLDUMP_REMOTE_FILE_NAME = "/data/local/tmp/uidump-%s.xml";
 
-    private static final String XMLDUMP_LOCAL_FILE_NAME = "uidump-%s.xml";
+    private static final String READ_AND_REMOVE_FILE_COMMAND_FORMAT = "cat %s 2>/dev/null; rm -f %s";
 
     private static final String LIST_RUNNING_PROCESSES_COMMAND = "ps";
 
@@ -126,30 +148,16 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
 
     private static final String GET_PID_PATTERN = "| grep -Eo [0-9]+ | grep -m 1 -Eo [0-9]+";
 
-    private static final String FIRST_SCREEN_RECORD_NAME = "100.mp4";
-
     private static final String FALLBACK_COMPONENT_PATH = "/data/local/tmp";
 
     private static final String RECORDS_DIRECTORY_NAME = "AtmosphereScreenRecords";
 
-    private static final String START_SCREENRECORD_SCRIPT_NAME = "start_screenrecord.sh";
-
-    private static final String STOP_SCREENRECORD_SCRIPT_NAME = "stop_screenrecord.sh";
-
-    private static final String START_SCREEN_RECORD_COMMAND = String.format("sh %s/%s ",
-                                                                            FALLBACK_COMPONENT_PATH,
-                                                                            START_SCREENRECORD_SCRIPT_NAME);
-
-    private static final String STOP_SCREEN_RECORD_COMMAND = String.format("sh %s/%s ",
-                                                                           FALLBACK_COMPONENT_PATH,
-                                                                           STOP_SCREENRECORD_SCRIPT_NAME);
+    private static final long SCREEN_RECORDING_STOP_TIMEOUT = 30000;
 
     private static final String SCREEN_RECORDS_LOCAL_DIR = System.getProperty("user.dir");
 
     private static final String MERGED_RECORDS_DIR_NAME = "ScreenRecords";
 
-    private static final String RECORDS_FILENAMES_DELIMITER = "\r\n";
-
     private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd-HH-mm-ss";
 
     private static final String DEVICE_TYPE = "tablet";
@@ -160,8 +168,38 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
 
     private static final String CLEAR_DEVICE_LOGCAT_COMMAND = "logcat -c";
 
+    private static final int DEFAULT_SCREEN_STABLE_TIMEOUT = 10000;
+
+    private static final int DEFAULT_SCREEN_STABLE_FRAMES_COUNT = 3;
+
+    private static final double DEFAULT_SCREEN_STABLE_THRESHOLD = 0.005;
+
+    private static final int LOGCAT_BUFFER_CAPACITY = 16384;
+
+    private static final int LOGCAT_MAX_LINES_PER_READ = 1024;
+
+    private static final long LOGCAT_READ_TIMEOUT = 4000;
+
+    private static final double DEFAULT_FIND_IMAGE_MIN_SCORE = 0.9;
+
+    private static final int DEFAULT_FIND_IMAGE_MAX_RESULTS = 10;
+
+    private static final double DEFAULT_FIND_IMAGE_MIN_SCALE = 0.5;
+
+    private static final double DEFAULT_FIND_IMAGE_MAX_SCALE = 2;
+
+    private static final int DEFAULT_VISUAL_CHECK_TOLERANCE = 16;
+
+    private static final double DEFAULT_VISUAL_CHECK_MAX_DIFFERENCE = 0.001;
+
     private CompletionService<Boolean> pullFileCompletionService;
 
+    private final ExecutorService pullFileExecutor;
+
+    private volatile ScreenRecorder screenRecorder;
+
+    private volatile ScreenRecordSegmentPuller screenRecordSegmentPuller;
+
     protected final ServiceCommunicator serviceCommunicator;
 
     protected final UIAutomatorCommunicator automatorCommunicator;
@@ -180,9 +218,15 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
 
     private final ImeManager imeManager;
 
+    private final ShellOutputBuffer uiXmlBuffer;
+
+    private final InputRecorder inputRecorder;
+
     private WebElementManager webElementManager;
 
-    private Buffer<Pair<Integer, String>> logcatBuffer;
+    private final LogcatStream logcatStream;
+
+    private volatile String lastLogcatSessionId;
 
     private FtpFileTransferService ftpFileTransferService;
 
@@ -232,12 +276,15 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
         this.serviceCommunicator = serviceCommunicator;
         this.automatorCommunicator = automatorCommunicator;
         this.fileRecycler = fileRecycler;
-        this.logcatBuffer = new Buffer<Pair<Integer, String>>();
+        this.logcatStream = new LogcatStream(deviceToWrap, LOGCAT_BUFFER_CAPACITY);
         this.ftpFileTransferService = ftpFileTransferService;
 
         transferService = new FileTransferService(wrappedDevice);
         apkInstaller = new ApkInstaller(wrappedDevice);
         imeManager = new ImeManager(shellCommandExecutor);
+        uiXmlBuffer = new ShellOutputBuffer();
+        inputRecorder = new InputRecorder(deviceToWrap.getSerialNumber());
+        pullFileExecutor = executor;
         pullFileCompletionService = new ExecutorCompletionService<>(executor);
         webElementManager = new WebElementManager(chromeDriverService, deviceToWrap.getSerialNumber());
         deviceInformation = getDeviceInformation();
@@ -258,6 +305,7 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
         }
 
         Object returnValue = null;
+        long actionTimestamp = System.currentTimeMillis();
 
         switch (action) {
             // Shell command related
@@ -293,6 +341,19 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
             case GET_DEVICE_INFORMATION:
                 returnValue = deviceInformation;
                 break;
+            case GET_ENCODED_SCREENSHOT:
+                byte[] encodedScreenshot = imageEntity.getEncodedScreenshot(getScreenshotOptions(args));
+                returnValue = Base64.getEncoder().encodeToString(encodedScreenshot);
+                break;
+            case COMPARE_SCREENSHOT:
+                returnValue = compareScreenshot(args);
+                break;
+            case FIND_IMAGE:
+                returnValue = findImage(args);
+                break;
+            case WAIT_FOR_SCREEN_STABLE:
+                returnValue = waitForScreenStable(args);
+                break;
             case GET_SCREENSHOT:
                 returnValue = imageEntity.getScreenshot();
                 break;
@@ -302,6 +363,15 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
             case GET_UI_TREE:
                 returnValue = automatorCommunicator.getUiTree((boolean) args[0]);
                 break;
+            case GET_TAGGED_SCREENSHOT:
+                returnValue = getTaggedScreenshot((String) getOptionalArgument(args, 0));
+                break;
+            case GET_TAGGED_UI_XML_DUMP:
+                returnValue = getTaggedUiXml((String) getOptionalArgument(args, 0));
+                break;
+            case GET_TAGGED_UI_TREE:
+                returnValue = getTaggedUiTree((boolean) args[0], (String) getOptionalArgument(args, 1));
+                break;
             case GET_POWER_PROPERTIES:
                 returnValue = serviceCommunicator.getPowerProperties();
                 break;
@@ -341,6 +411,31 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
             case GET_UI_ELEMENTS:
                 returnValue = automatorCommunicator.getUiElements((UiElementSelector) args[0], (Boolean) args[1]);
                 break;
+            case GET_UI_ELEMENTS_BATCH:
+                returnValue = automatorCommunicator.getUiElementsBatch((List<UiElementSelector>) args[0],
+                                                                       (List<Boolean>) args[1]);
+                break;
+            case TAP_ELEMENT:
+                returnValue = automatorCommunicator.tapElement((UiElementSelector) args[0], (Boolean) args[1]);
+                break;
+            case LONG_PRESS_ELEMENT:
+                returnValue = automatorCommunicator.longPressElement((UiElementSelector) args[0],
+                                                                     (Boolean) args[1],
+                                                                     (Integer) args[2]);
+                break;
+            case INPUT_INTO_ELEMENT:
+                returnValue = automatorCommunicator.inputIntoElement((UiElementSelector) args[0],
+                                                                     (Boolean) args[1],
+                                                                     (String) args[2]);
+                break;
+            case SCROLL_UNTIL_VISIBLE:
+                returnValue = automatorCommunicator.scrollUntilVisible((UiElementSelector) args[0],
+                                                                       (UiElementSelector) args[1],
+                                                                       (ScrollDirection) args[2],
+                                                                       (Integer) args[3],
+                                                                       (Integer) args[4],
+                                                                       (Boolean) args[5]);
+                break;
             case GET_CHILDREN:
                 returnValue = automatorCommunicator.getChildren((AccessibilityElement) args[0],
                                                                 (UiElementSelector) args[1],
@@ -366,7 +461,7 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
                 clearDeviceLogcat(CLEAR_DEVICE_LOGCAT_COMMAND);
                 break;
             case START_DEVICE_LOGCAT:
-                startDeviceLogcat((String) args[0], (String) args[1]);
+                returnValue = startDeviceLogcat((String) args[0], (String) args[1]);
                 break;
             case GET_LOGCAT_BUFFER:
                 returnValue = getNewOutputFromLogcatBuffer((String) args[0]);
@@ -561,10 +656,11 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
 
             // Screen recording related
             case START_RECORDING:
-                startScreenRecording((Integer) args[0], (Boolean) args[1]);
+                Integer bitRate = (Integer) getOptionalArgument(args, 2);
+                startScreenRecording((Integer) args[0], (Boolean) args[1], bitRate != null ? bitRate : 0);
                 break;
             case STOP_RECORDING:
-                stopScreenRecording((String) args[0]);
+                returnValue = stopScreenRecording((String) args[0]);
                 break;
 
             // WiFi connection properties related
@@ -663,72 +759,327 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
             case GESTURE_DRAG:
                 returnValue = gestureEntity.drag((Point) args[0], (Point) args[1]);
                 break;
+            case PLAY_GESTURE_SCRIPT:
+                returnValue = gestureEntity.playGestureScript((String) args[0]);
+                break;
+
+            // Input recording related
+            case START_INPUT_RECORDING:
+                inputRecorder.start();
+                break;
+            case STOP_INPUT_RECORDING:
+                returnValue = inputRecorder.stop();
+                break;
+            case REPLAY_INPUT_RECORDING:
+                Number timeScale = (Number) getOptionalArgument(args, 1);
+                returnValue = InputReplayer.replayWithTimeout(this,
+                                                              wrappedDevice.getSerialNumber(),
+                                                              InputReplayer.readRecording((String) args[0]),
+                                                              timeScale != null ? timeScale.doubleValue() : 1);
+                break;
+        }
+
+        if (!InputReplayer.isReplaying()) {
+            inputRecorder.record(action, args, actionTimestamp);
         }
 
         return returnValue;
     }
 
     /**
-     * Stops the LogCat buffering.
+     * Gets an optional trailing argument of a routing action.
      *
-     * @param deviceSerialNumber
-     *        - the serial number of the device
+     * @param args
+     *        - the arguments passed with the routing action
+     * @param index
+     *        - the index of the optional argument
+     * @return the argument at the given index or <code>null</code> if it was not passed
      */
-    private void stopLogcat(String deviceSerialNumber) {
-        // TODO: run adb command to stop the logcat?
-        // logcatBuffer.remove(deviceSerialNumber); // original: only this line
-        logcatBuffer.terminate();
+    private Object getOptionalArgument(Object[] args, int index) {
+        return args != null && args.length > index ? args[index] : null;
     }
 
     /**
-     * Gets the newly added lines to the LogCat {@link Buffer}.
+     * Compares the current screen with the baseline of a test on this device model. The arguments are the test name
+     * followed by the optional ignored bounds, tolerance, maximum difference and whether to update the baseline.
      *
-     * @param deviceSerialNumber
-     *        - the serial number of the target device
-     * @return a list of string lines
+     * @param args
+     *        - the arguments passed with the routing action
+     * @return the result of the visual check
+     * @throws CommandFailedException
+     *         In case of an error in the capturing or in accessing the baseline
      */
-    public List<Pair<Integer, String>> getNewOutputFromLogcatBuffer(String deviceSerialNumber) {
-        return logcatBuffer.getBuffer();
+    @SuppressWarnings("unchecked")
+    private ScreenshotComparison compareScreenshot(Object[] args) throws CommandFailedException {
+        String testName = (String) args[0];
+        List<Bounds> ignoredBounds = (List<Bounds>) getOptionalArgument(args, 1);
+        Number toleranceArgument = (Number) getOptionalArgument(args, 2);
+        Number maxDifferenceArgument = (Number) getOptionalArgument(args, 3);
+        Boolean updateBaselineArgument = (Boolean) getOptionalArgument(args, 4);
+
+        List<Rectangle> ignoredRegions = new ArrayList<>();
+        if (ignoredBounds != null) {
+            for (Bounds bounds : ignoredBounds) {
+                Point upperLeftCorner = bounds.getUpperLeftCorner();
+                ignoredRegions.add(new Rectangle(upperLeftCorner.getX(),
+                                                 upperLeftCorner.getY(),
+                                                 bounds.getWidth(),
+                                                 bounds.getHeight()));
+            }
+        }
+
+        int tolerance = toleranceArgument != null ? toleranceArgument.intValue() : DEFAULT_VISUAL_CHECK_TOLERANCE;
+        double maxDifference = maxDifferenceArgument != null ? maxDifferenceArgument.doubleValue()
+                : DEFAULT_VISUAL_CHECK_MAX_DIFFERENCE;
+        boolean updateBaseline = updateBaselineArgument != null && updateBaselineArgument;
+
+        return imageEntity.compareScreenshot(testName,
+                                             deviceInformation.getModel(),
+                                             ignoredRegions,
+                                             tolerance,
+                                             maxDifference,
+                                             updateBaseline);
     }
 
     /**
-     * Starts a LogCat for a specific device on the agent and add the output to the {@link Buffer}.
+     * Finds a template image on the current screen. The arguments are the Base64 encoded template followed by the
+     * optional minimum score, maximum number of results, smallest and largest scale of the template.
      *
-     * @param deviceSerialNumber
-     *        - the serial number of the target device
-     * @param startLogcatCommand
-     *        - an ADB for starting a LogCat.
+     * @param args
+     *        - the arguments passed with the routing action
+     * @return the matches, the best match first
      * @throws CommandFailedException
-     *         thrown when fails to execute the command
+     *         In case of an error in the capturing or an invalid template
      */
-    private void startDeviceLogcat(String deviceSerialNumber, final String startLogcatCommand)
-        throws CommandFailedException {
-        //logcatBuffer.addKey(deviceSerialNumber);
-        logcatBuffer = new Buffer<>();
-        Runtime runtime = Runtime.getRuntime();
-        Process adbProcess = null;
+    private List<TemplateMatch> findImage(Object[] args) throws CommandFailedException {
+        byte[] template = Base64.getDecoder().decode((String) args[0]);
+        Number minScoreArgument = (Number) getOptionalArgument(args, 1);
+        Number maxResultsArgument = (Number) getOptionalArgument(args, 2);
+        Number minScaleArgument = (Number) getOptionalArgument(args, 3);
+        Number maxScaleArgument = (Number) getOptionalArgument(args, 4);
+
+        double minScore = minScoreArgument != null ? minScoreArgument.doubleValue() : DEFAULT_FIND_IMAGE_MIN_SCORE;
+        int maxResults = maxResultsArgument != null ? maxResultsArgument.intValue() : DEFAULT_FIND_IMAGE_MAX_RESULTS;
+        double minScale = minScaleArgument != null ? minScaleArgument.doubleValue() : DEFAULT_FIND_IMAGE_MIN_SCALE;
+        double maxScale = maxScaleArgument != null ? maxScaleArgument.doubleValue() : DEFAULT_FIND_IMAGE_MAX_SCALE;
+
+        return imageEntity.findImage(template, minScore, maxResults, minScale, maxScale);
+    }
+
+    /**
+     * Waits until the screen stops changing. The optional arguments are the timeout in milliseconds, the number of
+     * consecutive matching frames and the maximum difference between matching frames.
+     *
+     * @param args
+     *        - the arguments passed with the routing action
+     * @return a {@link Pair pair} of whether the screen became stable and the settle time in milliseconds
+     * @throws CommandFailedException
+     *         In case of an error in the capturing
+     */
+    private Pair<Boolean, Long> waitForScreenStable(Object[] args) throws CommandFailedException {
+        Number timeoutArgument = (Number) getOptionalArgument(args, 0);
+        Number framesCountArgument = (Number) getOptionalArgument(args, 1);
+        Number thresholdArgument = (Number) getOptionalArgument(args, 2);
+
+        long timeout = timeoutArgument != null ? timeoutArgument.longValue() : DEFAULT_SCREEN_STABLE_TIMEOUT;
+        int framesCount = framesCountArgument != null ? framesCountArgument.intValue()
+                : DEFAULT_SCREEN_STABLE_FRAMES_COUNT;
+        double threshold = thresholdArgument != null ? thresholdArgument.doubleValue()
+                : DEFAULT_SCREEN_STABLE_THRESHOLD;
+
+        return imageEntity.waitForScreenStable(framesCount, threshold, timeout);
+    }
+
+    /**
+     * Builds the screenshot options from the optional arguments of a routing action: format, quality, scale and the x,
+     * y, width and height of the captured region.
+     *
+     * @param args
+     *        - the arguments passed with the routing action
+     * @return the screenshot options
+     * @throws CommandFailedException
+     *         if any of the options is invalid
+     */
+    private ScreenshotOptions getScreenshotOptions(Object[] args) throws CommandFailedException {
+        ScreenshotOptions options = new ScreenshotOptions();
 
         try {
-            int controlLineId = 0;
-            adbProcess = runtime.exec(startLogcatCommand);
-            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(adbProcess.getInputStream()));
-            String currentLine = null;
-
-            while (logcatBuffer.isActive()) {
-                currentLine = bufferedReader.readLine();
-                if (!currentLine.isEmpty()) {
-                    Pair<Integer, String> idToLogLine = new Pair<Integer, String>(controlLineId, currentLine);
-                    logcatBuffer.addValue(idToLogLine);
-                    controlLineId++;
-                }
+            String format = (String) getOptionalArgument(args, 0);
+            if (format != null) {
+                options.setFormat(ScreenshotFormat.valueOf(format.toUpperCase()));
             }
-        } catch (IOException e) {
-            throw new CommandFailedException();
-        } finally {
-            if (adbProcess != null) {
-                adbProcess.destroy();
+
+            Number quality = (Number) getOptionalArgument(args, 1);
+            if (quality != null) {
+                options.setQuality(quality.intValue());
             }
+
+            Number scale = (Number) getOptionalArgument(args, 2);
+            if (scale != null) {
+                options.setScale(scale.doubleValue());
+            }
+
+            Number regionWidth = (Number) getOptionalArgument(args, 5);
+            if (regionWidth != null) {
+                Number regionX = (Number) args[3];
+                Number regionY = (Number) args[4];
+                Number regionHeight = (Number) args[6];
+                options.setRegion(new Rectangle(regionX.intValue(),
+                                                regionY.intValue(),
+                                                regionWidth.intValue(),
+                                                regionHeight.intValue()));
+            }
+        } catch (IllegalArgumentException | ClassCastException | IndexOutOfBoundsException e) {
+            throw new CommandFailedException("Screenshot options are not valid.", e);
+        }
+
+        return options;
+    }
+
+    /**
+     * Builds the response for an artifact that was requested with a content tag. The response always carries the
+     * current tag, while the payload is left out if the artifact has not changed since the client has received it.
+     *
+     * @param requestTag
+     *        - the tag of the artifact the client already has, or <code>null</code> if it has none
+     * @param currentTag
+     *        - the tag of the current artifact
+     * @param payload
+     *        - the artifact in the form it should be sent to the client
+     * @return the tagged response that should be sent to the client
+     */
+    private <T> TaggedContent<T> getTaggedResponse(String requestTag, String currentTag, T payload) {
+        if (currentTag.equals(requestTag)) {
+            return new TaggedContent<T>(currentTag, null);
+        }
+
+        return new TaggedContent<T>(currentTag, payload);
+    }
+
+    /**
+     * Gets a tagged screenshot of the device screen. The screenshot is hashed before it is encoded, so an unchanged
+     * screen is never encoded or resent.
+     *
+     * @param requestTag
+     *        - the content tag of the screenshot the client already has or <code>null</code>
+     * @return the tag of the screenshot and the screenshot as a base64 encoded {@link String} if it has changed
+     * @throws CommandFailedException
+     *         if taking the screenshot fails
+     */
+    private TaggedContent<String> getTaggedScreenshot(String requestTag) throws CommandFailedException {
+        byte[] screenshotData = imageEntity.getScreenshotData();
+        String currentTag = ContentFingerprint.of(screenshotData);
+
+        if (currentTag.equals(requestTag)) {
+            return getTaggedResponse(requestTag, currentTag, null);
+        }
+
+        return getTaggedResponse(requestTag, currentTag, Base64.getEncoder().encodeToString(screenshotData));
+    }
+
+    /**
+     * Gets the tagged UIAutomator UI XML dump.
+     *
+     * @param requestTag
+     *        - the content tag of the dump the client already has or <code>null</code>
+     * @return the tag of the UI XML dump and the dump itself if it has changed
+     * @throws CommandFailedException
+     *         if the UI XML dump fails
+     */
+    private TaggedContent<String> getTaggedUiXml(String requestTag) throws CommandFailedException {
+        String uiXml = getUiXml();
+
+        return getTaggedResponse(requestTag, ContentFingerprint.of(uiXml), uiXml);
+    }
+
+    /**
+     * Gets a tagged tree representation of the active screen of the device. The tag is computed from the JSON form of
+     * the tree, which is the form the client receives, so equal trees always get equal tags.
+     *
+     * @param visibleOnly
+     *        - if <code>true</code> only the visible nodes will be used; if <code>false</code> all nodes will be used
+     * @param requestTag
+     *        - the content tag of the tree the client already has or <code>null</code>
+     * @return the tag of the UI tree and the tree itself if it has changed
+     * @throws CommandFailedException
+     *         if building the tree fails
+     */
+    private TaggedContent<Tree<AccessibilityElement>> getTaggedUiTree(boolean visibleOnly, String requestTag)
+        throws CommandFailedException {
+        Tree<AccessibilityElement> uiTree = automatorCommunicator.getUiTree(visibleOnly);
+        String currentTag = ContentFingerprint.of(jsonUtil.serialize(uiTree));
+
+        return getTaggedResponse(requestTag, currentTag, uiTree);
+    }
+
+    /**
+     * Stops reading the LogCat of the device.
+     *
+     * @param sessionId
+     *        - the id of the LogCat session, or the serial number of the device to stop all sessions, as the clients
+     *        without sessions do
+     */
+    private void stopLogcat(String sessionId) {
+        if (wrappedDevice.getSerialNumber().equals(sessionId)) {
+            logcatStream.close();
+        } else if (!logcatStream.closeSession(sessionId)) {
+            LOGGER.warn(String.format("There is no LogCat session %s on %s.",
+                                      sessionId,
+                                      wrappedDevice.getSerialNumber()));
+        }
+    }
+
+    /**
+     * Gets the lines logged in the LogCat since the last read of the given session. Waits for a while if there are no
+     * new lines.
+     *
+     * @param sessionId
+     *        - the id of the LogCat session, or the serial number of the device to read the last started session, as
+     *        the clients without sessions do
+     * @return a list of the new lines mapped to their consecutive ids in the session
+     * @throws CommandFailedException
+     *         if there is no such session, or the <code>logcat</code> process of the session has ended and all its
+     *         lines are read; the session is closed in this case
+     */
+    public List<Pair<Integer, String>> getNewOutputFromLogcatBuffer(String sessionId) throws CommandFailedException {
+        LogcatSession session = logcatStream.getSession(sessionId);
+        if (session == null && wrappedDevice.getSerialNumber().equals(sessionId)) {
+            session = logcatStream.getSession(lastLogcatSessionId);
+        }
+
+        if (session == null) {
+            throw new CommandFailedException(String.format("There is no LogCat session %s on %s.",
+                                                           sessionId,
+                                                           wrappedDevice.getSerialNumber()));
         }
+
+        List<Pair<Integer, String>> lines = session.read(LOGCAT_MAX_LINES_PER_READ, LOGCAT_READ_TIMEOUT);
+        if (lines.isEmpty() && !session.isActive()) {
+            logcatStream.closeSession(session.getId());
+            throw new CommandFailedException(String.format("The LogCat stream of session %s on %s has ended.",
+                                                           session.getId(),
+                                                           wrappedDevice.getSerialNumber()));
+        }
+
+        return lines;
+    }
+
+    /**
+     * Starts reading the LogCat of the device in background. All sessions of the device share a single
+     * <code>logcat</code> process.
+     *
+     * @param deviceSerialNumber
+     *        - the serial number of the target device
+     * @param logcatFilter
+     *        - the filter specifications of the session, e.g. <code>ActivityManager:I *:S</code>; a whole
+     *        <code>logcat</code> command is accepted as well
+     * @return the id of the started session
+     */
+    private String startDeviceLogcat(String deviceSerialNumber, String logcatFilter) {
+        LogcatSession session = logcatStream.openSession(logcatFilter);
+        lastLogcatSessionId = session.getId();
+
+        return session.getId();
     }
 
     /**
@@ -744,15 +1095,17 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
     }
 
     /**
-     * Gets the information retrieved from the device LogCat as a sequence of bytes applying the given filter.
+     * Gets the information retrieved from the device LogCat applying the given filter. The log is kept in the
+     * {@link ArtifactStore}, so it can be retrieved again by its id.
      *
      * @param logFilter
      *        - String representing the filter to be applied when retrieving the log
-     * @return array of bytes containing the information retrieved from the device LogCat
+     * @return a {@link Pair pair} of the artifact id of the log and the log as a base64 encoded {@link String}; the id
+     *         is <code>null</code> if the log could not be stored
      * @throws CommandFailedException
      *         if LogCat command fails
      */
-    private String getDeviceLogcat(String logFilter) throws CommandFailedException {
+    private Pair<String, String> getDeviceLogcat(String logFilter) throws CommandFailedException {
         String deviceLogcatFileName = String.format("device_%s.log", deviceInformation.getSerialNumber());
         String externalStorage = serviceCommunicator.getExternalStorage();
         String remoteLogParentDir = externalStorage != null ? externalStorage : FALLBACK_COMPONENT_PATH;
@@ -761,23 +1114,27 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
         shellCommandExecutor.execute(GET_DEVICE_LOGCAT_COMMAND + remoteLogDir + logFilter);
 
         try {
-            wrappedDevice.pullFile(remoteLogDir, deviceLogcatFileName);
             File localLogFile = new File(deviceLogcatFileName);
-            long fileLenght = localLogFile.length();
-            byte[] logData = new byte[(int) fileLenght];
-            FileInputStream fileInputStream = new FileInputStream(localLogFile);
-            fileInputStream.read(logData);
-            fileInputStream.close();
-
-            // clears the LogCat file from the agent
-            localLogFile.delete();
+            wrappedDevice.pullFile(remoteLogDir, localLogFile.getPath());
+            byte[] logData = Files.readAllBytes(localLogFile.toPath());
+
+            String logArtifactId = null;
+            try {
+                Artifact logArtifact = ArtifactStore.getDefault().store(ArtifactType.LOG, localLogFile);
+                logArtifactId = logArtifact.getId();
+                LOGGER.debug("Stored the log of device " + wrappedDevice.getSerialNumber() + " as " + logArtifact);
+            } catch (IOException e) {
+                LOGGER.warn("Storing the log of device " + wrappedDevice.getSerialNumber() + " failed.", e);
+                localLogFile.delete();
+            }
+
             // clears the LogCat file from the device
             String removeFileCommand = String.format("rm %s", remoteLogDir);
             shellCommandExecutor.execute(removeFileCommand);
 
             String base64LogData = Base64.getEncoder().encodeToString(logData);
 
-            return base64LogData;
+            return new Pair<String, String>(logArtifactId, base64LogData);
         } catch (SyncException | IOException | AdbCommandRejectedException | TimeoutException e) {
             String errorMessage = String.format("Getting log for device %s failed.", wrappedDevice.getSerialNumber());
             LOGGER.error(errorMessage, e);
@@ -923,10 +1280,11 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
         EntityTypeResolver typeResolver = new EntityTypeResolver(deviceInformation);
 
         try {
-            Constructor<?> hardwareButtonEntityConstructor = HardwareButtonEntity.class.getDeclaredConstructor(ShellCommandExecutor.class);
+            Constructor<?> hardwareButtonEntityConstructor = HardwareButtonEntity.class.getDeclaredConstructor(ShellCommandExecutor.class,
+                                                                                                                UIAutomatorCommunicator.class);
             hardwareButtonEntityConstructor.setAccessible(true);
             HardwareButtonEntity hardwareButtonEntity = (HardwareButtonEntity) hardwareButtonEntityConstructor.newInstance(new Object[] {
-                    shellCommandExecutor});
+                    shellCommandExecutor, automatorCommunicator});
             this.hardwareButtonEntity = hardwareButtonEntity;
 
             Constructor<?> imeEntityConstructor = ImeEntity.class.getDeclaredConstructor(ServiceCommunicator.class);
@@ -984,7 +1342,8 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
     }
 
     /**
-     * Gets the UIAutomator UI XML dump.
+     * Gets the UIAutomator UI XML dump. The dump is streamed from the device shell straight into a reusable buffer, so
+     * no local files are involved.
      *
      * @return UI XML file dump in a string
      * @throws CommandFailedException
@@ -992,32 +1351,28 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
      */
     private String getUiXml() throws CommandFailedException {
         String remoteFileName = String.format(XMLDUMP_REMOTE_FILE_NAME, wrappedDevice.getSerialNumber());
-        String localFileName = String.format(XMLDUMP_LOCAL_FILE_NAME, wrappedDevice.getSerialNumber());
         automatorCommunicator.getUiDumpXml(remoteFileName);
 
-        File xmlDumpFile = null;
-        Scanner xmlDumpFileScanner = null;
+        String readDumpCommand = String.format(READ_AND_REMOVE_FILE_COMMAND_FORMAT, remoteFileName, remoteFileName);
 
-        try {
-            wrappedDevice.pullFile(remoteFileName, localFileName);
+        synchronized (uiXmlBuffer) {
+            long startTime = System.currentTimeMillis();
 
-            xmlDumpFile = new File(localFileName);
-            xmlDumpFileScanner = new Scanner(xmlDumpFile, "UTF-8");
-            xmlDumpFileScanner.useDelimiter("\\Z");
+            uiXmlBuffer.reset();
+            shellCommandExecutor.execute(readDumpCommand, uiXmlBuffer);
 
-            if (!xmlDumpFileScanner.hasNext()) {
+            if (uiXmlBuffer.size() == 0) {
                 throw new CommandFailedException("Error obtaining UI hierarchy.");
             }
 
-            return xmlDumpFileScanner.next();
-        } catch (SyncException | IOException | AdbCommandRejectedException | TimeoutException e) {
-            LOGGER.error("UI dump failed.", e);
-            throw new CommandFailedException("UI dump failed. See the enclosed exception for more information.", e);
-        } finally {
-            if (xmlDumpFile != null && xmlDumpFileScanner != null) {
-                xmlDumpFileScanner.close();
-                xmlDumpFile.delete();
-            }
+            String uiXml = uiXmlBuffer.toString(StandardCharsets.UTF_8);
+
+            LOGGER.debug(String.format("UI XML dump of %d bytes transferred from %s in %d ms.",
+                                       uiXmlBuffer.size(),
+                                       wrappedDevice.getSerialNumber(),
+                                       System.currentTimeMillis() - startTime));
+
+            return uiXml;
         }
     }
 
@@ -1135,17 +1490,57 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
 
         Arrays.sort(fileNames);
 
-        int filesCount = fileNames.length;
-        Movie[] movies = new Movie[filesCount];
+        File mergedRecordsDirectory = new File(MERGED_RECORDS_DIR_NAME);
 
-        for (int index = 0; index < filesCount; index++) {
-            String currentFilePath = String.format("%s%s%s", directoryPath, File.separator, fileNames[index]);
-            movies[index] = MovieCreator.build(currentFilePath);
+        if (!mergedRecordsDirectory.exists()) {
+            mergedRecordsDirectory.mkdirs();
+        }
+
+        String timestamp = new SimpleDateFormat(TIMESTAMP_FORMAT).format(new Date());
+
+        uplaodDirectoryName = !uplaodDirectoryName.isEmpty() ? uplaodDirectoryName + "_" : uplaodDirectoryName;
+        String screenRecordFileName = String.format("%s%s%s%s%s%s_%s_screen_record.mp4",
+                                                    SCREEN_RECORDS_LOCAL_DIR,
+                                                    File.separator,
+                                                    MERGED_RECORDS_DIR_NAME,
+                                                    File.separator,
+                                                    uplaodDirectoryName,
+                                                    timestamp,
+                                                    wrappedDevice.getSerialNumber());
+
+        List<File> segmentFiles = new ArrayList<>();
+        for (String fileName : fileNames) {
+            segmentFiles.add(new File(directoryPath, fileName));
         }
 
+        try {
+            Mp4SegmentConcatenator.concatenate(segmentFiles, new File(screenRecordFileName));
+        } catch (IOException e) {
+            LOGGER.warn("Streaming concatenation of the video records failed, falling back to rebuilding the video.",
+                        e);
+            new File(screenRecordFileName).delete();
+            buildCombinedVideo(segmentFiles, screenRecordFileName);
+        }
+
+        return screenRecordFileName;
+    }
+
+    /**
+     * Combines the given video files by rebuilding the whole video in memory. Used for segments which can not be
+     * concatenated by the {@link Mp4SegmentConcatenator}.
+     *
+     * @param segmentFiles
+     *        - the video files to be combined
+     * @param screenRecordFileName
+     *        - the name of the combined video file
+     * @throws IOException
+     *         if reading or writing a video file fails
+     */
+    private void buildCombinedVideo(List<File> segmentFiles, String screenRecordFileName) throws IOException {
         List<Track> videoTracks = new LinkedList<>();
 
-        for (Movie movie : movies) {
+        for (File segmentFile : segmentFiles) {
+            Movie movie = MovieCreator.build(segmentFile.getPath());
             for (Track track : movie.getTracks()) {
                 if (track.getHandler().equals("vide")) {
                     videoTracks.add(track);
@@ -1162,35 +1557,16 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
         Mp4Builder videoBuilder = new DefaultMp4Builder();
         Container combinedMovieContainer = videoBuilder.build(combinedMovie);
 
-        File mergedRecordsDirectory = new File(MERGED_RECORDS_DIR_NAME);
-
-        if (!mergedRecordsDirectory.exists()) {
-            mergedRecordsDirectory.mkdirs();
-        }
-
-        String timestamp = new SimpleDateFormat(TIMESTAMP_FORMAT).format(new Date());
-
-        uplaodDirectoryName = !uplaodDirectoryName.isEmpty() ? uplaodDirectoryName + "_" : uplaodDirectoryName;
-        String screenRecordFileName = String.format("%s%s%s%s%s%s_%s_screen_record.mp4",
-                                                    SCREEN_RECORDS_LOCAL_DIR,
-                                                    File.separator,
-                                                    MERGED_RECORDS_DIR_NAME,
-                                                    File.separator,
-                                                    uplaodDirectoryName,
-                                                    timestamp,
-                                                    wrappedDevice.getSerialNumber());
-
         RandomAccessFile randomAccessFile = new RandomAccessFile(screenRecordFileName, "rw");
         FileChannel fileChannel = randomAccessFile.getChannel();
         combinedMovieContainer.writeContainer(fileChannel);
 
         fileChannel.close();
         randomAccessFile.close();
-
-        return screenRecordFileName;
     }
 
-    private void startScreenRecording(int timeLimit, boolean forceLandscape) throws CommandFailedException {
+    private void startScreenRecording(int timeLimit, boolean forceLandscape, int bitRate)
+        throws CommandFailedException {
         String externalStorage = serviceCommunicator.getExternalStorage();
         String recordsParentDir = externalStorage != null ? externalStorage : FALLBACK_COMPONENT_PATH;
 
@@ -1202,45 +1578,23 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
                 : String.format("%sx%s", width, height);
         int timeLimitInSeconds = timeLimit * 60;
 
-        String screenRecordCommand = String.format("%s%s %d %s",
-                                                   START_SCREEN_RECORD_COMMAND,
-                                                   recordsParentDir,
-                                                   timeLimitInSeconds,
-                                                   screenResoloution);
-
-        shellCommandExecutor.executeInBackground(screenRecordCommand);
-    }
-
-    private void stopScreenRecording(String uplaodDirectoryName) throws CommandFailedException {
-        String screenRecordFileName = null;
-
-        String externalStorage = serviceCommunicator.getExternalStorage();
-        String recordsParentDir = externalStorage != null ? externalStorage : FALLBACK_COMPONENT_PATH;
-
-        String processNamePrefix = "";
-        if (deviceInformation.getApiLevel() >= 23) { // Android M
-            processNamePrefix = "/system/bin/";
-        }
-
-        String command = String.format("%s%s %s", STOP_SCREEN_RECORD_COMMAND, recordsParentDir, processNamePrefix);
-        String output = shellCommandExecutor.execute(command);
-
-        if (output.trim().length() <= 0) {
-            return;
+        ScreenRecorder previousRecorder = screenRecorder;
+        if (previousRecorder != null) {
+            previousRecorder.stop(SCREEN_RECORDING_STOP_TIMEOUT);
+            recycleSegments(screenRecordSegmentPuller);
         }
 
-        String[] screenRecordFilenames = output.split(RECORDS_FILENAMES_DELIMITER);
-
-        if (!screenRecordFilenames[0].equals(FIRST_SCREEN_RECORD_NAME)) {
-            return;
-        }
-
-        File recordsDirectory = new File(SCREEN_RECORDS_LOCAL_DIR);
-
-        if (!recordsDirectory.exists()) {
-            recordsDirectory.mkdirs();
-        }
+        // the complete segments are pulled while recording, so only the last one is left when the recording stops
+        String remoteRecordsDirectory = String.format("%s/%s", recordsParentDir, RECORDS_DIRECTORY_NAME);
+        screenRecordSegmentPuller = new ScreenRecordSegmentPuller(wrappedDevice,
+                                                                  pullFileExecutor,
+                                                                  remoteRecordsDirectory,
+                                                                  createSeparatedVideosDirectory());
+        screenRecorder = new ScreenRecorder(wrappedDevice, shellCommandExecutor, remoteRecordsDirectory);
+        screenRecorder.start(timeLimitInSeconds, screenResoloution, bitRate, screenRecordSegmentPuller);
+    }
 
+    private String createSeparatedVideosDirectory() {
         String timestamp = new SimpleDateFormat(TIMESTAMP_FORMAT).format(new Date());
         String separatedVideosDirectoryPath = String.format("%s%s%s_%s_VideoRecords",
                                                             SCREEN_RECORDS_LOCAL_DIR,
@@ -1254,59 +1608,82 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
             separateVideosDirectory.mkdirs();
         }
 
-        for (String filename : screenRecordFilenames) {
-            String currentRecordRemotePath = String.format("%s/%s/%s",
-                                                           recordsParentDir,
-                                                           RECORDS_DIRECTORY_NAME,
-                                                           filename);
-            String currentRecordLocalPath = String.format("%s%s%s",
-                                                          separatedVideosDirectoryPath,
-                                                          File.separator,
-                                                          filename);
-
-            pullFile(currentRecordRemotePath, currentRecordLocalPath);
-        }
+        return separatedVideosDirectoryPath;
+    }
 
-        for (int i = 0; i < screenRecordFilenames.length; i++) {
-            Future<Boolean> futureTask = null;
+    /**
+     * Stops the screen recording of the device, merges the recorded segments and keeps the result in the
+     * {@link ArtifactStore artifact store}.
+     *
+     * @param uplaodDirectoryName
+     *        - the name of the FTP directory where the record is uploaded, or an empty string if it is not uploaded
+     * @return the id of the screen record artifact, or <code>null</code> if nothing was recorded or storing failed
+     */
+    private String stopScreenRecording(String uplaodDirectoryName) {
+        Artifact screenRecord = null;
 
-            try {
-                futureTask = pullFileCompletionService.take();
-                Boolean isFilePulled = futureTask.get();
+        ScreenRecorder recorder = screenRecorder;
+        ScreenRecordSegmentPuller segmentPuller = screenRecordSegmentPuller;
+        screenRecorder = null;
+        screenRecordSegmentPuller = null;
 
-                if (!isFilePulled) {
-                    LOGGER.warn(String.format("Pulling some of the video records from device %s failed.",
-                                              wrappedDevice.getSerialNumber()));
-                }
-            } catch (InterruptedException | ExecutionException e) {
+        if (recorder == null) {
+            LOGGER.warn(String.format("The screen of device %s is not recorded.", wrappedDevice.getSerialNumber()));
+            return null;
+        }
 
-            } finally {
-                if (futureTask != null) {
-                    futureTask.cancel(true);
-                }
-            }
+        List<String> screenRecordFilenames = recorder.stop(SCREEN_RECORDING_STOP_TIMEOUT);
+
+        if (screenRecordFilenames.isEmpty()) {
+            recycleSegments(segmentPuller);
+            return null;
         }
 
+        String separatedVideosDirectoryPath = segmentPuller.getLocalDirectory();
+        if (!segmentPuller.finish(screenRecordFilenames)) {
+            LOGGER.warn(String.format("Pulling some of the video records from device %s failed.",
+                                      wrappedDevice.getSerialNumber()));
+        }
+
+        boolean isUploaded = ftpFileTransferService != null && !uplaodDirectoryName.isEmpty();
+        String screenRecordFileName = null;
         try {
             screenRecordFileName = combineVideoFiles(separatedVideosDirectoryPath, uplaodDirectoryName);
+            // pinned until the transfer service pins it as well, so it is not evicted before being queued
+            screenRecord = ArtifactStore.getDefault().store(ArtifactType.SCREEN_RECORD,
+                                                            new File(screenRecordFileName),
+                                                            isUploaded);
+            screenRecordFileName = screenRecord.getFile().getPath();
         } catch (IOException e) {
             LOGGER.error(String.format("Failed to merge video records pulled from device with serial number %s.",
                                        wrappedDevice.getSerialNumber()),
                          e);
         }
 
-        if (ftpFileTransferService != null && !uplaodDirectoryName.isEmpty()) {
+        if (isUploaded && screenRecordFileName != null) {
             try {
                 ftpFileTransferService.addTransferTask(screenRecordFileName);
             } catch (IOException e) {
                 LOGGER.error(String.format("Failed to add \"%s\" to the queue of the pending transfers.",
                                            screenRecordFileName));
+            } finally {
+                if (screenRecord != null) {
+                    ArtifactStore.getDefault().unpin(screenRecord.getFile());
+                }
             }
         }
 
         // TODO: Since we don't know when the FileRecycler will remove the files, there is a chance to not remove
         // some of the recorded files, due to Agent.stop(). Find a way to handle this problem.
         fileRecycler.addFile(separatedVideosDirectoryPath);
+
+        return screenRecord != null ? screenRecord.getId() : null;
+    }
+
+    private void recycleSegments(ScreenRecordSegmentPuller segmentPuller) {
+        if (segmentPuller != null) {
+            fileRecycler.addFile(segmentPuller.getLocalDirectory());
+        }
     }
 
     /**
@@ -1325,6 +1702,8 @@ public abstract class AbstractWrapDevice implements IWrapDevice {
 
     @Override
     public void unbindWrapper() {
+        logcatStream.close();
+
         try {
             serviceCommunicator.stopComponent();
             // TODO: Stopping the automatorCommunicator component fails - fix it!
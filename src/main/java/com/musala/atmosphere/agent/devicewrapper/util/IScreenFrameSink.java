@@ -0,0 +1,39 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import java.io.IOException;
+
+/**
+ * Receives the encoded frames of a screen stream.
+ */
+public interface IScreenFrameSink {
+    /**
+     * Delivers an encoded frame. The call may block while the receiver is busy, which slows down the delivery of the
+     * stream; frames captured in the meantime are replaced by newer ones instead of being queued.
+     *
+     * @param streamId
+     *        - the id of the stream
+     * @param frameNumber
+     *        - the sequence number of the captured frame; skipped numbers are frames that were dropped
+     * @param frame
+     *        - the encoded frame
+     * @throws IOException
+     *         if the frame can not be delivered; the stream is stopped in that case
+     */
+    public void sendFrame(String streamId, long frameNumber, byte[] frame) throws IOException;
+}
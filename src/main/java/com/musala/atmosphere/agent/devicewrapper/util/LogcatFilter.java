@@ -0,0 +1,184 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Selects LogCat lines by tag and priority, the way the <code>logcat</code> tool does with its filter specifications,
+ * e.g. <code>ActivityManager:I MyApp:D *:S</code>. Lets several readers with different filters share the output of a
+ * single <code>logcat</code> process. The lines are expected in the <code>threadtime</code> format.
+ */
+public class LogcatFilter {
+    private static final String PRIORITIES = "VDIWEFS";
+
+    private static final String ANY_TAG = "*";
+
+    private static final String LOGCAT_COMMAND_NAME = "logcat";
+
+    private static final String SILENT_OPTION = "-s";
+
+    /**
+     * The options of the <code>logcat</code> tool followed by a value, which is not a filter specification.
+     */
+    private static final Set<String> OPTIONS_WITH_VALUE = new HashSet<>(Arrays.asList("-v",
+                                                                                      "-b",
+                                                                                      "-f",
+                                                                                      "-r",
+                                                                                      "-n",
+                                                                                      "-t",
+                                                                                      "-T",
+                                                                                      "-e",
+                                                                                      "-m",
+                                                                                      "-G",
+                                                                                      "-p",
+                                                                                      "-P",
+                                                                                      "--pid",
+                                                                                      "--format",
+                                                                                      "--buffer",
+                                                                                      "--file",
+                                                                                      "--regex",
+                                                                                      "--max-count"));
+
+    private static final Pattern FILTER_SPEC_PATTERN = Pattern.compile("(.+):([" + PRIORITIES + "*])",
+                                                                       Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Matches the date, time, PID, TID, priority and tag of a <code>threadtime</code> line.
+     */
+    private static final Pattern THREADTIME_LINE_PATTERN =
+            Pattern.compile("^\\S+\\s+\\S+\\s+\\d+\\s+\\d+\\s+([VDIWEFA])\\s+(.*?)\\s*: ");
+
+    private final Map<String, Integer> tagToMinPriority = new HashMap<>();
+
+    private final int defaultMinPriority;
+
+    private LogcatFilter(Map<String, Integer> tagToMinPriority) {
+        this.tagToMinPriority.putAll(tagToMinPriority);
+
+        Integer anyTagPriority = this.tagToMinPriority.remove(ANY_TAG);
+        this.defaultMinPriority = anyTagPriority != null ? anyTagPriority : 0;
+    }
+
+    /**
+     * Parses a filter from the filter specifications of the <code>logcat</code> tool. Anything before the
+     * <code>logcat</code> word (e.g. <code>adb -s serial</code>) and the options of the tool are ignored, so a whole
+     * <code>logcat</code> command can be passed as well. As in the tool, the priorities are case insensitive, a tag
+     * without priority is shown with all priorities and the <code>-s</code> option silences the unlisted tags, so
+     * <code>logcat -s MyApp</code> shows the lines of <code>MyApp</code> only.
+     *
+     * @param filter
+     *        - the filter specifications separated by white spaces; <code>null</code> or empty to accept all lines
+     * @return the parsed filter
+     */
+    public static LogcatFilter parse(String filter) {
+        Map<String, Integer> tagToMinPriority = new HashMap<>();
+        if (filter == null) {
+            return new LogcatFilter(tagToMinPriority);
+        }
+
+        String[] tokens = filter.trim().split("\\s+");
+        int firstSpecIndex = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].endsWith(LOGCAT_COMMAND_NAME)) {
+                firstSpecIndex = i + 1;
+            }
+        }
+
+        boolean isSilentByDefault = false;
+        for (int i = firstSpecIndex; i < tokens.length; i++) {
+            String token = tokens[i];
+            if (token.equals(SILENT_OPTION)) {
+                isSilentByDefault = true;
+            } else if (token.startsWith("-")) {
+                if (OPTIONS_WITH_VALUE.contains(token)) {
+                    i++;
+                }
+            } else if (!token.contains(":")) {
+                // a tag without priority is shown with all priorities
+                if (!token.isEmpty()) {
+                    tagToMinPriority.put(token, 0);
+                }
+            } else {
+                Matcher specMatcher = FILTER_SPEC_PATTERN.matcher(token);
+                if (specMatcher.matches()) {
+                    String priority = specMatcher.group(2).toUpperCase(Locale.ENGLISH);
+                    int minPriority = priority.equals("*") ? 0 : PRIORITIES.indexOf(priority);
+                    tagToMinPriority.put(specMatcher.group(1), minPriority);
+                }
+            }
+        }
+
+        // the -s option is the same as *:S, unless the default priority is given explicitly
+        if (isSilentByDefault && !tagToMinPriority.containsKey(ANY_TAG)) {
+            tagToMinPriority.put(ANY_TAG, PRIORITIES.indexOf('S'));
+        }
+
+        return new LogcatFilter(tagToMinPriority);
+    }
+
+    /**
+     * Checks whether a line passes the filter. Lines which are not log messages, e.g. the
+     * <code>--------- beginning of main</code> separators, pass only a filter which accepts all lines.
+     *
+     * @param line
+     *        - a line in the <code>threadtime</code> format
+     * @return <code>true</code> if the line passes the filter, <code>false</code> otherwise
+     */
+    public boolean accepts(String line) {
+        if (acceptsAll()) {
+            return true;
+        }
+
+        Matcher lineMatcher = THREADTIME_LINE_PATTERN.matcher(line);
+        if (!lineMatcher.find()) {
+            return false;
+        }
+
+        // the assert priority is shown as fatal
+        String priority = lineMatcher.group(1).equals("A") ? "F" : lineMatcher.group(1);
+        Integer minPriority = tagToMinPriority.get(lineMatcher.group(2));
+
+        return PRIORITIES.indexOf(priority) >= (minPriority != null ? minPriority : defaultMinPriority);
+    }
+
+    /**
+     * Checks whether the filter accepts all lines.
+     *
+     * @return <code>true</code> if all lines pass the filter, <code>false</code> otherwise
+     */
+    public boolean acceptsAll() {
+        if (defaultMinPriority != 0) {
+            return false;
+        }
+
+        for (int minPriority : tagToMinPriority.values()) {
+            if (minPriority != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
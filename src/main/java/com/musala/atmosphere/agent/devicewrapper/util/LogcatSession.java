@@ -0,0 +1,109 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.musala.atmosphere.commons.util.Pair;
+
+/**
+ * A reader attached to a {@link LogcatStream}. Every session has its own position in the stream and its own
+ * {@link LogcatFilter filter}, so the readers of a device do not take lines from each other.
+ */
+public class LogcatSession {
+    private final String id;
+
+    private final LogcatFilter filter;
+
+    private final RingBuffer<String> buffer;
+
+    private final RingBuffer<String>.Cursor cursor;
+
+    private final List<String> readLines = new ArrayList<>();
+
+    private int nextLineId;
+
+    LogcatSession(String id, LogcatFilter filter, RingBuffer<String> buffer) {
+        this.id = id;
+        this.filter = filter;
+        this.buffer = buffer;
+        this.cursor = buffer.openCursor();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Reads the new lines which pass the filter of the session. Waits until such a line is logged, the timeout elapses
+     * or the stream ends.
+     *
+     * @param maxLines
+     *        - the maximum number of lines to be read
+     * @param timeout
+     *        - the maximum time to wait for a line, in milliseconds
+     * @return the read lines mapped to their consecutive ids in the session, or an empty list if no line is read
+     */
+    public synchronized List<Pair<Integer, String>> read(int maxLines, long timeout) {
+        List<Pair<Integer, String>> lines = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + timeout;
+
+        while (lines.isEmpty()) {
+            long remainingTime = deadline - System.currentTimeMillis();
+            if (!cursor.await(Math.max(0, remainingTime))) {
+                break;
+            }
+
+            readLines.clear();
+            cursor.drainTo(readLines, maxLines);
+            for (String line : readLines) {
+                if (filter.accepts(line)) {
+                    lines.add(new Pair<Integer, String>(nextLineId++, line));
+                }
+            }
+        }
+
+        return lines;
+    }
+
+    /**
+     * Checks whether new lines can still be read from the session.
+     *
+     * @return <code>false</code> if the stream has ended and all its lines are read, <code>true</code> otherwise
+     */
+    public boolean isActive() {
+        return buffer.isActive() || cursor.available() > 0;
+    }
+
+    /**
+     * Gets the number of lines which were dropped from the stream before the session has read them.
+     *
+     * @return the number of lost lines
+     */
+    public long getLostLinesCount() {
+        return cursor.getLostCount();
+    }
+
+    boolean isReadingFrom(RingBuffer<String> streamBuffer) {
+        return buffer == streamBuffer;
+    }
+
+    void close() {
+        cursor.close();
+    }
+}
@@ -0,0 +1,307 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.MultiLineReceiver;
+import com.android.ddmlib.NullOutputReceiver;
+import com.android.ddmlib.ShellCommandUnresponsiveException;
+import com.android.ddmlib.TimeoutException;
+
+/**
+ * Streams the LogCat of a device in background. A single <code>logcat</code> process runs on the device while there
+ * are opened {@link LogcatSession sessions}, and all sessions read its output from a shared {@link RingBuffer}, each
+ * with its own filter. The process is started with the first session and stopped with the last one.
+ * <p>
+ * The process is started with <code>exec</code>, so the shell prints its PID first and the process is killed by it
+ * when the stream is stopped. Cancelling the shell command alone would leave the process running until its next line.
+ * </p>
+ */
+public class LogcatStream {
+    private static final Logger LOGGER = Logger.getLogger(LogcatStream.class.getCanonicalName());
+
+    private static final String LOGCAT_COMMAND = "echo $$; exec logcat -v threadtime";
+
+    private static final String KILL_PROCESS_COMMAND_FORMAT = "kill %d";
+
+    private static final int KILL_PROCESS_TIMEOUT = 5000;
+
+    private static final ExecutorService STREAM_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "logcat-stream");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final IDevice device;
+
+    private final int capacity;
+
+    private final Map<String, LogcatSession> sessions = new HashMap<>();
+
+    private RingBuffer<String> buffer;
+
+    private LogcatReceiver receiver;
+
+    /**
+     * Publishes the output of the <code>logcat</code> process in the buffer. The first line is the PID printed by the
+     * shell before starting the process. Cancelling the receiver kills the process.
+     */
+    private class LogcatReceiver extends MultiLineReceiver {
+        private final RingBuffer<String> buffer;
+
+        private volatile boolean isCancelled;
+
+        private Integer processId;
+
+        private boolean isProcessIdReceived;
+
+        private boolean isProcessExited;
+
+        private LogcatReceiver(RingBuffer<String> buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void processNewLines(String[] lines) {
+            for (String line : lines) {
+                if (!isProcessIdReceived && line.trim().matches("\\d+")) {
+                    isProcessIdReceived = true;
+                    onProcessStarted(Integer.parseInt(line.trim()));
+                } else if (!line.isEmpty()) {
+                    buffer.publish(line);
+                }
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+
+        private void onProcessStarted(int startedProcessId) {
+            boolean isStopRequested;
+            synchronized (this) {
+                processId = startedProcessId;
+                isStopRequested = isCancelled;
+            }
+
+            // the stream may be stopped before the process is started
+            if (isStopRequested) {
+                killProcess(startedProcessId);
+            }
+        }
+
+        private synchronized void onProcessExited() {
+            isProcessExited = true;
+        }
+
+        private void cancel() {
+            Integer startedProcessId;
+            synchronized (this) {
+                isCancelled = true;
+                // the PID of an exited process may already belong to another process
+                startedProcessId = isProcessExited ? null : processId;
+            }
+
+            if (startedProcessId != null) {
+                killProcess(startedProcessId);
+            }
+        }
+    }
+
+    /**
+     * Creates a LogCat stream of the given device. No process is started until a session is opened.
+     *
+     * @param device
+     *        - the device
+     * @param capacity
+     *        - the number of the last lines kept for the sessions which read slower than the device logs
+     */
+    public LogcatStream(IDevice device, int capacity) {
+        this.device = device;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Opens a session, starting the <code>logcat</code> process if it is not running.
+     *
+     * @param filter
+     *        - the filter of the session, see {@link LogcatFilter#parse(String)}
+     * @return the opened session
+     */
+    public synchronized LogcatSession openSession(String filter) {
+        if (buffer == null || !buffer.isActive()) {
+            startProcess();
+        }
+
+        LogcatSession session = new LogcatSession(UUID.randomUUID().toString(), LogcatFilter.parse(filter), buffer);
+        sessions.put(session.getId(), session);
+
+        return session;
+    }
+
+    /**
+     * Gets an opened session.
+     *
+     * @param sessionId
+     *        - the id of the session
+     * @return the session, or <code>null</code> if there is no such opened session
+     */
+    public synchronized LogcatSession getSession(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Closes a session. The <code>logcat</code> process is stopped when the last session reading from it is closed.
+     *
+     * @param sessionId
+     *        - the id of the session
+     * @return <code>true</code> if the session was closed, <code>false</code> if there is no such opened session
+     */
+    public synchronized boolean closeSession(String sessionId) {
+        LogcatSession session = sessions.remove(sessionId);
+        if (session == null) {
+            return false;
+        }
+
+        session.close();
+        if (!hasSessionsOf(buffer)) {
+            stopProcess();
+        }
+
+        return true;
+    }
+
+    /**
+     * Closes all sessions and stops the <code>logcat</code> process.
+     */
+    public synchronized void close() {
+        for (String sessionId : new ArrayList<>(sessions.keySet())) {
+            closeSession(sessionId);
+        }
+    }
+
+    /**
+     * Gets the ids of the opened sessions.
+     *
+     * @return the ids of the sessions
+     */
+    public synchronized List<String> getSessionIds() {
+        return new ArrayList<>(sessions.keySet());
+    }
+
+    /**
+     * Checks whether the <code>logcat</code> process is running.
+     *
+     * @return <code>true</code> if the process is running, <code>false</code> otherwise
+     */
+    public synchronized boolean isStreaming() {
+        return buffer != null && buffer.isActive();
+    }
+
+    private void startProcess() {
+        final RingBuffer<String> processBuffer = new RingBuffer<>(capacity);
+        final LogcatReceiver processReceiver = new LogcatReceiver(processBuffer);
+        buffer = processBuffer;
+        receiver = processReceiver;
+
+        STREAM_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // logcat may not print anything for a long time, so the command is not limited by a timeout
+                    device.executeShellCommand(LOGCAT_COMMAND, processReceiver, 0, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException | AdbCommandRejectedException | ShellCommandUnresponsiveException
+                        | IOException e) {
+                    LOGGER.error("Streaming the LogCat of " + device.getSerialNumber() + " failed.", e);
+                } finally {
+                    processReceiver.onProcessExited();
+                    // the sessions read the lines left in the buffer and stop waiting for new ones
+                    processBuffer.terminate();
+                    onProcessEnded(processBuffer, processReceiver);
+                    LOGGER.debug("The LogCat stream of " + device.getSerialNumber() + " has ended.");
+                }
+            }
+        });
+    }
+
+    /**
+     * Forgets a process which has ended by itself, e.g. when the device is rebooted, so the next opened session
+     * starts a new one. The sessions of the ended process stay registered until they are closed, so their clients can
+     * read the last lines and find out the stream has ended.
+     */
+    private synchronized void onProcessEnded(RingBuffer<String> processBuffer, LogcatReceiver processReceiver) {
+        if (buffer == processBuffer && receiver == processReceiver) {
+            buffer = null;
+            receiver = null;
+        }
+    }
+
+    private boolean hasSessionsOf(RingBuffer<String> processBuffer) {
+        for (LogcatSession session : sessions.values()) {
+            if (session.isReadingFrom(processBuffer)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void stopProcess() {
+        if (receiver != null) {
+            receiver.cancel();
+            buffer.terminate();
+            receiver = null;
+            buffer = null;
+        }
+    }
+
+    private void killProcess(final int processId) {
+        // the stream is stopped while holding its lock, so the process is killed in background
+        STREAM_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    device.executeShellCommand(String.format(KILL_PROCESS_COMMAND_FORMAT, processId),
+                                               new NullOutputReceiver(),
+                                               KILL_PROCESS_TIMEOUT,
+                                               TimeUnit.MILLISECONDS);
+                } catch (TimeoutException | AdbCommandRejectedException | ShellCommandUnresponsiveException
+                        | IOException e) {
+                    LOGGER.error("Stopping the LogCat stream of " + device.getSerialNumber() + " failed.", e);
+                }
+            }
+        });
+    }
+}
@@ -312,14 +312,6 @@ public class PreconditionsManager {
         pushComponentFileToTemp(OnDeviceComponent.UI_AUTOMATOR_BRIDGE);
     }
 
-    /**
-     * Pushes the screen recording scripts to the temp folder of the device.
-     */
-    private void pushScreenrecordScripts() {
-        pushComponentFileToTemp(OnDeviceComponent.START_SCREENRECORD_SCRIPT);
-        pushComponentFileToTemp(OnDeviceComponent.STOP_SCREENRECORD_SCRIPT);
-    }
-
     /**
      * Checks whether all on-device components are installed on the device.
      *
@@ -386,8 +378,6 @@ public class PreconditionsManager {
 
         installUiAutomatorBridge();
 
-        pushScreenrecordScripts();
-
         try {
             Thread.sleep(POST_INSTALLATION_TIMEOUT);
         } catch (InterruptedException e) {
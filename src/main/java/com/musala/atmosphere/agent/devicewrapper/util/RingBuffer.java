@@ -0,0 +1,313 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded buffer which keeps the last values published to it, e.g. the lines of a LogCat. Every published value
+ * gets a sequence number and every consumer reads the values through its own {@link Cursor cursor}, so several
+ * consumers read the same values independently. The producer never waits for the consumers - when the buffer is full
+ * the oldest values are overwritten and a consumer which is too slow to read them counts them as lost.
+ * <p>
+ * Neither publishing nor reading takes a lock. The values are published by a single thread and each cursor is read
+ * by one thread at a time.
+ * </p>
+ *
+ * @param <T>
+ *        - the type of the values in the buffer
+ */
+public final class RingBuffer<T> {
+    private static final long BUSY_SEQUENCE = -1;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<T> values;
+
+    /**
+     * The sequence number of the value in each slot. A reader checks it before and after reading the value, so a
+     * value overwritten while being read is never returned.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The number of the published values, which is the sequence number of the next value.
+     */
+    private volatile long publishedCount;
+
+    private volatile boolean isActive = true;
+
+    private volatile Cursor[] cursors = newCursors(0);
+
+    /**
+     * Creates a ring buffer.
+     *
+     * @param capacity
+     *        - the maximum number of values kept in the buffer; rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException(String.format("Invalid ring buffer capacity %d.", capacity));
+        }
+
+        // the slot of a sequence number is found with a mask instead of a division
+        int roundedCapacity = Integer.highestOneBit(capacity);
+        this.capacity = roundedCapacity < capacity ? roundedCapacity << 1 : roundedCapacity;
+        this.mask = this.capacity - 1;
+        this.values = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, BUSY_SEQUENCE);
+        }
+    }
+
+    /**
+     * Publishes a value, overwriting the oldest value if the buffer is full. Must not be called concurrently.
+     *
+     * @param value
+     *        - the value
+     */
+    public void publish(T value) {
+        long sequence = publishedCount;
+        int index = (int) sequence & mask;
+
+        sequences.set(index, BUSY_SEQUENCE);
+        values.set(index, value);
+        sequences.set(index, sequence);
+        publishedCount = sequence + 1;
+
+        wakeUpReaders();
+    }
+
+    /**
+     * Opens a cursor positioned at the oldest value kept in the buffer.
+     *
+     * @return the cursor
+     */
+    public synchronized Cursor openCursor() {
+        Cursor cursor = new Cursor(Math.max(0, publishedCount - capacity));
+
+        Cursor[] openedCursors = newCursors(cursors.length + 1);
+        System.arraycopy(cursors, 0, openedCursors, 0, cursors.length);
+        openedCursors[cursors.length] = cursor;
+        cursors = openedCursors;
+
+        return cursor;
+    }
+
+    /**
+     * Stops the buffer. The readers are woken up and read the values left in the buffer, but they do not wait for new
+     * values anymore.
+     */
+    public void terminate() {
+        isActive = false;
+        wakeUpReaders();
+    }
+
+    /**
+     * Checks whether the buffer is active.
+     *
+     * @return <code>true</code> if the buffer is active; <code>false</code> otherwise
+     */
+    public boolean isActive() {
+        return isActive;
+    }
+
+    /**
+     * Gets the number of values published in the buffer since its creation.
+     *
+     * @return the number of published values
+     */
+    public long getPublishedCount() {
+        return publishedCount;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private void wakeUpReaders() {
+        for (Cursor cursor : cursors) {
+            Thread waitingThread = cursor.waitingThread;
+            if (waitingThread != null) {
+                LockSupport.unpark(waitingThread);
+            }
+        }
+    }
+
+    private synchronized void closeCursor(Cursor cursor) {
+        List<Cursor> openedCursors = new ArrayList<>(cursors.length);
+        for (Cursor openedCursor : cursors) {
+            if (openedCursor != cursor) {
+                openedCursors.add(openedCursor);
+            }
+        }
+
+        cursors = openedCursors.toArray(newCursors(openedCursors.size()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cursor[] newCursors(int length) {
+        // arrays of an inner class of a generic class can only be created raw
+        return new RingBuffer.Cursor[length];
+    }
+
+    /**
+     * A position of a consumer in the {@link RingBuffer}.
+     */
+    public final class Cursor {
+        private long nextSequence;
+
+        private long lostCount;
+
+        private volatile Thread waitingThread;
+
+        private Cursor(long nextSequence) {
+            this.nextSequence = nextSequence;
+        }
+
+        /**
+         * Waits until a value is available and takes all available values.
+         *
+         * @param maxCount
+         *        - the maximum number of values to be taken
+         * @param timeout
+         *        - the maximum time to wait for a value, in milliseconds
+         * @return the taken values, or an empty list if no value is published during the timeout or the buffer is
+         *         terminated
+         */
+        public List<T> poll(int maxCount, long timeout) {
+            List<T> polledValues = new ArrayList<>();
+
+            if (await(timeout)) {
+                drainTo(polledValues, maxCount);
+            }
+
+            return polledValues;
+        }
+
+        /**
+         * Takes the available values without waiting.
+         *
+         * @param collection
+         *        - the collection where the values are added
+         * @param maxCount
+         *        - the maximum number of values to be taken
+         * @return the number of the taken values
+         */
+        public int drainTo(Collection<? super T> collection, int maxCount) {
+            int drainedCount = 0;
+
+            while (drainedCount < maxCount) {
+                long published = publishedCount;
+                if (nextSequence >= published) {
+                    break;
+                }
+
+                long oldestSequence = published - capacity;
+                if (nextSequence < oldestSequence) {
+                    lostCount += oldestSequence - nextSequence;
+                    nextSequence = oldestSequence;
+                }
+
+                int index = (int) nextSequence & mask;
+                T value = values.get(index);
+
+                // the producer may have overwritten the slot while the value was read
+                if (sequences.get(index) != nextSequence) {
+                    long overwrittenSequence = Math.max(nextSequence + 1, publishedCount - capacity);
+                    lostCount += overwrittenSequence - nextSequence;
+                    nextSequence = overwrittenSequence;
+                    continue;
+                }
+
+                collection.add(value);
+                nextSequence++;
+                drainedCount++;
+            }
+
+            return drainedCount;
+        }
+
+        /**
+         * Waits until a value is available for this cursor. No object is allocated while waiting.
+         *
+         * @param timeout
+         *        - the maximum time to wait, in milliseconds
+         * @return <code>true</code> if a value is available, <code>false</code> if the timeout elapsed or the buffer
+         *         was terminated
+         */
+        public boolean await(long timeout) {
+            if (nextSequence < publishedCount) {
+                return true;
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            waitingThread = Thread.currentThread();
+            try {
+                // the thread is published before checking the sequence, so a concurrent publish always wakes it up
+                while (nextSequence >= publishedCount && isActive && !Thread.currentThread().isInterrupted()) {
+                    long remainingTime = deadline - System.nanoTime();
+                    if (remainingTime <= 0) {
+                        break;
+                    }
+
+                    LockSupport.parkNanos(this, remainingTime);
+                }
+            } finally {
+                waitingThread = null;
+            }
+
+            return nextSequence < publishedCount;
+        }
+
+        /**
+         * Gets the number of values available for this cursor.
+         *
+         * @return the number of values, which can be read without waiting
+         */
+        public long available() {
+            long published = publishedCount;
+            return published - Math.max(nextSequence, published - capacity);
+        }
+
+        /**
+         * Gets the number of values overwritten before this cursor has read them.
+         *
+         * @return the number of lost values
+         */
+        public long getLostCount() {
+            return lostCount;
+        }
+
+        /**
+         * Closes the cursor, so the producer does not try to wake it up anymore.
+         */
+        public void close() {
+            closeCursor(this);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import com.android.ddmlib.IDevice;
+
+/**
+ * Pulls the segments of a screen recording from the device while the recording is still running. Each segment is
+ * pulled in background as soon as the {@link ScreenRecorder} reports it complete, so when the recording is stopped,
+ * only the last segment and the failed pulls are left.
+ */
+public class ScreenRecordSegmentPuller implements IScreenRecordSegmentListener {
+    private static final Logger LOGGER = Logger.getLogger(ScreenRecordSegmentPuller.class.getCanonicalName());
+
+    private final IDevice device;
+
+    private final ExecutorService pullExecutor;
+
+    private final String remoteDirectory;
+
+    private final String localDirectory;
+
+    private final Map<String, Future<Boolean>> segmentPulls = new LinkedHashMap<>();
+
+    /**
+     * Creates a puller of the segments of a screen recording.
+     *
+     * @param device
+     *        - the recorded device
+     * @param pullExecutor
+     *        - the executor of the pull tasks
+     * @param remoteDirectory
+     *        - the directory of the segments on the device
+     * @param localDirectory
+     *        - the local directory where the segments are pulled
+     */
+    public ScreenRecordSegmentPuller(IDevice device,
+            ExecutorService pullExecutor,
+            String remoteDirectory,
+            String localDirectory) {
+        this.device = device;
+        this.pullExecutor = pullExecutor;
+        this.remoteDirectory = remoteDirectory;
+        this.localDirectory = localDirectory;
+    }
+
+    @Override
+    public void onSegmentRecorded(String segmentName) {
+        pullSegment(segmentName);
+    }
+
+    /**
+     * Pulls the segments that are not pulled yet and waits for all pulls to complete. Should be called after the
+     * recording is stopped.
+     *
+     * @param segmentNames
+     *        - the names of all segments of the recording
+     * @return <code>true</code> if all segments were pulled, <code>false</code> otherwise
+     */
+    public boolean finish(List<String> segmentNames) {
+        List<Future<Boolean>> pulls = new ArrayList<>();
+        for (String segmentName : segmentNames) {
+            pulls.add(pullSegment(segmentName));
+        }
+
+        boolean areAllPulled = true;
+        for (Future<Boolean> pull : pulls) {
+            areAllPulled &= isPulled(pull);
+        }
+
+        return areAllPulled;
+    }
+
+    public String getLocalDirectory() {
+        return localDirectory;
+    }
+
+    /**
+     * Starts pulling a segment, unless it is already pulled or being pulled. Failed pulls are started again.
+     */
+    private synchronized Future<Boolean> pullSegment(String segmentName) {
+        Future<Boolean> pull = segmentPulls.get(segmentName);
+        if (pull != null && !(pull.isDone() && !isPulled(pull))) {
+            return pull;
+        }
+
+        String remoteFilePath = String.format("%s/%s", remoteDirectory, segmentName);
+        String localFilePath = String.format("%s%s%s", localDirectory, File.separator, segmentName);
+
+        pull = pullExecutor.submit(new BackgroundPullFileTask(device, remoteFilePath, localFilePath));
+        segmentPulls.put(segmentName, pull);
+
+        LOGGER.debug(String.format("Pulling screen record segment %s from %s.", segmentName, device.getSerialNumber()));
+
+        return pull;
+    }
+
+    private static boolean isPulled(Future<Boolean> pull) {
+        try {
+            return pull.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.MultiLineReceiver;
+import com.android.ddmlib.ShellCommandUnresponsiveException;
+import com.android.ddmlib.TimeoutException;
+import com.musala.atmosphere.commons.exceptions.CommandFailedException;
+
+/**
+ * Records the screen of a device in segments by running the <code>screenrecord</code> processes directly from the
+ * agent. The <code>screenrecord</code> tool stops after three minutes at most, so a new segment is started whenever the
+ * previous one is complete, until the time limit is reached or the recording is stopped.
+ * <p>
+ * Each segment is started with <code>exec</code>, so the shell prints the PID of the recording process before starting
+ * it. Stopping the recording sends a single <code>SIGINT</code> to that process and waits for the segment file to be
+ * finalized.
+ * </p>
+ */
+public class ScreenRecorder {
+    private static final Logger LOGGER = Logger.getLogger(ScreenRecorder.class.getCanonicalName());
+
+    /**
+     * The longest segment the <code>screenrecord</code> tool records, in seconds.
+     */
+    private static final int MAX_SEGMENT_DURATION = 180;
+
+    /**
+     * Segments that end sooner than this without being stopped mean that the recording process fails, in
+     * milliseconds.
+     */
+    private static final long MIN_SEGMENT_DURATION = 500;
+
+    private static final int FIRST_SEGMENT_INDEX = 100;
+
+    private static final String SEGMENT_NAME_FORMAT = "%d.mp4";
+
+    private static final String SCREEN_RECORD_BINARY = "/system/bin/screenrecord";
+
+    private static final String PREPARE_DIRECTORY_COMMAND_FORMAT = "rm -rf %1$s; mkdir -p %1$s";
+
+    private static final String RECORD_SEGMENT_COMMAND_FORMAT = "echo $$; exec %s --time-limit %d%s %s/%s";
+
+    private static final String INTERRUPT_PROCESS_COMMAND_FORMAT = "kill -2 %d";
+
+    private static final ExecutorService RECORDING_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "screen-recorder");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final IDevice device;
+
+    private final ShellCommandExecutor shellCommandExecutor;
+
+    private final String remoteDirectory;
+
+    private final List<String> recordedSegments = new ArrayList<>();
+
+    private volatile boolean isStopRequested;
+
+    private Integer recordingProcessId;
+
+    private Future<?> recordingTask;
+
+    /**
+     * Receives the output of a recording process. The first line is the PID printed by the shell before starting the
+     * process, the rest is logged.
+     */
+    private class RecordingOutputReceiver extends MultiLineReceiver {
+        private boolean isProcessIdReceived;
+
+        @Override
+        public void processNewLines(String[] lines) {
+            for (String line : lines) {
+                if (!isProcessIdReceived && line.trim().matches("\\d+")) {
+                    isProcessIdReceived = true;
+                    onProcessStarted(Integer.parseInt(line.trim()));
+                } else if (!line.trim().isEmpty()) {
+                    LOGGER.debug(String.format("screenrecord on %s: %s", device.getSerialNumber(), line));
+                }
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a screen recorder for the given device.
+     *
+     * @param device
+     *        - the recorded device
+     * @param shellCommandExecutor
+     *        - an executor of shell commands on the device
+     * @param remoteDirectory
+     *        - the directory on the device where the segments are recorded; it is cleared when the recording starts
+     */
+    public ScreenRecorder(IDevice device, ShellCommandExecutor shellCommandExecutor, String remoteDirectory) {
+        this.device = device;
+        this.shellCommandExecutor = shellCommandExecutor;
+        this.remoteDirectory = remoteDirectory;
+    }
+
+    /**
+     * Starts recording the screen in background.
+     *
+     * @param timeLimit
+     *        - the maximum duration of the recording, in seconds
+     * @param size
+     *        - the size of the video, as <code>widthxheight</code>, or <code>null</code> for the screen size
+     * @param bitRate
+     *        - the bit rate of the video in bits per second, or 0 for the default bit rate of the device
+     * @param segmentListener
+     *        - notified when each segment is complete, may be <code>null</code>
+     * @throws CommandFailedException
+     *         if the recording is already started or the records directory can not be prepared
+     */
+    public synchronized void start(final int timeLimit,
+                                   final String size,
+                                   final int bitRate,
+                                   final IScreenRecordSegmentListener segmentListener)
+        throws CommandFailedException {
+        if (recordingTask != null) {
+            throw new CommandFailedException("The screen of " + device.getSerialNumber() + " is already recorded.");
+        }
+
+        shellCommandExecutor.execute(String.format(PREPARE_DIRECTORY_COMMAND_FORMAT, remoteDirectory));
+
+        isStopRequested = false;
+        recordedSegments.clear();
+
+        recordingTask = RECORDING_EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                record(timeLimit, size, bitRate, segmentListener);
+            }
+        });
+    }
+
+    /**
+     * Stops the recording and waits for the last segment to be complete.
+     *
+     * @param timeout
+     *        - the maximum time to wait for the last segment, in milliseconds
+     * @return the names of the recorded segments, in the order of recording
+     */
+    public List<String> stop(long timeout) {
+        Future<?> task;
+        synchronized (this) {
+            task = recordingTask;
+            if (task == null) {
+                return new ArrayList<>();
+            }
+
+            isStopRequested = true;
+            if (recordingProcessId != null) {
+                interruptProcess(recordingProcessId);
+            }
+        }
+
+        try {
+            task.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | java.util.concurrent.TimeoutException e) {
+            LOGGER.warn("The screen recording of " + device.getSerialNumber() + " did not stop in time.", e);
+            task.cancel(true);
+        }
+
+        synchronized (this) {
+            recordingTask = null;
+            return new ArrayList<>(recordedSegments);
+        }
+    }
+
+    /**
+     * Checks whether the screen is being recorded.
+     *
+     * @return <code>true</code> if the recording is started and not stopped yet, <code>false</code> otherwise
+     */
+    public synchronized boolean isRecording() {
+        return recordingTask != null && !recordingTask.isDone();
+    }
+
+    private void record(int timeLimit, String size, int bitRate, IScreenRecordSegmentListener segmentListener) {
+        StringBuilder options = new StringBuilder();
+        if (size != null) {
+            options.append(" --size ").append(size);
+        }
+        if (bitRate > 0) {
+            options.append(" --bit-rate ").append(bitRate);
+        }
+
+        int remainingTime = timeLimit;
+        int segmentIndex = FIRST_SEGMENT_INDEX;
+
+        while (!isStopRequested && remainingTime > 0) {
+            int segmentDuration = Math.min(remainingTime, MAX_SEGMENT_DURATION);
+            String segmentName = String.format(SEGMENT_NAME_FORMAT, segmentIndex);
+            String command = String.format(RECORD_SEGMENT_COMMAND_FORMAT,
+                                           SCREEN_RECORD_BINARY,
+                                           segmentDuration,
+                                           options,
+                                           remoteDirectory,
+                                           segmentName);
+
+            long segmentStartTime = System.currentTimeMillis();
+            try {
+                // no output is expected while recording, so the command is not limited by a timeout
+                device.executeShellCommand(command, new RecordingOutputReceiver(), 0, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | AdbCommandRejectedException | ShellCommandUnresponsiveException
+                    | IOException e) {
+                LOGGER.error("Recording the screen of " + device.getSerialNumber() + " failed.", e);
+                break;
+            } finally {
+                synchronized (this) {
+                    recordingProcessId = null;
+                }
+            }
+
+            long segmentRecordingTime = System.currentTimeMillis() - segmentStartTime;
+            if (!isStopRequested && segmentRecordingTime < MIN_SEGMENT_DURATION) {
+                LOGGER.error(String.format("The screenrecord process on %s exits immediately, stopping the recording.",
+                                           device.getSerialNumber()));
+                break;
+            }
+
+            synchronized (this) {
+                recordedSegments.add(segmentName);
+            }
+
+            if (segmentListener != null) {
+                segmentListener.onSegmentRecorded(segmentName);
+            }
+
+            remainingTime -= segmentDuration;
+            segmentIndex++;
+        }
+    }
+
+    private synchronized void onProcessStarted(int processId) {
+        recordingProcessId = processId;
+
+        // the recording may be stopped before the process is started
+        if (isStopRequested) {
+            interruptProcess(processId);
+        }
+    }
+
+    private void interruptProcess(int processId) {
+        try {
+            shellCommandExecutor.execute(String.format(INTERRUPT_PROCESS_COMMAND_FORMAT, processId));
+        } catch (CommandFailedException e) {
+            LOGGER.error("Stopping the screen recording of " + device.getSerialNumber() + " failed.", e);
+        }
+    }
+}
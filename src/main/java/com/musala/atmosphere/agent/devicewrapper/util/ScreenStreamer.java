@@ -0,0 +1,294 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.android.ddmlib.AdbCommandRejectedException;
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.RawImage;
+import com.android.ddmlib.TimeoutException;
+import com.musala.atmosphere.agent.util.image.ScreenshotEncoder;
+import com.musala.atmosphere.agent.util.image.ScreenshotOptions;
+
+/**
+ * Streams the screen of a device to any number of subscribers. The framebuffer is captured at the highest frame rate
+ * requested by the subscribers and only frames that differ from the previous one are forwarded.
+ * <p>
+ * Each subscriber has its own frame rate, encoding options and sender. A subscriber keeps only the latest frame that
+ * is waiting to be sent and the sender does not send faster than the frame rate of the subscriber. A slow receiver
+ * gets fewer, but always current frames and never causes frames to pile up in memory.
+ * </p>
+ */
+public class ScreenStreamer {
+    private static final Logger LOGGER = Logger.getLogger(ScreenStreamer.class.getCanonicalName());
+
+    private static final int MAX_FRAME_RATE = 30;
+
+    private static final long CAPTURE_RETRY_INTERVAL = 1000;
+
+    private static final ExecutorService STREAM_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "screen-streamer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final IDevice device;
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    private boolean isCapturing;
+
+    private volatile Frame lastFrame;
+
+    /**
+     * A captured frame and its sequence number.
+     */
+    private static class Frame {
+        private final RawImage image;
+
+        private final long number;
+
+        private Frame(RawImage image, long number) {
+            this.image = image;
+            this.number = number;
+        }
+    }
+
+    /**
+     * A subscriber of the stream with its own frame rate, options and sender.
+     */
+    private class Subscription implements Runnable {
+        private final String streamId;
+
+        private final long frameInterval;
+
+        private final ScreenshotOptions options;
+
+        private final IScreenFrameSink sink;
+
+        private final BlockingQueue<Frame> pendingFrame = new ArrayBlockingQueue<>(1);
+
+        private volatile boolean isActive = true;
+
+        private volatile long droppedFramesCount;
+
+        private Subscription(String streamId, int frameRate, ScreenshotOptions options, IScreenFrameSink sink) {
+            this.streamId = streamId;
+            this.frameInterval = TimeUnit.SECONDS.toMillis(1) / frameRate;
+            this.options = options;
+            this.sink = sink;
+        }
+
+        /**
+         * Replaces the pending frame of the subscriber with the given one.
+         */
+        private synchronized void offer(Frame frame) {
+            if (pendingFrame.poll() != null) {
+                droppedFramesCount++;
+            }
+
+            pendingFrame.offer(frame);
+        }
+
+        @Override
+        public void run() {
+            while (isActive) {
+                try {
+                    Frame frame = pendingFrame.poll(frameInterval, TimeUnit.MILLISECONDS);
+                    if (frame == null) {
+                        continue;
+                    }
+
+                    long sendStart = System.currentTimeMillis();
+
+                    byte[] encodedFrame = ScreenshotEncoder.encode(frame.image, options);
+                    sink.sendFrame(streamId, frame.number, encodedFrame);
+
+                    long delay = sendStart + frameInterval - System.currentTimeMillis();
+                    if (delay > 0) {
+                        Thread.sleep(delay);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    isActive = false;
+                } catch (IOException e) {
+                    LOGGER.error(String.format("Sending frames of screen stream %s failed, stopping the stream.",
+                                               streamId),
+                                 e);
+                    isActive = false;
+                }
+            }
+
+            subscriptions.remove(streamId);
+            LOGGER.info(String.format("Screen stream %s of %s stopped, %d frames were dropped.",
+                                      streamId,
+                                      device.getSerialNumber(),
+                                      droppedFramesCount));
+        }
+    }
+
+    public ScreenStreamer(IDevice device) {
+        this.device = device;
+    }
+
+    /**
+     * Starts a new stream of the device screen.
+     *
+     * @param frameRate
+     *        - the maximum number of frames per second sent to the subscriber
+     * @param options
+     *        - the encoding options of the frames
+     * @param sink
+     *        - the receiver of the frames
+     * @return the id of the stream
+     */
+    public String subscribe(int frameRate, ScreenshotOptions options, IScreenFrameSink sink) {
+        if (frameRate <= 0 || frameRate > MAX_FRAME_RATE) {
+            String message = String.format("The frame rate must be between 1 and %d.", MAX_FRAME_RATE);
+            throw new IllegalArgumentException(message);
+        }
+
+        String streamId = UUID.randomUUID().toString();
+        Subscription subscription = new Subscription(streamId, frameRate, options, sink);
+        subscriptions.put(streamId, subscription);
+
+        // a new subscriber receives the current screen even if it does not change
+        Frame currentFrame = lastFrame;
+        if (currentFrame != null) {
+            subscription.offer(currentFrame);
+        }
+
+        STREAM_EXECUTOR.execute(subscription);
+        startCapturing();
+
+        return streamId;
+    }
+
+    /**
+     * Stops a stream of the device screen.
+     *
+     * @param streamId
+     *        - the id of the stream
+     * @return <code>true</code> if the stream was running, <code>false</code> otherwise
+     */
+    public boolean unsubscribe(String streamId) {
+        Subscription subscription = subscriptions.remove(streamId);
+        if (subscription == null) {
+            return false;
+        }
+
+        subscription.isActive = false;
+        return true;
+    }
+
+    /**
+     * Stops all streams of the device screen.
+     */
+    public void stop() {
+        for (String streamId : subscriptions.keySet()) {
+            unsubscribe(streamId);
+        }
+    }
+
+    private synchronized void startCapturing() {
+        if (isCapturing) {
+            return;
+        }
+
+        isCapturing = true;
+        STREAM_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                capture();
+            }
+        });
+    }
+
+    /**
+     * Captures the screen until there are no subscribers left.
+     */
+    private void capture() {
+        long frameNumber = 0;
+        RawImage previousImage = null;
+
+        while (true) {
+            long captureInterval;
+
+            synchronized (this) {
+                if (subscriptions.isEmpty()) {
+                    isCapturing = false;
+                    lastFrame = null;
+                    return;
+                }
+
+                captureInterval = Long.MAX_VALUE;
+                for (Subscription subscription : subscriptions.values()) {
+                    captureInterval = Math.min(captureInterval, subscription.frameInterval);
+                }
+            }
+
+            long captureStart = System.currentTimeMillis();
+
+            try {
+                RawImage image = device.getScreenshot();
+
+                if (image != null && (previousImage == null || !Arrays.equals(image.data, previousImage.data))) {
+                    Frame frame = new Frame(image, ++frameNumber);
+                    lastFrame = frame;
+
+                    for (Subscription subscription : subscriptions.values()) {
+                        subscription.offer(frame);
+                    }
+
+                    previousImage = image;
+                }
+            } catch (TimeoutException | AdbCommandRejectedException | IOException e) {
+                LOGGER.warn(String.format("Capturing the screen of %s failed.", device.getSerialNumber()), e);
+                captureInterval = CAPTURE_RETRY_INTERVAL;
+            }
+
+            long delay = captureStart + captureInterval - System.currentTimeMillis();
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    synchronized (this) {
+                        isCapturing = false;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.util.concurrent.TimeUnit;
 import com.android.ddmlib.AdbCommandRejectedException;
 import com.android.ddmlib.CollectingOutputReceiver;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
 import com.android.ddmlib.ShellCommandUnresponsiveException;
 import com.android.ddmlib.TimeoutException;
 import com.musala.atmosphere.agent.util.AgentPropertiesLoader;
@@ -95,6 +96,25 @@ public class ShellCommandExecutor {
         return execute(command, COMMAND_EXECUTION_TIMEOUT);
     }
 
+    /**
+     * Executes a command on the device's shell and passes its raw output to the given receiver instead of collecting
+     * it in a {@link String}.
+     *
+     * @param command
+     *        - Shell command to be executed.
+     * @param outputReceiver
+     *        - receiver of the raw command output
+     * @throws CommandFailedException
+     *         In case of an error in the execution
+     */
+    public void execute(String command, IShellOutputReceiver outputReceiver) throws CommandFailedException {
+        try {
+            device.executeShellCommand(command, outputReceiver, COMMAND_EXECUTION_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | AdbCommandRejectedException | ShellCommandUnresponsiveException | IOException e) {
+            throw new CommandFailedException("Shell command execution failed.", e);
+        }
+    }
+
     /**
      * Executes a list of shell commands sequentially.
      *
@@ -0,0 +1,149 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.android.ddmlib.IShellOutputReceiver;
+
+/**
+ * A reusable in-memory receiver for the raw output of shell commands. The backing array grows when needed and is kept
+ * between commands, so repeated transfers of large outputs (UI dumps, screenshots) do not allocate new buffers.
+ * <p>
+ * The buffer is not thread safe. Callers sharing one instance should synchronize on it.
+ * </p>
+ */
+public class ShellOutputBuffer implements IShellOutputReceiver {
+    private static final int DEFAULT_INITIAL_CAPACITY = 64 * 1024;
+
+    private byte[] data;
+
+    private int size;
+
+    private volatile boolean isCancelled;
+
+    public ShellOutputBuffer() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a buffer with the given initial capacity.
+     *
+     * @param initialCapacity
+     *        - the initial capacity of the buffer in bytes
+     */
+    public ShellOutputBuffer(int initialCapacity) {
+        this.data = new byte[initialCapacity];
+    }
+
+    @Override
+    public void addOutput(byte[] output, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(output, offset, data, size, length);
+        size += length;
+    }
+
+    @Override
+    public void flush() {
+        // Nothing to do here, the output is kept in memory.
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * Cancels the command that currently writes to this buffer.
+     */
+    public void cancel() {
+        isCancelled = true;
+    }
+
+    /**
+     * Discards the content of the buffer, but keeps the allocated memory for the next command.
+     */
+    public void reset() {
+        size = 0;
+        isCancelled = false;
+    }
+
+    /**
+     * Gets the number of bytes currently in the buffer.
+     *
+     * @return the size of the content in bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the backing array of the buffer. Only the first {@link #size()} bytes are valid.
+     *
+     * @return the backing array of the buffer
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Copies the content of the buffer to a new array.
+     *
+     * @return a copy of the content of the buffer
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /**
+     * Decodes the content of the buffer to a {@link String} using the given charset.
+     *
+     * @param charset
+     *        - the charset of the content
+     * @return the content of the buffer as text
+     */
+    public String toString(Charset charset) {
+        return new String(data, 0, size, charset);
+    }
+
+    /**
+     * Replaces each CRLF sequence in the buffer with a single LF. Shells started through a pseudo-terminal (before
+     * Android N) convert every LF of the command output to CRLF, which corrupts binary output.
+     */
+    public void restoreLineFeeds() {
+        int writeIndex = 0;
+
+        for (int readIndex = 0; readIndex < size; readIndex++) {
+            boolean isCarriageReturnBeforeLineFeed = data[readIndex] == '\r' && readIndex + 1 < size
+                    && data[readIndex + 1] == '\n';
+
+            if (!isCarriageReturnBeforeLineFeed) {
+                data[writeIndex++] = data[readIndex];
+            }
+        }
+
+        size = writeIndex;
+    }
+
+    private void ensureCapacity(int requiredCapacity) {
+        if (requiredCapacity > data.length) {
+            int newCapacity = Math.max(requiredCapacity, data.length * 2);
+            data = Arrays.copyOf(data, newCapacity);
+        }
+    }
+}
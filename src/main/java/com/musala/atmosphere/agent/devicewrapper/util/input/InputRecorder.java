@@ -0,0 +1,124 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.musala.atmosphere.commons.RoutingAction;
+import com.musala.atmosphere.commons.exceptions.CommandFailedException;
+
+/**
+ * Records the input actions routed to a device together with the moments they were received.
+ */
+public class InputRecorder {
+    private static final Logger LOGGER = Logger.getLogger(InputRecorder.class.getCanonicalName());
+
+    private static final Set<RoutingAction> RECORDED_ACTIONS = EnumSet.of(RoutingAction.GESTURE_TAP,
+                                                                          RoutingAction.GESTURE_LONG_PRESS,
+                                                                          RoutingAction.GESTURE_DOUBLE_TAP,
+                                                                          RoutingAction.GESTURE_PINCH_IN,
+                                                                          RoutingAction.GESTURE_PINCH_OUT,
+                                                                          RoutingAction.GESTURE_SWIPE,
+                                                                          RoutingAction.GESTURE_DRAG,
+                                                                          RoutingAction.PLAY_GESTURE,
+                                                                          RoutingAction.PLAY_GESTURE_SCRIPT,
+                                                                          RoutingAction.PRESS_HARDWARE_BUTTON,
+                                                                          RoutingAction.IME_INPUT_TEXT,
+                                                                          RoutingAction.IME_SELECT_ALL_TEXT,
+                                                                          RoutingAction.IME_CLEAR_TEXT,
+                                                                          RoutingAction.IME_COPY_TEXT,
+                                                                          RoutingAction.IME_CUT_TEXT,
+                                                                          RoutingAction.IME_PASTE_TEXT,
+                                                                          RoutingAction.TAP_ELEMENT,
+                                                                          RoutingAction.LONG_PRESS_ELEMENT,
+                                                                          RoutingAction.INPUT_INTO_ELEMENT,
+                                                                          RoutingAction.SCROLL_UNTIL_VISIBLE);
+
+    private final String deviceSerialNumber;
+
+    private InputRecording recording;
+
+    private long startTime;
+
+    public InputRecorder(String deviceSerialNumber) {
+        this.deviceSerialNumber = deviceSerialNumber;
+    }
+
+    /**
+     * Starts recording the input actions.
+     *
+     * @throws CommandFailedException
+     *         if a recording is already in progress
+     */
+    public synchronized void start() throws CommandFailedException {
+        if (recording != null) {
+            throw new CommandFailedException("An input recording is already in progress.");
+        }
+
+        recording = new InputRecording(deviceSerialNumber);
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Records the given action if a recording is in progress and the action is an input action.
+     *
+     * @param action
+     *        - the routed action
+     * @param arguments
+     *        - the arguments of the action
+     * @param timestamp
+     *        - the moment the action was received
+     */
+    public synchronized void record(RoutingAction action, Object[] arguments, long timestamp) {
+        if (recording != null && RECORDED_ACTIONS.contains(action)) {
+            recording.add(timestamp - startTime, action.name(), arguments);
+        }
+    }
+
+    /**
+     * Stops the recording and stores it in the recordings directory.
+     *
+     * @return the id of the stored recording
+     * @throws CommandFailedException
+     *         if no recording is in progress or storing the recording fails
+     */
+    public synchronized String stop() throws CommandFailedException {
+        if (recording == null) {
+            throw new CommandFailedException("There is no input recording in progress.");
+        }
+
+        String recordingId = String.format("%s_%d", deviceSerialNumber.replaceAll("[^\\w.-]", "_"), startTime);
+        File recordingFile = InputRecording.getRecordingFile(recordingId);
+
+        try {
+            recording.writeTo(recordingFile);
+        } catch (IOException e) {
+            throw new CommandFailedException("Storing the input recording failed.", e);
+        } finally {
+            recording = null;
+        }
+
+        LOGGER.info(String.format("Input recording %s stored in %s.", recordingId, recordingFile.getAbsolutePath()));
+
+        return recordingId;
+    }
+}
@@ -0,0 +1,206 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util.input;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A recorded sequence of input actions sent to a device. Recordings are stored as gzipped streams of entries under
+ * {@link #RECORDINGS_DIRECTORY}, so they can be replayed on any device connected to the agent.
+ */
+public class InputRecording {
+    /**
+     * The directory where the input recordings are stored.
+     */
+    public static final String RECORDINGS_DIRECTORY = System.getProperty("user.dir") + File.separator
+            + "input_recordings";
+
+    private static final String RECORDING_FILE_EXTENSION = ".rec";
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final String deviceSerialNumber;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * A single recorded input action.
+     */
+    public static class Entry {
+        private final long offset;
+
+        private final String action;
+
+        private final Object[] arguments;
+
+        /**
+         * Creates a recorded input action.
+         *
+         * @param offset
+         *        - the time in milliseconds from the start of the recording until the action was received
+         * @param action
+         *        - the name of the routing action
+         * @param arguments
+         *        - the arguments of the action
+         */
+        public Entry(long offset, String action, Object[] arguments) {
+            this.offset = offset;
+            this.action = action;
+            this.arguments = arguments;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        public Object[] getArguments() {
+            return arguments;
+        }
+    }
+
+    /**
+     * Creates an empty recording.
+     *
+     * @param deviceSerialNumber
+     *        - serial number of the recorded device
+     */
+    public InputRecording(String deviceSerialNumber) {
+        this.deviceSerialNumber = deviceSerialNumber;
+    }
+
+    /**
+     * Adds an input action to the end of the recording.
+     *
+     * @param offset
+     *        - the time in milliseconds from the start of the recording until the action was received
+     * @param action
+     *        - the name of the routing action
+     * @param arguments
+     *        - the arguments of the action
+     */
+    public void add(long offset, String action, Object[] arguments) {
+        entries.add(new Entry(offset, action, arguments));
+    }
+
+    public String getDeviceSerialNumber() {
+        return deviceSerialNumber;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Gets the time between the first and the last recorded action.
+     *
+     * @return the duration of the recording in milliseconds
+     */
+    public long getDuration() {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).getOffset() - entries.get(0).getOffset();
+    }
+
+    /**
+     * Writes the recording to the given file.
+     *
+     * @param file
+     *        - the destination file
+     * @throws IOException
+     *         if writing the file fails
+     */
+    public void writeTo(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        try (ObjectOutputStream output = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file))))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(deviceSerialNumber);
+            output.writeInt(entries.size());
+
+            for (Entry entry : entries) {
+                output.writeLong(entry.getOffset());
+                output.writeUTF(entry.getAction());
+                output.writeObject(entry.getArguments());
+            }
+        }
+    }
+
+    /**
+     * Reads a recording from the given file.
+     *
+     * @param file
+     *        - the recording file
+     * @return the recording stored in the file
+     * @throws IOException
+     *         if reading the file fails or the file is not a recording
+     */
+    public static InputRecording readFrom(File file) throws IOException {
+        try (ObjectInputStream input = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file))))) {
+            int version = input.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException(String.format("Unsupported input recording format version %d.", version));
+            }
+
+            InputRecording recording = new InputRecording(input.readUTF());
+            int entryCount = input.readInt();
+
+            for (int i = 0; i < entryCount; i++) {
+                long offset = input.readLong();
+                String action = input.readUTF();
+                Object[] arguments = (Object[]) input.readObject();
+
+                recording.add(offset, action, arguments);
+            }
+
+            return recording;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("The input recording contains an unknown argument type.", e);
+        }
+    }
+
+    /**
+     * Gets the file of the recording with the given id.
+     *
+     * @param recordingId
+     *        - the id of the recording
+     * @return the recording file
+     */
+    public static File getRecordingFile(String recordingId) {
+        if (!recordingId.matches("[\\w.-]+")) {
+            throw new IllegalArgumentException(String.format("Invalid input recording id %s.", recordingId));
+        }
+
+        return new File(RECORDINGS_DIRECTORY, recordingId + RECORDING_FILE_EXTENSION);
+    }
+}
@@ -0,0 +1,167 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util.input;
+
+import java.io.Serializable;
+
+/**
+ * Timing report of an input recording replay. The drift of an action is the difference between the moment it was
+ * started and the moment it was scheduled for, after scaling the recorded timing.
+ */
+public class InputReplayReport implements Serializable {
+    private static final long serialVersionUID = -3586247095519740731L;
+
+    private final String deviceSerialNumber;
+
+    private final long[] drifts;
+
+    private int failedActionsCount;
+
+    private long duration;
+
+    private boolean isTimedOut;
+
+    /**
+     * Creates an empty report.
+     *
+     * @param deviceSerialNumber
+     *        - serial number of the device the recording was replayed on
+     * @param actionsCount
+     *        - the number of the replayed actions
+     */
+    public InputReplayReport(String deviceSerialNumber, int actionsCount) {
+        this.deviceSerialNumber = deviceSerialNumber;
+        this.drifts = new long[actionsCount];
+    }
+
+    /**
+     * Creates the report of a replay which did not finish in time and was cancelled. The drifts of its actions are not
+     * known.
+     *
+     * @param deviceSerialNumber
+     *        - serial number of the device the recording was replayed on
+     * @param actionsCount
+     *        - the number of the actions in the recording
+     * @param timeout
+     *        - the time in milliseconds the replay was given
+     * @return the report of the timed out replay
+     */
+    public static InputReplayReport createTimedOutReport(String deviceSerialNumber, int actionsCount, long timeout) {
+        InputReplayReport report = new InputReplayReport(deviceSerialNumber, actionsCount);
+        report.isTimedOut = true;
+        report.duration = timeout;
+
+        return report;
+    }
+
+    void setDrift(int actionIndex, long drift) {
+        drifts[actionIndex] = drift;
+    }
+
+    void addFailedAction() {
+        failedActionsCount++;
+    }
+
+    void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    public String getDeviceSerialNumber() {
+        return deviceSerialNumber;
+    }
+
+    /**
+     * Gets the drift of each replayed action.
+     *
+     * @return the drifts in milliseconds, in the order of the actions
+     */
+    public long[] getDrifts() {
+        return drifts.clone();
+    }
+
+    /**
+     * Gets the largest drift of all replayed actions.
+     *
+     * @return the maximum drift in milliseconds
+     */
+    public long getMaxDrift() {
+        long maxDrift = 0;
+        for (long drift : drifts) {
+            maxDrift = Math.max(maxDrift, drift);
+        }
+
+        return maxDrift;
+    }
+
+    /**
+     * Gets the average drift of the replayed actions.
+     *
+     * @return the mean drift in milliseconds
+     */
+    public double getMeanDrift() {
+        if (drifts.length == 0) {
+            return 0;
+        }
+
+        long totalDrift = 0;
+        for (long drift : drifts) {
+            totalDrift += drift;
+        }
+
+        return (double) totalDrift / drifts.length;
+    }
+
+    public int getFailedActionsCount() {
+        return failedActionsCount;
+    }
+
+    /**
+     * Checks whether the replay did not finish in time and was cancelled.
+     *
+     * @return <code>true</code> if the replay timed out, <code>false</code> otherwise
+     */
+    public boolean isTimedOut() {
+        return isTimedOut;
+    }
+
+    /**
+     * Gets the time the whole replay took.
+     *
+     * @return the duration of the replay in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public String toString() {
+        if (isTimedOut) {
+            return String.format("Replay on %s: %d actions, timed out after %d ms.",
+                                 deviceSerialNumber,
+                                 drifts.length,
+                                 duration);
+        }
+
+        return String.format("Replay on %s: %d actions, %d failed, max drift %d ms, mean drift %.1f ms, duration %d ms.",
+                             deviceSerialNumber,
+                             drifts.length,
+                             failedActionsCount,
+                             getMaxDrift(),
+                             getMeanDrift(),
+                             duration);
+    }
+}
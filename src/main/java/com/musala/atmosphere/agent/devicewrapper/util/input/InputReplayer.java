@@ -0,0 +1,227 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util.input;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.log4j.Logger;
+
+import com.musala.atmosphere.agent.devicewrapper.IWrapDevice;
+import com.musala.atmosphere.commons.RoutingAction;
+import com.musala.atmosphere.commons.exceptions.CommandFailedException;
+
+/**
+ * Replays {@link InputRecording input recordings} on a device wrapper, without any round trips to the Server.
+ */
+public class InputReplayer {
+    private static final Logger LOGGER = Logger.getLogger(InputReplayer.class.getCanonicalName());
+
+    /**
+     * The time in milliseconds a replay is given for each recorded action, on top of the scaled recording duration.
+     */
+    private static final long REPLAY_ACTION_TIMEOUT = 5000;
+
+    private static final ExecutorService REPLAY_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "input-replay");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final ThreadLocal<Boolean> IS_REPLAYING = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+
+    /**
+     * Checks whether the current thread is replaying a recording, so the actions it routes are not recorded again.
+     *
+     * @return <code>true</code> if the current thread is replaying a recording, <code>false</code> otherwise
+     */
+    public static boolean isReplaying() {
+        return IS_REPLAYING.get();
+    }
+
+    /**
+     * Reads a stored recording.
+     *
+     * @param recordingId
+     *        - the id of the recording
+     * @return the stored recording
+     * @throws CommandFailedException
+     *         if the recording can not be read
+     */
+    public static InputRecording readRecording(String recordingId) throws CommandFailedException {
+        try {
+            return InputRecording.readFrom(InputRecording.getRecordingFile(recordingId));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new CommandFailedException(String.format("Reading input recording %s failed.", recordingId), e);
+        }
+    }
+
+    /**
+     * Gets the time a replay of the given recording is given to finish.
+     *
+     * @param recording
+     *        - the recording to be replayed
+     * @param timeScale
+     *        - multiplier of the recorded pauses between the actions
+     * @return the replay timeout in milliseconds
+     */
+    public static long getReplayTimeout(InputRecording recording, double timeScale) {
+        return Math.round(recording.getDuration() * Math.max(0, timeScale))
+                + recording.getEntries().size() * REPLAY_ACTION_TIMEOUT;
+    }
+
+    /**
+     * Replays a recording on a device and cancels the replay if it does not finish in {@link #getReplayTimeout time}.
+     *
+     * @param deviceWrapper
+     *        - the wrapper of the device
+     * @param deviceSerialNumber
+     *        - the serial number of the device
+     * @param recording
+     *        - the recording to be replayed
+     * @param timeScale
+     *        - multiplier of the recorded pauses between the actions
+     * @return a report with the timing drift of the replay, or a {@link InputReplayReport#isTimedOut() timed out}
+     *         report if the replay was cancelled
+     * @throws CommandFailedException
+     *         if the replay fails or the wait for it is interrupted
+     */
+    public static InputReplayReport replayWithTimeout(final IWrapDevice deviceWrapper,
+                                                      final String deviceSerialNumber,
+                                                      final InputRecording recording,
+                                                      final double timeScale)
+        throws CommandFailedException {
+        long replayTimeout = getReplayTimeout(recording, timeScale);
+
+        Future<InputReplayReport> replayResult = REPLAY_EXECUTOR.submit(new Callable<InputReplayReport>() {
+            @Override
+            public InputReplayReport call() throws CommandFailedException {
+                return replay(deviceWrapper, deviceSerialNumber, recording, timeScale);
+            }
+        });
+
+        try {
+            return replayResult.get(replayTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            replayResult.cancel(true);
+            LOGGER.error(String.format("Replaying an input recording on %s timed out after %d ms.",
+                                       deviceSerialNumber,
+                                       replayTimeout));
+
+            return InputReplayReport.createTimedOutReport(deviceSerialNumber,
+                                                          recording.getEntries().size(),
+                                                          replayTimeout);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CommandFailedException) {
+                throw (CommandFailedException) e.getCause();
+            }
+
+            throw new CommandFailedException("Replaying the input recording failed.", e.getCause());
+        } catch (InterruptedException e) {
+            replayResult.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CommandFailedException("Waiting for the input recording replay was interrupted.", e);
+        }
+    }
+
+    /**
+     * Replays a recording on a device. The actions routed during the replay are not recorded into an input recording
+     * which is in progress on the device.
+     *
+     * @param deviceWrapper
+     *        - the wrapper of the device
+     * @param deviceSerialNumber
+     *        - the serial number of the device
+     * @param recording
+     *        - the recording to be replayed
+     * @param timeScale
+     *        - multiplier of the recorded pauses between the actions; <code>1</code> keeps the original timing,
+     *        smaller values compress it and <code>0</code> plays the actions one after another
+     * @return a report with the timing drift of the replay
+     * @throws CommandFailedException
+     *         if the time scale is negative or the replay is interrupted
+     */
+    public static InputReplayReport replay(IWrapDevice deviceWrapper,
+                                           String deviceSerialNumber,
+                                           InputRecording recording,
+                                           double timeScale)
+        throws CommandFailedException {
+        if (timeScale < 0) {
+            throw new CommandFailedException("The replay time scale can not be negative.");
+        }
+
+        List<InputRecording.Entry> entries = recording.getEntries();
+        InputReplayReport report = new InputReplayReport(deviceSerialNumber, entries.size());
+
+        long firstOffset = entries.isEmpty() ? 0 : entries.get(0).getOffset();
+        long replayStart = System.currentTimeMillis();
+
+        IS_REPLAYING.set(true);
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                InputRecording.Entry entry = entries.get(i);
+                long scheduledTime = Math.round((entry.getOffset() - firstOffset) * timeScale);
+                long delay = replayStart + scheduledTime - System.currentTimeMillis();
+
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CommandFailedException("The input recording replay was interrupted.", e);
+                    }
+                }
+
+                report.setDrift(i, System.currentTimeMillis() - replayStart - scheduledTime);
+
+                try {
+                    Object result = deviceWrapper.route(RoutingAction.valueOf(entry.getAction()),
+                                                        entry.getArguments());
+                    if (Boolean.FALSE.equals(result)) {
+                        report.addFailedAction();
+                    }
+                } catch (CommandFailedException | IllegalArgumentException e) {
+                    LOGGER.warn(String.format("Replaying %s on %s failed.", entry.getAction(), deviceSerialNumber), e);
+                    report.addFailedAction();
+                }
+            }
+        } finally {
+            IS_REPLAYING.remove();
+        }
+
+        report.setDuration(System.currentTimeMillis() - replayStart);
+        LOGGER.info(report);
+
+        return report;
+    }
+}
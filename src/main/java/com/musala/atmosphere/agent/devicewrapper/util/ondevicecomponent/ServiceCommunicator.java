@@ -537,6 +537,29 @@ public class ServiceCommunicator extends DeviceCommunicator<ServiceRequest> {
         }
     }
 
+    /**
+     * Waits until the ATMOSPHERE IME acknowledges that it has finished processing the input with the given sequence
+     * number.
+     *
+     * @param sequenceNumber
+     *        - the sequence number sent with the input intent
+     * @param timeout
+     *        - the maximum time to wait in milliseconds
+     * @return <code>true</code> if the input was acknowledged before the timeout, <code>false</code> otherwise
+     * @throws CommandFailedException
+     *         if the request fails
+     */
+    public boolean waitForImeAcknowledgement(long sequenceNumber, long timeout) throws CommandFailedException {
+        Request<ServiceRequest> waitForImeAckRequest = new Request<>(ServiceRequest.WAIT_FOR_IME_ACK);
+        waitForImeAckRequest.setArguments(new Object[] {sequenceNumber, timeout});
+
+        try {
+            return (boolean) requestSender.request(waitForImeAckRequest);
+        } catch (ClassNotFoundException | IOException e) {
+            throw new CommandFailedException("Waiting for the IME acknowledgement failed.", e);
+        }
+    }
+
     /**
      * Shows a tap location on the device screen.
      *
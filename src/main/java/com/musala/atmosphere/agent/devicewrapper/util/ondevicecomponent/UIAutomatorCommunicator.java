@@ -17,6 +17,7 @@
 package com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -64,6 +65,22 @@ public class UIAutomatorCommunicator extends DeviceCommunicator<UIAutomatorReque
         requestAction(UIAutomatorRequest.PLAY_GESTURE, arguments);
     }
 
+    /**
+     * Injects a key event through the UIAutomatorBridge, without starting a new <code>input</code> process on the
+     * device.
+     *
+     * @param keyCode
+     *        - key code as specified by the Android KeyEvent KEYCODE_ constants
+     * @return <code>true</code> if the key event was injected successfully, <code>false</code> otherwise
+     * @throws CommandFailedException
+     *         if the request fails
+     */
+    public boolean pressKey(int keyCode) throws CommandFailedException {
+        Object[] arguments = new Object[] {keyCode};
+
+        return (boolean) requestActionWithResponse(UIAutomatorRequest.PRESS_KEY, arguments);
+    }
+
     /**
      * Starts a process on the UiAutomatorBridge that clears an EditText field containing the given properties.
      *
@@ -272,6 +289,178 @@ public class UIAutomatorCommunicator extends DeviceCommunicator<UIAutomatorReque
         return (List<AccessibilityElement>) requestActionWithResponse(UIAutomatorRequest.GET_UI_ELEMENTS, arguments);
     }
 
+    /**
+     * Sends a single request for getting the {@link AccessibilityElement UI elements} matching each of the given
+     * selectors. The on-device component evaluates all selectors in one traversal of the screen hierarchy and answers
+     * with the found elements of each selector, or with the exception of a selector which failed.
+     *
+     * @param selectors
+     *        - the selectors of the searched elements
+     * @param visibleOnly
+     *        - the visibility flags for each selector; if the flag is <code>true</code> only the visible elements will
+     *        be matched against the corresponding selector
+     * @return the result of each selector, in the order of the given selectors; empty if no selectors are given
+     * @throws CommandFailedException
+     *         if the request fails, the selectors or the flags are missing, or their numbers do not match
+     */
+    public List<UiElementSelectorResult> getUiElementsBatch(List<UiElementSelector> selectors,
+                                                            List<Boolean> visibleOnly)
+        throws CommandFailedException {
+        if (selectors == null || visibleOnly == null) {
+            throw new CommandFailedException("The selectors and their visibility flags are required.");
+        }
+
+        if (selectors.size() != visibleOnly.size()) {
+            String message = String.format("Expected %d visibility flags, but %d were passed.",
+                                           selectors.size(),
+                                           visibleOnly.size());
+            throw new CommandFailedException(message);
+        }
+
+        List<UiElementSelectorResult> results = new ArrayList<>();
+        if (selectors.isEmpty()) {
+            return results;
+        }
+
+        Object[] arguments = new Object[] {selectors, visibleOnly};
+        List<?> response = (List<?>) requestActionWithResponse(UIAutomatorRequest.GET_UI_ELEMENTS_BATCH, arguments);
+
+        if (response == null || response.size() != selectors.size()) {
+            String message = String.format("Expected the results of %d selectors, but %s were received.",
+                                           selectors.size(),
+                                           response != null ? response.size() : "none");
+            throw new CommandFailedException(message);
+        }
+
+        for (int i = 0; i < selectors.size(); i++) {
+            results.add(getSelectorResult(selectors.get(i), response.get(i)));
+        }
+
+        return results;
+    }
+
+    /**
+     * Converts the response of the on-device component for a single selector of a batch.
+     *
+     * @param selector
+     *        - the selector
+     * @param selectorResponse
+     *        - the found elements, or the exception of a failed selector
+     * @return the result of the selector
+     */
+    @SuppressWarnings("unchecked")
+    private UiElementSelectorResult getSelectorResult(UiElementSelector selector, Object selectorResponse) {
+        if (selectorResponse instanceof List) {
+            return UiElementSelectorResult.found(selector, (List<AccessibilityElement>) selectorResponse);
+        }
+
+        String errorMessage = selectorResponse instanceof Throwable
+                ? String.valueOf(((Throwable) selectorResponse).getMessage())
+                : String.format("Unexpected selector result %s.", selectorResponse);
+        LOGGER.warn(String.format("Getting the UI elements of a selector on %s failed: %s",
+                                  deviceSerialNumber,
+                                  errorMessage));
+
+        return UiElementSelectorResult.failed(selector, errorMessage);
+    }
+
+    /**
+     * Sends a request for tapping the center of the {@link AccessibilityElement UI element} matching the given
+     * selector. The lookup and the tap are performed by the on-device component in a single request.
+     *
+     * @param selector
+     *        - the selector of the element
+     * @param visibleOnly
+     *        - if <code>true</code> only the visible elements will be searched; if <code>false</code> all elements will
+     *        be searched
+     * @return <code>true</code> if the element was found and tapped, <code>false</code> otherwise
+     * @throws CommandFailedException
+     *         if the request fails
+     */
+    public boolean tapElement(UiElementSelector selector, Boolean visibleOnly) throws CommandFailedException {
+        Object[] arguments = new Object[] {selector, visibleOnly};
+
+        return (boolean) requestActionWithResponse(UIAutomatorRequest.TAP_ELEMENT, arguments);
+    }
+
+    /**
+     * Sends a request for long pressing the center of the {@link AccessibilityElement UI element} matching the given
+     * selector. The lookup and the long press are performed by the on-device component in a single request.
+     *
+     * @param selector
+     *        - the selector of the element
+     * @param visibleOnly
+     *        - if <code>true</code> only the visible elements will be searched; if <code>false</code> all elements will
+     *        be searched
+     * @param timeout
+     *        - the duration of the press in milliseconds
+     * @return <code>true</code> if the element was found and long pressed, <code>false</code> otherwise
+     * @throws CommandFailedException
+     *         if the request fails
+     */
+    public boolean longPressElement(UiElementSelector selector, Boolean visibleOnly, Integer timeout)
+        throws CommandFailedException {
+        Object[] arguments = new Object[] {selector, visibleOnly, timeout};
+
+        return (boolean) requestActionWithResponse(UIAutomatorRequest.LONG_PRESS_ELEMENT, arguments);
+    }
+
+    /**
+     * Sends a request for focusing the {@link AccessibilityElement UI element} matching the given selector and
+     * inputting text into it. The lookup and the input are performed by the on-device component in a single request.
+     *
+     * @param selector
+     *        - the selector of the element
+     * @param visibleOnly
+     *        - if <code>true</code> only the visible elements will be searched; if <code>false</code> all elements will
+     *        be searched
+     * @param text
+     *        - the text to be input
+     * @return <code>true</code> if the element was found and the text was input, <code>false</code> otherwise
+     * @throws CommandFailedException
+     *         if the request fails
+     */
+    public boolean inputIntoElement(UiElementSelector selector, Boolean visibleOnly, String text)
+        throws CommandFailedException {
+        Object[] arguments = new Object[] {selector, visibleOnly, text};
+
+        return (boolean) requestActionWithResponse(UIAutomatorRequest.INPUT_INTO_ELEMENT, arguments);
+    }
+
+    /**
+     * Sends a request for scrolling the view matching the given selector until an element matching the target
+     * selector becomes visible. The on-device component checks for the target after each swipe, so no round trips
+     * between the swipes are needed.
+     *
+     * @param scrollableViewSelector
+     *        - the selector of the scrollable view
+     * @param targetSelector
+     *        - the selector of the element that should become visible
+     * @param scrollDirection
+     *        - the direction of the scrolling
+     * @param maxSwipes
+     *        - maximum number of swipes to perform before giving up
+     * @param maxSteps
+     *        - steps to be executed on each swipe, steps control the speed
+     * @param isVertical
+     *        - <code>true</code> if the view has vertical orientation, <code>false</code> otherwise
+     * @return <code>true</code> if the target element became visible, <code>false</code> otherwise
+     * @throws CommandFailedException
+     *         if the request fails
+     */
+    public boolean scrollUntilVisible(UiElementSelector scrollableViewSelector,
+                                      UiElementSelector targetSelector,
+                                      ScrollDirection scrollDirection,
+                                      Integer maxSwipes,
+                                      Integer maxSteps,
+                                      Boolean isVertical)
+        throws CommandFailedException {
+        Object[] arguments = new Object[] {scrollableViewSelector, targetSelector, scrollDirection, maxSwipes,
+                maxSteps, isVertical};
+
+        return (boolean) requestActionWithResponse(UIAutomatorRequest.SCROLL_UNTIL_VISIBLE, arguments);
+    }
+
     /**
      * Sends a request for getting all {@link AccessibilityElement child UI elements} of the {@link AccessibilityElement
      * element} passed as argument. Returned elements must match all properties contained in the given
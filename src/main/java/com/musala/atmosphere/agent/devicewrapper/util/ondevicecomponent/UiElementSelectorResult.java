@@ -0,0 +1,99 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+import com.musala.atmosphere.commons.ui.selector.UiElementSelector;
+import com.musala.atmosphere.commons.ui.tree.AccessibilityElement;
+
+/**
+ * The result of a single selector of a batch UI element lookup. It carries its selector, so the results of a batch do
+ * not depend on the positions of the selectors, and tells a selector which matched no elements from a selector which
+ * failed.
+ */
+public class UiElementSelectorResult implements Serializable {
+    private static final long serialVersionUID = -6180245512094360713L;
+
+    private final UiElementSelector selector;
+
+    private final List<AccessibilityElement> elements;
+
+    private final String errorMessage;
+
+    private UiElementSelectorResult(UiElementSelector selector,
+            List<AccessibilityElement> elements,
+            String errorMessage) {
+        this.selector = selector;
+        this.elements = elements;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * Creates the result of a selector which was evaluated.
+     *
+     * @param selector
+     *        - the selector
+     * @param elements
+     *        - the elements matching the selector
+     * @return the result of the selector
+     */
+    public static UiElementSelectorResult found(UiElementSelector selector, List<AccessibilityElement> elements) {
+        return new UiElementSelectorResult(selector, elements, null);
+    }
+
+    /**
+     * Creates the result of a selector which could not be evaluated.
+     *
+     * @param selector
+     *        - the selector
+     * @param errorMessage
+     *        - the reason the selector failed
+     * @return the result of the selector
+     */
+    public static UiElementSelectorResult failed(UiElementSelector selector, String errorMessage) {
+        return new UiElementSelectorResult(selector, Collections.<AccessibilityElement> emptyList(), errorMessage);
+    }
+
+    public UiElementSelector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Gets the elements matching the selector.
+     *
+     * @return the matching elements; empty if no element matches or the selector failed
+     */
+    public List<AccessibilityElement> getElements() {
+        return elements;
+    }
+
+    /**
+     * Gets the reason the selector failed.
+     *
+     * @return the error message, or <code>null</code> if the selector was evaluated
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public boolean isFailed() {
+        return errorMessage != null;
+    }
+}
@@ -16,12 +16,22 @@
 
 package com.musala.atmosphere.agent.entity;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.log4j.Logger;
 
 import com.musala.atmosphere.agent.devicewrapper.util.ShellCommandExecutor;
 import com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent.ServiceCommunicator;
 import com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent.UIAutomatorCommunicator;
+import com.musala.atmosphere.agent.util.AgentPropertiesLoader;
 import com.musala.atmosphere.agent.util.GestureCreator;
+import com.musala.atmosphere.agent.util.gesture.GestureScript;
+import com.musala.atmosphere.agent.util.gesture.TimedPoint;
 import com.musala.atmosphere.commons.DeviceInformation;
 import com.musala.atmosphere.commons.beans.SwipeDirection;
 import com.musala.atmosphere.commons.exceptions.CommandFailedException;
@@ -38,6 +48,18 @@ import com.musala.atmosphere.commons.util.Pair;
 public class GestureEntity {
     private static final Logger LOGGER = Logger.getLogger(GestureEntity.class.getCanonicalName());
 
+    private static final boolean SHOW_TAP_LOCATION = AgentPropertiesLoader.isTapLocationShown();
+
+    private static final int MAX_PENDING_TAP_LOCATIONS = 8;
+
+    private static final long TAP_LOCATION_THREAD_KEEP_ALIVE = 30000;
+
+    /**
+     * Shows the tap overlays of this device only, so a slow device does not delay the overlays of the others. The
+     * thread stops when the device is idle and the oldest overlays are dropped when the device can not keep up.
+     */
+    private final ExecutorService tapLocationExecutor;
+
     private DeviceInformation deviceInformation;
 
     private ShellCommandExecutor shellCommandExecutor;
@@ -54,10 +76,27 @@ public class GestureEntity {
         this.serviceCommunicator = serviceCommunicator;
         this.deviceInformation = deviceInformation;
         this.automatorCommunicator = automatorCommunicator;
+
+        final String threadName = "tap-location-overlay-" + deviceInformation.getSerialNumber();
+        this.tapLocationExecutor = new ThreadPoolExecutor(0,
+                                                          1,
+                                                          TAP_LOCATION_THREAD_KEEP_ALIVE,
+                                                          TimeUnit.MILLISECONDS,
+                                                          new LinkedBlockingQueue<Runnable>(MAX_PENDING_TAP_LOCATIONS),
+                                                          new ThreadFactory() {
+                                                              @Override
+                                                              public Thread newThread(Runnable runnable) {
+                                                                  Thread thread = new Thread(runnable, threadName);
+                                                                  thread.setDaemon(true);
+                                                                  return thread;
+                                                              }
+                                                          },
+                                                          new ThreadPoolExecutor.DiscardOldestPolicy());
     }
 
     /**
-     * Executes a simple tap on the screen of this device at a specified location point.
+     * Executes a simple tap on the screen of this device at a specified location point. The tap is injected through
+     * the running UIAutomator bridge and falls back to the <code>input</code> shell tool if the bridge fails.
      *
      * @param tapPoint
      *        - {@link Point Point} on the screen to tap on
@@ -69,16 +108,32 @@ public class GestureEntity {
 
         int tapPointX = tapPoint.getX();
         int tapPointY = tapPoint.getY();
-        String query = "input tap " + tapPointX + " " + tapPointY;
 
-        showTapLocation(tapPoint);
+        if (SHOW_TAP_LOCATION) {
+            showTapLocationAsync(tapPoint);
+        }
+
+        long startTime = System.currentTimeMillis();
 
         try {
-            shellCommandExecutor.execute(query);
+            automatorCommunicator.playGesture(GestureCreator.createTap(tapPointX, tapPointY));
         } catch (CommandFailedException e) {
-            isTapSuccessful = false;
+            LOGGER.warn("Tap injection through the UIAutomator bridge failed, falling back to the input tool.", e);
+
+            String query = "input tap " + tapPointX + " " + tapPointY;
+
+            try {
+                shellCommandExecutor.execute(query);
+            } catch (CommandFailedException ex) {
+                isTapSuccessful = false;
+            }
         }
 
+        LOGGER.debug(String.format("Tap at (%d, %d) took %d ms.",
+                                   tapPointX,
+                                   tapPointY,
+                                   System.currentTimeMillis() - startTime));
+
         return isTapSuccessful;
     }
 
@@ -180,6 +235,27 @@ public class GestureEntity {
         return playGesture(drag);
     }
 
+    /**
+     * Compiles a {@link GestureScript gesture script} and plays all of its statements in a single request.
+     *
+     * @param script
+     *        - the text of the gesture script
+     * @return <code>true</code> if the gesture is played successfully, <code>false</code> if it fails
+     */
+    public boolean playGestureScript(String script) {
+        GestureScript gestureScript = GestureScript.parse(script);
+
+        for (List<TimedPoint> track : gestureScript.getTracks()) {
+            for (TimedPoint point : track) {
+                validatePointOnScreen(new Point(Math.round(point.getX()), Math.round(point.getY())));
+            }
+        }
+
+        Gesture gesture = GestureCreator.createFromScript(gestureScript);
+
+        return playGesture(gesture);
+    }
+
     private boolean playGesture(Gesture gesture) {
         boolean isPlayGestureSuccessful = true;
 
@@ -193,17 +269,22 @@ public class GestureEntity {
     }
 
     /**
-     * Shows the tap location on the current device screen.
+     * Shows the tap location on the current device screen without waiting for the overlay to be drawn.
      *
      * @param point
      *        - the point where the tap will be placed
      */
-    private void showTapLocation(Point point) {
-        try {
-            serviceCommunicator.showTapLocation(new Object[] {point});
-        } catch (CommandFailedException e) {
-            LOGGER.error(e.getMessage());
-        }
+    private void showTapLocationAsync(final Point point) {
+        tapLocationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    serviceCommunicator.showTapLocation(new Object[] {point});
+                } catch (CommandFailedException e) {
+                    LOGGER.error(e.getMessage());
+                }
+            }
+        });
     }
 
     /**
@@ -42,11 +42,11 @@ public abstract class GpsLocationEntity {
 
     private static final String AGREE_BUTTON_RESOURCE_ID = "android:id/button1";
 
-    private static final int AGREE_BUTTON_TIMEOUT = 3000;
-
     protected static final int CHANGE_STATE_WIDGET_TIMEOUT = 5000;
 
-    private static final int UI_ELEMENT_OPERATION_WAIT_TIME = 500;
+    private static final int CHANGE_STATE_TIMEOUT = 5000;
+
+    private static final int CHANGE_STATE_POLL_INTERVAL = 250;
 
     protected ServiceCommunicator serviceCommunicator;
 
@@ -118,10 +118,13 @@ public abstract class GpsLocationEntity {
 
         openLocationSettings();
 
+        boolean isStateChanged = false;
         try {
             UiElementPropertiesContainer changeStateWidget = getChangeStateWidget();
-            if (tap(changeStateWidget)) {
-                pressAgreeButton();
+            if (changeStateWidget == null) {
+                LOGGER.error("The widget for changing the GPS location state is not present on the screen.");
+            } else if (tap(changeStateWidget)) {
+                isStateChanged = waitForGpsLocationState(state);
             }
         } catch (UiElementFetchingException e) {
             LOGGER.error("Failed to get the wanted widget, or there are more than one widgets on the screen that are matching the given selector.",
@@ -133,23 +136,65 @@ public abstract class GpsLocationEntity {
         // so the enumeration could be used here instead of an integer.
         hardwareButtonEntity.pressButton(4); // Back button
 
-        return true;
+        return isStateChanged;
     }
 
     public void openLocationSettings() throws CommandFailedException {
         serviceCommunicator.openLocationSettings();
     }
 
-    private void pressAgreeButton() throws UiElementFetchingException, CommandFailedException {
+    /**
+     * Waits until the GPS location reaches the given state. Some devices ask for a consent before changing the
+     * location state, so the consent dialog is accepted whenever it appears while waiting.
+     *
+     * @param state
+     *        - the expected GPS location state
+     * @return <code>true</code> if the state was reached before the timeout, <code>false</code> otherwise
+     * @throws CommandFailedException
+     *         if checking the state or accepting the consent dialog fails
+     */
+    private boolean waitForGpsLocationState(boolean state) throws CommandFailedException {
         UiElementSelector agreeButtonSelector = new UiElementSelector();
         agreeButtonSelector.addSelectionAttribute(CssAttribute.RESOURCE_ID, AGREE_BUTTON_RESOURCE_ID);
 
-        if (automatorCommunicator.waitForExists(agreeButtonSelector, AGREE_BUTTON_TIMEOUT)) {
-            List<AccessibilityElement> elementsList = automatorCommunicator.getUiElements(agreeButtonSelector, true);
+        long deadline = System.currentTimeMillis() + CHANGE_STATE_TIMEOUT;
+
+        do {
+            if (isGpsLocationEnabled() == state) {
+                return true;
+            }
+
+            // waiting for the consent dialog also serves as the polling interval for the location state
+            if (automatorCommunicator.waitForExists(agreeButtonSelector, CHANGE_STATE_POLL_INTERVAL)) {
+                pressAgreeButton(agreeButtonSelector);
+            }
+        } while (System.currentTimeMillis() < deadline);
+
+        return isGpsLocationEnabled() == state;
+    }
 
-            AccessibilityElement agreeButton = elementsList.get(0);
-            tap(agreeButton);
+    /**
+     * Presses the button of the consent dialog with a single request to the on-device component. If the request fails,
+     * e.g. because the component does not support it, the button is fetched and tapped from the agent.
+     *
+     * @param agreeButtonSelector
+     *        - the selector of the button
+     * @return <code>true</code> if the button was pressed, <code>false</code> otherwise
+     * @throws CommandFailedException
+     *         if fetching the button fails
+     */
+    private boolean pressAgreeButton(UiElementSelector agreeButtonSelector) throws CommandFailedException {
+        try {
+            if (automatorCommunicator.tapElement(agreeButtonSelector, true)) {
+                return true;
+            }
+        } catch (CommandFailedException e) {
+            LOGGER.warn("Tapping the agree button on the device failed, tapping it from the agent.", e);
         }
+
+        List<AccessibilityElement> elementsList = automatorCommunicator.getUiElements(agreeButtonSelector, true);
+
+        return !elementsList.isEmpty() && tap(elementsList.get(0));
     }
 
     private boolean tap(UiElementPropertiesContainer element) {
@@ -159,26 +204,12 @@ public abstract class GpsLocationEntity {
         Point tapPoint = elementBounds.getUpperLeftCorner();
         tapPoint.addVector(point);
 
-        boolean tapSuccessful = false;
-        if (elementBounds.contains(tapPoint)) {
-            tapSuccessful = gestureEntity.tapScreenLocation(tapPoint);
-            finalizeUiElementOperation();
-        }  else {
+        if (!elementBounds.contains(tapPoint)) {
             String message = String.format("Point %s not in element bounds.", point.toString());
             LOGGER.error(message);
             throw new IllegalArgumentException(message);
         }
 
-        return tapSuccessful;
-    }
-
-    private void finalizeUiElementOperation() {
-        // Should be invoked exactly once in the end of all element-operating
-        // methods, whether its directly or indirectly invoked.
-        try {
-            Thread.sleep(UI_ELEMENT_OPERATION_WAIT_TIME);
-        } catch (InterruptedException e) {
-            LOGGER.info(e);
-        }
+        return gestureEntity.tapScreenLocation(tapPoint);
     }
 }
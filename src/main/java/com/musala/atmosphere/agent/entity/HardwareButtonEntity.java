@@ -16,7 +16,10 @@
 
 package com.musala.atmosphere.agent.entity;
 
+import org.apache.log4j.Logger;
+
 import com.musala.atmosphere.agent.devicewrapper.util.ShellCommandExecutor;
+import com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent.UIAutomatorCommunicator;
 import com.musala.atmosphere.commons.exceptions.CommandFailedException;
 
 /**
@@ -26,20 +29,36 @@ import com.musala.atmosphere.commons.exceptions.CommandFailedException;
  *
  */
 public class HardwareButtonEntity {
+    private static final Logger LOGGER = Logger.getLogger(HardwareButtonEntity.class.getCanonicalName());
+
     private ShellCommandExecutor shellCommandExecutor;
 
-    HardwareButtonEntity(ShellCommandExecutor shellCommandExecutor) {
+    private UIAutomatorCommunicator automatorCommunicator;
+
+    HardwareButtonEntity(ShellCommandExecutor shellCommandExecutor, UIAutomatorCommunicator automatorCommunicator) {
         this.shellCommandExecutor = shellCommandExecutor;
+        this.automatorCommunicator = automatorCommunicator;
     }
 
     /**
-     * Presses hardware button on this device.
+     * Presses hardware button on this device. The key event is injected through the running UIAutomator bridge and
+     * falls back to the <code>input</code> shell tool if the bridge fails or does not inject the event.
      *
      * @param keyCode
      *        - button key code as specified by the Android KeyEvent KEYCODE_ constants
      * @return <code>true</code> if the hardware button press is successful, <code>false</code> if it fails
      */
     public Boolean pressButton(int keyCode) {
+        try {
+            if (automatorCommunicator.pressKey(keyCode)) {
+                return true;
+            }
+
+            LOGGER.warn("The UIAutomator bridge did not inject the key event, falling back to the input tool.");
+        } catch (CommandFailedException e) {
+            LOGGER.warn("Key injection through the UIAutomator bridge failed, falling back to the input tool.", e);
+        }
+
         String query = "input keyevent " + Integer.toString(keyCode);
         boolean response = true;
         try {
@@ -16,19 +16,35 @@
 
 package com.musala.atmosphere.agent.entity;
 
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Base64;
+import java.util.List;
+
+import javax.imageio.ImageIO;
 
 import org.apache.log4j.Logger;
 
 import com.android.ddmlib.AdbCommandRejectedException;
 import com.android.ddmlib.IDevice;
-import com.android.ddmlib.SyncException;
+import com.android.ddmlib.RawImage;
 import com.android.ddmlib.TimeoutException;
 import com.musala.atmosphere.agent.devicewrapper.util.ShellCommandExecutor;
+import com.musala.atmosphere.agent.devicewrapper.util.ShellOutputBuffer;
+import com.musala.atmosphere.agent.util.image.BaselineStore;
+import com.musala.atmosphere.agent.util.image.ScreenshotComparison;
+import com.musala.atmosphere.agent.util.image.ScreenshotDiff;
+import com.musala.atmosphere.agent.util.image.ScreenshotEncoder;
+import com.musala.atmosphere.agent.util.image.ScreenshotOptions;
+import com.musala.atmosphere.agent.util.image.ScreenThumbnail;
+import com.musala.atmosphere.agent.util.image.TemplateMatch;
+import com.musala.atmosphere.agent.util.image.TemplateMatcher;
 import com.musala.atmosphere.commons.exceptions.CommandFailedException;
+import com.musala.atmosphere.commons.util.Pair;
 
 /**
  * Entity responsible for operations related with images.
@@ -39,11 +55,21 @@ import com.musala.atmosphere.commons.exceptions.CommandFailedException;
 public class ImageEntity {
     private static final Logger LOGGER = Logger.getLogger(ImageEntity.class.getCanonicalName());
 
-    private static final String SCREENSHOT_REMOTE_FILE_NAME = "/data/local/tmp/remote_screen.png";
+    private static final String SCREENSHOT_COMMAND = "screencap -p";
+
+    private static final byte[] PNG_SIGNATURE = new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final int SCREENSHOT_BUFFER_INITIAL_CAPACITY = 2 * 1024 * 1024;
+
+    private static final int STABILITY_THUMBNAIL_WIDTH = 48;
+
+    private static final int STABILITY_MIN_FRAME_INTERVAL = 100;
+
+    private static final File BASELINES_DIRECTORY = new File(BaselineStore.DEFAULT_BASELINES_DIRECTORY);
 
-    private static final String SCREENSHOT_LOCAL_FILE_NAME = "local_screen.png";
+    private static final BaselineStore BASELINE_STORE = new BaselineStore(BASELINES_DIRECTORY);
 
-    private static final String SCREENSHOT_COMMAND = "screencap -p " + SCREENSHOT_REMOTE_FILE_NAME;
+    private final ShellOutputBuffer screenshotBuffer = new ShellOutputBuffer(SCREENSHOT_BUFFER_INITIAL_CAPACITY);
 
     private ShellCommandExecutor shellCommandExecutor;
 
@@ -72,27 +98,310 @@ public class ImageEntity {
      *         In case of an error in the execution
      */
     public String getScreenshot() throws CommandFailedException {
-        shellCommandExecutor.execute(SCREENSHOT_COMMAND);
+        byte[] screenshotData = getScreenshotData();
+
+        return Base64.getEncoder().encodeToString(screenshotData);
+    }
+
+    /**
+     * Returns the raw content of a display screenshot, before it is encoded for transfer. The image is streamed from
+     * the standard output of the device shell into a buffer reused for all screenshots of this device, so no files are
+     * created on the device or on the agent.
+     *
+     * @return the content of the PNG screenshot image
+     * @throws CommandFailedException
+     *         In case of an error in the execution
+     */
+    public byte[] getScreenshotData() throws CommandFailedException {
+        synchronized (screenshotBuffer) {
+            long startTime = System.currentTimeMillis();
+
+            screenshotBuffer.reset();
+            shellCommandExecutor.execute(SCREENSHOT_COMMAND, screenshotBuffer);
+
+            if (hasConvertedLineFeeds(screenshotBuffer)) {
+                screenshotBuffer.restoreLineFeeds();
+            }
+
+            if (!hasPngSignature(screenshotBuffer)) {
+                String message = "Screenshot fetching failed, the device did not return a PNG image.";
+                LOGGER.error(message);
+                throw new CommandFailedException(message);
+            }
 
-        FileInputStream fileReader = null;
+            LOGGER.debug(String.format("Screenshot of %d bytes captured from %s in %d ms.",
+                                       screenshotBuffer.size(),
+                                       wrappedDevice.getSerialNumber(),
+                                       System.currentTimeMillis() - startTime));
 
+            return screenshotBuffer.toByteArray();
+        }
+    }
+
+    /**
+     * Captures the framebuffer of the device and encodes it according to the given options. The cropping, the scaling
+     * and the encoding are done on the agent.
+     *
+     * @param options
+     *        - the format, quality, scale and region of the screenshot
+     * @return the encoded image
+     * @throws CommandFailedException
+     *         In case of an error in the capturing or the encoding
+     */
+    public byte[] getEncodedScreenshot(ScreenshotOptions options) throws CommandFailedException {
         try {
-            wrappedDevice.pullFile(SCREENSHOT_REMOTE_FILE_NAME, SCREENSHOT_LOCAL_FILE_NAME);
+            long startTime = System.currentTimeMillis();
 
-            File localScreenshotFile = new File(SCREENSHOT_LOCAL_FILE_NAME);
-            fileReader = new FileInputStream(localScreenshotFile);
+            RawImage rawImage = wrappedDevice.getScreenshot();
+            if (rawImage == null) {
+                throw new CommandFailedException("Framebuffer capture failed.");
+            }
 
-            final long sizeOfScreenshotFile = localScreenshotFile.length();
-            byte[] screenshotData = new byte[(int) sizeOfScreenshotFile];
-            fileReader.read(screenshotData);
-            fileReader.close();
+            byte[] encodedImage = ScreenshotEncoder.encode(rawImage, options);
 
-            String screenshotBase64String = Base64.getEncoder().encodeToString(screenshotData);
+            LOGGER.debug(String.format("%s screenshot of %d bytes captured from %s in %d ms.",
+                                       options.getFormat(),
+                                       encodedImage.length,
+                                       wrappedDevice.getSerialNumber(),
+                                       System.currentTimeMillis() - startTime));
 
-            return screenshotBase64String;
-        } catch (IOException | AdbCommandRejectedException | TimeoutException | SyncException e) {
+            return encodedImage;
+        } catch (IOException | AdbCommandRejectedException | TimeoutException e) {
             LOGGER.error("Screenshot fetching failed.", e);
             throw new CommandFailedException("Screenshot fetching failed.", e);
         }
     }
+
+    /**
+     * Waits until the screen stops changing, for example when an animation ends. Low resolution thumbnails of the
+     * screen are compared until the given number of consecutive frames match the first frame of the run.
+     *
+     * @param stableFramesCount
+     *        - the number of consecutive matching frames needed
+     * @param threshold
+     *        - the maximum difference between matching frames, from 0 to 1
+     * @param timeout
+     *        - the maximum time to wait in milliseconds
+     * @return a {@link Pair pair} of whether the screen became stable and the settle time, which is the time in
+     *         milliseconds from the start of the wait to the first frame of the stable run
+     * @throws CommandFailedException
+     *         In case of an error in the capturing
+     */
+    public Pair<Boolean, Long> waitForScreenStable(int stableFramesCount, double threshold, long timeout)
+        throws CommandFailedException {
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + timeout;
+
+        ScreenThumbnail referenceThumbnail = captureThumbnail();
+        long referenceTime = System.currentTimeMillis();
+        int matchingFramesCount = 0;
+
+        while (matchingFramesCount < stableFramesCount) {
+            long nextFrameTime = System.currentTimeMillis() + STABILITY_MIN_FRAME_INTERVAL;
+            if (nextFrameTime > deadline) {
+                LOGGER.debug(String.format("The screen of %s did not become stable in %d ms.",
+                                           wrappedDevice.getSerialNumber(),
+                                           timeout));
+                return new Pair<Boolean, Long>(false, System.currentTimeMillis() - startTime);
+            }
+
+            try {
+                Thread.sleep(STABILITY_MIN_FRAME_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CommandFailedException("Waiting for a stable screen was interrupted.", e);
+            }
+
+            ScreenThumbnail thumbnail = captureThumbnail();
+            if (referenceThumbnail.difference(thumbnail) <= threshold) {
+                matchingFramesCount++;
+            } else {
+                referenceThumbnail = thumbnail;
+                referenceTime = System.currentTimeMillis();
+                matchingFramesCount = 0;
+            }
+        }
+
+        long settleTime = Math.max(0, referenceTime - startTime);
+        LOGGER.debug(String.format("The screen of %s settled in %d ms.", wrappedDevice.getSerialNumber(), settleTime));
+
+        return new Pair<Boolean, Long>(true, settleTime);
+    }
+
+    /**
+     * Finds the locations of a template image on the current screen. Used for views which have no accessibility
+     * nodes, like canvases and games.
+     *
+     * @param templateData
+     *        - the encoded template image, in any format supported by {@link ImageIO}
+     * @param minScore
+     *        - the minimum score of the returned matches, from -1 to 1
+     * @param maxResults
+     *        - the maximum number of returned matches
+     * @param minScale
+     *        - the smallest scale of the template that is searched
+     * @param maxScale
+     *        - the largest scale of the template that is searched
+     * @return the matches, the best match first
+     * @throws CommandFailedException
+     *         In case of an error in the capturing or an invalid template
+     */
+    public List<TemplateMatch> findImage(byte[] templateData,
+                                         double minScore,
+                                         int maxResults,
+                                         double minScale,
+                                         double maxScale)
+        throws CommandFailedException {
+        try {
+            BufferedImage template = ImageIO.read(new ByteArrayInputStream(templateData));
+            if (template == null) {
+                throw new CommandFailedException("The template image format is not supported.");
+            }
+
+            RawImage rawImage = wrappedDevice.getScreenshot();
+            if (rawImage == null) {
+                throw new CommandFailedException("Framebuffer capture failed.");
+            }
+
+            long startTime = System.currentTimeMillis();
+            List<TemplateMatch> matches = TemplateMatcher.findMatches(rawImage,
+                                                                      template,
+                                                                      minScore,
+                                                                      maxResults,
+                                                                      minScale,
+                                                                      maxScale);
+
+            LOGGER.debug(String.format("%d matches of a %dx%d template found on %s in %d ms.",
+                                       matches.size(),
+                                       template.getWidth(),
+                                       template.getHeight(),
+                                       wrappedDevice.getSerialNumber(),
+                                       System.currentTimeMillis() - startTime));
+
+            return matches;
+        } catch (IllegalArgumentException e) {
+            throw new CommandFailedException("Template image search failed.", e);
+        } catch (IOException | AdbCommandRejectedException | TimeoutException e) {
+            LOGGER.error("Screenshot fetching failed.", e);
+            throw new CommandFailedException("Screenshot fetching failed.", e);
+        }
+    }
+
+    /**
+     * Compares the current screen with the baseline of a test, which is stored on the agent for each device model. If
+     * there is no baseline yet, the current screen becomes the baseline.
+     *
+     * @param testName
+     *        - the name of the test
+     * @param deviceModel
+     *        - the model of the device
+     * @param ignoredRegions
+     *        - the regions of the screen which are not compared
+     * @param tolerance
+     *        - the maximum difference of a color channel of equal pixels, from 0 to 255
+     * @param maxDifference
+     *        - the maximum part of the pixels which may differ for the check to pass, from 0 to 1
+     * @param updateBaseline
+     *        - whether the current screen should replace the baseline
+     * @return the result of the check; the screenshot is included only if the check failed
+     * @throws CommandFailedException
+     *         In case of an error in the capturing or in accessing the baseline
+     */
+    public ScreenshotComparison compareScreenshot(String testName,
+                                                  String deviceModel,
+                                                  List<Rectangle> ignoredRegions,
+                                                  int tolerance,
+                                                  double maxDifference,
+                                                  boolean updateBaseline)
+        throws CommandFailedException {
+        ScreenshotComparison comparison = new ScreenshotComparison(testName, deviceModel);
+
+        try {
+            RawImage rawImage = wrappedDevice.getScreenshot();
+            if (rawImage == null) {
+                throw new CommandFailedException("Framebuffer capture failed.");
+            }
+
+            BufferedImage screenshot = ScreenshotEncoder.toBufferedImage(rawImage);
+            BufferedImage baseline = BASELINE_STORE.load(testName, deviceModel);
+
+            if (baseline == null) {
+                BASELINE_STORE.save(testName, deviceModel, screenshot);
+                comparison.setBaselineCreated(true);
+                comparison.setPassed(true);
+            } else if (baseline.getWidth() != screenshot.getWidth() || baseline.getHeight() != screenshot.getHeight()) {
+                comparison.setDifference(1);
+                comparison.setScreenshot(encodePng(screenshot));
+            } else {
+                ScreenshotDiff diff = ScreenshotDiff.compare(baseline, screenshot, ignoredRegions, tolerance);
+                comparison.setDifference(diff.getDifference());
+                comparison.setDifferingPixelsCount(diff.getDifferingPixelsCount());
+                comparison.setDiffMask(Base64.getEncoder().encodeToString(diff.getDiffMask()));
+                comparison.setPassed(diff.getDifference() <= maxDifference);
+
+                if (!comparison.isPassed()) {
+                    comparison.setScreenshot(encodePng(screenshot));
+                }
+            }
+
+            if (updateBaseline && !comparison.isBaselineCreated()) {
+                BASELINE_STORE.save(testName, deviceModel, screenshot);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new CommandFailedException("Screenshot comparison failed.", e);
+        } catch (IOException | AdbCommandRejectedException | TimeoutException e) {
+            LOGGER.error("Screenshot comparison failed.", e);
+            throw new CommandFailedException("Screenshot comparison failed.", e);
+        }
+
+        LOGGER.debug(comparison);
+
+        return comparison;
+    }
+
+    private String encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+
+        return Base64.getEncoder().encodeToString(output.toByteArray());
+    }
+
+    private ScreenThumbnail captureThumbnail() throws CommandFailedException {
+        try {
+            RawImage rawImage = wrappedDevice.getScreenshot();
+            if (rawImage == null) {
+                throw new CommandFailedException("Framebuffer capture failed.");
+            }
+
+            return ScreenThumbnail.create(rawImage, STABILITY_THUMBNAIL_WIDTH);
+        } catch (IOException | AdbCommandRejectedException | TimeoutException e) {
+            LOGGER.error("Screenshot fetching failed.", e);
+            throw new CommandFailedException("Screenshot fetching failed.", e);
+        }
+    }
+
+    /**
+     * Checks whether the shell has converted the line feeds of the output to CRLF. The PNG signature contains a CRLF
+     * sequence, so after the conversion it starts with CR CR LF.
+     */
+    private boolean hasConvertedLineFeeds(ShellOutputBuffer buffer) {
+        byte[] data = buffer.getData();
+
+        return buffer.size() > PNG_SIGNATURE.length && data[4] == '\r' && data[5] == '\r' && data[6] == '\n';
+    }
+
+    private boolean hasPngSignature(ShellOutputBuffer buffer) {
+        if (buffer.size() < PNG_SIGNATURE.length) {
+            return false;
+        }
+
+        byte[] data = buffer.getData();
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (data[i] != PNG_SIGNATURE[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
 }
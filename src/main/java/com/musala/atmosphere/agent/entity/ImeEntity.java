@@ -16,6 +16,9 @@
 
 package com.musala.atmosphere.agent.entity;
 
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.log4j.Logger;
 
 import com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent.ServiceCommunicator;
@@ -32,6 +35,21 @@ import com.musala.atmosphere.commons.util.AtmosphereIntent;
 public class ImeEntity {
     private static final Logger LOGGER = Logger.getLogger(ImeEntity.class.getCanonicalName());
 
+    private static final String INTENT_EXTRA_SEQUENCE_NUMBER = "sequence_number";
+
+    private static final int MAX_CHUNK_LENGTH = 256;
+
+    private static final long ACKNOWLEDGEMENT_TIMEOUT = 5000;
+
+    /**
+     * Starts from a random number, so a late acknowledgement of an input sent before the agent was restarted can not
+     * complete a new input.
+     */
+    private final AtomicLong inputSequenceNumber =
+            new AtomicLong(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE / 2));
+
+    private volatile boolean isAcknowledgementSupported = true;
+
     private ServiceCommunicator communicator;
 
     ImeEntity(ServiceCommunicator communicator) {
@@ -39,7 +57,8 @@ public class ImeEntity {
     }
 
     /**
-     * Simulates text typing in the element on focus for this device.
+     * Simulates text typing in the element on focus for this device. Long texts are sent in chunks and each chunk is
+     * sent after the IME acknowledges the previous one.
      *
      * @param text
      *        - text to be input
@@ -54,15 +73,30 @@ public class ImeEntity {
             return true;
         }
 
-        AtmosphereIntent intent = new AtmosphereIntent(KeyboardAction.INPUT_TEXT.intentAction);
-        intent.putExtra(KeyboardAction.INTENT_EXTRA_TEXT, text);
-        intent.putExtra(KeyboardAction.INTENT_EXTRA_INPUT_SPEED, interval);
+        int chunkStart = 0;
+        while (chunkStart < text.length()) {
+            int chunkEnd = Math.min(chunkStart + MAX_CHUNK_LENGTH, text.length());
+            if (chunkEnd < text.length() && Character.isHighSurrogate(text.charAt(chunkEnd - 1))) {
+                // do not split a surrogate pair between two chunks
+                chunkEnd--;
+            }
+
+            String chunk = text.substring(chunkStart, chunkEnd);
+            long sequenceNumber = inputSequenceNumber.incrementAndGet();
+
+            AtmosphereIntent intent = new AtmosphereIntent(KeyboardAction.INPUT_TEXT.intentAction);
+            intent.putExtra(KeyboardAction.INTENT_EXTRA_TEXT, chunk);
+            intent.putExtra(KeyboardAction.INTENT_EXTRA_INPUT_SPEED, interval);
+            intent.putExtra(INTENT_EXTRA_SEQUENCE_NUMBER, sequenceNumber);
 
-        boolean result = sendBroadcast(intent);
+            if (!sendBroadcast(intent) || !waitForAcknowledgement(sequenceNumber, chunk.length() * interval)) {
+                return false;
+            }
 
-        waitForTaskCompletion(text.length() * interval);
+            chunkStart = chunkEnd;
+        }
 
-        return result;
+        return true;
     }
 
     /**
@@ -131,6 +165,40 @@ public class ImeEntity {
         return true;
     }
 
+    /**
+     * Waits for the IME to acknowledge an input. If the on-device components do not support acknowledgements, waits
+     * for the expected input duration instead. The first failed acknowledgement request is remembered, so it is not
+     * repeated for every next chunk and input.
+     *
+     * @param sequenceNumber
+     *        - the sequence number of the input
+     * @param inputDuration
+     *        - the expected duration of the input in milliseconds
+     * @return <code>true</code> if the input is completed, <code>false</code> if the acknowledgement timed out
+     */
+    private boolean waitForAcknowledgement(long sequenceNumber, long inputDuration) {
+        if (!isAcknowledgementSupported) {
+            waitForTaskCompletion(inputDuration);
+            return true;
+        }
+
+        try {
+            boolean isAcknowledged = communicator.waitForImeAcknowledgement(sequenceNumber,
+                                                                            inputDuration + ACKNOWLEDGEMENT_TIMEOUT);
+            if (!isAcknowledged) {
+                LOGGER.error(String.format("The IME did not acknowledge input %d in time.", sequenceNumber));
+            }
+
+            return isAcknowledged;
+        } catch (CommandFailedException e) {
+            isAcknowledgementSupported = false;
+            LOGGER.warn("The on-device service does not acknowledge IME inputs, waiting for the expected input "
+                    + "durations instead.", e);
+            waitForTaskCompletion(inputDuration);
+            return true;
+        }
+    }
+
     private void waitForTaskCompletion(long timeoutInMs) {
         try {
             Thread.sleep(timeoutInMs);
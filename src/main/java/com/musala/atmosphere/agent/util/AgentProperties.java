@@ -36,7 +36,11 @@ public enum AgentProperties {
     ON_DEVICE_COMPONENT_FILES_PATH("ondevicecomponent.files.path"),
     SDK_DIR("sdk.dir"),
     FTP_SERVER("ftp.server"),
-    CHROMEDRIVER_VERSION("chromedriver.version");
+    CHROMEDRIVER_VERSION("chromedriver.version"),
+    SHOW_TAP_LOCATION("show.tap.location"),
+    ARTIFACTS_LOGS_QUOTA("artifacts.quota.logs"),
+    ARTIFACTS_SCREEN_RECORDS_QUOTA("artifacts.quota.screen.records"),
+    ARTIFACTS_MIN_FREE_SPACE("artifacts.min.free.space");
 
     private String value;
 
@@ -17,7 +17,12 @@
 package com.musala.atmosphere.agent.util;
 
 import java.io.File;
+import java.util.EnumMap;
+import java.util.Map;
 
+import org.apache.log4j.Logger;
+
+import com.musala.atmosphere.agent.util.artifact.ArtifactType;
 import com.musala.atmosphere.commons.util.PropertiesLoader;
 
 /**
@@ -28,6 +33,8 @@ import com.musala.atmosphere.commons.util.PropertiesLoader;
  */
 
 public class AgentPropertiesLoader {
+    private static final Logger LOGGER = Logger.getLogger(AgentPropertiesLoader.class.getCanonicalName());
+
     private static final String ADB_ENVIRONMENT_PATH = System.getenv("ANDROID_HOME");
 
     private static final char SEPARATOR_CHAR = File.separatorChar;
@@ -38,6 +45,10 @@ public class AgentPropertiesLoader {
 
     private static final String AGENT_PROPERTIES_FILE = "./agent.properties";
 
+    private static final long BYTES_IN_MEGABYTE = 1024 * 1024;
+
+    private static final long DEFAULT_ARTIFACTS_MIN_FREE_SPACE = 1024;
+
     /**
      * Returns the desired property from the config file in String type. If there is no user config file, default values
      * are returned.
@@ -226,4 +237,77 @@ public class AgentPropertiesLoader {
         String chromeDriverVersion = getPropertyString(AgentProperties.CHROMEDRIVER_VERSION);
         return chromeDriverVersion;
     }
+
+    /**
+     * Returns whether the location of each tap should be shown on the device screen. The tap location is shown when
+     * the property is missing.
+     *
+     * @return <code>true</code> if the tap location overlay is enabled, otherwise returns <code>false</code>
+     */
+    public static boolean isTapLocationShown() {
+        String showTapLocation = getPropertyString(AgentProperties.SHOW_TAP_LOCATION);
+        return showTapLocation == null || showTapLocation.isEmpty() || Boolean.parseBoolean(showTapLocation);
+    }
+
+    /**
+     * Returns the disk quota of each artifact type. A type uses its default quota when its property is missing or
+     * invalid.
+     *
+     * @return the quotas in bytes, mapped by artifact type
+     */
+    public static Map<ArtifactType, Long> getArtifactQuotas() {
+        Map<ArtifactType, Long> quotas = new EnumMap<>(ArtifactType.class);
+        for (ArtifactType type : ArtifactType.values()) {
+            long quotaInMegabytes = getOptionalLong(type.getQuotaProperty(), type.getDefaultQuota());
+            quotas.put(type, quotaInMegabytes * BYTES_IN_MEGABYTE);
+        }
+
+        return quotas;
+    }
+
+    /**
+     * Returns the disk space which the artifact store should leave free. A default value is used when the property is
+     * missing or invalid.
+     *
+     * @return the free space in bytes
+     */
+    public static long getArtifactsMinFreeSpace() {
+        long minFreeSpaceInMegabytes = getOptionalLong(AgentProperties.ARTIFACTS_MIN_FREE_SPACE,
+                                                       DEFAULT_ARTIFACTS_MIN_FREE_SPACE);
+
+        return minFreeSpaceInMegabytes * BYTES_IN_MEGABYTE;
+    }
+
+    /**
+     * Returns the value of an optional non-negative number property. A missing or invalid value is replaced by the
+     * default one, so a typo in the config file can not stop the agent.
+     *
+     * @param property
+     *        - the Agent property to be returned
+     * @param defaultValue
+     *        - the value used when the property is missing or invalid
+     * @return the value of the property
+     */
+    private static long getOptionalLong(AgentProperties property, long defaultValue) {
+        String value = getPropertyString(property);
+
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            long parsedValue = Long.parseLong(value.trim());
+            if (parsedValue >= 0) {
+                return parsedValue;
+            }
+        } catch (NumberFormatException e) {
+            // the default value is used
+        }
+
+        LOGGER.warn(String.format("The value \"%s\" of %s is not a valid non-negative number, %d is used instead.",
+                                  value,
+                                  property,
+                                  defaultValue));
+        return defaultValue;
+    }
 }
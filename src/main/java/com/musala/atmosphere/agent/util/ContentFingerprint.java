@@ -0,0 +1,72 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Computes short content tags for artifacts sent to the server (screenshots, UI XML dumps, UI trees), so that a client
+ * can tell whether an artifact has changed since the last time it has been requested.
+ */
+public class ContentFingerprint {
+    private ContentFingerprint() {
+    }
+
+    /**
+     * Computes the tag of the given binary content.
+     *
+     * @param content
+     *        - the content to be tagged
+     * @return a hexadecimal string identifying the content
+     */
+    public static String of(byte[] content) {
+        return DigestUtils.sha1Hex(content);
+    }
+
+    /**
+     * Computes the tag of the given text content.
+     *
+     * @param content
+     *        - the content to be tagged
+     * @return a hexadecimal string identifying the content
+     */
+    public static String of(String content) {
+        return of(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Computes the tag of the content of the given file. The file is read as a stream, so large files are never kept
+     * in memory.
+     *
+     * @param file
+     *        - the file to be tagged
+     * @return a hexadecimal string identifying the content of the file
+     * @throws IOException
+     *         if reading the file fails
+     */
+    public static String of(File file) throws IOException {
+        try (InputStream fileStream = new FileInputStream(file)) {
+            return DigestUtils.sha1Hex(fileStream);
+        }
+    }
+}
@@ -17,31 +17,100 @@
 package com.musala.atmosphere.agent.util;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
 
 /**
- * Class responsible for recycling files and directories.
+ * Class responsible for recycling files and directories. Every run deletes a batch of the queued files, so a large
+ * backlog does not keep the disk busy for long. A file or directory which can not be deleted completely (e.g. a file
+ * still opened on Windows) is queued again and deleted on one of the next runs.
  *
  * @author yavor.stankov
  *
  */
 public class FileRecycler implements Runnable {
-    private List<File> filesToRemove;
+    private static final Logger LOGGER = Logger.getLogger(FileRecycler.class.getCanonicalName());
+
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 12;
+
+    private final Queue<RecycledFile> filesToRemove = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    private final int batchSize;
 
-    private List<File> removedFiles;
+    private final int maxAttempts;
 
     public FileRecycler() {
-        filesToRemove = Collections.synchronizedList(new ArrayList<File>());
-        removedFiles = new ArrayList<File>();
+        this(DEFAULT_BATCH_SIZE, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Creates a file recycler.
+     *
+     * @param batchSize
+     *        - the maximum number of queued files and directories deleted on a single run
+     * @param maxAttempts
+     *        - the number of runs on which a file is tried to be deleted before giving up
+     */
+    public FileRecycler(int batchSize, int maxAttempts) {
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
     }
 
     @Override
     public void run() {
-        if (!filesToRemove.isEmpty()) {
-            System.gc();
-            removeFiles();
+        long batchReclaimedBytes = 0;
+        int removedFilesCount = 0;
+        // the failed files are queued again after the batch, so they are retried on the next run, not right away
+        List<RecycledFile> failedFiles = new ArrayList<>();
+
+        for (int i = 0; i < batchSize; i++) {
+            RecycledFile recycledFile = filesToRemove.poll();
+            if (recycledFile == null) {
+                break;
+            }
+
+            DeletingVisitor visitor = new DeletingVisitor();
+            try {
+                Files.walkFileTree(recycledFile.path, visitor);
+            } catch (NoSuchFileException e) {
+                // the root is already removed
+            } catch (IOException e) {
+                visitor.failuresCount++;
+            }
+            batchReclaimedBytes += visitor.deletedBytes;
+
+            if (visitor.failuresCount == 0) {
+                removedFilesCount++;
+            } else if (++recycledFile.attempts < maxAttempts) {
+                failedFiles.add(recycledFile);
+            } else {
+                LOGGER.warn(String.format("Giving up removing %s after %d attempts.", recycledFile.path, maxAttempts));
+            }
+        }
+
+        filesToRemove.addAll(failedFiles);
+
+        if (batchReclaimedBytes > 0) {
+            reclaimedBytes.addAndGet(batchReclaimedBytes);
+            LOGGER.debug(String.format("Removed %d files, reclaimed %d bytes.",
+                                       removedFilesCount,
+                                       batchReclaimedBytes));
         }
     }
 
@@ -52,8 +121,7 @@ public class FileRecycler implements Runnable {
      *        - the full path to the file
      */
     public void addFile(String filePath) {
-        File file = new File(filePath);
-        filesToRemove.add(file);
+        filesToRemove.add(new RecycledFile(new File(filePath).toPath()));
     }
 
     /**
@@ -68,31 +136,87 @@ public class FileRecycler implements Runnable {
         }
     }
 
-    private void removeFiles() {
-        for (File currentFile : filesToRemove) {
-            if (deleteFile(currentFile)) {
-                removedFiles.add(currentFile);
-            }
-        }
+    /**
+     * Gets the number of files and directories waiting to be removed.
+     *
+     * @return the number of the queued files
+     */
+    public int getPendingFilesCount() {
+        return filesToRemove.size();
+    }
+
+    /**
+     * Gets the disk space reclaimed since the recycler was created.
+     *
+     * @return the size of the removed files in bytes
+     */
+    public long getReclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    private static class RecycledFile {
+        private final Path path;
+
+        private int attempts;
 
-        clearList();
+        private RecycledFile(Path path) {
+            this.path = path;
+        }
     }
 
-    private boolean deleteFile(File file) {
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
+    /**
+     * Deletes a file tree, skipping the entries which can not be deleted, so as much space as possible is reclaimed
+     * on every attempt.
+     */
+    private static class DeletingVisitor extends SimpleFileVisitor<Path> {
+        private long deletedBytes;
+
+        private int failuresCount;
 
-            for (File currentFile : files) {
-                deleteFile(currentFile);
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+            try {
+                Files.delete(file);
+                deletedBytes += attributes.size();
+            } catch (NoSuchFileException e) {
+                // already removed
+            } catch (IOException e) {
+                failuresCount++;
             }
+
+            return FileVisitResult.CONTINUE;
         }
 
-        return file.delete();
-    }
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exception) {
+            if (!(exception instanceof NoSuchFileException)) {
+                failuresCount++;
+            }
+
+            return FileVisitResult.CONTINUE;
+        }
 
-    private void clearList() {
-        filesToRemove.removeAll(removedFiles);
+        @Override
+        public FileVisitResult postVisitDirectory(Path directory, IOException exception) {
+            if (exception instanceof NoSuchFileException) {
+                // the directory is removed while its entries are listed
+                return FileVisitResult.CONTINUE;
+            }
+
+            if (exception != null) {
+                failuresCount++;
+                return FileVisitResult.CONTINUE;
+            }
 
-        removedFiles.clear();
+            try {
+                Files.delete(directory);
+            } catch (NoSuchFileException e) {
+                // already removed
+            } catch (IOException e) {
+                failuresCount++;
+            }
+
+            return FileVisitResult.CONTINUE;
+        }
     }
 }
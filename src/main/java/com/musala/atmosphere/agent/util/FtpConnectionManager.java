@@ -37,6 +37,8 @@ import org.apache.log4j.Logger;
 public class FtpConnectionManager {
     private static final Logger LOGGER = Logger.getLogger(FtpConnectionManager.class.getCanonicalName());
 
+    private static final String SIZE_COMMAND = "SIZE";
+
     private FTPClient ftpClient;
 
     private static String ftpServerName = FtpServerPropertiesLoader.getFtpName();
@@ -47,7 +49,7 @@ public class FtpConnectionManager {
 
     private static int port = FtpServerPropertiesLoader.getFtpPort();
 
-    private static boolean isAvailableForTransfer;
+    private volatile boolean isAvailableForTransfer;
 
     private static String ftpHomeDirectory = FtpServerPropertiesLoader.getFtpHomeDirectory();
 
@@ -104,11 +106,10 @@ public class FtpConnectionManager {
      * @return <code>true</code> if the data transfer is successful, otherwise returns <code>false</code>
      */
     public boolean transferData(File fileToTransfer, String remoteFileName) {
-        isAvailableForTransfer = false;
         boolean isSuccessful = true;
 
-        try (InputStream inputStream = new FileInputStream(fileToTransfer)) {
-            ftpClient.storeFile(remoteFileName, inputStream);
+        try {
+            uploadFile(fileToTransfer, remoteFileName);
         } catch (FTPConnectionClosedException e) {
             // TODO: Find why sometimes this exception is thrown but the transfer is successful
         } catch (IOException e) {
@@ -120,11 +121,82 @@ public class FtpConnectionManager {
             LOGGER.info("File transfer finished SUCCESSFULLY.");
         }
 
-        isAvailableForTransfer = true;
-
         return isSuccessful;
     }
 
+    /**
+     * Uploads a file to the FTP server. If a part of the file is already on the server, for example from an
+     * interrupted upload, only the rest of the file is uploaded, starting from the size of the remote file with a
+     * <code>REST</code> command.
+     *
+     * @param fileToTransfer
+     *        - the file to transfer
+     * @param remoteFileName
+     *        - the file name which should be used to store the file on the FTP server
+     * @return the number of the uploaded bytes
+     * @throws IOException
+     *         if the upload fails or is refused by the server
+     */
+    public long uploadFile(File fileToTransfer, String remoteFileName) throws IOException {
+        isAvailableForTransfer = false;
+
+        try {
+            long localFileSize = fileToTransfer.length();
+            long remoteFileSize = getRemoteFileSize(remoteFileName);
+
+            if (remoteFileSize == localFileSize) {
+                LOGGER.info(String.format("The file %s is already on the FTP server.", remoteFileName));
+                return 0;
+            }
+
+            long offset = remoteFileSize > 0 && remoteFileSize < localFileSize ? remoteFileSize : 0;
+
+            try (InputStream inputStream = new FileInputStream(fileToTransfer)) {
+                if (offset > 0) {
+                    LOGGER.info(String.format("Resuming the upload of %s from byte %d.", remoteFileName, offset));
+
+                    long skipped = 0;
+                    while (skipped < offset) {
+                        skipped += inputStream.skip(offset - skipped);
+                    }
+                    ftpClient.setRestartOffset(offset);
+                }
+
+                if (!ftpClient.storeFile(remoteFileName, inputStream)) {
+                    throw new IOException(String.format("The FTP server refused the upload of %s: %s",
+                                                        remoteFileName,
+                                                        ftpClient.getReplyString()));
+                }
+            }
+
+            return localFileSize - offset;
+        } finally {
+            isAvailableForTransfer = true;
+        }
+    }
+
+    /**
+     * Gets the size of a file on the FTP server with a <code>SIZE</code> command.
+     *
+     * @param remoteFileName
+     *        - the name of the file on the FTP server
+     * @return the size of the remote file in bytes, or -1 if the file does not exist or its size is unknown
+     * @throws IOException
+     *         if sending the command fails
+     */
+    private long getRemoteFileSize(String remoteFileName) throws IOException {
+        if (ftpClient.sendCommand(SIZE_COMMAND, remoteFileName) != FTPReply.FILE_STATUS) {
+            return -1;
+        }
+
+        String[] reply = ftpClient.getReplyString().trim().split("\\s+");
+        try {
+            return Long.parseLong(reply[reply.length - 1]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     /**
      * Creates a remote directory on the FTP server with a given name if not exists.
      *
@@ -140,7 +212,8 @@ public class FtpConnectionManager {
 
         boolean isSuccessful = false;
         try {
-            isSuccessful = ftpClient.makeDirectory(directoryName);
+            // the directory may be created meanwhile by another connection
+            isSuccessful = ftpClient.makeDirectory(directoryName) || isRemoteDirectoryExists(directoryName);
         } catch (IOException e) {
             LOGGER.error("Failed to create a directory on the FTP server. Directory name: " + directoryName, e);
         }
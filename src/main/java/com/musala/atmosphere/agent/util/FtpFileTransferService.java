@@ -19,72 +19,239 @@ package com.musala.atmosphere.agent.util;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 
-import com.musala.atmosphere.agent.devicewrapper.AbstractWrapDevice;
+import com.musala.atmosphere.agent.util.artifact.ArtifactStore;
 
 /**
  * A service responsible for all file transfers to the FTP server. The service will add all finished screen records to a
- * persistent queue(a text file with list of queued screen record names) and will trigger a transfer if the FTP
- * connection manager is available for a new job.
+ * persistent queue(a {@link TransferJournal}). A worker per FTP connection takes the files from the queue as soon as
+ * they are added, so the queue is drained by all connections in parallel. A file stays in the journal until its upload
+ * is finished, so the uploads interrupted by stopping the agent are started again on the next start.
  *
  * @author dimcho.nedev
  *
  */
-public class FtpFileTransferService implements Runnable {
-    private static final Logger LOGGER = Logger.getLogger(AbstractWrapDevice.class.getCanonicalName());
+public class FtpFileTransferService {
+    private static final Logger LOGGER = Logger.getLogger(FtpFileTransferService.class.getCanonicalName());
 
-    private File pendingTransferData;
+    /**
+     * The delay before the first retry of a failed upload in milliseconds, doubled for each next retry.
+     */
+    private static final long RETRY_DELAY = 2000;
+
+    private final TransferJournal pendingTransfers;
+
+    private final List<FtpConnectionManager> connectionManagers;
+
+    private final int retriesCount;
+
+    private final FtpTransferMetrics metrics = new FtpTransferMetrics();
 
-    private List<String> pendingTransferList;
+    private final ExecutorService workersExecutor;
 
-    private FtpConnectionManager connectionManager;
+    private final ArtifactStore artifactStore;
+
+    private volatile boolean isStopped;
 
     public FtpFileTransferService(String pendingTransfersFileName, FtpConnectionManager connectionManager)
         throws IOException {
-        this.pendingTransferData = new File(pendingTransfersFileName);
+        this(pendingTransfersFileName, Arrays.asList(connectionManager), FtpServerPropertiesLoader.getRetriesCount());
+    }
+
+    /**
+     * Creates a service that uploads the queued files over the given connections in parallel.
+     *
+     * @param pendingTransfersFileName
+     *        - the name of the file where the queue is persisted
+     * @param connectionManagers
+     *        - the connections to the FTP server, one worker is started for each of them
+     * @param retriesCount
+     *        - the number of times a failed upload is retried before the file is dropped
+     * @throws IOException
+     *         if the queue file can not be read or created
+     */
+    public FtpFileTransferService(String pendingTransfersFileName,
+            List<FtpConnectionManager> connectionManagers,
+            int retriesCount)
+        throws IOException {
+        this(pendingTransfersFileName, connectionManagers, retriesCount, null);
+    }
+
+    /**
+     * Creates a service that uploads the queued files over the given connections in parallel. The queued files which
+     * are kept in the given artifact store are pinned there until they are uploaded or dropped, so they are not evicted
+     * while waiting in the queue.
+     *
+     * @param pendingTransfersFileName
+     *        - the name of the file where the queue is persisted
+     * @param connectionManagers
+     *        - the connections to the FTP server, one worker is started for each of them
+     * @param retriesCount
+     *        - the number of times a failed upload is retried before the file is dropped
+     * @param artifactStore
+     *        - the store of the queued artifacts, or <code>null</code> if no file is pinned
+     * @throws IOException
+     *         if the queue file can not be read or created
+     */
+    public FtpFileTransferService(String pendingTransfersFileName,
+            List<FtpConnectionManager> connectionManagers,
+            int retriesCount,
+            ArtifactStore artifactStore)
+        throws IOException {
+        this.pendingTransfers = new TransferJournal(new File(pendingTransfersFileName));
+        this.connectionManagers = new ArrayList<>(connectionManagers);
+        this.retriesCount = retriesCount;
+        this.artifactStore = artifactStore;
 
-        if (!pendingTransferData.exists()) {
-            pendingTransferData.createNewFile();
+        // the pins do not survive a restart of the agent
+        if (artifactStore != null) {
+            for (String filePath : pendingTransfers.getFilePaths()) {
+                artifactStore.pin(new File(filePath));
+            }
         }
 
-        this.pendingTransferList = new ArrayList<>();
-        this.connectionManager = connectionManager;
+        this.workersExecutor = Executors.newFixedThreadPool(connectionManagers.size(), new ThreadFactory() {
+            private int workersCount;
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ftp-upload-worker-" + workersCount++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
 
-    @Override
-    public void run() {
-        try {
-            if (connectionManager.isAvailableForTransfer() && !isQueueEmpty()) {
-                connectionManager.reconnect();
-
-                // retrieves and removes the head of this queue
-                String filePath = getNextTransferFilePath();
-                File fileToTransfer = new File(filePath);
-                String remoteFileName = fileToTransfer.getName();
-
-                String username = getUsername(remoteFileName);
-
-                if (username != null) {
-                    boolean isCreated = connectionManager.createDirectoryIfNotExists(username);
-                    if (isCreated) {
-                        // System.getProperty("file.separator") does not work properly when the Agent is on Windows but
-                        // the FTP runs on a Linux system
-                        remoteFileName = String.format("%s/%s", username, remoteFileName);
-                        connectionManager.transferData(fileToTransfer, remoteFileName);
-                    } else {
-                        // TODO: Find a way to transfer an error message (if occurs) to the client
-                        LOGGER.error("Failed to transfer a data to a remote directory. Can't create a remote directory.");
+    /**
+     * Starts the upload workers. The files that are already in the queue are uploaded first.
+     */
+    public void start() {
+        for (final FtpConnectionManager connectionManager : connectionManagers) {
+            workersExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    drainQueue(connectionManager);
+                }
+            });
+        }
+    }
+
+    /**
+     * Takes files from the queue and uploads them over the given connection until the service is stopped.
+     */
+    private void drainQueue(FtpConnectionManager connectionManager) {
+        while (!isStopped) {
+            try {
+                TransferJournal.Transfer transfer = takeNextTransfer();
+                if (transfer == null) {
+                    continue;
+                }
+
+                try {
+                    transfer(connectionManager, transfer.getFilePath());
+                } catch (RuntimeException e) {
+                    metrics.fileFailed();
+                    LOGGER.error(String.format("File transfer FAILED, %s is removed from the queue.",
+                                               transfer.getFilePath()),
+                                 e);
+                }
+
+                // the transfers interrupted by stopping the service stay in the journal and are retried on start
+                if (!isStopped) {
+                    pendingTransfers.complete(transfer);
+                    if (artifactStore != null) {
+                        artifactStore.unpin(new File(transfer.getFilePath()));
                     }
                 }
+            } catch (IOException e) {
+                LOGGER.error("Failed to update the queue of the pending transfers.", e);
+                if (!sleep(RETRY_DELAY)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // the worker keeps draining the queue, so a single unexpected error does not stop the uploads
+                LOGGER.error("Unexpected error in the FTP upload worker.", e);
+                if (!sleep(RETRY_DELAY)) {
+                    return;
+                }
             }
-        } catch (IOException e) {
-            LOGGER.error(String.format("Failed to read from the \"%s\" file", pendingTransferData.getName()), e);
+        }
+    }
+
+    private void transfer(FtpConnectionManager connectionManager, String filePath) {
+        File fileToTransfer = new File(filePath);
+        String remoteFileName = fileToTransfer.getName();
+
+        String username = getUsername(remoteFileName);
+
+        if (username == null) {
+            return;
+        }
+
+        if (!fileToTransfer.exists()) {
+            metrics.fileFailed();
+            LOGGER.error(String.format("File transfer FAILED, %s does not exist.", filePath));
+            return;
+        }
+
+        // System.getProperty("file.separator") does not work properly when the Agent is on Windows but the FTP runs on
+        // a Linux system
+        String remoteFilePath = String.format("%s/%s", username, remoteFileName);
+
+        for (int attempt = 0; attempt <= retriesCount && !isStopped; attempt++) {
+            if (attempt > 0) {
+                metrics.uploadRetried();
+                if (!sleep(RETRY_DELAY << (attempt - 1))) {
+                    return;
+                }
+            }
+
+            connectionManager.reconnect();
+
+            if (!connectionManager.createDirectoryIfNotExists(username)) {
+                // TODO: Find a way to transfer an error message (if occurs) to the client
+                LOGGER.error("Failed to transfer a data to a remote directory. Can't create a remote directory.");
+                continue;
+            }
+
+            long uploadStartTime = System.currentTimeMillis();
+            long uploadedBytes = 0;
+            metrics.uploadStarted();
+            try {
+                uploadedBytes = connectionManager.uploadFile(fileToTransfer, remoteFilePath);
+                metrics.fileUploaded();
+
+                LOGGER.info(String.format("Uploaded %s (%d bytes) in %d ms. Total: %s.",
+                                          remoteFilePath,
+                                          uploadedBytes,
+                                          System.currentTimeMillis() - uploadStartTime,
+                                          metrics));
+                return;
+            } catch (IOException e) {
+                LOGGER.warn(String.format("Uploading %s failed (attempt %d of %d).",
+                                          remoteFilePath,
+                                          attempt + 1,
+                                          retriesCount + 1),
+                            e);
+            } finally {
+                metrics.uploadFinished(uploadedBytes);
+            }
+        }
+
+        if (!isStopped) {
+            metrics.fileFailed();
+            LOGGER.error(String.format("File transfer FAILED, %s is removed from the queue.", filePath));
         }
     }
 
@@ -102,37 +269,93 @@ public class FtpFileTransferService implements Runnable {
     }
 
     /**
-     * Logout and disconnects from the FTP server.
+     * Stops the upload workers, logouts and disconnects from the FTP server.
      */
     public void stop() {
-        connectionManager.disconnect();
+        synchronized (this) {
+            isStopped = true;
+            notifyAll();
+        }
+
+        workersExecutor.shutdown();
+
+        for (FtpConnectionManager connectionManager : connectionManagers) {
+            connectionManager.disconnect();
+        }
+
+        try {
+            pendingTransfers.close();
+        } catch (IOException e) {
+            LOGGER.error("Failed to close the queue of the pending transfers.", e);
+        }
+
+        LOGGER.info("FTP transfers: " + metrics);
     }
 
     /**
-     * Add a transfer task to a text file.
+     * Gets the statistics of the uploads done by this service.
+     *
+     * @return the upload statistics
+     */
+    public FtpTransferMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the number of the files waiting to be uploaded.
+     *
+     * @return the number of the queued files, not counting the ones being uploaded
+     */
+    public int getPendingTransfersCount() {
+        return pendingTransfers.size();
+    }
+
+    /**
+     * Add a transfer task to the queue of the pending transfers.
      *
      * @param pathToFile
      *        - path to the file that will be transfered
      * @throws IOException
-     *         thrown when failed to read/write from/to the queue file
+     *         thrown when failed to write to the queue file
      */
     public synchronized void addTransferTask(String pathToFile) throws IOException {
-        pendingTransferList = FileUtils.readLines(pendingTransferData);
-        pendingTransferList.add(pathToFile);
-        FileUtils.writeLines(pendingTransferData, pendingTransferList);
-    }
+        if (artifactStore != null) {
+            artifactStore.pin(new File(pathToFile));
+        }
 
-    private synchronized String getNextTransferFilePath() throws IOException {
-        pendingTransferList = FileUtils.readLines(pendingTransferData);
-        String filePath = pendingTransferList.remove(0);
-        FileUtils.writeLines(pendingTransferData, pendingTransferList);
+        try {
+            pendingTransfers.add(pathToFile);
+        } catch (IOException e) {
+            if (artifactStore != null) {
+                artifactStore.unpin(new File(pathToFile));
+            }
+
+            throw e;
+        }
 
-        return filePath;
+        notifyAll();
     }
 
-    private synchronized boolean isQueueEmpty() throws IOException {
-        pendingTransferList = FileUtils.readLines(pendingTransferData);
-        return pendingTransferList.isEmpty();
+    /**
+     * Waits until the queue is not empty and takes its head.
+     *
+     * @return the transfer at the head of the queue, or <code>null</code> if the service is stopped
+     */
+    private synchronized TransferJournal.Transfer takeNextTransfer() throws IOException, InterruptedException {
+        while (!isStopped && pendingTransfers.isEmpty()) {
+            wait();
+        }
+
+        return isStopped ? null : pendingTransfers.take();
     }
 
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 }
@@ -28,7 +28,9 @@ public enum FtpServerProperties {
     FTP_USERNAME("ftp.username"),
     FTP_PASSWORD("ftp.password"),
     FTPS("ftps"),
-    FTP_HOME_DIR("ftp.home");
+    FTP_HOME_DIR("ftp.home"),
+    FTP_CONNECTIONS("ftp.connections"),
+    FTP_RETRIES("ftp.retries");
 
     private String value;
 
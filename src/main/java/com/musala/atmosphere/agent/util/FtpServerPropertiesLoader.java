@@ -16,6 +16,8 @@
 
 package com.musala.atmosphere.agent.util;
 
+import org.apache.log4j.Logger;
+
 import com.musala.atmosphere.commons.util.PropertiesLoader;
 
 /**
@@ -25,8 +27,14 @@ import com.musala.atmosphere.commons.util.PropertiesLoader;
  *
  */
 public class FtpServerPropertiesLoader {
+    private static final Logger LOGGER = Logger.getLogger(FtpServerPropertiesLoader.class.getCanonicalName());
+
     private static final int DEFAULT_FTP_SERVER_PORT = 21;
 
+    private static final int DEFAULT_FTP_CONNECTIONS_COUNT = 4;
+
+    private static final int DEFAULT_FTP_RETRIES_COUNT = 3;
+
     private static final String FTP_SERVER_PROPERTIES_FILE = "./ftpserver.properties";
 
     /**
@@ -115,4 +123,51 @@ public class FtpServerPropertiesLoader {
         return ftpHomeDirectory;
     }
 
+    /**
+     * Gets the number of the parallel connections used for uploading files to the FTP server.
+     *
+     * @return the number of the FTP connections, or the default one(4) if it is not specified in the config file
+     */
+    public static int getConnectionsCount() {
+        return getOptionalInt(FtpServerProperties.FTP_CONNECTIONS, DEFAULT_FTP_CONNECTIONS_COUNT, 1);
+    }
+
+    /**
+     * Gets the number of times a failed upload of a file is retried before the file is dropped from the queue.
+     *
+     * @return the number of the retries, which may be 0, or the default one(3) if it is not specified in the config
+     *         file
+     */
+    public static int getRetriesCount() {
+        return getOptionalInt(FtpServerProperties.FTP_RETRIES, DEFAULT_FTP_RETRIES_COUNT, 0);
+    }
+
+    /**
+     * Gets an optional integer property. Values below the minimum are raised to it.
+     *
+     * @param property
+     *        - the FTP Server property
+     * @param defaultValue
+     *        - the value used when the property is not specified or is not a valid integer
+     * @param minValue
+     *        - the smallest allowed value
+     * @return the value of the property
+     */
+    private static int getOptionalInt(FtpServerProperties property, int defaultValue, int minValue) {
+        String value = getPropertyString(property);
+
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return Math.max(Integer.parseInt(value.trim()), minValue);
+        } catch (NumberFormatException e) {
+            LOGGER.warn(String.format("The value \"%s\" of %s is not a valid integer, %d is used instead.",
+                                      value,
+                                      property,
+                                      defaultValue));
+            return defaultValue;
+        }
+    }
 }
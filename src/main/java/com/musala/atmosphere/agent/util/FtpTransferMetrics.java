@@ -0,0 +1,114 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the throughput statistics of the uploads to the FTP server. The time is counted only while at least one
+ * upload is running, so the throughput is not lowered by the time the queue is empty.
+ */
+public class FtpTransferMetrics {
+    private final AtomicLong uploadedFilesCount = new AtomicLong();
+
+    private final AtomicLong failedFilesCount = new AtomicLong();
+
+    private final AtomicLong retriesCount = new AtomicLong();
+
+    private final AtomicLong uploadedBytes = new AtomicLong();
+
+    private int activeUploadsCount;
+
+    private long busyTime;
+
+    private long busyPeriodStart;
+
+    /**
+     * Marks the start of an upload.
+     */
+    public synchronized void uploadStarted() {
+        if (activeUploadsCount++ == 0) {
+            busyPeriodStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * Marks the end of an upload, successful or not.
+     *
+     * @param bytes
+     *        - the number of the uploaded bytes
+     */
+    public synchronized void uploadFinished(long bytes) {
+        uploadedBytes.addAndGet(bytes);
+
+        if (--activeUploadsCount == 0) {
+            busyTime += System.nanoTime() - busyPeriodStart;
+        }
+    }
+
+    public void fileUploaded() {
+        uploadedFilesCount.incrementAndGet();
+    }
+
+    public void fileFailed() {
+        failedFilesCount.incrementAndGet();
+    }
+
+    public void uploadRetried() {
+        retriesCount.incrementAndGet();
+    }
+
+    public long getUploadedFilesCount() {
+        return uploadedFilesCount.get();
+    }
+
+    public long getFailedFilesCount() {
+        return failedFilesCount.get();
+    }
+
+    public long getRetriesCount() {
+        return retriesCount.get();
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes.get();
+    }
+
+    /**
+     * Gets the average upload throughput of all connections together.
+     *
+     * @return the uploaded bytes per second while uploading
+     */
+    public synchronized double getThroughput() {
+        long time = busyTime;
+        if (activeUploadsCount > 0) {
+            time += System.nanoTime() - busyPeriodStart;
+        }
+
+        return time > 0 ? uploadedBytes.get() * 1e9 / time : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d files uploaded, %d failed, %d retries, %.1f MB at %.1f KB/s",
+                             getUploadedFilesCount(),
+                             getFailedFilesCount(),
+                             getRetriesCount(),
+                             getUploadedBytes() / 1e6,
+                             getThroughput() / 1e3);
+    }
+}
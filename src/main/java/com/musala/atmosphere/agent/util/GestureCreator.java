@@ -16,6 +16,10 @@
 
 package com.musala.atmosphere.agent.util;
 
+import java.util.List;
+
+import com.musala.atmosphere.agent.util.gesture.GestureScript;
+import com.musala.atmosphere.agent.util.gesture.TimedPoint;
 import com.musala.atmosphere.commons.beans.SwipeDirection;
 import com.musala.atmosphere.commons.geometry.Point;
 import com.musala.atmosphere.commons.gesture.Anchor;
@@ -42,6 +46,26 @@ public class GestureCreator {
 
     private static int DRAG_DURATION = 3000;
 
+    /**
+     * Creates a single tap {@link Gesture} on the passed point.
+     *
+     * @param x
+     *        - the x coordinate of the tap point
+     * @param y
+     *        - the y coordinate of the tap point
+     * @return a {@link Gesture} that represents a tap on a device
+     */
+    public static Gesture createTap(float x, float y) {
+        Gesture tap = new Gesture();
+
+        Timeline tapTimeline = new Timeline();
+        Anchor tapAnchor = new Anchor(x, y, 0);
+        tapTimeline.add(tapAnchor);
+        tap.add(tapTimeline);
+
+        return tap;
+    }
+
     /**
      * Creates a double tap {@link Gesture} on the passed point.
      *
@@ -223,4 +247,28 @@ public class GestureCreator {
         dragAndDrop.add(dragTimeline);
         return dragAndDrop;
     }
+
+    /**
+     * Creates a {@link Gesture} from a compiled {@link GestureScript gesture script}. Each pointer track of the script
+     * becomes a separate {@link Timeline}.
+     *
+     * @param script
+     *        - the compiled gesture script
+     * @return a {@link Gesture} playing all statements of the script
+     */
+    public static Gesture createFromScript(GestureScript script) {
+        Gesture gesture = new Gesture();
+
+        for (List<TimedPoint> track : script.getTracks()) {
+            Timeline timeline = new Timeline();
+
+            for (TimedPoint point : track) {
+                timeline.add(new Anchor(point.getX(), point.getY(), point.getTime()));
+            }
+
+            gesture.add(timeline);
+        }
+
+        return gesture;
+    }
 }
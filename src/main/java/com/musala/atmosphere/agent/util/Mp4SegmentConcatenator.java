@@ -0,0 +1,405 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.coremedia.iso.IsoFile;
+import com.coremedia.iso.boxes.Box;
+import com.coremedia.iso.boxes.ChunkOffset64BitBox;
+import com.coremedia.iso.boxes.CompositionTimeToSample;
+import com.coremedia.iso.boxes.EditBox;
+import com.coremedia.iso.boxes.FileTypeBox;
+import com.coremedia.iso.boxes.MovieBox;
+import com.coremedia.iso.boxes.SampleSizeBox;
+import com.coremedia.iso.boxes.SampleTableBox;
+import com.coremedia.iso.boxes.SampleToChunkBox;
+import com.coremedia.iso.boxes.SyncSampleBox;
+import com.coremedia.iso.boxes.TimeToSampleBox;
+import com.coremedia.iso.boxes.TrackBox;
+import com.coremedia.iso.boxes.mdat.MediaDataBox;
+import com.googlecode.mp4parser.FileDataSourceImpl;
+
+/**
+ * Concatenates the MP4 segments of a screen recording without loading the samples in memory. The media data of each
+ * segment is copied to the output file as a whole with {@link FileChannel#transferTo}, and only the sample tables are
+ * merged in memory, so the used heap does not depend on the size of the video, but only on the number of the samples.
+ * <p>
+ * The segments must contain a single video track with the same codec configuration and time scale, which is the case
+ * for the segments of a single <code>screenrecord</code> session. Other segments are rejected with an
+ * {@link IOException}.
+ * </p>
+ */
+public class Mp4SegmentConcatenator {
+    private static final String VIDEO_HANDLER_TYPE = "vide";
+
+    private static final int LARGE_BOX_HEADER_SIZE = 16;
+
+    private static final int BOX_HEADER_SIZE = 8;
+
+    /**
+     * The sample tables of the video track of a single segment.
+     */
+    private static class Segment {
+        private final File file;
+
+        private final long timescale;
+
+        private final long duration;
+
+        private final byte[] sampleDescription;
+
+        private final List<TimeToSampleBox.Entry> timeToSampleEntries;
+
+        private final long[] sampleSizes;
+
+        private final List<SampleToChunkBox.Entry> sampleToChunkEntries;
+
+        private final long[] chunkOffsets;
+
+        private final long[] syncSamples;
+
+        private final List<CompositionTimeToSample.Entry> compositionTimeEntries;
+
+        private final long mediaDataStart;
+
+        private final long mediaDataEnd;
+
+        private Segment(File file, IsoFile isoFile) throws IOException {
+            this.file = file;
+
+            TrackBox videoTrack = getVideoTrack(isoFile, file);
+            SampleTableBox sampleTable = videoTrack.getSampleTableBox();
+
+            timescale = videoTrack.getMediaBox().getMediaHeaderBox().getTimescale();
+            duration = videoTrack.getMediaBox().getMediaHeaderBox().getDuration();
+
+            ByteArrayOutputStream sampleDescriptionBytes = new ByteArrayOutputStream();
+            sampleTable.getSampleDescriptionBox().getBox(Channels.newChannel(sampleDescriptionBytes));
+            sampleDescription = sampleDescriptionBytes.toByteArray();
+
+            timeToSampleEntries = sampleTable.getTimeToSampleBox().getEntries();
+
+            SampleSizeBox sampleSizeBox = sampleTable.getSampleSizeBox();
+            if (sampleSizeBox.getSampleSize() > 0) {
+                sampleSizes = new long[(int) sampleSizeBox.getSampleCount()];
+                Arrays.fill(sampleSizes, sampleSizeBox.getSampleSize());
+            } else {
+                sampleSizes = sampleSizeBox.getSampleSizes();
+            }
+
+            sampleToChunkEntries = sampleTable.getSampleToChunkBox().getEntries();
+            chunkOffsets = sampleTable.getChunkOffsetBox().getChunkOffsets();
+
+            SyncSampleBox syncSampleBox = sampleTable.getSyncSampleBox();
+            syncSamples = syncSampleBox != null ? syncSampleBox.getSampleNumber() : null;
+
+            CompositionTimeToSample compositionTimeBox = sampleTable.getCompositionTimeToSample();
+            compositionTimeEntries = compositionTimeBox != null ? compositionTimeBox.getEntries() : null;
+
+            List<MediaDataBox> mediaDataBoxes = isoFile.getBoxes(MediaDataBox.class);
+            if (mediaDataBoxes.size() != 1) {
+                throw new IOException(String.format("The segment %s has %d media data boxes, expected one.",
+                                                    file,
+                                                    mediaDataBoxes.size()));
+            }
+
+            MediaDataBox mediaDataBox = mediaDataBoxes.get(0);
+            mediaDataStart = mediaDataBox.getOffset() + getBoxHeaderSize(file, mediaDataBox.getOffset());
+            mediaDataEnd = mediaDataBox.getOffset() + mediaDataBox.getSize();
+        }
+    }
+
+    private Mp4SegmentConcatenator() {
+    }
+
+    /**
+     * Concatenates the video of the given segments into a single MP4 file.
+     *
+     * @param segmentFiles
+     *        - the segments, in the order of playing
+     * @param outputFile
+     *        - the file where the concatenated video is written
+     * @throws IOException
+     *         if reading or writing fails, or the segments can not be concatenated without decoding
+     */
+    public static void concatenate(List<File> segmentFiles, File outputFile) throws IOException {
+        if (segmentFiles.isEmpty()) {
+            throw new IOException("There are no segments to concatenate.");
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        for (File segmentFile : segmentFiles) {
+            try (IsoFile isoFile = new IsoFile(new FileDataSourceImpl(segmentFile))) {
+                segments.add(new Segment(segmentFile, isoFile));
+            }
+        }
+
+        Segment firstSegment = segments.get(0);
+        for (Segment segment : segments) {
+            if (segment.timescale != firstSegment.timescale
+                    || !Arrays.equals(segment.sampleDescription, firstSegment.sampleDescription)) {
+                throw new IOException(String.format("The codec configuration of %s differs from the one of %s.",
+                                                    segment.file,
+                                                    firstSegment.file));
+            }
+        }
+
+        try (IsoFile firstIsoFile = new IsoFile(new FileDataSourceImpl(firstSegment.file));
+                RandomAccessFile output = new RandomAccessFile(outputFile, "rw")) {
+            output.setLength(0);
+            FileChannel outputChannel = output.getChannel();
+
+            for (FileTypeBox fileTypeBox : firstIsoFile.getBoxes(FileTypeBox.class)) {
+                fileTypeBox.getBox(outputChannel);
+            }
+
+            long[] chunkOffsets = writeMediaData(segments, outputChannel);
+
+            MovieBox movieBox = firstIsoFile.getMovieBox();
+            TrackBox videoTrack = getVideoTrack(firstIsoFile, firstSegment.file);
+            updateTrack(movieBox, videoTrack, segments, chunkOffsets);
+
+            movieBox.getBox(outputChannel);
+        }
+    }
+
+    /**
+     * Writes a single media data box with the media data of all segments.
+     *
+     * @return the chunk offsets of all segments, moved to their place in the output
+     */
+    private static long[] writeMediaData(List<Segment> segments, FileChannel outputChannel) throws IOException {
+        long mediaDataBoxStart = outputChannel.position();
+
+        // the size is not known yet and may not fit in 32 bits, so the large size field is used
+        ByteBuffer header = ByteBuffer.allocate(LARGE_BOX_HEADER_SIZE);
+        header.putInt(1).put(IsoFile.fourCCtoBytes(MediaDataBox.TYPE)).putLong(0);
+        header.flip();
+        outputChannel.write(header);
+
+        List<Long> chunkOffsets = new ArrayList<>();
+        for (Segment segment : segments) {
+            long segmentDataStart = outputChannel.position();
+
+            try (FileChannel segmentChannel = new RandomAccessFile(segment.file, "r").getChannel()) {
+                long position = segment.mediaDataStart;
+                while (position < segment.mediaDataEnd) {
+                    long transferred = segmentChannel.transferTo(position,
+                                                                 segment.mediaDataEnd - position,
+                                                                 outputChannel);
+                    if (transferred <= 0) {
+                        throw new IOException(String.format("Copying the media data of %s failed.", segment.file));
+                    }
+
+                    position += transferred;
+                }
+            }
+
+            outputChannel.position(segmentDataStart + segment.mediaDataEnd - segment.mediaDataStart);
+
+            for (long chunkOffset : segment.chunkOffsets) {
+                chunkOffsets.add(chunkOffset - segment.mediaDataStart + segmentDataStart);
+            }
+        }
+
+        long mediaDataBoxEnd = outputChannel.position();
+        ByteBuffer size = ByteBuffer.allocate(8);
+        size.putLong(mediaDataBoxEnd - mediaDataBoxStart);
+        size.flip();
+        outputChannel.write(size, mediaDataBoxStart + BOX_HEADER_SIZE);
+
+        long[] offsets = new long[chunkOffsets.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = chunkOffsets.get(i);
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Replaces the sample tables and the durations of the track with the merged ones of all segments.
+     */
+    private static void updateTrack(MovieBox movieBox, TrackBox track, List<Segment> segments, long[] chunkOffsets) {
+        List<TimeToSampleBox.Entry> timeToSampleEntries = new ArrayList<>();
+        List<SampleToChunkBox.Entry> sampleToChunkEntries = new ArrayList<>();
+        List<CompositionTimeToSample.Entry> compositionTimeEntries = new ArrayList<>();
+        List<Long> syncSamples = new ArrayList<>();
+        boolean hasSyncSamples = false;
+        boolean hasCompositionTimes = false;
+
+        int samplesCount = 0;
+        for (Segment segment : segments) {
+            samplesCount += segment.sampleSizes.length;
+            hasSyncSamples |= segment.syncSamples != null;
+            hasCompositionTimes |= segment.compositionTimeEntries != null;
+        }
+
+        long[] sampleSizes = new long[samplesCount];
+        long duration = 0;
+        int samplesBefore = 0;
+        long chunksBefore = 0;
+
+        for (Segment segment : segments) {
+            System.arraycopy(segment.sampleSizes, 0, sampleSizes, samplesBefore, segment.sampleSizes.length);
+
+            for (TimeToSampleBox.Entry entry : segment.timeToSampleEntries) {
+                TimeToSampleBox.Entry lastEntry = getLast(timeToSampleEntries);
+                if (lastEntry != null && lastEntry.getDelta() == entry.getDelta()) {
+                    lastEntry.setCount(lastEntry.getCount() + entry.getCount());
+                } else {
+                    timeToSampleEntries.add(new TimeToSampleBox.Entry(entry.getCount(), entry.getDelta()));
+                }
+            }
+
+            for (SampleToChunkBox.Entry entry : segment.sampleToChunkEntries) {
+                SampleToChunkBox.Entry lastEntry = getLast(sampleToChunkEntries);
+                if (lastEntry == null || lastEntry.getSamplesPerChunk() != entry.getSamplesPerChunk()
+                        || lastEntry.getSampleDescriptionIndex() != entry.getSampleDescriptionIndex()) {
+                    sampleToChunkEntries.add(new SampleToChunkBox.Entry(entry.getFirstChunk() + chunksBefore,
+                                                                        entry.getSamplesPerChunk(),
+                                                                        entry.getSampleDescriptionIndex()));
+                }
+            }
+
+            if (hasSyncSamples) {
+                if (segment.syncSamples != null) {
+                    for (long syncSample : segment.syncSamples) {
+                        syncSamples.add(syncSample + samplesBefore);
+                    }
+                } else {
+                    // a segment without sync sample table has only sync samples
+                    for (int i = 1; i <= segment.sampleSizes.length; i++) {
+                        syncSamples.add((long) i + samplesBefore);
+                    }
+                }
+            }
+
+            if (hasCompositionTimes) {
+                if (segment.compositionTimeEntries != null) {
+                    compositionTimeEntries.addAll(segment.compositionTimeEntries);
+                } else {
+                    compositionTimeEntries.add(new CompositionTimeToSample.Entry(segment.sampleSizes.length, 0));
+                }
+            }
+
+            duration += segment.duration;
+            samplesBefore += segment.sampleSizes.length;
+            chunksBefore += segment.chunkOffsets.length;
+        }
+
+        SampleTableBox sampleTable = track.getSampleTableBox();
+        sampleTable.getTimeToSampleBox().setEntries(timeToSampleEntries);
+        sampleTable.getSampleToChunkBox().setEntries(sampleToChunkEntries);
+
+        SampleSizeBox sampleSizeBox = sampleTable.getSampleSizeBox();
+        sampleSizeBox.setSampleSize(0);
+        sampleSizeBox.setSampleSizes(sampleSizes);
+
+        ChunkOffset64BitBox chunkOffsetBox = new ChunkOffset64BitBox();
+        chunkOffsetBox.setChunkOffsets(chunkOffsets);
+
+        SyncSampleBox syncSampleBox = null;
+        if (hasSyncSamples) {
+            long[] syncSampleNumbers = new long[syncSamples.size()];
+            for (int i = 0; i < syncSampleNumbers.length; i++) {
+                syncSampleNumbers[i] = syncSamples.get(i);
+            }
+
+            syncSampleBox = new SyncSampleBox();
+            syncSampleBox.setSampleNumber(syncSampleNumbers);
+        }
+
+        CompositionTimeToSample compositionTimeBox = null;
+        if (hasCompositionTimes) {
+            compositionTimeBox = new CompositionTimeToSample();
+            compositionTimeBox.setEntries(compositionTimeEntries);
+        }
+
+        List<Box> sampleTableBoxes = new ArrayList<>();
+        for (Box box : sampleTable.getBoxes()) {
+            String type = box.getType();
+            if (type.equals("stco") || type.equals("co64")) {
+                sampleTableBoxes.add(chunkOffsetBox);
+            } else if (type.equals(SyncSampleBox.TYPE) || type.equals(CompositionTimeToSample.TYPE)) {
+                continue;
+            } else {
+                sampleTableBoxes.add(box);
+            }
+        }
+        if (syncSampleBox != null) {
+            sampleTableBoxes.add(syncSampleBox);
+        }
+        if (compositionTimeBox != null) {
+            sampleTableBoxes.add(compositionTimeBox);
+        }
+        sampleTable.setBoxes(sampleTableBoxes);
+
+        // the edit list of the first segment does not describe the whole video
+        List<Box> trackBoxes = new ArrayList<>();
+        for (Box box : track.getBoxes()) {
+            if (!(box instanceof EditBox)) {
+                trackBoxes.add(box);
+            }
+        }
+        track.setBoxes(trackBoxes);
+
+        long mediaTimescale = segments.get(0).timescale;
+        long movieDuration = duration * movieBox.getMovieHeaderBox().getTimescale() / mediaTimescale;
+
+        track.getMediaBox().getMediaHeaderBox().setDuration(duration);
+        track.getTrackHeaderBox().setDuration(movieDuration);
+        movieBox.getMovieHeaderBox().setDuration(movieDuration);
+    }
+
+    private static TrackBox getVideoTrack(IsoFile isoFile, File file) throws IOException {
+        MovieBox movieBox = isoFile.getMovieBox();
+        if (movieBox == null) {
+            throw new IOException(String.format("The segment %s has no movie box.", file));
+        }
+
+        List<TrackBox> tracks = movieBox.getBoxes(TrackBox.class);
+        if (tracks.size() != 1
+                || !VIDEO_HANDLER_TYPE.equals(tracks.get(0).getMediaBox().getHandlerBox().getHandlerType())) {
+            throw new IOException(String.format("The segment %s does not have a single video track.", file));
+        }
+
+        return tracks.get(0);
+    }
+
+    private static int getBoxHeaderSize(File file, long boxOffset) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            input.seek(boxOffset);
+            long size = input.readInt() & 0xFFFFFFFFL;
+
+            return size == 1 ? LARGE_BOX_HEADER_SIZE : BOX_HEADER_SIZE;
+        }
+    }
+
+    private static <T> T getLast(List<T> list) {
+        return list.isEmpty() ? null : list.get(list.size() - 1);
+    }
+}
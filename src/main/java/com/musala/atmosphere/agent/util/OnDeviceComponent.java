@@ -28,11 +28,7 @@ public enum OnDeviceComponent {
     UI_AUTOMATOR_BRIDGE(
             "Atmosphere UiAutomator Bridge", "atmosphere-uiautomator-bridge.jar", "com.musala.atmosphere.uiautomator.ActionDispatcher", null),
     IME(
-            "Atmosphere Input Method Engine", "atmosphere-ime.apk", "com.musala.atmosphere.ime", "com.musala.atmosphere.ime/.AtmosphereIME"),
-    START_SCREENRECORD_SCRIPT(
-            "Start Screenrecord Script", "start_screenrecord.sh", null, null),
-    STOP_SCREENRECORD_SCRIPT(
-            "Stop Screenrecord Script", "stop_screenrecord.sh", null, null);
+            "Atmosphere Input Method Engine", "atmosphere-ime.apk", "com.musala.atmosphere.ime", "com.musala.atmosphere.ime/.AtmosphereIME");
 
     private OnDeviceComponent(String humanReadableName, String fileName, String packageName, String imeId) {
         this.humanReadableName = humanReadableName;
@@ -0,0 +1,70 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import java.io.Serializable;
+
+/**
+ * The response to a tagged artifact request (screenshot, UI XML dump, UI tree). It always carries the content tag of
+ * the current artifact, while the artifact itself is included only when it differs from the one the client already
+ * has.
+ *
+ * @param <T>
+ *        - the type of the artifact
+ */
+public class TaggedContent<T> implements Serializable {
+    private static final long serialVersionUID = 4418231775960152013L;
+
+    private final String tag;
+
+    private final T content;
+
+    /**
+     * Creates a tagged response.
+     *
+     * @param tag
+     *        - the content tag of the current artifact
+     * @param content
+     *        - the artifact or <code>null</code> if the client already has it
+     */
+    public TaggedContent(String tag, T content) {
+        this.tag = tag;
+        this.content = content;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Gets the artifact.
+     *
+     * @return the artifact or <code>null</code> if it has not changed since the client has received it
+     */
+    public T getContent() {
+        return content;
+    }
+
+    /**
+     * Checks whether the artifact has changed since the client has received it.
+     *
+     * @return <code>true</code> if the response carries the artifact, <code>false</code> otherwise
+     */
+    public boolean isChanged() {
+        return content != null;
+    }
+}
@@ -0,0 +1,344 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A persistent queue of the pending file transfers, stored as an append-only journal. Each change of the queue appends
+ * a single record to the journal file and the current state is kept in memory, so adding and taking a transfer do not
+ * depend on the length of the queue. The journal is rewritten with only the live transfers when most of its records
+ * are obsolete.
+ * <p>
+ * A transfer is <i>pending</i> after it is added, <i>in progress</i> after it is taken from the queue and is removed
+ * from the journal when it is completed. When the journal is loaded, the transfers that were in progress are put back
+ * at the head of the queue, since they were interrupted. A last record torn by a crash is dropped and lines which are
+ * not records at all are loaded as pending transfers, so the queue files of the older agents, with a file path on each
+ * line, are loaded too.
+ * </p>
+ */
+public class TransferJournal implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(TransferJournal.class.getCanonicalName());
+
+    private static final String ADDED_RECORD = "A";
+
+    private static final String STARTED_RECORD = "S";
+
+    private static final String COMPLETED_RECORD = "D";
+
+    private static final Pattern RECORD_PATTERN = Pattern.compile("([ASD]) (\\d+)(?: (.+))?");
+
+    /**
+     * Matches any line written as a record, including the malformed ones, which must not be loaded as file paths.
+     */
+    private static final Pattern RECORD_PREFIX_PATTERN = Pattern.compile("[ASD](?: .*)?");
+
+    /**
+     * The number of obsolete records that are always allowed before the journal is compacted.
+     */
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    /**
+     * A transfer taken from the journal.
+     */
+    public static class Transfer {
+        private final long id;
+
+        private final String filePath;
+
+        private Transfer(long id, String filePath) {
+            this.id = id;
+            this.filePath = filePath;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getFilePath() {
+            return filePath;
+        }
+    }
+
+    private final File journalFile;
+
+    private final Deque<Long> pendingTransferIds = new ArrayDeque<>();
+
+    private final Map<Long, String> transferPaths = new LinkedHashMap<>();
+
+    private final Map<Long, String> inProgressTransfers = new LinkedHashMap<>();
+
+    private FileOutputStream journalStream;
+
+    private long nextTransferId = 1;
+
+    private int recordsCount;
+
+    /**
+     * Loads the journal from the given file, or creates a new one if the file does not exist.
+     *
+     * @param journalFile
+     *        - the file of the journal
+     * @throws IOException
+     *         if reading or writing the journal file fails
+     */
+    public TransferJournal(File journalFile) throws IOException {
+        this.journalFile = journalFile;
+
+        if (journalFile.exists()) {
+            replay(readCompleteLines(journalFile));
+        }
+
+        if (!inProgressTransfers.isEmpty()) {
+            LOGGER.info(String.format("Recovered %d interrupted transfers from %s.",
+                                      inProgressTransfers.size(),
+                                      journalFile.getName()));
+
+            List<Long> interruptedTransferIds = new ArrayList<>(inProgressTransfers.keySet());
+            for (int i = interruptedTransferIds.size() - 1; i >= 0; i--) {
+                long transferId = interruptedTransferIds.get(i);
+                pendingTransferIds.addFirst(transferId);
+                transferPaths.put(transferId, inProgressTransfers.remove(transferId));
+            }
+        }
+
+        compact();
+    }
+
+    /**
+     * Adds a transfer at the tail of the queue.
+     *
+     * @param filePath
+     *        - the path to the file to be transferred
+     * @return the id of the added transfer
+     * @throws IOException
+     *         if writing to the journal fails
+     */
+    public synchronized long add(String filePath) throws IOException {
+        long transferId = nextTransferId++;
+        append(String.format("%s %d %s", ADDED_RECORD, transferId, filePath));
+
+        pendingTransferIds.addLast(transferId);
+        transferPaths.put(transferId, filePath);
+
+        return transferId;
+    }
+
+    /**
+     * Takes the transfer at the head of the queue and marks it as in progress.
+     *
+     * @return the transfer at the head of the queue, or <code>null</code> if the queue is empty
+     * @throws IOException
+     *         if writing to the journal fails
+     */
+    public synchronized Transfer take() throws IOException {
+        Long transferId = pendingTransferIds.peekFirst();
+        if (transferId == null) {
+            return null;
+        }
+
+        append(String.format("%s %d", STARTED_RECORD, transferId));
+
+        pendingTransferIds.removeFirst();
+        String filePath = transferPaths.remove(transferId);
+        inProgressTransfers.put(transferId, filePath);
+
+        return new Transfer(transferId, filePath);
+    }
+
+    /**
+     * Removes a transfer taken from the queue, after it is completed or given up.
+     *
+     * @param transfer
+     *        - the transfer to remove
+     * @throws IOException
+     *         if writing to the journal fails
+     */
+    public synchronized void complete(Transfer transfer) throws IOException {
+        if (inProgressTransfers.remove(transfer.getId()) == null) {
+            return;
+        }
+
+        append(String.format("%s %d", COMPLETED_RECORD, transfer.getId()));
+
+        if (recordsCount > COMPACTION_THRESHOLD + 2 * getLiveRecordsCount()) {
+            compact();
+        }
+    }
+
+    /**
+     * Gets the number of the pending transfers.
+     *
+     * @return the number of the transfers in the queue, not counting the ones in progress
+     */
+    public synchronized int size() {
+        return pendingTransferIds.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return pendingTransferIds.isEmpty();
+    }
+
+    /**
+     * Gets the number of the transfers that are taken from the queue, but are not completed yet.
+     *
+     * @return the number of the transfers in progress
+     */
+    public synchronized int getInProgressCount() {
+        return inProgressTransfers.size();
+    }
+
+    /**
+     * Gets the paths to the files of the pending transfers and the transfers in progress.
+     *
+     * @return the paths to the files which are not transferred yet
+     */
+    public synchronized List<String> getFilePaths() {
+        List<String> filePaths = new ArrayList<>(inProgressTransfers.values());
+        for (Long transferId : pendingTransferIds) {
+            filePaths.add(transferPaths.get(transferId));
+        }
+
+        return filePaths;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journalStream != null) {
+            journalStream.close();
+            journalStream = null;
+        }
+    }
+
+    /**
+     * Reads the lines of the journal file. Every record ends with a line separator, so a last line without one is a
+     * record torn by a crash while it was written and is dropped.
+     */
+    private static List<String> readCompleteLines(File journalFile) throws IOException {
+        String content = new String(Files.readAllBytes(journalFile.toPath()), StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<>(Arrays.asList(content.split("\\r?\\n")));
+
+        if (!content.isEmpty() && !content.endsWith("\n")) {
+            String tornRecord = lines.remove(lines.size() - 1);
+            LOGGER.warn(String.format("Dropped the torn record \"%s\" of %s.", tornRecord, journalFile.getName()));
+        }
+
+        return lines;
+    }
+
+    private void replay(List<String> lines) {
+        for (String line : lines) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            Matcher matcher = RECORD_PATTERN.matcher(line);
+            if (!matcher.matches()) {
+                if (RECORD_PREFIX_PATTERN.matcher(line).matches()) {
+                    LOGGER.warn(String.format("Skipped the malformed record \"%s\" of %s.",
+                                              line,
+                                              journalFile.getName()));
+                    continue;
+                }
+
+                // a queue file of an older agent, with a path on each line
+                long transferId = nextTransferId++;
+                pendingTransferIds.addLast(transferId);
+                transferPaths.put(transferId, line.trim());
+                continue;
+            }
+
+            String recordType = matcher.group(1);
+            long transferId = Long.parseLong(matcher.group(2));
+            nextTransferId = Math.max(nextTransferId, transferId + 1);
+
+            if (recordType.equals(ADDED_RECORD) && matcher.group(3) != null) {
+                pendingTransferIds.addLast(transferId);
+                transferPaths.put(transferId, matcher.group(3));
+            } else if (recordType.equals(STARTED_RECORD) && transferPaths.containsKey(transferId)) {
+                pendingTransferIds.remove(transferId);
+                inProgressTransfers.put(transferId, transferPaths.remove(transferId));
+            } else if (recordType.equals(COMPLETED_RECORD)) {
+                inProgressTransfers.remove(transferId);
+                if (transferPaths.remove(transferId) != null) {
+                    pendingTransferIds.remove(transferId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the records of the live transfers and replaces the journal file atomically.
+     */
+    private void compact() throws IOException {
+        close();
+
+        StringBuilder records = new StringBuilder();
+        for (Map.Entry<Long, String> transfer : inProgressTransfers.entrySet()) {
+            records.append(String.format("%s %d %s%n", ADDED_RECORD, transfer.getKey(), transfer.getValue()));
+            records.append(String.format("%s %d%n", STARTED_RECORD, transfer.getKey()));
+        }
+        for (Long transferId : pendingTransferIds) {
+            records.append(String.format("%s %d %s%n", ADDED_RECORD, transferId, transferPaths.get(transferId)));
+        }
+
+        File compactedFile = new File(journalFile.getPath() + ".tmp");
+        try (FileOutputStream compactedStream = new FileOutputStream(compactedFile)) {
+            compactedStream.write(records.toString().getBytes(StandardCharsets.UTF_8));
+            compactedStream.getFD().sync();
+        }
+
+        Files.move(compactedFile.toPath(),
+                   journalFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+
+        journalStream = new FileOutputStream(journalFile, true);
+        recordsCount = getLiveRecordsCount();
+    }
+
+    private void append(String record) throws IOException {
+        if (journalStream == null) {
+            throw new IOException("The transfer journal " + journalFile.getName() + " is closed.");
+        }
+
+        journalStream.write(String.format("%s%n", record).getBytes(StandardCharsets.UTF_8));
+        journalStream.getFD().sync();
+        recordsCount++;
+    }
+
+    private int getLiveRecordsCount() {
+        return pendingTransferIds.size() + 2 * inProgressTransfers.size();
+    }
+}
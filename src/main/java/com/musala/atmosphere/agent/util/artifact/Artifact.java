@@ -0,0 +1,92 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.artifact;
+
+import java.io.File;
+
+/**
+ * An artifact kept in the {@link ArtifactStore}. The id of the artifact is the SHA-1 hash of its type and content, so
+ * identical payloads of the same type always get the same id.
+ */
+public class Artifact {
+    private final String id;
+
+    private final ArtifactType type;
+
+    private final File file;
+
+    private final long size;
+
+    private long lastAccessTime;
+
+    Artifact(String id, ArtifactType type, File file, long size, long lastAccessTime) {
+        this.id = id;
+        this.type = type;
+        this.file = file;
+        this.size = size;
+        this.lastAccessTime = lastAccessTime;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ArtifactType getType() {
+        return type;
+    }
+
+    /**
+     * Gets the file of the artifact. The file is named after the artifact, as it was when stored, and is valid only
+     * until the artifact is evicted.
+     *
+     * @return the file of the artifact
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public String getName() {
+        return file.getName();
+    }
+
+    /**
+     * Gets the size of the artifact.
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the last time the artifact was stored or read.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    void setLastAccessTime(long lastAccessTime) {
+        this.lastAccessTime = lastAccessTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s (%s, %d bytes)", type, id, getName(), size);
+    }
+}
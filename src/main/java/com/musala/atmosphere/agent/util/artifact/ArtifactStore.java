@@ -0,0 +1,576 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.artifact;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+
+import com.musala.atmosphere.agent.util.AgentPropertiesLoader;
+import com.musala.atmosphere.agent.util.ContentFingerprint;
+
+/**
+ * Keeps the logs and screen records produced on the agent, keyed by the hash of their type and content. Identical
+ * payloads of the same type are stored once. Every {@link ArtifactType type} has a disk quota and when a new artifact
+ * does not fit, the least recently used artifacts of its type are evicted. Artifacts of any type are evicted as well
+ * when the free space on the disk drops below a limit, so the disk never fills up in the middle of a run.
+ * {@link #pin(File) Pinned} artifacts, e.g. the screen records waiting to be uploaded, are never evicted.
+ * <p>
+ * An artifact is kept as <code>&lt;type directory&gt;/&lt;id&gt;/&lt;name&gt;</code>, so its original name is
+ * preserved. The index is rebuilt from the directories when the store is created and the last modification time of
+ * the files keeps the order of use between restarts of the agent.
+ * </p>
+ */
+public class ArtifactStore {
+    /**
+     * The directory where the artifacts are stored by default.
+     */
+    public static final String DEFAULT_ARTIFACTS_DIRECTORY = System.getProperty("user.dir") + File.separator
+            + "artifacts";
+
+    private static final Logger LOGGER = Logger.getLogger(ArtifactStore.class.getCanonicalName());
+
+    private static final String ID_PATTERN = "[0-9a-f]{40}";
+
+    private static final String INVALID_NAME_CHARACTERS = "[^\\w.-]";
+
+    private static final String DEFAULT_ARTIFACT_NAME = "artifact";
+
+    private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
+    private final File rootDirectory;
+
+    private final Map<ArtifactType, Long> quotas;
+
+    private final long minFreeSpace;
+
+    private final Map<String, Artifact> artifacts = new HashMap<>();
+
+    private final Map<ArtifactType, LinkedHashMap<String, Artifact>> recentlyUsedArtifacts =
+            new EnumMap<>(ArtifactType.class);
+
+    private final Map<ArtifactType, Long> usedSpace = new EnumMap<>(ArtifactType.class);
+
+    private final Map<String, Integer> pinsCount = new HashMap<>();
+
+    private static class DefaultStoreLoader {
+        private static final ArtifactStore INSTANCE =
+                new ArtifactStore(new File(DEFAULT_ARTIFACTS_DIRECTORY),
+                                  AgentPropertiesLoader.getArtifactQuotas(),
+                                  AgentPropertiesLoader.getArtifactsMinFreeSpace());
+    }
+
+    /**
+     * Gets the store of the agent, located in the {@link #DEFAULT_ARTIFACTS_DIRECTORY default directory} and limited
+     * by the quotas from the agent properties.
+     *
+     * @return the artifact store of the agent
+     */
+    public static ArtifactStore getDefault() {
+        return DefaultStoreLoader.INSTANCE;
+    }
+
+    /**
+     * Creates a store in the given directory and loads the artifacts which are already there.
+     *
+     * @param rootDirectory
+     *        - the directory of the store
+     * @param quotas
+     *        - the maximum size of the artifacts of each type, in bytes. A type without quota is not limited.
+     * @param minFreeSpace
+     *        - the free space in bytes which should be left on the disk
+     */
+    public ArtifactStore(File rootDirectory, Map<ArtifactType, Long> quotas, long minFreeSpace) {
+        this.rootDirectory = rootDirectory;
+        this.quotas = new EnumMap<>(ArtifactType.class);
+        this.quotas.putAll(quotas);
+        this.minFreeSpace = minFreeSpace;
+
+        for (ArtifactType type : ArtifactType.values()) {
+            // access ordered, so the least recently used artifact is always the first one
+            recentlyUsedArtifacts.put(type, new LinkedHashMap<String, Artifact>(16, 0.75f, true));
+            usedSpace.put(type, 0L);
+            loadArtifacts(type);
+        }
+    }
+
+    /**
+     * Stores the given content. If the same content is already stored with the same type, the existing artifact is
+     * returned and it keeps its original name.
+     *
+     * @param type
+     *        - the type of the artifact
+     * @param content
+     *        - the content of the artifact
+     * @param name
+     *        - the file name of the artifact
+     * @return the stored artifact
+     * @throws IOException
+     *         if the artifact does not fit in the quota of its type or on the disk, or writing it fails
+     */
+    public synchronized Artifact store(ArtifactType type, byte[] content, String name) throws IOException {
+        String id = getId(type, ContentFingerprint.of(content));
+        Artifact existingArtifact = touch(id);
+        if (existingArtifact != null) {
+            return existingArtifact;
+        }
+
+        makeRoom(type, content.length);
+
+        File temporaryFile = createTemporaryFile(type);
+        try {
+            Files.write(temporaryFile.toPath(), content);
+            return add(id, type, temporaryFile, name);
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * Moves the given file into the store. If the same content is already stored with the same type, the file is
+     * deleted and the existing artifact is returned. The file is hashed before the store is locked, so large screen
+     * records do not block the other artifacts.
+     *
+     * @param type
+     *        - the type of the artifact
+     * @param file
+     *        - the file to be moved in the store; its name becomes the name of the artifact
+     * @return the stored artifact
+     * @throws IOException
+     *         if the artifact does not fit in the quota of its type or on the disk, or moving it fails
+     */
+    public Artifact store(ArtifactType type, File file) throws IOException {
+        return store(type, file, false);
+    }
+
+    /**
+     * Moves the given file into the store like {@link #store(ArtifactType, File)} and optionally pins the stored
+     * artifact, so it can not be evicted before the caller hands it over.
+     *
+     * @param type
+     *        - the type of the artifact
+     * @param file
+     *        - the file to be moved in the store; its name becomes the name of the artifact
+     * @param pin
+     *        - whether the stored artifact should be pinned; it has to be {@link #unpin(File) unpinned} by the caller
+     * @return the stored artifact
+     * @throws IOException
+     *         if the artifact does not fit in the quota of its type or on the disk, or moving it fails
+     */
+    public Artifact store(ArtifactType type, File file, boolean pin) throws IOException {
+        if (!file.isFile()) {
+            throw new FileNotFoundException(String.format("The artifact file %s does not exist.", file));
+        }
+
+        String id = getId(type, ContentFingerprint.of(file));
+
+        synchronized (this) {
+            Artifact artifact = touch(id);
+            if (artifact != null) {
+                file.delete();
+            } else {
+                makeRoom(type, file.length());
+
+                File temporaryFile = createTemporaryFile(type);
+                try {
+                    Files.move(file.toPath(), temporaryFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    artifact = add(id, type, temporaryFile, file.getName());
+                } finally {
+                    temporaryFile.delete();
+                }
+            }
+
+            if (pin) {
+                pin(artifact.getId());
+            }
+
+            return artifact;
+        }
+    }
+
+    /**
+     * Pins the artifact kept in the given file, so it is not evicted until it is unpinned. An artifact pinned several
+     * times is kept until it is unpinned the same number of times.
+     *
+     * @param file
+     *        - the file of the artifact
+     * @return <code>true</code> if the artifact was pinned, <code>false</code> if the file is not in the store
+     */
+    public synchronized boolean pin(File file) {
+        Artifact artifact = find(file);
+        if (artifact == null) {
+            return false;
+        }
+
+        pin(artifact.getId());
+        return true;
+    }
+
+    /**
+     * Releases a pin of the artifact kept in the given file. Files which are not in the store are ignored.
+     *
+     * @param file
+     *        - the file of the artifact
+     */
+    public synchronized void unpin(File file) {
+        Artifact artifact = find(file);
+        if (artifact == null) {
+            return;
+        }
+
+        Integer artifactPinsCount = pinsCount.remove(artifact.getId());
+        if (artifactPinsCount != null && artifactPinsCount > 1) {
+            pinsCount.put(artifact.getId(), artifactPinsCount - 1);
+        }
+    }
+
+    /**
+     * Checks whether the artifact with the given id is pinned.
+     *
+     * @param id
+     *        - the id of the artifact
+     * @return <code>true</code> if the artifact is pinned, <code>false</code> otherwise
+     */
+    public synchronized boolean isPinned(String id) {
+        return pinsCount.containsKey(id);
+    }
+
+    /**
+     * Gets an artifact and marks it as recently used.
+     *
+     * @param id
+     *        - the id of the artifact
+     * @return the artifact, or <code>null</code> if there is no such artifact
+     */
+    public synchronized Artifact get(String id) {
+        return touch(id);
+    }
+
+    /**
+     * Reads a part of an artifact, so large artifacts can be sent to the server in chunks.
+     *
+     * @param id
+     *        - the id of the artifact
+     * @param offset
+     *        - the position of the first byte to be read
+     * @param maxLength
+     *        - the maximum number of bytes to be read
+     * @return the bytes read, which are less than the requested when the end of the artifact is reached, or
+     *         <code>null</code> if there is no such artifact
+     * @throws IOException
+     *         if reading the artifact fails or it is evicted while reading
+     * @throws IllegalArgumentException
+     *         if the offset or the maximum length is negative
+     */
+    public byte[] read(String id, long offset, int maxLength) throws IOException {
+        if (offset < 0 || maxLength < 0) {
+            throw new IllegalArgumentException(String.format("Invalid artifact chunk with offset %d and length %d.",
+                                                             offset,
+                                                             maxLength));
+        }
+
+        Artifact artifact = get(id);
+        if (artifact == null) {
+            return null;
+        }
+
+        long remainingLength = Math.max(0, artifact.getSize() - offset);
+        byte[] content = new byte[(int) Math.min(maxLength, remainingLength)];
+
+        try (RandomAccessFile artifactFile = new RandomAccessFile(artifact.getFile(), "r")) {
+            artifactFile.seek(offset);
+            artifactFile.readFully(content);
+        }
+
+        return content;
+    }
+
+    /**
+     * Removes an artifact from the store.
+     *
+     * @param id
+     *        - the id of the artifact
+     * @return <code>true</code> if the artifact was removed, <code>false</code> if there is no such artifact
+     */
+    public synchronized boolean remove(String id) {
+        Artifact artifact = artifacts.get(id);
+        if (artifact == null) {
+            return false;
+        }
+
+        evict(artifact);
+        return true;
+    }
+
+    /**
+     * Gets the space used by the artifacts of the given type.
+     *
+     * @param type
+     *        - the type of the artifacts
+     * @return the used space in bytes
+     */
+    public synchronized long getUsedSpace(ArtifactType type) {
+        return usedSpace.get(type);
+    }
+
+    /**
+     * Gets the number of the stored artifacts.
+     *
+     * @return the number of artifacts
+     */
+    public synchronized int size() {
+        return artifacts.size();
+    }
+
+    /**
+     * Gets the id of an artifact. The type is part of the id, so the same content stored as different types is kept
+     * as different artifacts.
+     *
+     * @param type
+     *        - the type of the artifact
+     * @param contentTag
+     *        - the hash of the content of the artifact
+     * @return the id of the artifact
+     */
+    private static String getId(ArtifactType type, String contentTag) {
+        return ContentFingerprint.of(type.name() + ":" + contentTag);
+    }
+
+    private Artifact touch(String id) {
+        Artifact artifact = artifacts.get(id);
+        if (artifact == null) {
+            return null;
+        }
+
+        long accessTime = System.currentTimeMillis();
+        artifact.setLastAccessTime(accessTime);
+        artifact.getFile().setLastModified(accessTime);
+        recentlyUsedArtifacts.get(artifact.getType()).get(id);
+
+        return artifact;
+    }
+
+    private void pin(String id) {
+        Integer artifactPinsCount = pinsCount.get(id);
+        pinsCount.put(id, artifactPinsCount != null ? artifactPinsCount + 1 : 1);
+    }
+
+    private Artifact find(File file) {
+        File artifactDirectory = file.getAbsoluteFile().getParentFile();
+        Artifact artifact = artifactDirectory != null ? artifacts.get(artifactDirectory.getName()) : null;
+        if (artifact == null || !artifact.getFile().getAbsoluteFile().equals(file.getAbsoluteFile())) {
+            return null;
+        }
+
+        return artifact;
+    }
+
+    private void makeRoom(ArtifactType type, long size) throws IOException {
+        Long quota = quotas.get(type);
+        if (quota != null) {
+            if (size > quota) {
+                throw new IOException(String.format("The %s artifact of %d bytes exceeds the quota of %d bytes.",
+                                                    type,
+                                                    size,
+                                                    quota));
+            }
+
+            // nothing is evicted when the artifact would not fit anyway because of the pinned artifacts
+            LinkedHashMap<String, Artifact> typeArtifacts = recentlyUsedArtifacts.get(type);
+            if (usedSpace.get(type) + size - getEvictableSpace(typeArtifacts) > quota) {
+                throw new IOException(String.format("The pinned %s artifacts leave no room for %d more bytes.",
+                                                    type,
+                                                    size));
+            }
+
+            while (usedSpace.get(type) + size > quota) {
+                evict(getLeastRecentlyUsed(typeArtifacts));
+            }
+        }
+
+        rootDirectory.mkdirs();
+        long missingSpace = size + minFreeSpace - rootDirectory.getUsableSpace();
+        if (missingSpace <= 0) {
+            return;
+        }
+
+        long evictableSpace = 0;
+        for (LinkedHashMap<String, Artifact> typeArtifacts : recentlyUsedArtifacts.values()) {
+            evictableSpace += getEvictableSpace(typeArtifacts);
+        }
+
+        if (evictableSpace < missingSpace) {
+            throw new IOException(String.format("There is not enough disk space for the %s artifact of %d bytes.",
+                                                type,
+                                                size));
+        }
+
+        while (rootDirectory.getUsableSpace() < size + minFreeSpace) {
+            Artifact leastRecentlyUsed = getLeastRecentlyUsed();
+            if (leastRecentlyUsed == null) {
+                throw new IOException(String.format("There is not enough disk space for the %s artifact of %d bytes.",
+                                                    type,
+                                                    size));
+            }
+
+            evict(leastRecentlyUsed);
+        }
+    }
+
+    private long getEvictableSpace(LinkedHashMap<String, Artifact> typeArtifacts) {
+        long evictableSpace = 0;
+        for (Artifact artifact : typeArtifacts.values()) {
+            if (!pinsCount.containsKey(artifact.getId())) {
+                evictableSpace += artifact.getSize();
+            }
+        }
+
+        return evictableSpace;
+    }
+
+    private Artifact getLeastRecentlyUsed(LinkedHashMap<String, Artifact> typeArtifacts) {
+        // iterating does not change the access order
+        for (Artifact artifact : typeArtifacts.values()) {
+            if (!pinsCount.containsKey(artifact.getId())) {
+                return artifact;
+            }
+        }
+
+        return null;
+    }
+
+    private Artifact getLeastRecentlyUsed() {
+        Artifact leastRecentlyUsed = null;
+        for (LinkedHashMap<String, Artifact> typeArtifacts : recentlyUsedArtifacts.values()) {
+            Artifact artifact = getLeastRecentlyUsed(typeArtifacts);
+            if (artifact == null) {
+                continue;
+            }
+
+            if (leastRecentlyUsed == null || artifact.getLastAccessTime() < leastRecentlyUsed.getLastAccessTime()) {
+                leastRecentlyUsed = artifact;
+            }
+        }
+
+        return leastRecentlyUsed;
+    }
+
+    private void evict(Artifact artifact) {
+        ArtifactType type = artifact.getType();
+        artifacts.remove(artifact.getId());
+        recentlyUsedArtifacts.get(type).remove(artifact.getId());
+        usedSpace.put(type, usedSpace.get(type) - artifact.getSize());
+        pinsCount.remove(artifact.getId());
+
+        FileUtils.deleteQuietly(artifact.getFile().getParentFile());
+        LOGGER.debug("Evicted artifact " + artifact);
+    }
+
+    private File createTemporaryFile(ArtifactType type) throws IOException {
+        File typeDirectory = new File(rootDirectory, type.getDirectoryName());
+        typeDirectory.mkdirs();
+
+        return File.createTempFile(DEFAULT_ARTIFACT_NAME, TEMPORARY_FILE_SUFFIX, typeDirectory);
+    }
+
+    private Artifact add(String id, ArtifactType type, File temporaryFile, String name) throws IOException {
+        String fileName = name != null ? name.replaceAll(INVALID_NAME_CHARACTERS, "_") : "";
+        if (fileName.isEmpty() || fileName.matches("\\.+")) {
+            fileName = DEFAULT_ARTIFACT_NAME;
+        }
+
+        File artifactDirectory = new File(temporaryFile.getParentFile(), id);
+        artifactDirectory.mkdirs();
+        File artifactFile = new File(artifactDirectory, fileName);
+
+        // the artifact appears at once, so a file in the store is always complete
+        Files.move(temporaryFile.toPath(), artifactFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        Artifact artifact = new Artifact(id, type, artifactFile, artifactFile.length(), System.currentTimeMillis());
+        register(artifact);
+
+        return artifact;
+    }
+
+    private void register(Artifact artifact) {
+        ArtifactType type = artifact.getType();
+        artifacts.put(artifact.getId(), artifact);
+        recentlyUsedArtifacts.get(type).put(artifact.getId(), artifact);
+        usedSpace.put(type, usedSpace.get(type) + artifact.getSize());
+    }
+
+    private void loadArtifacts(ArtifactType type) {
+        File typeDirectory = new File(rootDirectory, type.getDirectoryName());
+        File[] entries = typeDirectory.listFiles();
+        if (entries == null) {
+            return;
+        }
+
+        List<Artifact> loadedArtifacts = new ArrayList<>();
+        for (File entry : entries) {
+            File[] artifactFiles = entry.listFiles();
+            if (!entry.getName().matches(ID_PATTERN) || artifactFiles == null || artifactFiles.length != 1
+                    || artifacts.containsKey(entry.getName())) {
+                // temporary files and directories left by an interrupted store
+                FileUtils.deleteQuietly(entry);
+                continue;
+            }
+
+            File artifactFile = artifactFiles[0];
+            loadedArtifacts.add(new Artifact(entry.getName(),
+                                             type,
+                                             artifactFile,
+                                             artifactFile.length(),
+                                             artifactFile.lastModified()));
+        }
+
+        Artifact[] sortedArtifacts = loadedArtifacts.toArray(new Artifact[loadedArtifacts.size()]);
+        Arrays.sort(sortedArtifacts, new Comparator<Artifact>() {
+            @Override
+            public int compare(Artifact first, Artifact second) {
+                return Long.compare(first.getLastAccessTime(), second.getLastAccessTime());
+            }
+        });
+
+        for (Artifact artifact : sortedArtifacts) {
+            register(artifact);
+        }
+
+        // the quota may have been lowered since the last run
+        Long quota = quotas.get(type);
+        LinkedHashMap<String, Artifact> typeArtifacts = recentlyUsedArtifacts.get(type);
+        while (quota != null && usedSpace.get(type) > quota) {
+            evict(typeArtifacts.values().iterator().next());
+        }
+
+        LOGGER.info(String.format("Loaded %d %s artifacts.", typeArtifacts.size(), type));
+    }
+}
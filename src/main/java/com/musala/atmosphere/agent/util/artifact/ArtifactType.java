@@ -0,0 +1,67 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.artifact;
+
+import com.musala.atmosphere.agent.util.AgentProperties;
+
+/**
+ * Enumeration of the kinds of artifacts kept in the {@link ArtifactStore}. Every type has its own directory and disk
+ * quota, so a long screen record can not push out the logs of the same run.
+ */
+public enum ArtifactType {
+    LOG("logs", AgentProperties.ARTIFACTS_LOGS_QUOTA, 512),
+    SCREEN_RECORD("screen-records", AgentProperties.ARTIFACTS_SCREEN_RECORDS_QUOTA, 4096);
+
+    private String directoryName;
+
+    private AgentProperties quotaProperty;
+
+    private long defaultQuota;
+
+    private ArtifactType(String directoryName, AgentProperties quotaProperty, long defaultQuota) {
+        this.directoryName = directoryName;
+        this.quotaProperty = quotaProperty;
+        this.defaultQuota = defaultQuota;
+    }
+
+    /**
+     * Gets the name of the directory in the store where the artifacts of this type are kept.
+     *
+     * @return the name of the directory
+     */
+    public String getDirectoryName() {
+        return directoryName;
+    }
+
+    /**
+     * Gets the agent property holding the quota of this type.
+     *
+     * @return the quota property
+     */
+    public AgentProperties getQuotaProperty() {
+        return quotaProperty;
+    }
+
+    /**
+     * Gets the quota used when the property is missing.
+     *
+     * @return the default quota in megabytes
+     */
+    public long getDefaultQuota() {
+        return defaultQuota;
+    }
+}
@@ -0,0 +1,71 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.gesture;
+
+/**
+ * Easing functions that control how the progress of a gesture step changes over time.
+ */
+public enum Easing {
+    /**
+     * Constant speed.
+     */
+    LINEAR {
+        @Override
+        public float apply(float time) {
+            return time;
+        }
+    },
+
+    /**
+     * Starts slowly and accelerates.
+     */
+    EASE_IN {
+        @Override
+        public float apply(float time) {
+            return time * time;
+        }
+    },
+
+    /**
+     * Starts fast and decelerates, like a fling.
+     */
+    EASE_OUT {
+        @Override
+        public float apply(float time) {
+            return time * (2 - time);
+        }
+    },
+
+    /**
+     * Accelerates until the middle of the step and decelerates after that.
+     */
+    EASE_IN_OUT {
+        @Override
+        public float apply(float time) {
+            return time < 0.5f ? 2 * time * time : -1 + (4 - 2 * time) * time;
+        }
+    };
+
+    /**
+     * Maps the elapsed part of a step to the completed part of its path.
+     *
+     * @param time
+     *        - the elapsed part of the step duration, between 0 and 1
+     * @return the completed part of the path, between 0 and 1
+     */
+    public abstract float apply(float time);
+}
@@ -0,0 +1,307 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.gesture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A multi-step gesture described by a short text script. The script is compiled on the agent into pointer tracks with
+ * absolute times, so the whole sequence can be played by the gesture player in a single request.
+ * <p>
+ * Statements are separated by new lines or semicolons. Lines starting with <code>#</code> are comments. Supported
+ * statements:
+ * <ul>
+ * <li><code>tap X Y</code> - a short tap</li>
+ * <li><code>press X Y DURATION</code> - holds the pointer at a point</li>
+ * <li><code>swipe X1 Y1 X2 Y2 DURATION [EASING]</code> - moves the pointer between two points</li>
+ * <li><code>path DURATION [EASING] X1 Y1 X2 Y2 [X3 Y3 ...]</code> - moves the pointer through several points</li>
+ * <li><code>wait DURATION</code> - pauses before the next statement</li>
+ * </ul>
+ * Durations are in milliseconds. The easing is one of the {@link Easing} constants (case insensitive, <code>-</code>
+ * may be used instead of <code>_</code>) and defaults to {@link Easing#LINEAR}. Each statement starts when the previous
+ * ones end. A statement prefixed with <code>&amp;</code> starts together with the previous statement instead and is
+ * played by another pointer, which allows multi-touch gestures such as pinches.
+ * </p>
+ */
+public class GestureScript {
+    private static final String STATEMENT_SEPARATOR_PATTERN = "[;\\r\\n]";
+
+    private static final String COMMENT_PREFIX = "#";
+
+    private static final String CONCURRENT_PREFIX = "&";
+
+    private static final int TAP_DURATION = 50;
+
+    private static final int SAMPLE_INTERVAL = 16;
+
+    private final List<List<TimedPoint>> tracks;
+
+    private final int duration;
+
+    private GestureScript(List<List<TimedPoint>> tracks, int duration) {
+        this.tracks = Collections.unmodifiableList(tracks);
+        this.duration = duration;
+    }
+
+    /**
+     * Parses and compiles a gesture script.
+     *
+     * @param script
+     *        - the text of the script
+     * @return the compiled script
+     * @throws IllegalArgumentException
+     *         if the script is empty or contains an invalid statement
+     */
+    public static GestureScript parse(String script) {
+        if (script == null) {
+            throw new IllegalArgumentException("The gesture script can not be null.");
+        }
+
+        List<List<TimedPoint>> tracks = new ArrayList<>();
+        int cursor = 0;
+        int stepStart = 0;
+
+        for (String line : script.split(STATEMENT_SEPARATOR_PATTERN)) {
+            String statement = line.trim();
+            if (statement.isEmpty() || statement.startsWith(COMMENT_PREFIX)) {
+                continue;
+            }
+
+            boolean isConcurrent = statement.startsWith(CONCURRENT_PREFIX);
+            if (isConcurrent) {
+                statement = statement.substring(CONCURRENT_PREFIX.length()).trim();
+            }
+
+            String[] tokens = statement.split("\\s+");
+            String command = tokens[0].toLowerCase();
+
+            try {
+                if (isConcurrent && (tracks.isEmpty() || command.equals("wait"))) {
+                    throw new IllegalArgumentException("Only a pointer statement can be played together with a previous one.");
+                }
+
+                if (command.equals("wait")) {
+                    requireArgumentCount(tokens, 1);
+                    cursor += parseDuration(tokens[1]);
+                    stepStart = cursor;
+                    continue;
+                }
+
+                int start = isConcurrent ? stepStart : cursor;
+                List<TimedPoint> track = createTrack(command, tokens, start);
+
+                tracks.add(track);
+                stepStart = start;
+                cursor = Math.max(cursor, track.get(track.size() - 1).getTime());
+            } catch (IllegalArgumentException e) {
+                String message = String.format("Invalid gesture script statement '%s': %s", statement, e.getMessage());
+                throw new IllegalArgumentException(message, e);
+            }
+        }
+
+        if (tracks.isEmpty()) {
+            throw new IllegalArgumentException("The gesture script does not contain any pointer statements.");
+        }
+
+        return new GestureScript(tracks, cursor);
+    }
+
+    /**
+     * Gets the pointer tracks of the script. Each track is the movement of a single pointer from the moment it touches
+     * the screen until it is lifted.
+     *
+     * @return the pointer tracks in the order of the statements
+     */
+    public List<List<TimedPoint>> getTracks() {
+        return tracks;
+    }
+
+    /**
+     * Gets the total duration of the script.
+     *
+     * @return the duration in milliseconds
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    private static List<TimedPoint> createTrack(String command, String[] tokens, int start) {
+        switch (command) {
+            case "tap":
+                requireArgumentCount(tokens, 2);
+                return createPress(parseCoordinate(tokens[1]), parseCoordinate(tokens[2]), start, TAP_DURATION);
+            case "press":
+                requireArgumentCount(tokens, 3);
+                return createPress(parseCoordinate(tokens[1]),
+                                   parseCoordinate(tokens[2]),
+                                   start,
+                                   parseDuration(tokens[3]));
+            case "swipe":
+                if (tokens.length != 6 && tokens.length != 7) {
+                    throw new IllegalArgumentException("Expected 5 or 6 arguments.");
+                }
+
+                float[] swipeCoordinates = new float[] {parseCoordinate(tokens[1]), parseCoordinate(tokens[2]),
+                        parseCoordinate(tokens[3]), parseCoordinate(tokens[4])};
+                Easing swipeEasing = tokens.length == 7 ? parseEasing(tokens[6]) : Easing.LINEAR;
+
+                return createPath(swipeCoordinates, start, parseDuration(tokens[5]), swipeEasing);
+            case "path":
+                if (tokens.length < 2) {
+                    throw new IllegalArgumentException("Expected a duration and at least two points.");
+                }
+
+                int pathDuration = parseDuration(tokens[1]);
+                int firstCoordinateIndex = 2;
+                Easing pathEasing = Easing.LINEAR;
+
+                if (tokens.length > 2 && !isNumber(tokens[2])) {
+                    pathEasing = parseEasing(tokens[2]);
+                    firstCoordinateIndex++;
+                }
+
+                int coordinateCount = tokens.length - firstCoordinateIndex;
+                if (coordinateCount < 4 || coordinateCount % 2 != 0) {
+                    throw new IllegalArgumentException("Expected at least two points.");
+                }
+
+                float[] pathCoordinates = new float[coordinateCount];
+                for (int i = 0; i < coordinateCount; i++) {
+                    pathCoordinates[i] = parseCoordinate(tokens[firstCoordinateIndex + i]);
+                }
+
+                return createPath(pathCoordinates, start, pathDuration, pathEasing);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown command '%s'.", command));
+        }
+    }
+
+    private static List<TimedPoint> createPress(float x, float y, int start, int duration) {
+        List<TimedPoint> track = new ArrayList<>();
+        track.add(new TimedPoint(x, y, start));
+        track.add(new TimedPoint(x, y, start + duration));
+
+        return track;
+    }
+
+    /**
+     * Creates the track of a pointer moving through the given points. A linear movement needs only the given points,
+     * because the gesture player interpolates between them. Any other easing is sampled at short intervals.
+     */
+    private static List<TimedPoint> createPath(float[] coordinates, int start, int duration, Easing easing) {
+        int pointCount = coordinates.length / 2;
+        float[] distances = new float[pointCount];
+        for (int i = 1; i < pointCount; i++) {
+            float dx = coordinates[2 * i] - coordinates[2 * i - 2];
+            float dy = coordinates[2 * i + 1] - coordinates[2 * i - 1];
+            distances[i] = distances[i - 1] + (float) Math.hypot(dx, dy);
+        }
+
+        float length = distances[pointCount - 1];
+        if (length == 0) {
+            return createPress(coordinates[0], coordinates[1], start, duration);
+        }
+
+        List<TimedPoint> track = new ArrayList<>();
+
+        if (easing == Easing.LINEAR) {
+            for (int i = 0; i < pointCount; i++) {
+                int time = start + Math.round(duration * distances[i] / length);
+                track.add(new TimedPoint(coordinates[2 * i], coordinates[2 * i + 1], time));
+            }
+
+            return track;
+        }
+
+        int sampleCount = Math.max(1, duration / SAMPLE_INTERVAL);
+        int segment = 1;
+
+        for (int i = 0; i <= sampleCount; i++) {
+            float elapsed = (float) i / sampleCount;
+            float distance = easing.apply(elapsed) * length;
+
+            while (segment < pointCount - 1 && distances[segment] < distance) {
+                segment++;
+            }
+
+            float segmentLength = distances[segment] - distances[segment - 1];
+            float segmentProgress = segmentLength == 0 ? 1 : (distance - distances[segment - 1]) / segmentLength;
+            segmentProgress = Math.max(0, Math.min(1, segmentProgress));
+
+            float x = coordinates[2 * segment - 2] + (coordinates[2 * segment] - coordinates[2 * segment - 2])
+                    * segmentProgress;
+            float y = coordinates[2 * segment - 1] + (coordinates[2 * segment + 1] - coordinates[2 * segment - 1])
+                    * segmentProgress;
+            int time = start + Math.round(duration * elapsed);
+
+            track.add(new TimedPoint(x, y, time));
+        }
+
+        return track;
+    }
+
+    private static void requireArgumentCount(String[] tokens, int count) {
+        if (tokens.length - 1 != count) {
+            throw new IllegalArgumentException(String.format("Expected %d arguments.", count));
+        }
+    }
+
+    private static float parseCoordinate(String token) {
+        float coordinate = parseNumber(token);
+        if (coordinate < 0) {
+            throw new IllegalArgumentException(String.format("Negative coordinate %s.", token));
+        }
+
+        return coordinate;
+    }
+
+    private static int parseDuration(String token) {
+        float duration = parseNumber(token);
+        if (duration < 0) {
+            throw new IllegalArgumentException(String.format("Negative duration %s.", token));
+        }
+
+        return Math.round(duration);
+    }
+
+    private static float parseNumber(String token) {
+        try {
+            return Float.parseFloat(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("'%s' is not a number.", token), e);
+        }
+    }
+
+    private static boolean isNumber(String token) {
+        try {
+            Float.parseFloat(token);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static Easing parseEasing(String token) {
+        try {
+            return Easing.valueOf(token.toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown easing '%s'.", token), e);
+        }
+    }
+}
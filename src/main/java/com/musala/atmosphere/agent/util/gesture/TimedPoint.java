@@ -0,0 +1,61 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.gesture;
+
+/**
+ * A pointer position at a moment of a compiled gesture script.
+ */
+public class TimedPoint {
+    private final float x;
+
+    private final float y;
+
+    private final int time;
+
+    /**
+     * Creates a pointer position.
+     *
+     * @param x
+     *        - the x coordinate of the pointer
+     * @param y
+     *        - the y coordinate of the pointer
+     * @param time
+     *        - the time in milliseconds from the start of the gesture
+     */
+    public TimedPoint(float x, float y, int time) {
+        this.x = x;
+        this.y = y;
+        this.time = time;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("(%.1f, %.1f) @ %d ms", x, y, time);
+    }
+}
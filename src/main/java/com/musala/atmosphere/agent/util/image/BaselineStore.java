@@ -0,0 +1,130 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Stores the baseline screenshots of the visual checks on the agent, so the screenshots are compared where they are
+ * captured. The baselines are PNG files keyed by test name and device model, because the same screen looks different
+ * on different models.
+ */
+public class BaselineStore {
+    /**
+     * The directory where the baselines are stored by default.
+     */
+    public static final String DEFAULT_BASELINES_DIRECTORY = System.getProperty("user.dir") + File.separator
+            + "baselines";
+
+    private static final String BASELINE_FILE_EXTENSION = ".png";
+
+    private static final String INVALID_MODEL_CHARACTERS = "[^\\w-]";
+
+    private final File baselinesDirectory;
+
+    /**
+     * Creates a store of the baselines in the given directory.
+     *
+     * @param baselinesDirectory
+     *        - the directory of the baselines
+     */
+    public BaselineStore(File baselinesDirectory) {
+        this.baselinesDirectory = baselinesDirectory;
+    }
+
+    /**
+     * Loads a baseline.
+     *
+     * @param testName
+     *        - the name of the test
+     * @param deviceModel
+     *        - the model of the device
+     * @return the baseline image, or <code>null</code> if there is no baseline for the test and the model
+     * @throws IOException
+     *         if reading the baseline fails
+     */
+    public BufferedImage load(String testName, String deviceModel) throws IOException {
+        File baselineFile = getBaselineFile(testName, deviceModel);
+        if (!baselineFile.isFile()) {
+            return null;
+        }
+
+        BufferedImage baseline = ImageIO.read(baselineFile);
+        if (baseline == null) {
+            throw new IOException(String.format("The baseline %s is not a valid image.", baselineFile));
+        }
+
+        return baseline;
+    }
+
+    /**
+     * Saves a baseline, replacing the previous one. The file is replaced at once, so a concurrent check never reads a
+     * partially written baseline.
+     *
+     * @param testName
+     *        - the name of the test
+     * @param deviceModel
+     *        - the model of the device
+     * @param baseline
+     *        - the baseline image
+     * @throws IOException
+     *         if writing the baseline fails
+     */
+    public void save(String testName, String deviceModel, BufferedImage baseline) throws IOException {
+        File baselineFile = getBaselineFile(testName, deviceModel);
+        File modelDirectory = baselineFile.getParentFile();
+        modelDirectory.mkdirs();
+
+        File temporaryFile = File.createTempFile(baselineFile.getName(), ".tmp", modelDirectory);
+        try {
+            ImageIO.write(baseline, "png", temporaryFile);
+            Files.move(temporaryFile.toPath(),
+                       baselineFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * Gets the file of a baseline.
+     *
+     * @param testName
+     *        - the name of the test
+     * @param deviceModel
+     *        - the model of the device
+     * @return the baseline file
+     */
+    public File getBaselineFile(String testName, String deviceModel) {
+        if (testName == null || !testName.matches("[\\w.-]+")) {
+            throw new IllegalArgumentException(String.format("Invalid baseline test name %s.", testName));
+        }
+
+        // device models usually contain spaces
+        String modelDirectoryName = deviceModel != null ? deviceModel.replaceAll(INVALID_MODEL_CHARACTERS, "_") : "_";
+        File modelDirectory = new File(baselinesDirectory, modelDirectoryName);
+
+        return new File(modelDirectory, testName + BASELINE_FILE_EXTENSION);
+    }
+}
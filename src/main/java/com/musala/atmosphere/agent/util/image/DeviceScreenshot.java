@@ -0,0 +1,116 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.io.Serializable;
+
+/**
+ * The result of a screenshot capture on a single device, as part of a {@link ScreenshotManifest}.
+ */
+public class DeviceScreenshot implements Serializable {
+    private static final long serialVersionUID = 4125364093856719205L;
+
+    private final String deviceSerialNumber;
+
+    private String screenshot;
+
+    private String errorMessage;
+
+    private long waitTime;
+
+    private long captureTime;
+
+    /**
+     * Creates a result for the given device.
+     *
+     * @param deviceSerialNumber
+     *        - serial number of the captured device
+     */
+    public DeviceScreenshot(String deviceSerialNumber) {
+        this.deviceSerialNumber = deviceSerialNumber;
+    }
+
+    public String getDeviceSerialNumber() {
+        return deviceSerialNumber;
+    }
+
+    /**
+     * Gets the captured screenshot.
+     *
+     * @return the Base64 encoded image, or <code>null</code> if the capture failed
+     */
+    public String getScreenshot() {
+        return screenshot;
+    }
+
+    public void setScreenshot(String screenshot) {
+        this.screenshot = screenshot;
+    }
+
+    /**
+     * Gets the reason the capture failed.
+     *
+     * @return the error message, or <code>null</code> if the capture succeeded
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public boolean isCaptured() {
+        return screenshot != null;
+    }
+
+    /**
+     * Gets the time the capture waited for a free slot, because of the concurrency limit.
+     *
+     * @return the wait time in milliseconds
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+
+    public void setWaitTime(long waitTime) {
+        this.waitTime = waitTime;
+    }
+
+    /**
+     * Gets the time the capture and the encoding of the screenshot took.
+     *
+     * @return the capture time in milliseconds
+     */
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    public void setCaptureTime(long captureTime) {
+        this.captureTime = captureTime;
+    }
+
+    @Override
+    public String toString() {
+        String status = isCaptured() ? "captured" : "failed (" + errorMessage + ")";
+        return String.format("Screenshot of %s %s: waited %d ms, captured in %d ms.",
+                             deviceSerialNumber,
+                             status,
+                             waitTime,
+                             captureTime);
+    }
+}
@@ -0,0 +1,130 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.awt.image.BufferedImage;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Grayscale image with one luminance value from 0 to 255 per pixel, used by the image analysis on the agent.
+ */
+final class GrayImage {
+    final int width;
+
+    final int height;
+
+    final int[] pixels;
+
+    GrayImage(int width, int height, int[] pixels) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Converts a framebuffer capture to a grayscale image.
+     *
+     * @param rawImage
+     *        - the framebuffer capture
+     * @return the grayscale image
+     */
+    static GrayImage fromRawImage(RawImage rawImage) {
+        int bytesPerPixel = rawImage.bpp >> 3;
+        int[] pixels = new int[rawImage.width * rawImage.height];
+
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = getLuminance(rawImage.getARGB(i * bytesPerPixel));
+        }
+
+        return new GrayImage(rawImage.width, rawImage.height, pixels);
+    }
+
+    /**
+     * Converts a decoded image to a grayscale image.
+     *
+     * @param image
+     *        - the decoded image
+     * @return the grayscale image
+     */
+    static GrayImage fromBufferedImage(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = getLuminance(pixels[i]);
+        }
+
+        return new GrayImage(width, height, pixels);
+    }
+
+    /**
+     * Calculates the luminance of a color.
+     *
+     * @param rgb
+     *        - the color, as packed RGB value
+     * @return the luminance, from 0 to 255
+     */
+    static int getLuminance(int rgb) {
+        int red = (rgb >> 16) & 0xFF;
+        int green = (rgb >> 8) & 0xFF;
+        int blue = rgb & 0xFF;
+
+        return (red * 299 + green * 587 + blue * 114) / 1000;
+    }
+
+    /**
+     * Resizes the image. Each pixel of the result is the average of the block of pixels it covers, so shrinking does
+     * not alias. Pixels are repeated when the image is enlarged.
+     *
+     * @param newWidth
+     *        - the width of the resized image
+     * @param newHeight
+     *        - the height of the resized image
+     * @return the resized image
+     */
+    GrayImage resize(int newWidth, int newHeight) {
+        if (newWidth == width && newHeight == height) {
+            return this;
+        }
+
+        int[] resizedPixels = new int[newWidth * newHeight];
+
+        for (int y = 0; y < newHeight; y++) {
+            int blockTop = y * height / newHeight;
+            int blockBottom = Math.max(blockTop + 1, (y + 1) * height / newHeight);
+
+            for (int x = 0; x < newWidth; x++) {
+                int blockLeft = x * width / newWidth;
+                int blockRight = Math.max(blockLeft + 1, (x + 1) * width / newWidth);
+
+                int sum = 0;
+                for (int row = blockTop; row < blockBottom; row++) {
+                    int rowOffset = row * width;
+                    for (int column = blockLeft; column < blockRight; column++) {
+                        sum += pixels[rowOffset + column];
+                    }
+                }
+
+                resizedPixels[y * newWidth + x] = sum / ((blockBottom - blockTop) * (blockRight - blockLeft));
+            }
+        }
+
+        return new GrayImage(newWidth, newHeight, resizedPixels);
+    }
+}
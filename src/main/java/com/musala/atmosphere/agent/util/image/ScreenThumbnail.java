@@ -0,0 +1,111 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Low resolution luminance image of the device screen, used to compare screen states quickly. Each pixel of the
+ * thumbnail is the average luminance of a block of the screen, so small noise like a blinking cursor has little effect
+ * on the difference between two thumbnails.
+ */
+public class ScreenThumbnail {
+    private static final int MAX_SAMPLES_PER_BLOCK_SIDE = 4;
+
+    private final int width;
+
+    private final int height;
+
+    private final int[] luminance;
+
+    private ScreenThumbnail(int width, int height, int[] luminance) {
+        this.width = width;
+        this.height = height;
+        this.luminance = luminance;
+    }
+
+    /**
+     * Creates a thumbnail of a framebuffer capture. The aspect ratio of the screen is kept.
+     *
+     * @param rawImage
+     *        - the framebuffer capture
+     * @param thumbnailWidth
+     *        - the width of the thumbnail in pixels
+     * @return the thumbnail of the capture
+     */
+    public static ScreenThumbnail create(RawImage rawImage, int thumbnailWidth) {
+        int width = Math.max(1, Math.min(thumbnailWidth, rawImage.width));
+        int height = Math.max(1, (int) ((long) rawImage.height * width / rawImage.width));
+        int bytesPerPixel = rawImage.bpp >> 3;
+        int[] luminance = new int[width * height];
+
+        for (int y = 0; y < height; y++) {
+            int blockTop = y * rawImage.height / height;
+            int blockBottom = (y + 1) * rawImage.height / height;
+            int rowStep = Math.max(1, (blockBottom - blockTop) / MAX_SAMPLES_PER_BLOCK_SIDE);
+
+            for (int x = 0; x < width; x++) {
+                int blockLeft = x * rawImage.width / width;
+                int blockRight = (x + 1) * rawImage.width / width;
+                int columnStep = Math.max(1, (blockRight - blockLeft) / MAX_SAMPLES_PER_BLOCK_SIDE);
+
+                long luminanceSum = 0;
+                int samplesCount = 0;
+                for (int row = blockTop; row < blockBottom; row += rowStep) {
+                    for (int column = blockLeft; column < blockRight; column += columnStep) {
+                        int argb = rawImage.getARGB((row * rawImage.width + column) * bytesPerPixel);
+                        luminanceSum += GrayImage.getLuminance(argb);
+                        samplesCount++;
+                    }
+                }
+
+                luminance[y * width + x] = samplesCount > 0 ? (int) (luminanceSum / samplesCount) : 0;
+            }
+        }
+
+        return new ScreenThumbnail(width, height, luminance);
+    }
+
+    /**
+     * Calculates the mean absolute luminance difference between this and another thumbnail.
+     *
+     * @param other
+     *        - the thumbnail to compare with
+     * @return the difference, from 0 (identical) to 1 (black and white); thumbnails of different size are completely
+     *         different
+     */
+    public double difference(ScreenThumbnail other) {
+        if (width != other.width || height != other.height) {
+            return 1;
+        }
+
+        long differenceSum = 0;
+        for (int i = 0; i < luminance.length; i++) {
+            differenceSum += Math.abs(luminance[i] - other.luminance[i]);
+        }
+
+        return (double) differenceSum / (luminance.length * 255);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
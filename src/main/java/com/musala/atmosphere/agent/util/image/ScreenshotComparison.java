@@ -0,0 +1,143 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.io.Serializable;
+
+/**
+ * The result of a visual check of a screenshot against its baseline. The full screenshot is included only when the
+ * check fails, so passing checks transfer just the score and the small diff mask.
+ */
+public class ScreenshotComparison implements Serializable {
+    private static final long serialVersionUID = -1872419603485093518L;
+
+    private final String testName;
+
+    private final String deviceModel;
+
+    private boolean baselineCreated;
+
+    private boolean passed;
+
+    private double difference;
+
+    private long differingPixelsCount;
+
+    private String diffMask;
+
+    private String screenshot;
+
+    /**
+     * Creates a result of a visual check.
+     *
+     * @param testName
+     *        - the name of the test
+     * @param deviceModel
+     *        - the model of the checked device
+     */
+    public ScreenshotComparison(String testName, String deviceModel) {
+        this.testName = testName;
+        this.deviceModel = deviceModel;
+    }
+
+    public String getTestName() {
+        return testName;
+    }
+
+    public String getDeviceModel() {
+        return deviceModel;
+    }
+
+    /**
+     * Checks whether there was no baseline, so the screenshot became the baseline.
+     *
+     * @return <code>true</code> if the baseline was created by this check, <code>false</code> otherwise
+     */
+    public boolean isBaselineCreated() {
+        return baselineCreated;
+    }
+
+    public void setBaselineCreated(boolean baselineCreated) {
+        this.baselineCreated = baselineCreated;
+    }
+
+    public boolean isPassed() {
+        return passed;
+    }
+
+    public void setPassed(boolean passed) {
+        this.passed = passed;
+    }
+
+    /**
+     * Gets the part of the compared pixels that differ from the baseline.
+     *
+     * @return the difference, from 0 (identical) to 1 (all pixels differ)
+     */
+    public double getDifference() {
+        return difference;
+    }
+
+    public void setDifference(double difference) {
+        this.difference = difference;
+    }
+
+    public long getDifferingPixelsCount() {
+        return differingPixelsCount;
+    }
+
+    public void setDifferingPixelsCount(long differingPixelsCount) {
+        this.differingPixelsCount = differingPixelsCount;
+    }
+
+    /**
+     * Gets the diff mask, with one pixel per {@value ScreenshotDiff#TILE_SIZE} pixels square of the screen.
+     *
+     * @return the Base64 encoded PNG mask, or <code>null</code> if the images were not compared
+     */
+    public String getDiffMask() {
+        return diffMask;
+    }
+
+    public void setDiffMask(String diffMask) {
+        this.diffMask = diffMask;
+    }
+
+    /**
+     * Gets the checked screenshot.
+     *
+     * @return the Base64 encoded PNG screenshot, or <code>null</code> if the check passed
+     */
+    public String getScreenshot() {
+        return screenshot;
+    }
+
+    public void setScreenshot(String screenshot) {
+        this.screenshot = screenshot;
+    }
+
+    @Override
+    public String toString() {
+        String result = baselineCreated ? "created the baseline" : passed ? "passed" : "failed";
+        return String.format("Visual check %s on %s %s with difference %.5f (%d pixels).",
+                             testName,
+                             deviceModel,
+                             result,
+                             difference,
+                             differingPixelsCount);
+    }
+}
@@ -0,0 +1,313 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The difference between a screenshot and its baseline. The screen is split in square tiles, which are compared in
+ * parallel on the {@link ForkJoinPool#commonPool() common fork-join pool}. A pixel differs when any of its color
+ * channels differs by more than the tolerance, so the rendering noise of gradients and anti-aliased text is ignored.
+ */
+public class ScreenshotDiff {
+    /**
+     * The side of a tile in pixels. Each tile is a single pixel of the diff mask.
+     */
+    public static final int TILE_SIZE = 16;
+
+    private static final int MIN_TILES_PER_TASK = 64;
+
+    private static final int MASK_NO_DIFFERENCE_COLOR = 0x000000;
+
+    private static final int MASK_IGNORED_COLOR = 0x404040;
+
+    private final int tilesInRow;
+
+    private final int tilesInColumn;
+
+    private final int[] tileDifferingPixels;
+
+    private final int[] tileComparedPixels;
+
+    /**
+     * Compares the tiles in a range of tile indexes.
+     */
+    private static class DiffTask extends RecursiveAction {
+        private static final long serialVersionUID = 3350936148862164921L;
+
+        private final ScreenshotDiff diff;
+
+        private final int[] baselinePixels;
+
+        private final int[] currentPixels;
+
+        private final int width;
+
+        private final int height;
+
+        private final List<Rectangle> ignoredRegions;
+
+        private final int tolerance;
+
+        private final int fromTile;
+
+        private final int toTile;
+
+        private DiffTask(ScreenshotDiff diff,
+                int[] baselinePixels,
+                int[] currentPixels,
+                int width,
+                int height,
+                List<Rectangle> ignoredRegions,
+                int tolerance,
+                int fromTile,
+                int toTile) {
+            this.diff = diff;
+            this.baselinePixels = baselinePixels;
+            this.currentPixels = currentPixels;
+            this.width = width;
+            this.height = height;
+            this.ignoredRegions = ignoredRegions;
+            this.tolerance = tolerance;
+            this.fromTile = fromTile;
+            this.toTile = toTile;
+        }
+
+        @Override
+        protected void compute() {
+            if (toTile - fromTile > MIN_TILES_PER_TASK) {
+                int middleTile = (fromTile + toTile) / 2;
+                invokeAll(new DiffTask(diff,
+                                       baselinePixels,
+                                       currentPixels,
+                                       width,
+                                       height,
+                                       ignoredRegions,
+                                       tolerance,
+                                       fromTile,
+                                       middleTile),
+                          new DiffTask(diff,
+                                       baselinePixels,
+                                       currentPixels,
+                                       width,
+                                       height,
+                                       ignoredRegions,
+                                       tolerance,
+                                       middleTile,
+                                       toTile));
+                return;
+            }
+
+            for (int tile = fromTile; tile < toTile; tile++) {
+                compareTile(tile);
+            }
+        }
+
+        private void compareTile(int tile) {
+            int left = (tile % diff.tilesInRow) * TILE_SIZE;
+            int top = (tile / diff.tilesInRow) * TILE_SIZE;
+            Rectangle tileBounds = new Rectangle(left,
+                                                 top,
+                                                 Math.min(TILE_SIZE, width - left),
+                                                 Math.min(TILE_SIZE, height - top));
+
+            // only the regions crossing the tile are checked for each pixel
+            List<Rectangle> tileIgnoredRegions = new ArrayList<>();
+            for (Rectangle region : ignoredRegions) {
+                if (region.contains(tileBounds)) {
+                    return;
+                }
+
+                if (region.intersects(tileBounds)) {
+                    tileIgnoredRegions.add(region);
+                }
+            }
+
+            int differingPixels = 0;
+            int comparedPixels = 0;
+
+            for (int y = tileBounds.y; y < tileBounds.y + tileBounds.height; y++) {
+                for (int x = tileBounds.x; x < tileBounds.x + tileBounds.width; x++) {
+                    if (!tileIgnoredRegions.isEmpty() && isIgnored(tileIgnoredRegions, x, y)) {
+                        continue;
+                    }
+
+                    comparedPixels++;
+                    int index = y * width + x;
+                    if (isDifferent(baselinePixels[index], currentPixels[index])) {
+                        differingPixels++;
+                    }
+                }
+            }
+
+            diff.tileDifferingPixels[tile] = differingPixels;
+            diff.tileComparedPixels[tile] = comparedPixels;
+        }
+
+        private boolean isIgnored(List<Rectangle> regions, int x, int y) {
+            for (Rectangle region : regions) {
+                if (region.contains(x, y)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private boolean isDifferent(int baselinePixel, int currentPixel) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int baselineChannel = (baselinePixel >> shift) & 0xFF;
+                int currentChannel = (currentPixel >> shift) & 0xFF;
+                if (Math.abs(baselineChannel - currentChannel) > tolerance) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    private ScreenshotDiff(int width, int height) {
+        this.tilesInRow = (width + TILE_SIZE - 1) / TILE_SIZE;
+        this.tilesInColumn = (height + TILE_SIZE - 1) / TILE_SIZE;
+        this.tileDifferingPixels = new int[tilesInRow * tilesInColumn];
+        this.tileComparedPixels = new int[tilesInRow * tilesInColumn];
+    }
+
+    /**
+     * Compares a screenshot with its baseline.
+     *
+     * @param baseline
+     *        - the baseline image
+     * @param current
+     *        - the current screenshot
+     * @param ignoredRegions
+     *        - the regions of the screen which are not compared, like clocks and ads
+     * @param tolerance
+     *        - the maximum difference of a color channel of equal pixels, from 0 to 255
+     * @return the difference of the images
+     */
+    public static ScreenshotDiff compare(BufferedImage baseline,
+                                         BufferedImage current,
+                                         List<Rectangle> ignoredRegions,
+                                         int tolerance) {
+        int width = current.getWidth();
+        int height = current.getHeight();
+        if (baseline.getWidth() != width || baseline.getHeight() != height) {
+            String message = String.format("The screenshot size %dx%d does not match the baseline size %dx%d.",
+                                           width,
+                                           height,
+                                           baseline.getWidth(),
+                                           baseline.getHeight());
+            throw new IllegalArgumentException(message);
+        }
+
+        int[] baselinePixels = baseline.getRGB(0, 0, width, height, null, 0, width);
+        int[] currentPixels = current.getRGB(0, 0, width, height, null, 0, width);
+
+        ScreenshotDiff diff = new ScreenshotDiff(width, height);
+        DiffTask diffTask = new DiffTask(diff,
+                                         baselinePixels,
+                                         currentPixels,
+                                         width,
+                                         height,
+                                         ignoredRegions,
+                                         tolerance,
+                                         0,
+                                         diff.tileDifferingPixels.length);
+        ForkJoinPool.commonPool().invoke(diffTask);
+
+        return diff;
+    }
+
+    /**
+     * Gets the number of pixels that differ from the baseline.
+     *
+     * @return the differing pixels count
+     */
+    public long getDifferingPixelsCount() {
+        long count = 0;
+        for (int differingPixels : tileDifferingPixels) {
+            count += differingPixels;
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the number of compared pixels, which are the pixels outside of the ignored regions.
+     *
+     * @return the compared pixels count
+     */
+    public long getComparedPixelsCount() {
+        long count = 0;
+        for (int comparedPixels : tileComparedPixels) {
+            count += comparedPixels;
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the part of the compared pixels that differ from the baseline.
+     *
+     * @return the difference, from 0 (identical) to 1 (all pixels differ)
+     */
+    public double getDifference() {
+        long comparedPixelsCount = getComparedPixelsCount();
+
+        return comparedPixelsCount > 0 ? (double) getDifferingPixelsCount() / comparedPixelsCount : 0;
+    }
+
+    /**
+     * Creates a small image of the differences, with one pixel per tile. Tiles without differences are black, ignored
+     * tiles are gray and the red intensity of the other tiles grows with the part of the tile that differs.
+     *
+     * @return the diff mask, encoded as PNG
+     * @throws IOException
+     *         if the encoding fails
+     */
+    public byte[] getDiffMask() throws IOException {
+        BufferedImage mask = new BufferedImage(tilesInRow, tilesInColumn, BufferedImage.TYPE_INT_RGB);
+
+        for (int tile = 0; tile < tileDifferingPixels.length; tile++) {
+            int color = MASK_NO_DIFFERENCE_COLOR;
+            if (tileComparedPixels[tile] == 0) {
+                color = MASK_IGNORED_COLOR;
+            } else if (tileDifferingPixels[tile] > 0) {
+                int red = 128 + 127 * tileDifferingPixels[tile] / tileComparedPixels[tile];
+                color = red << 16;
+            }
+
+            mask.setRGB(tile % tilesInRow, tile / tilesInRow, color);
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(mask, "png", output);
+
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,210 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Encodes raw framebuffer captures according to {@link ScreenshotOptions screenshot options}. The encoding runs on a
+ * pool shared by all devices, sized to the available processors, so the agent can serve screenshots of many devices at
+ * once without oversubscribing the CPU.
+ */
+public class ScreenshotEncoder {
+    private static final int ENCODER_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService ENCODER_POOL = Executors.newFixedThreadPool(ENCODER_THREAD_COUNT, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "screenshot-encoder");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final int RAW_BYTES_PER_PIXEL = 3;
+
+    private ScreenshotEncoder() {
+    }
+
+    /**
+     * Crops, scales and encodes a framebuffer capture on the shared encoder pool.
+     *
+     * @param rawImage
+     *        - the framebuffer capture
+     * @param options
+     *        - the encoding options
+     * @return the encoded image
+     * @throws IOException
+     *         if the encoding fails or the region is outside of the screen
+     */
+    public static byte[] encode(final RawImage rawImage, final ScreenshotOptions options) throws IOException {
+        try {
+            return ENCODER_POOL.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return encodeImage(rawImage, options);
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Screenshot encoding was interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+
+            throw new IOException("Screenshot encoding failed.", cause);
+        }
+    }
+
+    private static byte[] encodeImage(RawImage rawImage, ScreenshotOptions options) throws IOException {
+        Rectangle screen = new Rectangle(rawImage.width, rawImage.height);
+        Rectangle region = options.getRegion() != null ? options.getRegion() : screen;
+
+        if (!screen.contains(region)) {
+            throw new IOException(String.format("The region %s is outside of the screen %s.", region, screen));
+        }
+
+        BufferedImage image = toBufferedImage(rawImage, region);
+        image = scale(image, options.getScale());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        switch (options.getFormat()) {
+            case JPEG:
+                writeJpeg(image, options.getQuality(), output);
+                break;
+            case PNG:
+                ImageIO.write(image, "png", output);
+                break;
+            case RAW:
+                writeRaw(image, output);
+                break;
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Converts a framebuffer capture to an RGB image.
+     *
+     * @param rawImage
+     *        - the framebuffer capture
+     * @return the image of the whole screen
+     */
+    public static BufferedImage toBufferedImage(RawImage rawImage) {
+        return toBufferedImage(rawImage, new Rectangle(rawImage.width, rawImage.height));
+    }
+
+    /**
+     * Converts only the pixels of the given region, so a cropped capture does not pay for the whole screen.
+     */
+    private static BufferedImage toBufferedImage(RawImage rawImage, Rectangle region) {
+        int bytesPerPixel = rawImage.bpp >> 3;
+        int[] pixels = new int[region.width * region.height];
+
+        for (int y = 0; y < region.height; y++) {
+            int rowIndex = (region.y + y) * rawImage.width + region.x;
+
+            for (int x = 0; x < region.width; x++) {
+                pixels[y * region.width + x] = rawImage.getARGB((rowIndex + x) * bytesPerPixel);
+            }
+        }
+
+        BufferedImage image = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, region.width, region.height, pixels, 0, region.width);
+
+        return image;
+    }
+
+    private static BufferedImage scale(BufferedImage image, double scale) {
+        if (scale == 1) {
+            return image;
+        }
+
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        BufferedImage scaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaledImage.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+
+        return scaledImage;
+    }
+
+    private static void writeJpeg(BufferedImage image, int quality, ByteArrayOutputStream output) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG encoder is available.");
+        }
+
+        ImageWriter writer = writers.next();
+        ImageWriteParam writeParam = writer.getDefaultWriteParam();
+        writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        writeParam.setCompressionQuality(quality / 100f);
+
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static void writeRaw(BufferedImage image, ByteArrayOutputStream output) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+        DataOutputStream dataOutput = new DataOutputStream(output);
+        dataOutput.writeInt(width);
+        dataOutput.writeInt(height);
+
+        byte[] rgb = new byte[pixels.length * RAW_BYTES_PER_PIXEL];
+        for (int i = 0; i < pixels.length; i++) {
+            rgb[i * RAW_BYTES_PER_PIXEL] = (byte) (pixels[i] >> 16);
+            rgb[i * RAW_BYTES_PER_PIXEL + 1] = (byte) (pixels[i] >> 8);
+            rgb[i * RAW_BYTES_PER_PIXEL + 2] = (byte) pixels[i];
+        }
+
+        dataOutput.write(rgb);
+        dataOutput.flush();
+    }
+}
@@ -0,0 +1,105 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of a screenshot capture on several devices at once. Contains the screenshot and the timing of each
+ * device, in the order the devices were requested.
+ */
+public class ScreenshotManifest implements Serializable {
+    private static final long serialVersionUID = -6230472610984717355L;
+
+    private final long startTime;
+
+    private final int concurrencyLimit;
+
+    private final List<DeviceScreenshot> screenshots = new ArrayList<>();
+
+    private long duration;
+
+    /**
+     * Creates an empty manifest.
+     *
+     * @param startTime
+     *        - the moment the capture started, in milliseconds since the epoch
+     * @param concurrencyLimit
+     *        - the maximum number of devices captured at the same time
+     */
+    public ScreenshotManifest(long startTime, int concurrencyLimit) {
+        this.startTime = startTime;
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    public void addScreenshot(DeviceScreenshot screenshot) {
+        screenshots.add(screenshot);
+    }
+
+    public List<DeviceScreenshot> getScreenshots() {
+        return Collections.unmodifiableList(screenshots);
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * Gets the time the capture on all devices took.
+     *
+     * @return the duration in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * Gets the number of devices the capture failed on.
+     *
+     * @return the failed captures count
+     */
+    public int getFailedCount() {
+        int failedCount = 0;
+        for (DeviceScreenshot screenshot : screenshots) {
+            if (!screenshot.isCaptured()) {
+                failedCount++;
+            }
+        }
+
+        return failedCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Screenshots of %d devices (%d failed) captured in %d ms, at most %d at a time.",
+                             screenshots.size(),
+                             getFailedCount(),
+                             duration,
+                             concurrencyLimit);
+    }
+}
@@ -0,0 +1,112 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.awt.Rectangle;
+
+/**
+ * Parameters of an encoded screenshot: the image format, the JPEG quality, the scale factor and the captured region of
+ * the screen.
+ */
+public class ScreenshotOptions {
+    private static final int DEFAULT_QUALITY = 80;
+
+    private ScreenshotFormat format = ScreenshotFormat.PNG;
+
+    private int quality = DEFAULT_QUALITY;
+
+    private double scale = 1;
+
+    private Rectangle region;
+
+    public ScreenshotFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the format of the encoded image.
+     *
+     * @param format
+     *        - the image format
+     */
+    public void setFormat(ScreenshotFormat format) {
+        if (format == null) {
+            throw new IllegalArgumentException("The screenshot format can not be null.");
+        }
+
+        this.format = format;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * Sets the quality of JPEG images. The quality is ignored by the other formats.
+     *
+     * @param quality
+     *        - the quality, from 0 (smallest image) to 100 (best quality)
+     */
+    public void setQuality(int quality) {
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException(String.format("Invalid screenshot quality %d.", quality));
+        }
+
+        this.quality = quality;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Sets the factor by which the captured image is scaled down.
+     *
+     * @param scale
+     *        - the scale factor, greater than 0 and not greater than 1
+     */
+    public void setScale(double scale) {
+        if (scale <= 0 || scale > 1) {
+            throw new IllegalArgumentException(String.format("Invalid screenshot scale %s.", scale));
+        }
+
+        this.scale = scale;
+    }
+
+    /**
+     * Gets the captured region of the screen.
+     *
+     * @return the region or <code>null</code> if the whole screen is captured
+     */
+    public Rectangle getRegion() {
+        return region;
+    }
+
+    /**
+     * Sets the captured region of the screen.
+     *
+     * @param region
+     *        - the region in screen coordinates or <code>null</code> to capture the whole screen
+     */
+    public void setRegion(Rectangle region) {
+        if (region != null && (region.x < 0 || region.y < 0 || region.width <= 0 || region.height <= 0)) {
+            throw new IllegalArgumentException(String.format("Invalid screenshot region %s.", region));
+        }
+
+        this.region = region;
+    }
+}
@@ -0,0 +1,110 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.io.Serializable;
+
+/**
+ * A location on the screen that matches a template image.
+ */
+public class TemplateMatch implements Serializable {
+    private static final long serialVersionUID = 2684115370952938624L;
+
+    private final int x;
+
+    private final int y;
+
+    private final int width;
+
+    private final int height;
+
+    private final double scale;
+
+    private final double score;
+
+    /**
+     * Creates a template match.
+     *
+     * @param x
+     *        - the x coordinate of the upper left corner of the match
+     * @param y
+     *        - the y coordinate of the upper left corner of the match
+     * @param width
+     *        - the width of the matched area
+     * @param height
+     *        - the height of the matched area
+     * @param scale
+     *        - the scale of the template that matched
+     * @param score
+     *        - the normalized cross-correlation of the template and the matched area, from -1 to 1
+     */
+    public TemplateMatch(int x, int y, int width, int height, double scale, double score) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        this.score = score;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Calculates the part of the smaller of two matches, which is covered by the other match.
+     *
+     * @param other
+     *        - the match to compare with
+     * @return the overlap, from 0 (no common pixels) to 1 (one of the matches contains the other)
+     */
+    double getOverlap(TemplateMatch other) {
+        int overlapWidth = Math.min(x + width, other.x + other.width) - Math.max(x, other.x);
+        int overlapHeight = Math.min(y + height, other.y + other.height) - Math.max(y, other.y);
+        if (overlapWidth <= 0 || overlapHeight <= 0) {
+            return 0;
+        }
+
+        int smallerArea = Math.min(width * height, other.width * other.height);
+        return (double) overlapWidth * overlapHeight / smallerArea;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Match at (%d, %d) %dx%d, scale %.2f, score %.3f.", x, y, width, height, scale, score);
+    }
+}
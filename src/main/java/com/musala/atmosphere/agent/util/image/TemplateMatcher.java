@@ -0,0 +1,417 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Finds the locations of a template image on the screen, for views which have no accessibility nodes like canvases
+ * and games. The template is searched at several scales, because the screen density of the device is usually not the
+ * one the template was taken with.
+ * <p>
+ * The search is done in two steps. First each scale is searched on a downscaled screen, where the template is about
+ * {@value #COARSE_TEMPLATE_SIZE} pixels. Then the best candidates are refined on the full resolution screen.
+ * Both steps run on the {@link ForkJoinPool#commonPool() common fork-join pool}, split by scales and screen regions.
+ * The matches are scored by normalized cross-correlation, so they do not depend on the brightness or the contrast of
+ * the screen.
+ * </p>
+ */
+public class TemplateMatcher {
+    private static final int COARSE_TEMPLATE_SIZE = 16;
+
+    private static final double COARSE_SCORE_MARGIN = 0.15;
+
+    private static final int CANDIDATES_PER_RESULT = 4;
+
+    private static final double MAX_MATCHES_OVERLAP = 0.3;
+
+    private static final double SCALE_STEP = 1.1;
+
+    private static final int MIN_ROWS_PER_TASK = 8;
+
+    private static final double MIN_VARIANCE = 1e-6;
+
+    private static final Comparator<TemplateMatch> BY_SCORE_DESCENDING = new Comparator<TemplateMatch>() {
+        @Override
+        public int compare(TemplateMatch first, TemplateMatch second) {
+            return Double.compare(second.getScore(), first.getScore());
+        }
+    };
+
+    /**
+     * A scaled template with precomputed deviations from its mean luminance.
+     */
+    private static class PreparedTemplate {
+        private final int width;
+
+        private final int height;
+
+        private final double scale;
+
+        private final int factor;
+
+        private final double[] deviations;
+
+        private final double norm;
+
+        /**
+         * @param factor
+         *        - how many times the screen the template is searched on is downscaled
+         */
+        private PreparedTemplate(GrayImage template, double scale, int factor) {
+            this.width = template.width;
+            this.height = template.height;
+            this.scale = scale;
+            this.factor = factor;
+            this.deviations = new double[template.pixels.length];
+
+            double mean = 0;
+            for (int pixel : template.pixels) {
+                mean += pixel;
+            }
+            mean /= template.pixels.length;
+
+            double squaresSum = 0;
+            for (int i = 0; i < deviations.length; i++) {
+                deviations[i] = template.pixels[i] - mean;
+                squaresSum += deviations[i] * deviations[i];
+            }
+
+            this.norm = Math.sqrt(squaresSum);
+        }
+    }
+
+    /**
+     * Searches a band of rows of the downscaled screens for one or more scaled templates.
+     */
+    private static class SearchTask extends RecursiveTask<List<TemplateMatch>> {
+        private static final long serialVersionUID = -4821532981733470123L;
+
+        private final Map<Integer, GrayImage> factorToScreen;
+
+        private final List<PreparedTemplate> templates;
+
+        private final int fromRow;
+
+        private final int toRow;
+
+        private final double minScore;
+
+        /**
+         * @param toRow
+         *        - the row after the last searched top row of the template, or -1 to search the whole screen
+         */
+        private SearchTask(Map<Integer, GrayImage> factorToScreen,
+                List<PreparedTemplate> templates,
+                int fromRow,
+                int toRow,
+                double minScore) {
+            this.factorToScreen = factorToScreen;
+            this.templates = templates;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.minScore = minScore;
+        }
+
+        @Override
+        protected List<TemplateMatch> compute() {
+            if (templates.size() > 1) {
+                List<SearchTask> tasks = new ArrayList<>();
+                for (PreparedTemplate template : templates) {
+                    tasks.add(new SearchTask(factorToScreen,
+                                             Collections.singletonList(template),
+                                             fromRow,
+                                             toRow,
+                                             minScore));
+                }
+
+                return joinAll(ForkJoinTask.invokeAll(tasks));
+            }
+
+            PreparedTemplate template = templates.get(0);
+            GrayImage screen = factorToScreen.get(template.factor);
+            int lastRow = toRow < 0 ? screen.height - template.height + 1 : toRow;
+            if (lastRow - fromRow > MIN_ROWS_PER_TASK) {
+                int middleRow = (fromRow + lastRow) / 2;
+                SearchTask upperTask = new SearchTask(factorToScreen, templates, fromRow, middleRow, minScore);
+                SearchTask lowerTask = new SearchTask(factorToScreen, templates, middleRow, lastRow, minScore);
+
+                ForkJoinTask.invokeAll(upperTask, lowerTask);
+
+                List<TemplateMatch> matches = upperTask.join();
+                matches.addAll(lowerTask.join());
+                return matches;
+            }
+
+            List<TemplateMatch> matches = new ArrayList<>();
+            for (int y = fromRow; y < lastRow; y++) {
+                for (int x = 0; x <= screen.width - template.width; x++) {
+                    double score = correlate(screen, x, y, template);
+                    if (score >= minScore) {
+                        int factor = template.factor;
+                        matches.add(new TemplateMatch(x * factor,
+                                                      y * factor,
+                                                      template.width * factor,
+                                                      template.height * factor,
+                                                      template.scale,
+                                                      score));
+                    }
+                }
+            }
+
+            return matches;
+        }
+
+        private static <T extends ForkJoinTask<List<TemplateMatch>>> List<TemplateMatch> joinAll(Iterable<T> tasks) {
+            List<TemplateMatch> matches = new ArrayList<>();
+            for (T task : tasks) {
+                matches.addAll(task.join());
+            }
+
+            return matches;
+        }
+    }
+
+    /**
+     * Searches the neighborhood of a coarse candidate on the full resolution screen.
+     */
+    private static class RefineTask extends RecursiveTask<TemplateMatch> {
+        private static final long serialVersionUID = 7012964503275511490L;
+
+        private final GrayImage screen;
+
+        private final PreparedTemplate template;
+
+        private final TemplateMatch candidate;
+
+        private RefineTask(GrayImage screen, PreparedTemplate template, TemplateMatch candidate) {
+            this.screen = screen;
+            this.template = template;
+            this.candidate = candidate;
+        }
+
+        @Override
+        protected TemplateMatch compute() {
+            // the coarse position is off by less than one downscaled pixel
+            int radius = template.factor;
+            int fromX = Math.max(0, candidate.getX() - radius);
+            int toX = Math.min(screen.width - template.width, candidate.getX() + radius);
+            int fromY = Math.max(0, candidate.getY() - radius);
+            int toY = Math.min(screen.height - template.height, candidate.getY() + radius);
+
+            TemplateMatch bestMatch = null;
+            for (int y = fromY; y <= toY; y++) {
+                for (int x = fromX; x <= toX; x++) {
+                    double score = correlate(screen, x, y, template);
+                    if (bestMatch == null || score > bestMatch.getScore()) {
+                        bestMatch = new TemplateMatch(x, y, template.width, template.height, template.scale, score);
+                    }
+                }
+            }
+
+            return bestMatch;
+        }
+    }
+
+    /**
+     * Finds the locations of a template on a screen capture.
+     *
+     * @param screenImage
+     *        - the screen capture
+     * @param templateImage
+     *        - the template to search for
+     * @param minScore
+     *        - the minimum score of the returned matches, from -1 to 1
+     * @param maxResults
+     *        - the maximum number of returned matches
+     * @param minScale
+     *        - the smallest scale of the template that is searched
+     * @param maxScale
+     *        - the largest scale of the template that is searched
+     * @return the matches, the best match first; matches overlapping a better match are not returned
+     */
+    public static List<TemplateMatch> findMatches(RawImage screenImage,
+                                                  BufferedImage templateImage,
+                                                  double minScore,
+                                                  int maxResults,
+                                                  double minScale,
+                                                  double maxScale) {
+        if (minScale <= 0 || maxScale < minScale) {
+            throw new IllegalArgumentException(String.format("Invalid template scales %s - %s.", minScale, maxScale));
+        }
+
+        GrayImage screen = GrayImage.fromRawImage(screenImage);
+        GrayImage template = GrayImage.fromBufferedImage(templateImage);
+
+        return findMatches(screen, template, minScore, maxResults, getScales(minScale, maxScale));
+    }
+
+    private static List<TemplateMatch> findMatches(GrayImage screen,
+                                                   GrayImage template,
+                                                   double minScore,
+                                                   int maxResults,
+                                                   List<Double> scales) {
+        Map<Integer, GrayImage> factorToScreen = new HashMap<>();
+        List<PreparedTemplate> coarseTemplates = new ArrayList<>();
+        Map<Double, PreparedTemplate> scaleToTemplate = new HashMap<>();
+
+        for (double scale : scales) {
+            int width = (int) Math.round(template.width * scale);
+            int height = (int) Math.round(template.height * scale);
+            if (width > screen.width || height > screen.height) {
+                continue;
+            }
+
+            // each scale is searched on a screen downscaled so the template is about the same small size
+            int factor = (int) Math.max(1, Math.round((double) Math.min(width, height) / COARSE_TEMPLATE_SIZE));
+            if (!factorToScreen.containsKey(factor)) {
+                factorToScreen.put(factor, screen.resize(screen.width / factor, screen.height / factor));
+            }
+
+            PreparedTemplate scaledTemplate = new PreparedTemplate(template.resize(width, height), scale, factor);
+            if (scaledTemplate.norm < MIN_VARIANCE) {
+                throw new IllegalArgumentException("The template image has no contrast.");
+            }
+
+            scaleToTemplate.put(scale, scaledTemplate);
+            coarseTemplates.add(new PreparedTemplate(template.resize(width / factor, height / factor), scale, factor));
+        }
+
+        if (coarseTemplates.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        SearchTask searchTask = new SearchTask(factorToScreen,
+                                               coarseTemplates,
+                                               0,
+                                               -1,
+                                               minScore - COARSE_SCORE_MARGIN);
+        List<TemplateMatch> candidates = suppressOverlaps(pool.invoke(searchTask), maxResults * CANDIDATES_PER_RESULT);
+
+        List<RefineTask> refineTasks = new ArrayList<>();
+        for (TemplateMatch candidate : candidates) {
+            PreparedTemplate scaledTemplate = scaleToTemplate.get(candidate.getScale());
+            refineTasks.add(new RefineTask(screen, scaledTemplate, candidate));
+        }
+
+        List<TemplateMatch> matches = new ArrayList<>();
+        for (RefineTask refineTask : refineTasks) {
+            pool.execute(refineTask);
+        }
+        for (RefineTask refineTask : refineTasks) {
+            TemplateMatch match = refineTask.join();
+            if (match != null && match.getScore() >= minScore) {
+                matches.add(match);
+            }
+        }
+
+        return suppressOverlaps(matches, maxResults);
+    }
+
+    /**
+     * Keeps the best matches, dropping the matches which overlap a better one.
+     */
+    private static List<TemplateMatch> suppressOverlaps(List<TemplateMatch> matches, int maxResults) {
+        Collections.sort(matches, BY_SCORE_DESCENDING);
+
+        List<TemplateMatch> keptMatches = new ArrayList<>();
+        for (TemplateMatch match : matches) {
+            if (keptMatches.size() >= maxResults) {
+                break;
+            }
+
+            boolean isOverlapping = false;
+            for (TemplateMatch keptMatch : keptMatches) {
+                if (keptMatch.getOverlap(match) > MAX_MATCHES_OVERLAP) {
+                    isOverlapping = true;
+                    break;
+                }
+            }
+
+            if (!isOverlapping) {
+                keptMatches.add(match);
+            }
+        }
+
+        return keptMatches;
+    }
+
+    /**
+     * Gets the searched scales, which are powers of the scale step, so the scale 1 is always searched when in range.
+     */
+    private static List<Double> getScales(double minScale, double maxScale) {
+        List<Double> scales = new ArrayList<>();
+        int minPower = (int) Math.ceil(Math.log(minScale) / Math.log(SCALE_STEP) - 1e-9);
+        int maxPower = (int) Math.floor(Math.log(maxScale) / Math.log(SCALE_STEP) + 1e-9);
+
+        for (int power = minPower; power <= maxPower; power++) {
+            scales.add(Math.pow(SCALE_STEP, power));
+        }
+
+        if (scales.isEmpty()) {
+            scales.add(minScale);
+        }
+
+        return scales;
+    }
+
+    /**
+     * Calculates the normalized cross-correlation of a template and the area of the image under it.
+     */
+    private static double correlate(GrayImage image, int left, int top, PreparedTemplate template) {
+        long sum = 0;
+        long squaresSum = 0;
+        double crossSum = 0;
+
+        for (int y = 0; y < template.height; y++) {
+            int imageOffset = (top + y) * image.width + left;
+            int templateOffset = y * template.width;
+
+            for (int x = 0; x < template.width; x++) {
+                int pixel = image.pixels[imageOffset + x];
+                sum += pixel;
+                squaresSum += pixel * pixel;
+                crossSum += pixel * template.deviations[templateOffset + x];
+            }
+        }
+
+        if (template.norm < MIN_VARIANCE) {
+            // a downscaled template may lose all of its details
+            return 0;
+        }
+
+        int pixelsCount = template.width * template.height;
+        double variance = squaresSum - (double) sum * sum / pixelsCount;
+        if (variance < MIN_VARIANCE) {
+            return 0;
+        }
+
+        return crossSum / (Math.sqrt(variance) * template.norm);
+    }
+}
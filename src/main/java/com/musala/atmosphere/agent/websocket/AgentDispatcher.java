@@ -19,7 +19,10 @@ package com.musala.atmosphere.agent.websocket;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.websocket.ContainerProvider;
 import javax.websocket.DeploymentException;
@@ -31,6 +34,11 @@ import org.apache.log4j.Logger;
 import com.musala.atmosphere.agent.AgentManager;
 import com.musala.atmosphere.agent.DeviceManager;
 import com.musala.atmosphere.agent.devicewrapper.IWrapDevice;
+import com.musala.atmosphere.agent.devicewrapper.util.ScreenStreamer;
+import com.musala.atmosphere.agent.util.artifact.ArtifactStore;
+import com.musala.atmosphere.agent.util.image.ScreenshotFormat;
+import com.musala.atmosphere.agent.util.image.ScreenshotManifest;
+import com.musala.atmosphere.agent.util.image.ScreenshotOptions;
 import com.musala.atmosphere.commons.DeviceInformation;
 import com.musala.atmosphere.commons.RoutingAction;
 import com.musala.atmosphere.commons.exceptions.CommandFailedException;
@@ -53,6 +61,22 @@ public class AgentDispatcher {
 
     private static final String ACTION_FAILD_MESSAGE = "An action execution on a device has failed.";
 
+    private static final int DEFAULT_STREAM_FRAME_RATE = 5;
+
+    private static final int DEFAULT_STREAM_QUALITY = 60;
+
+    private static final double DEFAULT_STREAM_SCALE = 0.5;
+
+    private static final int DEFAULT_ARTIFACT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Serializes the JSON messages sent over the basic remote. The frames of the screen streams are sent
+     * asynchronously by their {@link ScreenFrameSender senders} and do not take this lock.
+     */
+    private final Object sendLock = new Object();
+
+    private final Map<String, ScreenStreamer> screenStreams = new ConcurrentHashMap<>();
+
     private Session session;
 
     private DeviceManager deviceManager;
@@ -185,14 +209,19 @@ public class AgentDispatcher {
     }
 
     private IWrapDevice getWrapper(RequestMessage webSocketRequest) {
-        String deviceId = webSocketRequest.getDeviceId();
-        int startIndex = deviceId.indexOf('_');
-        String deviceSerial = deviceId.substring(startIndex + 1);
+        String deviceSerial = getDeviceSerial(webSocketRequest);
         IWrapDevice deviceWrapper = deviceManager.getDeviceWrapperByDeviceId(deviceSerial);
 
         return deviceWrapper;
     }
 
+    private String getDeviceSerial(RequestMessage webSocketRequest) {
+        String deviceId = webSocketRequest.getDeviceId();
+        int startIndex = deviceId.indexOf('_');
+
+        return deviceId.substring(startIndex + 1);
+    }
+
     /**
      * Requests an action invocation on the device wrapper.
      *
@@ -205,6 +234,30 @@ public class AgentDispatcher {
     private Object route(RequestMessage webSocketRequest) throws CommandFailedException {
         RoutingAction webSocketRequestAction = webSocketRequest.getRoutingAction();
         Object[] arguments = webSocketRequest.getArguments();
+
+        if (webSocketRequestAction == RoutingAction.REPLAY_INPUT_RECORDING_ON_DEVICES) {
+            return replayInputRecordingOnDevices(arguments);
+        }
+
+        if (webSocketRequestAction == RoutingAction.CAPTURE_ALL_SCREENSHOTS) {
+            return captureAllScreenshots(arguments);
+        }
+
+        if (webSocketRequestAction == RoutingAction.GET_ARTIFACT) {
+            return getArtifact(arguments);
+        }
+
+        if (webSocketRequestAction == RoutingAction.START_SCREEN_STREAM) {
+            return startScreenStream(webSocketRequest);
+        }
+
+        if (webSocketRequestAction == RoutingAction.STOP_SCREEN_STREAM) {
+            String streamId = (String) arguments[0];
+            screenStreams.remove(streamId);
+            ScreenStreamer screenStreamer = deviceManager.getScreenStreamer(getDeviceSerial(webSocketRequest));
+            return screenStreamer.unsubscribe(streamId);
+        }
+
         IWrapDevice deviceWrapper = getWrapper(webSocketRequest);
 
         Object result = deviceWrapper.route(webSocketRequestAction, arguments);
@@ -212,6 +265,132 @@ public class AgentDispatcher {
         return result;
     }
 
+    /**
+     * Replays an input recording on several devices of this agent. This is an agent level action, so it does not need
+     * a target device.
+     *
+     * @param arguments
+     *        - the id of the recording, the serial numbers of the devices and an optional time scale
+     * @return the replay reports mapped by device serial number
+     * @throws CommandFailedException
+     *         if any of the devices is not connected
+     */
+    @SuppressWarnings("unchecked")
+    private Object replayInputRecordingOnDevices(Object[] arguments) throws CommandFailedException {
+        String recordingId = (String) arguments[0];
+        List<String> deviceSerialNumbers = (List<String>) arguments[1];
+        double timeScale = arguments.length > 2 && arguments[2] != null ? ((Number) arguments[2]).doubleValue() : 1;
+
+        return deviceManager.replayInputRecording(recordingId, deviceSerialNumbers, timeScale);
+    }
+
+    /**
+     * Captures a screenshot of several devices of this agent in parallel. This is an agent level action, so it does
+     * not need a target device.
+     *
+     * @param arguments
+     *        - the serial numbers of the devices (all devices if <code>null</code>), an optional concurrency limit and
+     *        the optional format, quality and scale of the screenshots
+     * @return the {@link ScreenshotManifest manifest} of the capture
+     * @throws CommandFailedException
+     *         if any of the devices is not connected
+     */
+    @SuppressWarnings("unchecked")
+    private Object captureAllScreenshots(Object[] arguments) throws CommandFailedException {
+        List<String> deviceSerialNumbers = arguments != null && arguments.length > 0
+                ? (List<String>) arguments[0] : null;
+        int concurrencyLimit = getIntArgument(arguments, 1, 0);
+
+        Object[] screenshotArguments = new Object[3];
+        if (arguments != null && arguments.length > 2) {
+            System.arraycopy(arguments, 2, screenshotArguments, 0, Math.min(arguments.length - 2, 3));
+        }
+
+        return deviceManager.captureScreenshots(deviceSerialNumbers, concurrencyLimit, screenshotArguments);
+    }
+
+    /**
+     * Reads a chunk of an artifact kept in the {@link ArtifactStore artifact store} of the agent. This is an agent
+     * level action, so it does not need a target device. Large artifacts are retrieved with several requests, until a
+     * chunk shorter than the requested is returned.
+     *
+     * @param arguments
+     *        - the id of the artifact, an optional offset of the chunk and an optional maximum chunk size
+     * @return the chunk as a Base64 encoded string
+     * @throws CommandFailedException
+     *         if there is no such artifact or reading it fails
+     */
+    private Object getArtifact(Object[] arguments) throws CommandFailedException {
+        String artifactId = (String) arguments[0];
+        long offset = arguments.length > 1 && arguments[1] != null ? ((Number) arguments[1]).longValue() : 0;
+        int chunkSize = getIntArgument(arguments, 2, DEFAULT_ARTIFACT_CHUNK_SIZE);
+
+        byte[] chunk;
+        try {
+            chunk = ArtifactStore.getDefault().read(artifactId, offset, chunkSize);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new CommandFailedException(String.format("Reading artifact %s failed.", artifactId), e);
+        }
+
+        if (chunk == null) {
+            throw new CommandFailedException(String.format("There is no artifact with id %s.", artifactId));
+        }
+
+        return Base64.getEncoder().encodeToString(chunk);
+    }
+
+    /**
+     * Starts a live stream of the screen of the requested device. The frames are sent as binary messages by a
+     * {@link ScreenFrameSender sender} of their own, separately from the JSON responses.
+     *
+     * @param request
+     *        - the request, which arguments are an optional frame rate, JPEG quality and scale factor
+     * @return the id of the started stream
+     * @throws CommandFailedException
+     *         if the device is not connected
+     */
+    private Object startScreenStream(RequestMessage request) throws CommandFailedException {
+        Object[] arguments = request.getArguments();
+        int frameRate = getIntArgument(arguments, 0, DEFAULT_STREAM_FRAME_RATE);
+
+        ScreenshotOptions options = new ScreenshotOptions();
+        options.setFormat(ScreenshotFormat.JPEG);
+        options.setQuality(getIntArgument(arguments, 1, DEFAULT_STREAM_QUALITY));
+        options.setScale(arguments != null && arguments.length > 2 && arguments[2] != null
+                ? ((Number) arguments[2]).doubleValue() : DEFAULT_STREAM_SCALE);
+
+        ScreenFrameSender frameSender = new ScreenFrameSender(session,
+                                                              String.valueOf(request.getSessionId()),
+                                                              request.getDeviceId());
+
+        ScreenStreamer screenStreamer = deviceManager.getScreenStreamer(getDeviceSerial(request));
+        String streamId = screenStreamer.subscribe(frameRate, options, frameSender);
+        screenStreams.put(streamId, screenStreamer);
+
+        return streamId;
+    }
+
+    /**
+     * Stops all screen streams started over the connection with the server, so the device screens are not captured for
+     * subscribers that can not receive the frames anymore.
+     */
+    void stopScreenStreams() {
+        for (String streamId : screenStreams.keySet()) {
+            ScreenStreamer screenStreamer = screenStreams.remove(streamId);
+            if (screenStreamer != null && screenStreamer.unsubscribe(streamId)) {
+                LOGGER.info("Stopped screen stream " + streamId + " of a closed connection.");
+            }
+        }
+    }
+
+    private int getIntArgument(Object[] arguments, int index, int defaultValue) {
+        if (arguments == null || arguments.length <= index || arguments[index] == null) {
+            return defaultValue;
+        }
+
+        return ((Number) arguments[index]).intValue();
+    }
+
     /**
      * Closes the connection with the server.
      */
@@ -244,7 +423,9 @@ public class AgentDispatcher {
 
     private void sendText(String message, Session session) {
         try {
-            session.getBasicRemote().sendText(message);
+            synchronized (sendLock) {
+                session.getBasicRemote().sendText(message);
+            }
         } catch (IOException e) {
             LOGGER.error("Failed to send a JSON message.", e);
         }
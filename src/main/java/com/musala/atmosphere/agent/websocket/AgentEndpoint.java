@@ -17,6 +17,9 @@
 package com.musala.atmosphere.agent.websocket;
 
 import javax.websocket.ClientEndpoint;
+import javax.websocket.CloseReason;
+import javax.websocket.OnClose;
+import javax.websocket.OnError;
 import javax.websocket.OnMessage;
 import javax.websocket.PongMessage;
 import javax.websocket.Session;
@@ -47,6 +50,18 @@ public class AgentEndpoint {
     public AgentEndpoint() {
     }
 
+    @OnClose
+    public void onClose(Session session, CloseReason closeReason) {
+        LOGGER.info("The connection with the Server is closed: " + closeReason);
+        dispatcher.stopScreenStreams();
+    }
+
+    @OnError
+    public void onError(Session session, Throwable error) {
+        LOGGER.error("The connection with the Server failed.", error);
+        dispatcher.stopScreenStreams();
+    }
+
     @OnMessage
     public void onPongMessage(PongMessage message, Session session) {
         // nothing to do here
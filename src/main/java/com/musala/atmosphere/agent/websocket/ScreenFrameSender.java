@@ -0,0 +1,162 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package com.musala.atmosphere.agent.websocket;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import com.musala.atmosphere.agent.devicewrapper.util.IScreenFrameSink;
+
+/**
+ * Sends the frames of a screen stream to a single subscriber as binary WebSocket messages. The frames are sent
+ * asynchronously, one at a time, so a slow or large frame never blocks the JSON responses sent over the same session.
+ * At most {@link #MAX_PENDING_FRAMES} frames wait to be sent and the oldest one is dropped when a new frame arrives.
+ * <p>
+ * Each message starts with the session id, the device id, the stream id and the frame number, so the server can
+ * forward it to the right client.
+ * </p>
+ */
+public class ScreenFrameSender implements IScreenFrameSink, SendHandler {
+    /**
+     * The maximum number of frames waiting to be sent.
+     */
+    public static final int MAX_PENDING_FRAMES = 2;
+
+    private static final int MESSAGE_HEADER_CAPACITY = 256;
+
+    private final Session session;
+
+    private final String sessionId;
+
+    private final String deviceId;
+
+    private final Deque<ByteBuffer> pendingMessages = new ArrayDeque<>();
+
+    private boolean isSending;
+
+    private long droppedFramesCount;
+
+    private volatile Throwable sendFailure;
+
+    /**
+     * Creates a sender of the frames of one subscriber.
+     *
+     * @param session
+     *        - the WebSocket session the frames are sent over
+     * @param sessionId
+     *        - the id of the client session which subscribed for the stream
+     * @param deviceId
+     *        - the id of the streamed device
+     */
+    public ScreenFrameSender(Session session, String sessionId, String deviceId) {
+        this.session = session;
+        this.sessionId = sessionId;
+        this.deviceId = deviceId;
+    }
+
+    @Override
+    public void sendFrame(String streamId, long frameNumber, byte[] frame) throws IOException {
+        Throwable failure = sendFailure;
+        if (failure != null) {
+            throw new IOException("Sending a frame of screen stream " + streamId + " failed.", failure);
+        }
+
+        ByteBuffer message = createMessage(streamId, frameNumber, frame);
+
+        synchronized (this) {
+            if (pendingMessages.size() >= MAX_PENDING_FRAMES) {
+                pendingMessages.poll();
+                droppedFramesCount++;
+            }
+
+            pendingMessages.add(message);
+
+            if (isSending) {
+                return;
+            }
+
+            isSending = true;
+        }
+
+        sendNext();
+    }
+
+    @Override
+    public void onResult(SendResult result) {
+        if (result.isOK()) {
+            sendNext();
+        } else {
+            onFailure(result.getException());
+        }
+    }
+
+    /**
+     * Gets the number of the frames dropped because the previous frames were not sent yet.
+     *
+     * @return the number of the dropped frames
+     */
+    public synchronized long getDroppedFramesCount() {
+        return droppedFramesCount;
+    }
+
+    private void sendNext() {
+        ByteBuffer message;
+        synchronized (this) {
+            message = pendingMessages.poll();
+            if (message == null) {
+                isSending = false;
+                return;
+            }
+        }
+
+        try {
+            session.getAsyncRemote().sendBinary(message, this);
+        } catch (RuntimeException e) {
+            // thrown when the session is already closed
+            onFailure(e);
+        }
+    }
+
+    private synchronized void onFailure(Throwable failure) {
+        sendFailure = failure;
+        pendingMessages.clear();
+        isSending = false;
+    }
+
+    private ByteBuffer createMessage(String streamId, long frameNumber, byte[] frame) throws IOException {
+        ByteArrayOutputStream messageStream = new ByteArrayOutputStream(frame.length + MESSAGE_HEADER_CAPACITY);
+        DataOutputStream message = new DataOutputStream(messageStream);
+        message.writeUTF(sessionId);
+        message.writeUTF(deviceId);
+        message.writeUTF(streamId);
+        message.writeLong(frameNumber);
+        message.writeInt(frame.length);
+        message.write(frame);
+        message.flush();
+
+        return ByteBuffer.wrap(messageStream.toByteArray());
+    }
+}
@@ -24,6 +24,10 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * A class that holds a buffer with a generic data.
+ * <p>
+ * The LogCat output is kept in a {@link RingBuffer} now. This buffer stays in the test sources as the baseline
+ * which {@link LogcatBufferBenchmark} compares it against.
+ * </p>
  *
  * @author dimcho.nedev
  *
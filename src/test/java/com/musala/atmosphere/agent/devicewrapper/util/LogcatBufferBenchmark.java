@@ -0,0 +1,140 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many LogCat lines per microsecond go through the {@link Buffer} and the {@link RingBuffer} when a
+ * device logs at a high rate. The producer publishes lines as fast as it can, while the consumers read them in
+ * batches. Run with <code>gradle benchmarkLogcatBuffer</code>.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogcatBufferBenchmark {
+    private static final String LOG_LINE = "10-19 07:48:12.345  1234  1250 I ActivityManager: "
+            + "Start proc 4321:com.example.app/u0a123 for activity com.example.app/.MainActivity";
+
+    private static final int CAPACITY = 16384;
+
+    private static final int MAX_LINES_PER_READ = 1024;
+
+    @State(Scope.Group)
+    public static class SynchronizedBuffer {
+        private Buffer<String> buffer;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            // a short timeout, so the consumer does not wait long for the producer at the end of an iteration
+            buffer = new Buffer<>(1);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class LockFreeBuffer {
+        private RingBuffer<String> buffer;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            buffer = new RingBuffer<>(CAPACITY);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+        private final List<String> lines = new ArrayList<>(MAX_LINES_PER_READ);
+
+        private RingBuffer<String> buffer;
+
+        private RingBuffer<String>.Cursor cursor;
+
+        RingBuffer<String>.Cursor getCursor(RingBuffer<String> currentBuffer) {
+            if (buffer != currentBuffer) {
+                buffer = currentBuffer;
+                cursor = currentBuffer.openCursor();
+            }
+
+            return cursor;
+        }
+    }
+
+    @Benchmark
+    @Group("synchronizedBuffer")
+    @GroupThreads(1)
+    public void synchronizedBufferProducer(SynchronizedBuffer state) {
+        state.buffer.addValue(LOG_LINE);
+    }
+
+    @Benchmark
+    @Group("synchronizedBuffer")
+    @GroupThreads(1)
+    public int synchronizedBufferConsumer(SynchronizedBuffer state) {
+        return state.buffer.getBuffer().size();
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public void ringBufferProducer(LockFreeBuffer state) {
+        state.buffer.publish(LOG_LINE);
+    }
+
+    @Benchmark
+    @Group("ringBuffer")
+    @GroupThreads(1)
+    public int ringBufferConsumer(LockFreeBuffer state, Reader reader) {
+        return read(state, reader);
+    }
+
+    @Benchmark
+    @Group("ringBufferThreeReaders")
+    @GroupThreads(1)
+    public void ringBufferThreeReadersProducer(LockFreeBuffer state) {
+        state.buffer.publish(LOG_LINE);
+    }
+
+    @Benchmark
+    @Group("ringBufferThreeReaders")
+    @GroupThreads(3)
+    public int ringBufferThreeReadersConsumer(LockFreeBuffer state, Reader reader) {
+        return read(state, reader);
+    }
+
+    private static int read(LockFreeBuffer state, Reader reader) {
+        reader.lines.clear();
+        return reader.getCursor(state.buffer).drainTo(reader.lines, MAX_LINES_PER_READ);
+    }
+}
@@ -0,0 +1,112 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LogcatFilterTest {
+    private static final String ACTIVITY_MANAGER_INFO_LINE =
+            "10-19 07:48:12.345  1234  1250 I ActivityManager: Start proc 4321:com.example.app/u0a123";
+
+    private static final String ACTIVITY_MANAGER_DEBUG_LINE =
+            "10-19 07:48:12.346  1234  1250 D ActivityManager: Resuming activity";
+
+    private static final String APP_ERROR_LINE = "10-19 07:48:12.347  4321  4321 E MyApp  : Request failed";
+
+    private static final String SEPARATOR_LINE = "--------- beginning of main";
+
+    @Test
+    public void testEmptyFilterAcceptsAllLines() {
+        LogcatFilter filter = LogcatFilter.parse("");
+
+        assertTrue("An empty filter should accept all lines.", filter.acceptsAll());
+        assertTrue("An empty filter should accept the separators.", filter.accepts(SEPARATOR_LINE));
+        assertTrue("An empty filter should accept the debug lines.", filter.accepts(ACTIVITY_MANAGER_DEBUG_LINE));
+    }
+
+    @Test
+    public void testLinesAreFilteredByTagAndPriority() {
+        LogcatFilter filter = LogcatFilter.parse("ActivityManager:I MyApp:E *:S");
+
+        assertTrue("The info line of the tag should be accepted.", filter.accepts(ACTIVITY_MANAGER_INFO_LINE));
+        assertFalse("The debug line of the tag should be rejected.", filter.accepts(ACTIVITY_MANAGER_DEBUG_LINE));
+        assertTrue("A tag padded with spaces should be matched.", filter.accepts(APP_ERROR_LINE));
+        assertFalse("The separators should be rejected.", filter.accepts(SEPARATOR_LINE));
+    }
+
+    @Test
+    public void testUnlistedTagsUseTheDefaultPriority() {
+        LogcatFilter filter = LogcatFilter.parse("*:E");
+
+        assertFalse("The info line should be rejected.", filter.accepts(ACTIVITY_MANAGER_INFO_LINE));
+        assertTrue("The error line should be accepted.", filter.accepts(APP_ERROR_LINE));
+    }
+
+    @Test
+    public void testLogcatCommandIsParsed() {
+        LogcatFilter filter = LogcatFilter.parse("adb -s emulator-5554 logcat -v time MyApp:E *:S");
+
+        assertTrue("The filter specifications after the command should be used.", filter.accepts(APP_ERROR_LINE));
+        assertFalse("The unlisted tags should be silenced.", filter.accepts(ACTIVITY_MANAGER_INFO_LINE));
+    }
+
+    @Test
+    public void testSilentOptionShowsTheListedTagsOnly() {
+        LogcatFilter filter = LogcatFilter.parse("logcat -s MyApp");
+
+        assertFalse("The filter should not accept all lines.", filter.acceptsAll());
+        assertTrue("The lines of the listed tag should be accepted.", filter.accepts(APP_ERROR_LINE));
+        assertFalse("The unlisted tags should be silenced.", filter.accepts(ACTIVITY_MANAGER_INFO_LINE));
+    }
+
+    @Test
+    public void testSilentOptionWithPriorities() {
+        LogcatFilter filter = LogcatFilter.parse("-s ActivityManager:I");
+
+        assertTrue("The info line of the tag should be accepted.", filter.accepts(ACTIVITY_MANAGER_INFO_LINE));
+        assertFalse("The debug line of the tag should be rejected.", filter.accepts(ACTIVITY_MANAGER_DEBUG_LINE));
+        assertFalse("The unlisted tags should be silenced.", filter.accepts(APP_ERROR_LINE));
+    }
+
+    @Test
+    public void testBareTagIsShownWithAllPriorities() {
+        LogcatFilter filter = LogcatFilter.parse("ActivityManager *:E");
+
+        assertTrue("The debug line of the tag should be accepted.", filter.accepts(ACTIVITY_MANAGER_DEBUG_LINE));
+        assertTrue("The error line of another tag should be accepted.", filter.accepts(APP_ERROR_LINE));
+    }
+
+    @Test
+    public void testLowercasePrioritiesAreParsed() {
+        LogcatFilter filter = LogcatFilter.parse("ActivityManager:i *:s");
+
+        assertTrue("The info line of the tag should be accepted.", filter.accepts(ACTIVITY_MANAGER_INFO_LINE));
+        assertFalse("The debug line of the tag should be rejected.", filter.accepts(ACTIVITY_MANAGER_DEBUG_LINE));
+        assertFalse("The unlisted tags should be silenced.", filter.accepts(APP_ERROR_LINE));
+    }
+
+    @Test
+    public void testOptionValuesAreNotTakenAsTags() {
+        LogcatFilter filter = LogcatFilter.parse("logcat -v time -b main -s MyApp");
+
+        assertTrue("The lines of the listed tag should be accepted.", filter.accepts(APP_ERROR_LINE));
+        assertFalse("The unlisted tags should be silenced.", filter.accepts(ACTIVITY_MANAGER_INFO_LINE));
+    }
+}
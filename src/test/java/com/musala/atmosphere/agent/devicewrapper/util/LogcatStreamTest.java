@@ -0,0 +1,178 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
+import com.musala.atmosphere.commons.util.Pair;
+
+public class LogcatStreamTest {
+    private static final String LOGCAT_COMMAND = "echo $$; exec logcat -v threadtime";
+
+    private static final int LOGCAT_PROCESS_ID = 4242;
+
+    private static final String INFO_LINE = "10-19 07:48:12.345  1234  1250 I ActivityManager: Start proc";
+
+    private static final String ERROR_LINE = "10-19 07:48:12.347  4321  4321 E MyApp: Request failed";
+
+    private static final long READ_TIMEOUT = 5000;
+
+    private IDevice device;
+
+    private LogcatStream logcatStream;
+
+    private volatile IShellOutputReceiver logcatReceiver;
+
+    private final CountDownLatch processEnd = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        device = mock(IDevice.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                IShellOutputReceiver receiver = (IShellOutputReceiver) invocation.getArguments()[1];
+                byte[] processIdBytes = (LOGCAT_PROCESS_ID + "\n").getBytes("ISO-8859-1");
+                receiver.addOutput(processIdBytes, 0, processIdBytes.length);
+
+                logcatReceiver = receiver;
+                processEnd.await(READ_TIMEOUT, TimeUnit.MILLISECONDS);
+                return null;
+            }
+        }).when(device).executeShellCommand(eq(LOGCAT_COMMAND),
+                                            any(IShellOutputReceiver.class),
+                                            anyLong(),
+                                            any(TimeUnit.class));
+
+        logcatStream = new LogcatStream(device, 64);
+    }
+
+    @Test(timeout = 10000)
+    public void testSessionsShareOneProcessWithDifferentFilters() throws Exception {
+        LogcatSession allLinesSession = logcatStream.openSession(null);
+        LogcatSession errorsSession = logcatStream.openSession("*:E");
+        log(INFO_LINE, ERROR_LINE);
+
+        List<Pair<Integer, String>> allLines = allLinesSession.read(10, READ_TIMEOUT);
+        List<Pair<Integer, String>> errors = errorsSession.read(10, READ_TIMEOUT);
+
+        verify(device).executeShellCommand(eq(LOGCAT_COMMAND),
+                                           any(IShellOutputReceiver.class),
+                                           anyLong(),
+                                           any(TimeUnit.class));
+        assertEquals("Unexpected number of lines of the first session.", 2, allLines.size());
+        assertEquals("Unexpected first line id.", Integer.valueOf(0), allLines.get(0).getKey());
+        assertEquals("Unexpected second line id.", Integer.valueOf(1), allLines.get(1).getKey());
+        assertEquals("Unexpected number of lines of the filtered session.", 1, errors.size());
+        assertEquals("Unexpected filtered line.", ERROR_LINE, errors.get(0).getValue());
+        assertEquals("Unexpected filtered line id.", Integer.valueOf(0), errors.get(0).getKey());
+    }
+
+    @Test(timeout = 10000)
+    public void testSessionsEndWhenTheProcessEnds() throws Exception {
+        LogcatSession session = logcatStream.openSession("");
+        log(INFO_LINE);
+        processEnd.countDown();
+
+        assertEquals("The lines logged before the end should be read.", 1, session.read(10, READ_TIMEOUT).size());
+        assertTrue("No lines should be read after the end.", session.read(10, READ_TIMEOUT).isEmpty());
+        assertFalse("The session should not be active after the end.", session.isActive());
+        assertFalse("The stream should not be active after the end.", logcatStream.isStreaming());
+    }
+
+    @Test(timeout = 10000)
+    public void testEndedProcessIsNotKilled() throws Exception {
+        LogcatSession session = logcatStream.openSession("");
+        waitForProcess();
+        processEnd.countDown();
+
+        while (logcatStream.isStreaming()) {
+            Thread.sleep(10);
+        }
+
+        assertTrue("The session of the ended process should be closed.", logcatStream.closeSession(session.getId()));
+        Thread.sleep(200);
+        verify(device, never()).executeShellCommand(eq("kill " + LOGCAT_PROCESS_ID),
+                                                    any(IShellOutputReceiver.class),
+                                                    anyLong(),
+                                                    any(TimeUnit.class));
+    }
+
+    @Test
+    public void testProcessIsStoppedWithTheLastSession() throws Exception {
+        LogcatSession firstSession = logcatStream.openSession("");
+        LogcatSession secondSession = logcatStream.openSession("");
+        waitForProcess();
+
+        assertTrue("The first session should be closed.", logcatStream.closeSession(firstSession.getId()));
+        assertFalse("The process should not be cancelled while a session is open.", logcatReceiver.isCancelled());
+        assertNull("A closed session should not be found.", logcatStream.getSession(firstSession.getId()));
+
+        logcatStream.closeSession(secondSession.getId());
+        assertTrue("The process should be cancelled with the last session.", logcatReceiver.isCancelled());
+        assertFalse("The stream should be stopped.", logcatStream.isStreaming());
+        verify(device, timeout((int) READ_TIMEOUT)).executeShellCommand(eq("kill " + LOGCAT_PROCESS_ID),
+                                                                        any(IShellOutputReceiver.class),
+                                                                        anyLong(),
+                                                                        any(TimeUnit.class));
+        processEnd.countDown();
+    }
+
+    private void waitForProcess() throws Exception {
+        verify(device, timeout((int) READ_TIMEOUT)).executeShellCommand(eq(LOGCAT_COMMAND),
+                                                                        any(IShellOutputReceiver.class),
+                                                                        anyLong(),
+                                                                        any(TimeUnit.class));
+        while (logcatReceiver == null) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void log(String... lines) throws Exception {
+        waitForProcess();
+
+        StringBuilder output = new StringBuilder();
+        for (String line : lines) {
+            output.append(line).append('\n');
+        }
+
+        byte[] outputBytes = output.toString().getBytes("ISO-8859-1");
+        logcatReceiver.addOutput(outputBytes, 0, outputBytes.length);
+    }
+}
@@ -0,0 +1,178 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+    private static final long POLL_TIMEOUT = 5000;
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals("Unexpected capacity.", 8, new RingBuffer<String>(5).getCapacity());
+        assertEquals("Unexpected capacity.", 8, new RingBuffer<String>(8).getCapacity());
+        assertEquals("Unexpected capacity.", 1, new RingBuffer<String>(1).getCapacity());
+    }
+
+    @Test
+    public void testEveryCursorReadsAllValues() {
+        RingBuffer<String> buffer = new RingBuffer<>(8);
+        RingBuffer<String>.Cursor firstCursor = buffer.openCursor();
+        RingBuffer<String>.Cursor secondCursor = buffer.openCursor();
+
+        buffer.publish("first");
+        buffer.publish("second");
+
+        assertEquals("Unexpected values of the first cursor.",
+                     Arrays.asList("first", "second"),
+                     firstCursor.poll(10, POLL_TIMEOUT));
+        assertEquals("Unexpected values of the second cursor.",
+                     Arrays.asList("first", "second"),
+                     secondCursor.poll(10, POLL_TIMEOUT));
+        assertEquals("No values should be left.", 0, firstCursor.available());
+    }
+
+    @Test
+    public void testOverwrittenValuesAreCountedAsLost() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        RingBuffer<Integer>.Cursor cursor = buffer.openCursor();
+
+        for (int i = 0; i < 10; i++) {
+            buffer.publish(i);
+        }
+
+        assertEquals("Only the last values should be kept.", Arrays.asList(6, 7, 8, 9), cursor.poll(10, POLL_TIMEOUT));
+        assertEquals("Unexpected number of lost values.", 6, cursor.getLostCount());
+    }
+
+    @Test
+    public void testNewCursorStartsAtOldestKeptValue() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for (int i = 0; i < 6; i++) {
+            buffer.publish(i);
+        }
+
+        RingBuffer<Integer>.Cursor cursor = buffer.openCursor();
+        assertEquals("Unexpected values of a late cursor.", Arrays.asList(2, 3, 4, 5), cursor.poll(10, POLL_TIMEOUT));
+        assertEquals("A late cursor should not lose values.", 0, cursor.getLostCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testWaitingReaderIsWokenUpByPublish() throws InterruptedException {
+        final RingBuffer<String> buffer = new RingBuffer<>(8);
+        RingBuffer<String>.Cursor cursor = buffer.openCursor();
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                buffer.publish("line");
+            }
+        });
+        producer.start();
+
+        assertEquals("The published value should be read.", Arrays.asList("line"), cursor.poll(10, POLL_TIMEOUT));
+        producer.join();
+    }
+
+    @Test(timeout = 10000)
+    public void testTerminateWakesUpWaitingReader() {
+        final RingBuffer<String> buffer = new RingBuffer<>(8);
+        RingBuffer<String>.Cursor cursor = buffer.openCursor();
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                buffer.terminate();
+            }
+        }).start();
+
+        assertTrue("No values should be read from a terminated buffer.", cursor.poll(10, POLL_TIMEOUT).isEmpty());
+        assertFalse("The buffer should not be active.", buffer.isActive());
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentReadersReadValuesInOrder() throws InterruptedException {
+        final int valuesCount = 200_000;
+        final RingBuffer<Integer> buffer = new RingBuffer<>(1024);
+        final List<RingBuffer<Integer>.Cursor> cursors = Arrays.asList(buffer.openCursor(), buffer.openCursor());
+        final long[] readCounts = new long[cursors.size()];
+        final List<String> errors = new ArrayList<>();
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < cursors.size(); i++) {
+            final int readerIndex = i;
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    RingBuffer<Integer>.Cursor cursor = cursors.get(readerIndex);
+                    int lastValue = -1;
+                    while (lastValue < valuesCount - 1) {
+                        List<Integer> values = cursor.poll(256, POLL_TIMEOUT);
+                        if (values.isEmpty()) {
+                            break;
+                        }
+
+                        for (int value : values) {
+                            if (value <= lastValue) {
+                                synchronized (errors) {
+                                    errors.add(String.format("Value %d read after %d.", value, lastValue));
+                                }
+                            }
+                            lastValue = value;
+                        }
+                        readCounts[readerIndex] += values.size();
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int i = 0; i < valuesCount; i++) {
+            buffer.publish(i);
+        }
+
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        for (int i = 0; i < cursors.size(); i++) {
+            assertEquals("Every value should be either read or lost.",
+                         valuesCount,
+                         readCounts[i] + cursors.get(i).getLostCount());
+        }
+    }
+}
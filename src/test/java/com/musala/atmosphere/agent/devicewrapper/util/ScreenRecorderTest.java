@@ -0,0 +1,192 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
+
+public class ScreenRecorderTest {
+    private static final String RECORDS_DIRECTORY = "/sdcard/AtmosphereScreenRecords";
+
+    private static final String RECORDING_PROCESS_ID = "4242";
+
+    private static final long STOP_TIMEOUT = 5000;
+
+    private IDevice device;
+
+    private ShellCommandExecutor shellCommandExecutor;
+
+    private List<String> recordCommands;
+
+    private List<String> recordedSegments;
+
+    private IScreenRecordSegmentListener segmentListener;
+
+    /**
+     * Simulates a <code>screenrecord</code> process, which prints its PID and records until the given time passes or
+     * it is interrupted.
+     */
+    private class RecordingProcessAnswer implements Answer<Void> {
+        private final long recordingTime;
+
+        private final CountDownLatch interruptLatch = new CountDownLatch(1);
+
+        public RecordingProcessAnswer(long recordingTime) {
+            this.recordingTime = recordingTime;
+        }
+
+        @Override
+        public Void answer(InvocationOnMock invocation) throws Throwable {
+            recordCommands.add((String) invocation.getArguments()[0]);
+
+            IShellOutputReceiver receiver = (IShellOutputReceiver) invocation.getArguments()[1];
+            byte[] output = (RECORDING_PROCESS_ID + "\r\n").getBytes();
+            receiver.addOutput(output, 0, output.length);
+            receiver.flush();
+
+            interruptLatch.await(recordingTime, TimeUnit.MILLISECONDS);
+            return null;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        device = mock(IDevice.class);
+        shellCommandExecutor = mock(ShellCommandExecutor.class);
+        recordCommands = Collections.synchronizedList(new ArrayList<String>());
+        recordedSegments = Collections.synchronizedList(new ArrayList<String>());
+
+        segmentListener = new IScreenRecordSegmentListener() {
+            @Override
+            public void onSegmentRecorded(String segmentName) {
+                recordedSegments.add(segmentName);
+            }
+        };
+    }
+
+    @Test
+    public void testStopInterruptsTheRecordingProcess() throws Exception {
+        final RecordingProcessAnswer recordingProcess = new RecordingProcessAnswer(STOP_TIMEOUT * 2);
+        doAnswer(recordingProcess).when(device).executeShellCommand(anyString(),
+                                                                    any(IShellOutputReceiver.class),
+                                                                    anyLong(),
+                                                                    any(TimeUnit.class));
+        doAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                if (invocation.getArguments()[0].equals("kill -2 " + RECORDING_PROCESS_ID)) {
+                    recordingProcess.interruptLatch.countDown();
+                }
+                return "";
+            }
+        }).when(shellCommandExecutor).execute(anyString());
+
+        ScreenRecorder recorder = new ScreenRecorder(device, shellCommandExecutor, RECORDS_DIRECTORY);
+        recorder.start(600, "720x1280", 4000000, segmentListener);
+        assertTrue("The recorder should be recording.", recorder.isRecording());
+        waitUntilRecordingStarted();
+
+        long stopStartTime = System.currentTimeMillis();
+        List<String> segments = recorder.stop(STOP_TIMEOUT);
+
+        assertTrue("Stopping should not wait for the segment time limit.",
+                   System.currentTimeMillis() - stopStartTime < STOP_TIMEOUT);
+        assertEquals("Unexpected recorded segments.", Arrays.asList("100.mp4"), segments);
+        assertEquals("The listener should be notified for the last segment.", segments, recordedSegments);
+        assertFalse("The recorder should not be recording after it is stopped.", recorder.isRecording());
+        assertEquals("Unexpected record command.",
+                     "echo $$; exec /system/bin/screenrecord --time-limit 180 --size 720x1280 --bit-rate 4000000 "
+                             + RECORDS_DIRECTORY + "/100.mp4",
+                     recordCommands.get(0));
+        verify(shellCommandExecutor).execute("kill -2 " + RECORDING_PROCESS_ID);
+    }
+
+    @Test
+    public void testSegmentsAreRotatedUntilTheTimeLimit() throws Exception {
+        doAnswer(new RecordingProcessAnswer(600)).when(device).executeShellCommand(anyString(),
+                                                                                   any(IShellOutputReceiver.class),
+                                                                                   anyLong(),
+                                                                                   any(TimeUnit.class));
+
+        ScreenRecorder recorder = new ScreenRecorder(device, shellCommandExecutor, RECORDS_DIRECTORY);
+        recorder.start(400, null, 0, segmentListener);
+
+        waitUntilStopped(recorder);
+
+        List<String> expectedSegments = Arrays.asList("100.mp4", "101.mp4", "102.mp4");
+        assertEquals("Unexpected recorded segments.", expectedSegments, recorder.stop(STOP_TIMEOUT));
+        assertEquals("The listener should be notified for each segment.", expectedSegments, recordedSegments);
+        assertTrue("Unexpected time limit of the first segment.",
+                   recordCommands.get(0).contains("--time-limit 180 " + RECORDS_DIRECTORY + "/100.mp4"));
+        assertTrue("Unexpected time limit of the last segment.",
+                   recordCommands.get(2).contains("--time-limit 40 " + RECORDS_DIRECTORY + "/102.mp4"));
+    }
+
+    @Test
+    public void testFailingRecordingProcessIsNotRestarted() throws Exception {
+        doAnswer(new RecordingProcessAnswer(0)).when(device).executeShellCommand(anyString(),
+                                                                                 any(IShellOutputReceiver.class),
+                                                                                 anyLong(),
+                                                                                 any(TimeUnit.class));
+
+        ScreenRecorder recorder = new ScreenRecorder(device, shellCommandExecutor, RECORDS_DIRECTORY);
+        recorder.start(600, null, 0, segmentListener);
+
+        waitUntilStopped(recorder);
+
+        assertEquals("The failing process should be started once.", 1, recordCommands.size());
+        assertTrue("No segments should be recorded.", recorder.stop(STOP_TIMEOUT).isEmpty());
+        assertTrue("The listener should not be notified.", recordedSegments.isEmpty());
+    }
+
+    private void waitUntilRecordingStarted() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STOP_TIMEOUT;
+        while (recordCommands.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static void waitUntilStopped(ScreenRecorder recorder) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STOP_TIMEOUT;
+        while (recorder.isRecording() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ShellOutputBufferTest {
+    @Test
+    public void testOutputGrowsPastInitialCapacity() {
+        ShellOutputBuffer buffer = new ShellOutputBuffer(4);
+        byte[] output = "<hierarchy rotation=\"0\"/>".getBytes(StandardCharsets.UTF_8);
+
+        buffer.addOutput(output, 0, 10);
+        buffer.addOutput(output, 10, output.length - 10);
+
+        assertEquals("Buffer size does not match the received output.", output.length, buffer.size());
+        assertArrayEquals("Buffer content does not match the received output.", output, buffer.toByteArray());
+    }
+
+    @Test
+    public void testResetKeepsAllocatedMemory() {
+        ShellOutputBuffer buffer = new ShellOutputBuffer(16);
+        byte[] output = "first dump".getBytes(StandardCharsets.UTF_8);
+
+        buffer.addOutput(output, 0, output.length);
+        buffer.cancel();
+        byte[] backingArray = buffer.getData();
+
+        buffer.reset();
+        buffer.addOutput(output, 0, 5);
+
+        assertSame("Backing array should be reused after reset.", backingArray, buffer.getData());
+        assertFalse("Reset buffer should not be cancelled.", buffer.isCancelled());
+        assertEquals("Unexpected buffer content after reset.", "first", buffer.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRestoreLineFeedsRemovesOnlyCarriageReturnsBeforeLineFeeds() {
+        ShellOutputBuffer buffer = new ShellOutputBuffer();
+        byte[] output = new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\r', '\n', 0x1A, '\r', '\n', '\r', 'x', '\r'};
+
+        buffer.addOutput(output, 0, output.length);
+        buffer.restoreLineFeeds();
+
+        byte[] expectedOutput = new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', '\r', 'x', '\r'};
+        assertArrayEquals("Line feeds were not restored correctly.", expectedOutput, buffer.toByteArray());
+    }
+}
@@ -0,0 +1,80 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util.input;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class InputRecordingTest {
+    private File recordingFile;
+
+    @Before
+    public void setUp() throws IOException {
+        recordingFile = File.createTempFile("input_recording", ".rec");
+    }
+
+    @After
+    public void tearDown() {
+        recordingFile.delete();
+    }
+
+    @Test
+    public void testRecordingSurvivesWriteAndRead() throws IOException {
+        InputRecording recording = new InputRecording("emulator-5554");
+        recording.add(0, "PRESS_HARDWARE_BUTTON", new Object[] {4});
+        recording.add(250, "IME_INPUT_TEXT", new Object[] {"atmosphere", 0L});
+
+        recording.writeTo(recordingFile);
+        InputRecording restoredRecording = InputRecording.readFrom(recordingFile);
+
+        assertEquals("Device serial number was not restored.",
+                     "emulator-5554",
+                     restoredRecording.getDeviceSerialNumber());
+
+        List<InputRecording.Entry> entries = restoredRecording.getEntries();
+        assertEquals("Unexpected number of recorded actions.", 2, entries.size());
+        assertEquals("Action offset was not restored.", 250, entries.get(1).getOffset());
+        assertEquals("Action name was not restored.", "IME_INPUT_TEXT", entries.get(1).getAction());
+        assertArrayEquals("Action arguments were not restored.",
+                          new Object[] {"atmosphere", 0L},
+                          entries.get(1).getArguments());
+    }
+
+    @Test
+    public void testDurationIsTheTimeBetweenTheFirstAndTheLastAction() {
+        InputRecording recording = new InputRecording("emulator-5554");
+        assertEquals("An empty recording should have no duration.", 0, recording.getDuration());
+
+        recording.add(100, "PRESS_HARDWARE_BUTTON", new Object[] {4});
+        recording.add(1600, "PRESS_HARDWARE_BUTTON", new Object[] {3});
+
+        assertEquals("Unexpected recording duration.", 1500, recording.getDuration());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRecordingIdCanNotLeaveRecordingsDirectory() {
+        InputRecording.getRecordingFile("../agent");
+    }
+}
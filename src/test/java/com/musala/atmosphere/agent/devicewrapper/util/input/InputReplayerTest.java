@@ -0,0 +1,74 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util.input;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.musala.atmosphere.agent.devicewrapper.IWrapDevice;
+import com.musala.atmosphere.commons.RoutingAction;
+
+public class InputReplayerTest {
+    @Test
+    public void testReplayedActionsAreMarkedAsReplaying() throws Exception {
+        final List<Boolean> replayingStates = new ArrayList<>();
+        IWrapDevice deviceWrapper = mock(IWrapDevice.class);
+        when(deviceWrapper.route(any(RoutingAction.class), any(Object[].class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                replayingStates.add(InputReplayer.isReplaying());
+                return true;
+            }
+        });
+
+        InputRecording recording = new InputRecording("emulator-5554");
+        recording.add(0, "PRESS_HARDWARE_BUTTON", new Object[] {4});
+        recording.add(10, "PRESS_HARDWARE_BUTTON", new Object[] {3});
+
+        InputReplayReport report = InputReplayer.replayWithTimeout(deviceWrapper, "emulator-5554", recording, 0);
+
+        assertFalse("The replay should have finished in time.", report.isTimedOut());
+        assertEquals("Unexpected number of replayed actions.", 2, replayingStates.size());
+        assertTrue("Replayed actions should be marked as replaying.", replayingStates.get(0) && replayingStates.get(1));
+        assertFalse("Only the replay thread should be marked as replaying.", InputReplayer.isReplaying());
+    }
+
+    @Test
+    public void testReplayTimeoutIncludesScaledDurationAndActionAllowance() {
+        InputRecording recording = new InputRecording("emulator-5554");
+        recording.add(0, "PRESS_HARDWARE_BUTTON", new Object[] {4});
+        recording.add(2000, "PRESS_HARDWARE_BUTTON", new Object[] {3});
+
+        long fullSpeedTimeout = InputReplayer.getReplayTimeout(recording, 1);
+        long halfSpeedTimeout = InputReplayer.getReplayTimeout(recording, 0.5);
+
+        assertEquals("Half the time scale should halve the scaled duration.",
+                     1000,
+                     fullSpeedTimeout - halfSpeedTimeout);
+    }
+}
@@ -0,0 +1,107 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.devicewrapper.util.ondevicecomponent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.musala.atmosphere.agent.devicewrapper.util.BackgroundShellCommandExecutor;
+import com.musala.atmosphere.commons.ad.Request;
+import com.musala.atmosphere.commons.ad.uiautomator.UIAutomatorRequest;
+import com.musala.atmosphere.commons.exceptions.CommandFailedException;
+import com.musala.atmosphere.commons.ui.selector.UiElementSelector;
+import com.musala.atmosphere.commons.ui.tree.AccessibilityElement;
+
+public class UIAutomatorCommunicatorTest {
+    private DeviceRequestSender<UIAutomatorRequest> requestSender;
+
+    private UIAutomatorCommunicator automatorCommunicator;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        requestSender = mock(DeviceRequestSender.class);
+        automatorCommunicator = new UIAutomatorCommunicator(requestSender,
+                                                            mock(BackgroundShellCommandExecutor.class),
+                                                            "emulator-5554");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBatchReportsHitsMissesAndFailuresPerSelector() throws Exception {
+        UiElementSelector foundSelector = mock(UiElementSelector.class);
+        UiElementSelector missingSelector = mock(UiElementSelector.class);
+        UiElementSelector failedSelector = mock(UiElementSelector.class);
+        AccessibilityElement foundElement = mock(AccessibilityElement.class);
+
+        List<Object> response = Arrays.<Object> asList(Arrays.asList(foundElement),
+                                                       Collections.emptyList(),
+                                                       new IllegalStateException("Stale hierarchy."));
+        when(requestSender.request(any(Request.class))).thenReturn(response);
+
+        List<UiElementSelectorResult> results =
+                automatorCommunicator.getUiElementsBatch(Arrays.asList(foundSelector, missingSelector, failedSelector),
+                                                         Arrays.asList(true, true, false));
+
+        assertEquals("Unexpected number of results.", 3, results.size());
+        assertSame("The result should carry its selector.", foundSelector, results.get(0).getSelector());
+        assertEquals("The found element should be returned.",
+                     Arrays.asList(foundElement),
+                     results.get(0).getElements());
+        assertFalse("A selector without matches should not fail.", results.get(1).isFailed());
+        assertTrue("A selector without matches should have no elements.", results.get(1).getElements().isEmpty());
+        assertSame("The failed result should carry its selector.", failedSelector, results.get(2).getSelector());
+        assertTrue("The failed selector should be reported.", results.get(2).isFailed());
+        assertEquals("Unexpected error message.", "Stale hierarchy.", results.get(2).getErrorMessage());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testEmptyBatchIsNotSentToTheDevice() throws Exception {
+        List<UiElementSelectorResult> results =
+                automatorCommunicator.getUiElementsBatch(Collections.<UiElementSelector> emptyList(),
+                                                         Collections.<Boolean> emptyList());
+
+        assertTrue("An empty batch should have no results.", results.isEmpty());
+        verify(requestSender, never()).request(any(Request.class));
+    }
+
+    @Test(expected = CommandFailedException.class)
+    public void testMissingSelectorsAreRejected() throws Exception {
+        automatorCommunicator.getUiElementsBatch(null, Collections.<Boolean> emptyList());
+    }
+
+    @Test(expected = CommandFailedException.class)
+    public void testMismatchedVisibilityFlagsAreRejected() throws Exception {
+        automatorCommunicator.getUiElementsBatch(Arrays.asList(mock(UiElementSelector.class)),
+                                                 Collections.<Boolean> emptyList());
+    }
+}
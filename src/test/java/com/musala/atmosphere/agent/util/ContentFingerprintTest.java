@@ -0,0 +1,46 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ContentFingerprintTest {
+    @Test
+    public void testEqualContentHasEqualTags() {
+        byte[] firstContent = new byte[] {1, 2, 3, 4};
+        byte[] secondContent = Arrays.copyOf(firstContent, firstContent.length);
+
+        assertEquals("Tags of equal contents should match.",
+                     ContentFingerprint.of(firstContent),
+                     ContentFingerprint.of(secondContent));
+    }
+
+    @Test
+    public void testChangedContentHasDifferentTag() {
+        String firstDump = "<hierarchy rotation=\"0\"></hierarchy>";
+        String secondDump = "<hierarchy rotation=\"1\"></hierarchy>";
+
+        assertNotEquals("Tags of different contents should not match.",
+                        ContentFingerprint.of(firstDump),
+                        ContentFingerprint.of(secondDump));
+    }
+}
@@ -0,0 +1,126 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileRecyclerTest {
+    private File workingDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        workingDirectory = Files.createTempDirectory("file-recycler").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(workingDirectory);
+    }
+
+    @Test
+    public void testDirectoryTreeIsRemoved() throws IOException {
+        File recordsDirectory = new File(workingDirectory, "records");
+        File nestedDirectory = new File(recordsDirectory, "segments");
+        nestedDirectory.mkdirs();
+        Files.write(new File(recordsDirectory, "100.mp4").toPath(), new byte[100]);
+        Files.write(new File(nestedDirectory, "101.mp4").toPath(), new byte[50]);
+
+        FileRecycler fileRecycler = new FileRecycler();
+        fileRecycler.addFile(recordsDirectory.getPath());
+        fileRecycler.run();
+
+        assertFalse("The directory should be removed.", recordsDirectory.exists());
+        assertEquals("Unexpected reclaimed space.", 150, fileRecycler.getReclaimedBytes());
+        assertEquals("No files should be left for removal.", 0, fileRecycler.getPendingFilesCount());
+    }
+
+    @Test
+    public void testFilesAreRemovedInBatches() throws IOException {
+        File firstFile = new File(workingDirectory, "first.log");
+        File secondFile = new File(workingDirectory, "second.log");
+        Files.write(firstFile.toPath(), new byte[10]);
+        Files.write(secondFile.toPath(), new byte[10]);
+
+        FileRecycler fileRecycler = new FileRecycler(1, 3);
+        fileRecycler.addFiles(Arrays.asList(firstFile.getPath(), secondFile.getPath()));
+
+        fileRecycler.run();
+        assertFalse("The first file should be removed on the first run.", firstFile.exists());
+        assertTrue("The second file should wait for the next run.", secondFile.exists());
+
+        fileRecycler.run();
+        assertFalse("The second file should be removed on the second run.", secondFile.exists());
+        assertEquals("Unexpected reclaimed space.", 20, fileRecycler.getReclaimedBytes());
+    }
+
+    @Test
+    public void testFailedFileIsRetriedOnNextRun() throws IOException {
+        // Windows reports a path under a regular file as missing, not as a failure
+        assumeFalse(System.getProperty("os.name").startsWith("Windows"));
+
+        File regularFile = new File(workingDirectory, "regular.log");
+        Files.write(regularFile.toPath(), new byte[10]);
+        // a path under a regular file can never be removed, even by a privileged user
+        String undeletablePath = new File(regularFile, "locked.log").getPath();
+
+        FileRecycler fileRecycler = new FileRecycler(4, 2);
+        fileRecycler.addFile(undeletablePath);
+
+        fileRecycler.run();
+        assertEquals("The failed file should be left for the next run.", 1, fileRecycler.getPendingFilesCount());
+
+        fileRecycler.run();
+        assertEquals("The failed file should be given up after the last attempt.",
+                     0,
+                     fileRecycler.getPendingFilesCount());
+    }
+
+    @Test
+    public void testMissingFileIsNotRetried() {
+        FileRecycler fileRecycler = new FileRecycler();
+        fileRecycler.addFile(new File(workingDirectory, "missing").getPath());
+        fileRecycler.run();
+
+        assertEquals("A missing file should not be retried.", 0, fileRecycler.getPendingFilesCount());
+    }
+
+    @Test
+    public void testMissingRootIsNotGivenUp() {
+        // a single attempt, so a root counted as failed would be given up on the first run
+        FileRecycler fileRecycler = new FileRecycler(4, 1);
+        File missingDirectory = new File(workingDirectory, "missing");
+        fileRecycler.addFile(new File(missingDirectory, "records").getPath());
+        fileRecycler.addFile(missingDirectory.getPath());
+        fileRecycler.run();
+
+        assertEquals("A missing root should not be retried.", 0, fileRecycler.getPendingFilesCount());
+        assertEquals("A missing root should not reclaim space.", 0, fileRecycler.getReclaimedBytes());
+    }
+}
@@ -0,0 +1,207 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.musala.atmosphere.agent.util.artifact.Artifact;
+import com.musala.atmosphere.agent.util.artifact.ArtifactStore;
+import com.musala.atmosphere.agent.util.artifact.ArtifactType;
+
+public class FtpFileTransferServiceTest {
+    private static final String SCREEN_RECORD_NAME_FORMAT = "user_2017-01-01-00-00-%02d_serial_screen_record.mp4";
+
+    private static final long UPLOAD_TIMEOUT = 10000;
+
+    private File workingDirectory;
+
+    private File queueFile;
+
+    private FtpFileTransferService transferService;
+
+    @Before
+    public void setUp() throws IOException {
+        workingDirectory = Files.createTempDirectory("ftp-transfers").toFile();
+        queueFile = new File(workingDirectory, "pending_transfers.txt");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (transferService != null) {
+            transferService.stop();
+        }
+        FileUtils.deleteDirectory(workingDirectory);
+    }
+
+    @Test
+    public void testQueueIsDrainedByAllConnections() throws Exception {
+        FtpConnectionManager firstConnection = createConnection(200);
+        FtpConnectionManager secondConnection = createConnection(200);
+
+        transferService = new FtpFileTransferService(queueFile.getPath(),
+                                                     Arrays.asList(firstConnection, secondConnection),
+                                                     0);
+        transferService.start();
+
+        for (int i = 0; i < 6; i++) {
+            transferService.addTransferTask(createScreenRecord(i).getPath());
+        }
+
+        waitForUploads(6);
+
+        assertEquals("All files should be uploaded.", 6, transferService.getMetrics().getUploadedFilesCount());
+        assertEquals("The queue should be empty.", 0, transferService.getPendingTransfersCount());
+        verify(firstConnection, atLeastOnce()).uploadFile(any(File.class), anyString());
+        verify(secondConnection, atLeastOnce()).uploadFile(any(File.class), anyString());
+    }
+
+    @Test
+    public void testFailedUploadIsRetried() throws Exception {
+        FtpConnectionManager connection = createConnection(0);
+        doThrow(new IOException("Connection reset.")).doReturn(100L)
+                                                      .when(connection)
+                                                      .uploadFile(any(File.class), anyString());
+
+        transferService = new FtpFileTransferService(queueFile.getPath(), Arrays.asList(connection), 2);
+        transferService.start();
+        transferService.addTransferTask(createScreenRecord(0).getPath());
+
+        waitForUploads(1);
+
+        FtpTransferMetrics metrics = transferService.getMetrics();
+        assertEquals("The file should be uploaded after a retry.", 1, metrics.getUploadedFilesCount());
+        assertEquals("Unexpected number of retries.", 1, metrics.getRetriesCount());
+        assertEquals("Unexpected number of uploaded bytes.", 100, metrics.getUploadedBytes());
+        verify(connection, times(2)).uploadFile(any(File.class), anyString());
+    }
+
+    @Test
+    public void testFileIsDroppedWhenAllRetriesFail() throws Exception {
+        FtpConnectionManager connection = createConnection(0);
+        doThrow(new IOException("Connection reset.")).when(connection).uploadFile(any(File.class), anyString());
+
+        transferService = new FtpFileTransferService(queueFile.getPath(), Arrays.asList(connection), 0);
+        transferService.start();
+        transferService.addTransferTask(createScreenRecord(0).getPath());
+
+        long deadline = System.currentTimeMillis() + UPLOAD_TIMEOUT;
+        while (transferService.getMetrics().getFailedFilesCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals("The file should be dropped.", 1, transferService.getMetrics().getFailedFilesCount());
+        assertEquals("The queue should be empty.", 0, transferService.getPendingTransfersCount());
+        verify(connection, times(1)).uploadFile(any(File.class), anyString());
+    }
+
+    @Test
+    public void testWorkerContinuesAfterUnexpectedError() throws Exception {
+        FtpConnectionManager connection = createConnection(0);
+        doThrow(new IllegalStateException("Unexpected reply.")).doReturn(100L)
+                                                               .when(connection)
+                                                               .uploadFile(any(File.class), anyString());
+
+        transferService = new FtpFileTransferService(queueFile.getPath(), Arrays.asList(connection), 2);
+        transferService.start();
+        transferService.addTransferTask(createScreenRecord(0).getPath());
+        transferService.addTransferTask(createScreenRecord(1).getPath());
+
+        waitForUploads(1);
+
+        FtpTransferMetrics metrics = transferService.getMetrics();
+        assertEquals("The file failing unexpectedly should be dropped.", 1, metrics.getFailedFilesCount());
+        assertEquals("The next file should be uploaded.", 1, metrics.getUploadedFilesCount());
+    }
+
+    @Test
+    public void testQueuedArtifactIsPinnedUntilUploaded() throws Exception {
+        Map<ArtifactType, Long> quotas = new EnumMap<>(ArtifactType.class);
+        ArtifactStore artifactStore = new ArtifactStore(new File(workingDirectory, "artifacts"), quotas, 0);
+        Artifact screenRecord = artifactStore.store(ArtifactType.SCREEN_RECORD, createScreenRecord(0));
+
+        transferService = new FtpFileTransferService(queueFile.getPath(),
+                                                     Arrays.asList(createConnection(0)),
+                                                     0,
+                                                     artifactStore);
+        transferService.addTransferTask(screenRecord.getFile().getPath());
+        assertTrue("The queued artifact should be pinned.", artifactStore.isPinned(screenRecord.getId()));
+
+        transferService.start();
+
+        long deadline = System.currentTimeMillis() + UPLOAD_TIMEOUT;
+        while (artifactStore.isPinned(screenRecord.getId()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertEquals("The file should be uploaded.", 1, transferService.getMetrics().getUploadedFilesCount());
+        assertFalse("The uploaded artifact should be unpinned.", artifactStore.isPinned(screenRecord.getId()));
+    }
+
+    private FtpConnectionManager createConnection(final long uploadTime) throws IOException {
+        FtpConnectionManager connection = mock(FtpConnectionManager.class);
+        doReturn(true).when(connection).createDirectoryIfNotExists(anyString());
+        doAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(uploadTime);
+                return ((File) invocation.getArguments()[0]).length();
+            }
+        }).when(connection).uploadFile(any(File.class), anyString());
+
+        return connection;
+    }
+
+    private File createScreenRecord(int index) throws IOException {
+        File screenRecord = new File(workingDirectory, String.format(SCREEN_RECORD_NAME_FORMAT, index));
+        FileUtils.writeByteArrayToFile(screenRecord, new byte[1024]);
+
+        return screenRecord;
+    }
+
+    private void waitForUploads(int filesCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + UPLOAD_TIMEOUT;
+        while (transferService.getMetrics().getUploadedFilesCount() < filesCount
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.coremedia.iso.boxes.Container;
+import com.googlecode.mp4parser.authoring.Movie;
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.builder.DefaultMp4Builder;
+import com.googlecode.mp4parser.authoring.container.mp4.MovieCreator;
+import com.googlecode.mp4parser.authoring.tracks.AppendTrack;
+
+/**
+ * Measures the time and the peak heap usage of combining the segments of a one hour screen recording, with the
+ * in-memory builder used before and with the {@link Mp4SegmentConcatenator}. Run it with
+ * <code>gradle benchmarkMp4Concatenation</code>, the first argument is the average sample size in bytes.
+ */
+public class Mp4SegmentConcatenatorBenchmark {
+    private static final int SEGMENTS_COUNT = 20;
+
+    private static final int FRAMES_PER_SECOND = 30;
+
+    private static final int SEGMENT_DURATION_SECONDS = 180;
+
+    private static final int DEFAULT_SAMPLE_SIZE = 2048;
+
+    private static final long TIMESCALE = 90000;
+
+    public static void main(String[] args) throws IOException {
+        int sampleSize = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SAMPLE_SIZE;
+        int samplesPerSegment = FRAMES_PER_SECOND * SEGMENT_DURATION_SECONDS;
+
+        File workingDirectory = Files.createTempDirectory("mp4-benchmark").toFile();
+        try {
+            List<File> segments = new ArrayList<>();
+            for (int i = 0; i < SEGMENTS_COUNT; i++) {
+                File segmentFile = new File(workingDirectory, (100 + i) + ".mp4");
+                segments.add(Mp4SegmentConcatenatorTest.createSegment(segmentFile,
+                                                                      i,
+                                                                      samplesPerSegment,
+                                                                      sampleSize,
+                                                                      TIMESCALE));
+            }
+
+            System.out.println(String.format("%d segments, %d samples of %d bytes, %.1f MB in total",
+                                             SEGMENTS_COUNT,
+                                             SEGMENTS_COUNT * samplesPerSegment,
+                                             sampleSize,
+                                             getTotalSize(segments) / 1e6));
+            System.out.println("mode         time (ms)   peak heap (MB)");
+
+            File legacyOutput = new File(workingDirectory, "legacy.mp4");
+            resetPeakHeapUsage();
+            long startTime = System.nanoTime();
+            buildCombinedVideo(segments, legacyOutput);
+            print("builder", startTime);
+
+            File streamingOutput = new File(workingDirectory, "streaming.mp4");
+            resetPeakHeapUsage();
+            startTime = System.nanoTime();
+            Mp4SegmentConcatenator.concatenate(segments, streamingOutput);
+            print("streaming", startTime);
+        } finally {
+            for (File file : workingDirectory.listFiles()) {
+                file.delete();
+            }
+            workingDirectory.delete();
+        }
+    }
+
+    /**
+     * Combines the segments the way the agent did before the streaming concatenation.
+     */
+    private static void buildCombinedVideo(List<File> segments, File output) throws IOException {
+        List<Track> videoTracks = new ArrayList<>();
+        for (File segment : segments) {
+            videoTracks.addAll(MovieCreator.build(segment.getPath()).getTracks());
+        }
+
+        Movie combinedMovie = new Movie();
+        combinedMovie.addTrack(new AppendTrack(videoTracks.toArray(new Track[videoTracks.size()])));
+        Container container = new DefaultMp4Builder().build(combinedMovie);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(output, "rw")) {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            container.writeContainer(fileChannel);
+        }
+
+        for (Track track : videoTracks) {
+            track.close();
+        }
+    }
+
+    private static long getTotalSize(List<File> files) {
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+
+        return size;
+    }
+
+    private static void resetPeakHeapUsage() {
+        System.gc();
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP) {
+                memoryPool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static void print(String mode, long startTime) {
+        long elapsedTime = (System.nanoTime() - startTime) / 1000000;
+
+        long peakHeapUsage = 0;
+        for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (memoryPool.getType() == MemoryType.HEAP) {
+                peakHeapUsage += memoryPool.getPeakUsage().getUsed();
+            }
+        }
+
+        System.out.println(String.format("%-10s %11d %16.1f", mode, elapsedTime, peakHeapUsage / 1e6));
+    }
+}
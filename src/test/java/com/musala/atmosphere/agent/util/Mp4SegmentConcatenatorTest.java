@@ -0,0 +1,237 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.coremedia.iso.boxes.Container;
+import com.coremedia.iso.boxes.SampleDescriptionBox;
+import com.coremedia.iso.boxes.sampleentry.VisualSampleEntry;
+import com.googlecode.mp4parser.authoring.AbstractTrack;
+import com.googlecode.mp4parser.authoring.Movie;
+import com.googlecode.mp4parser.authoring.Sample;
+import com.googlecode.mp4parser.authoring.SampleImpl;
+import com.googlecode.mp4parser.authoring.Track;
+import com.googlecode.mp4parser.authoring.TrackMetaData;
+import com.googlecode.mp4parser.authoring.builder.DefaultMp4Builder;
+import com.googlecode.mp4parser.authoring.container.mp4.MovieCreator;
+
+public class Mp4SegmentConcatenatorTest {
+    private static final long TIMESCALE = 90000;
+
+    private static final long SAMPLE_DURATION = 3000;
+
+    private static final int SAMPLE_SIZE = 64;
+
+    private static final int SYNC_SAMPLE_INTERVAL = 10;
+
+    private File workingDirectory;
+
+    /**
+     * A video track with generated samples, the content of each sample depends on the segment and the sample index.
+     */
+    private static class GeneratedVideoTrack extends AbstractTrack {
+        private final TrackMetaData trackMetaData = new TrackMetaData();
+
+        private final SampleDescriptionBox sampleDescriptionBox = new SampleDescriptionBox();
+
+        private final List<Sample> samples = new ArrayList<>();
+
+        private final long[] sampleDurations;
+
+        private final long[] syncSamples;
+
+        public GeneratedVideoTrack(int segmentIndex, int samplesCount, int sampleSize, long timescale) {
+            super("generated");
+
+            trackMetaData.setTimescale(timescale);
+            trackMetaData.setWidth(320);
+            trackMetaData.setHeight(240);
+
+            VisualSampleEntry sampleEntry = new VisualSampleEntry(VisualSampleEntry.TYPE3);
+            sampleEntry.setWidth(320);
+            sampleEntry.setHeight(240);
+            sampleDescriptionBox.addBox(sampleEntry);
+
+            sampleDurations = new long[samplesCount];
+            Arrays.fill(sampleDurations, SAMPLE_DURATION);
+
+            syncSamples = new long[(samplesCount + SYNC_SAMPLE_INTERVAL - 1) / SYNC_SAMPLE_INTERVAL];
+            for (int i = 0; i < syncSamples.length; i++) {
+                syncSamples[i] = i * SYNC_SAMPLE_INTERVAL + 1;
+            }
+
+            for (int i = 0; i < samplesCount; i++) {
+                samples.add(new SampleImpl(ByteBuffer.wrap(createSampleData(segmentIndex, i, sampleSize))));
+            }
+        }
+
+        @Override
+        public SampleDescriptionBox getSampleDescriptionBox() {
+            return sampleDescriptionBox;
+        }
+
+        @Override
+        public long[] getSampleDurations() {
+            return sampleDurations;
+        }
+
+        @Override
+        public long[] getSyncSamples() {
+            return syncSamples;
+        }
+
+        @Override
+        public TrackMetaData getTrackMetaData() {
+            return trackMetaData;
+        }
+
+        @Override
+        public String getHandler() {
+            return "vide";
+        }
+
+        @Override
+        public List<Sample> getSamples() {
+            return samples;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        workingDirectory = Files.createTempDirectory("mp4-segments").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : workingDirectory.listFiles()) {
+            file.delete();
+        }
+        workingDirectory.delete();
+    }
+
+    @Test
+    public void testConcatenatedVideoContainsAllSamplesInOrder() throws IOException {
+        int[] samplesCounts = {30, 45, 60};
+        List<File> segments = new ArrayList<>();
+        for (int i = 0; i < samplesCounts.length; i++) {
+            segments.add(createSegment(new File(workingDirectory, (100 + i) + ".mp4"),
+                                       i,
+                                       samplesCounts[i],
+                                       SAMPLE_SIZE,
+                                       TIMESCALE));
+        }
+
+        File output = new File(workingDirectory, "merged.mp4");
+        Mp4SegmentConcatenator.concatenate(segments, output);
+
+        Movie movie = MovieCreator.build(output.getPath());
+        assertEquals("The concatenated video should have a single track.", 1, movie.getTracks().size());
+
+        Track track = movie.getTracks().get(0);
+        List<Sample> samples = track.getSamples();
+        assertEquals("Unexpected number of samples.", 135, samples.size());
+
+        int sampleIndex = 0;
+        for (int segmentIndex = 0; segmentIndex < samplesCounts.length; segmentIndex++) {
+            for (int i = 0; i < samplesCounts[segmentIndex]; i++) {
+                ByteBuffer sampleData = samples.get(sampleIndex++).asByteBuffer();
+                byte[] actualData = new byte[sampleData.remaining()];
+                sampleData.get(actualData);
+
+                assertArrayEquals("Unexpected sample content.",
+                                  createSampleData(segmentIndex, i, SAMPLE_SIZE),
+                                  actualData);
+            }
+        }
+
+        assertEquals("Unexpected video duration.", 135 * SAMPLE_DURATION, track.getDuration());
+        assertArrayEquals("Unexpected sync samples.",
+                          new long[] {1, 11, 21, 31, 41, 51, 61, 71, 76, 86, 96, 106, 116, 126},
+                          track.getSyncSamples());
+
+        movie.getTracks().get(0).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testSegmentsWithDifferentTimescalesAreRejected() throws IOException {
+        List<File> segments = new ArrayList<>();
+        segments.add(createSegment(new File(workingDirectory, "100.mp4"), 0, 30, SAMPLE_SIZE, TIMESCALE));
+        segments.add(createSegment(new File(workingDirectory, "101.mp4"), 1, 30, SAMPLE_SIZE, TIMESCALE / 2));
+
+        Mp4SegmentConcatenator.concatenate(segments, new File(workingDirectory, "merged.mp4"));
+    }
+
+    /**
+     * Writes a video segment with generated samples.
+     *
+     * @param file
+     *        - the file where the segment is written
+     * @param segmentIndex
+     *        - the index of the segment, used for generating the samples content
+     * @param samplesCount
+     *        - the number of samples in the segment
+     * @param sampleSize
+     *        - the size of each sample in bytes
+     * @param timescale
+     *        - the time scale of the video track
+     * @return the written file
+     * @throws IOException
+     *         if writing the segment fails
+     */
+    static File createSegment(File file, int segmentIndex, int samplesCount, int sampleSize, long timescale)
+        throws IOException {
+        Movie movie = new Movie();
+        movie.addTrack(new GeneratedVideoTrack(segmentIndex, samplesCount, sampleSize, timescale));
+        Container container = new DefaultMp4Builder().build(movie);
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            FileChannel fileChannel = randomAccessFile.getChannel();
+            container.writeContainer(fileChannel);
+        }
+
+        return file;
+    }
+
+    private static byte[] createSampleData(int segmentIndex, int sampleIndex, int sampleSize) {
+        byte[] data = new byte[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            data[i] = (byte) (segmentIndex * 31 + sampleIndex * 7 + i);
+        }
+
+        return data;
+    }
+}
@@ -0,0 +1,185 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransferJournalTest {
+    private File workingDirectory;
+
+    private File journalFile;
+
+    private TransferJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        workingDirectory = Files.createTempDirectory("transfer-journal").toFile();
+        journalFile = new File(workingDirectory, "pending_transfers.txt");
+        journal = new TransferJournal(journalFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.close();
+        FileUtils.deleteDirectory(workingDirectory);
+    }
+
+    @Test
+    public void testTransfersAreTakenInOrder() throws IOException {
+        journal.add("first.mp4");
+        journal.add("second.mp4");
+
+        assertEquals("Unexpected number of pending transfers.", 2, journal.size());
+        assertEquals("Unexpected first transfer.", "first.mp4", journal.take().getFilePath());
+        assertEquals("Unexpected second transfer.", "second.mp4", journal.take().getFilePath());
+        assertNull("The queue should be empty.", journal.take());
+        assertEquals("Unexpected number of transfers in progress.", 2, journal.getInProgressCount());
+    }
+
+    @Test
+    public void testPendingAndInterruptedTransfersAreRecovered() throws IOException {
+        journal.add("completed.mp4");
+        journal.add("interrupted.mp4");
+        journal.add("pending.mp4");
+
+        journal.complete(journal.take());
+        journal.take();
+        journal.close();
+
+        journal = new TransferJournal(journalFile);
+
+        assertEquals("Unexpected number of recovered transfers.", 2, journal.size());
+        assertEquals("The interrupted transfer should be retried first.",
+                     "interrupted.mp4",
+                     journal.take().getFilePath());
+        assertEquals("Unexpected pending transfer.", "pending.mp4", journal.take().getFilePath());
+        assertNull("The completed transfer should not be recovered.", journal.take());
+    }
+
+    @Test
+    public void testNewTransfersDoNotReuseRecoveredIds() throws IOException {
+        long firstId = journal.add("first.mp4");
+        journal.close();
+
+        journal = new TransferJournal(journalFile);
+        long secondId = journal.add("second.mp4");
+
+        assertTrue("The ids of the transfers should be unique.", secondId > firstId);
+    }
+
+    @Test
+    public void testJournalIsCompacted() throws IOException {
+        for (int i = 0; i < 2000; i++) {
+            journal.add("screen_record_" + i + ".mp4");
+            journal.complete(journal.take());
+        }
+        journal.add("pending.mp4");
+
+        assertTrue("The journal should be compacted.",
+                   Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8).size() < 2000);
+
+        journal.close();
+        journal = new TransferJournal(journalFile);
+
+        assertEquals("Only the pending transfer should be left.", 1, journal.size());
+        assertEquals("Unexpected pending transfer.", "pending.mp4", journal.take().getFilePath());
+    }
+
+    @Test
+    public void testQueueFileOfOlderAgentsIsLoaded() throws IOException {
+        journal.close();
+        Files.write(journalFile.toPath(),
+                    Arrays.asList("/records/first.mp4", "/records/second.mp4"),
+                    StandardCharsets.UTF_8);
+
+        journal = new TransferJournal(journalFile);
+
+        assertEquals("Unexpected first transfer.", "/records/first.mp4", journal.take().getFilePath());
+        assertEquals("Unexpected second transfer.", "/records/second.mp4", journal.take().getFilePath());
+    }
+
+    @Test
+    public void testIncompleteLastRecordIsIgnored() throws IOException {
+        journal.add("pending.mp4");
+        journal.close();
+        // the agent stopped while the record of the second transfer was written
+        Files.write(journalFile.toPath(), "A 2".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        journal = new TransferJournal(journalFile);
+
+        assertEquals("Unexpected number of recovered transfers.", 1, journal.size());
+        assertEquals("Unexpected pending transfer.", "pending.mp4", journal.take().getFilePath());
+    }
+
+    @Test
+    public void testTornCompletedRecordDoesNotCompleteAnotherTransfer() throws IOException {
+        journal.add("first.mp4");
+        journal.take();
+        journal.close();
+        // "D 12" torn after its first digit
+        appendTornRecord("D 1");
+
+        journal = new TransferJournal(journalFile);
+
+        assertEquals("The interrupted transfer should be recovered.", 1, journal.size());
+        assertEquals("Unexpected recovered transfer.", "first.mp4", journal.take().getFilePath());
+    }
+
+    @Test
+    public void testTornStartedRecordIsNotLoadedAsPath() throws IOException {
+        journal.add("pending.mp4");
+        journal.close();
+        appendTornRecord("S");
+
+        journal = new TransferJournal(journalFile);
+
+        assertEquals("Unexpected number of recovered transfers.", 1, journal.size());
+        assertEquals("Unexpected pending transfer.", "pending.mp4", journal.take().getFilePath());
+    }
+
+    @Test
+    public void testTornAddedRecordWithPartialPathIsIgnored() throws IOException {
+        journal.add("pending.mp4");
+        journal.close();
+        // "A 2 /records/second.mp4" torn in the middle of the path
+        appendTornRecord("A 2 /rec");
+
+        journal = new TransferJournal(journalFile);
+
+        assertEquals("Unexpected number of recovered transfers.", 1, journal.size());
+        assertEquals("Unexpected pending transfer.", "pending.mp4", journal.take().getFilePath());
+        assertNull("The partial path should not be queued.", journal.take());
+    }
+
+    private void appendTornRecord(String tornRecord) throws IOException {
+        Files.write(journalFile.toPath(), tornRecord.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+}
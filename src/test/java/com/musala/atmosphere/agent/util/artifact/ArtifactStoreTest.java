@@ -0,0 +1,231 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.artifact;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArtifactStoreTest {
+    private static final long LOGS_QUOTA = 100;
+
+    /**
+     * More than the artifacts can free, so the disk space can not be freed for a new artifact.
+     */
+    private static final long FREE_SPACE_MARGIN = 1024 * 1024;
+
+    private File storeDirectory;
+
+    private Map<ArtifactType, Long> quotas;
+
+    private ArtifactStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        storeDirectory = Files.createTempDirectory("artifact-store").toFile();
+        quotas = new EnumMap<>(ArtifactType.class);
+        quotas.put(ArtifactType.LOG, LOGS_QUOTA);
+        store = new ArtifactStore(storeDirectory, quotas, 0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(storeDirectory);
+    }
+
+    @Test
+    public void testIdenticalPayloadsAreStoredOnce() throws IOException {
+        byte[] content = "identical screen record".getBytes(StandardCharsets.UTF_8);
+
+        Artifact first = store.store(ArtifactType.SCREEN_RECORD, content, "first.mp4");
+        Artifact second = store.store(ArtifactType.SCREEN_RECORD, content, "second.mp4");
+
+        assertEquals("Identical payloads should have the same id.", first.getId(), second.getId());
+        assertEquals("Identical payloads should be stored once.", 1, store.size());
+        assertEquals("Unexpected used space.", content.length, store.getUsedSpace(ArtifactType.SCREEN_RECORD));
+        assertEquals("The name of the artifact should be preserved.", "first.mp4", second.getName());
+    }
+
+    @Test
+    public void testIdenticalPayloadsOfDifferentTypesAreStoredSeparately() throws IOException {
+        byte[] content = "identical payload".getBytes(StandardCharsets.UTF_8);
+
+        Artifact log = store.store(ArtifactType.LOG, content, "device.log");
+        Artifact screenRecord = store.store(ArtifactType.SCREEN_RECORD, content, "screen_record.mp4");
+
+        assertNotEquals("Payloads of different types should have different ids.", log.getId(), screenRecord.getId());
+        assertEquals("Payloads of different types should be stored separately.", 2, store.size());
+        assertEquals("The type of the artifact should be preserved.",
+                     ArtifactType.SCREEN_RECORD,
+                     screenRecord.getType());
+    }
+
+    @Test
+    public void testArtifactIsReadInChunksById() throws IOException {
+        byte[] content = "0123456789".getBytes(StandardCharsets.UTF_8);
+        String id = store.store(ArtifactType.LOG, content, "device.log").getId();
+
+        assertArrayEquals("Unexpected first chunk.", "0123".getBytes(StandardCharsets.UTF_8), store.read(id, 0, 4));
+        assertArrayEquals("Unexpected last chunk.", "89".getBytes(StandardCharsets.UTF_8), store.read(id, 8, 4));
+        assertEquals("Reading after the end should return an empty chunk.", 0, store.read(id, 10, 4).length);
+        assertNull("Reading a missing artifact should return null.", store.read("missing", 0, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeChunkLengthIsRejected() throws IOException {
+        String id = store.store(ArtifactType.LOG, createContent('a', 10), "device.log").getId();
+
+        store.read(id, 0, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeChunkOffsetIsRejected() throws IOException {
+        String id = store.store(ArtifactType.LOG, createContent('a', 10), "device.log").getId();
+
+        store.read(id, -1, 4);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedArtifactIsEvicted() throws IOException {
+        String oldest = store.store(ArtifactType.LOG, createContent('a', 40), "a.log").getId();
+        String used = store.store(ArtifactType.LOG, createContent('b', 40), "b.log").getId();
+        store.get(oldest);
+        store.get(used);
+
+        String newest = store.store(ArtifactType.LOG, createContent('c', 40), "c.log").getId();
+
+        assertNull("The least recently used artifact should be evicted.", store.get(oldest));
+        assertNotNull("The recently used artifact should be kept.", store.get(used));
+        assertNotNull("The new artifact should be stored.", store.get(newest));
+        assertEquals("The quota should not be exceeded.", 80, store.getUsedSpace(ArtifactType.LOG));
+        assertFalse("The evicted artifact should be deleted.",
+                    new File(new File(storeDirectory, ArtifactType.LOG.getDirectoryName()), oldest).exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void testArtifactLargerThanQuotaIsRejected() throws IOException {
+        store.store(ArtifactType.LOG, createContent('a', (int) LOGS_QUOTA + 1), "huge.log");
+    }
+
+    @Test
+    public void testFileIsMovedInTheStore() throws IOException {
+        File screenRecord = new File(storeDirectory, "screen_record.mp4");
+        Files.write(screenRecord.toPath(), createContent('r', 64));
+
+        Artifact artifact = store.store(ArtifactType.SCREEN_RECORD, screenRecord);
+
+        assertFalse("The file should be moved in the store.", screenRecord.exists());
+        assertTrue("The artifact file should exist.", artifact.getFile().isFile());
+        assertEquals("The name of the file should be preserved.", "screen_record.mp4", artifact.getName());
+        assertEquals("Unexpected artifact size.", 64, artifact.getSize());
+    }
+
+    @Test
+    public void testArtifactsAreLoadedInOrderOfUse() throws IOException {
+        String oldest = store.store(ArtifactType.LOG, createContent('a', 40), "a.log").getId();
+        String used = store.store(ArtifactType.LOG, createContent('b', 40), "b.log").getId();
+        Artifact usedArtifact = store.get(used);
+        store.get(oldest).getFile().setLastModified(usedArtifact.getLastAccessTime() - 10000);
+        // a temporary file left by an interrupted store
+        File.createTempFile("artifact", ".tmp", new File(storeDirectory, ArtifactType.LOG.getDirectoryName()));
+
+        ArtifactStore reloadedStore = new ArtifactStore(storeDirectory, quotas, 0);
+        assertEquals("Unexpected number of loaded artifacts.", 2, reloadedStore.size());
+        assertEquals("Unexpected used space after loading.", 80, reloadedStore.getUsedSpace(ArtifactType.LOG));
+
+        reloadedStore.store(ArtifactType.LOG, createContent('c', 40), "c.log");
+        assertNull("The least recently used artifact should be evicted.", reloadedStore.get(oldest));
+        assertNotNull("The recently used artifact should be kept.", reloadedStore.get(used));
+    }
+
+    @Test
+    public void testPinnedArtifactIsNotEvicted() throws IOException {
+        File logFile = new File(storeDirectory, "pinned.log");
+        Files.write(logFile.toPath(), createContent('a', 40));
+        Artifact pinned = store.store(ArtifactType.LOG, logFile, true);
+        String unpinned = store.store(ArtifactType.LOG, createContent('b', 40), "b.log").getId();
+
+        String newest = store.store(ArtifactType.LOG, createContent('c', 40), "c.log").getId();
+
+        assertNotNull("The pinned artifact should be kept.", store.get(pinned.getId()));
+        assertNull("The least recently used unpinned artifact should be evicted.", store.get(unpinned));
+        assertNotNull("The new artifact should be stored.", store.get(newest));
+
+        store.unpin(pinned.getFile());
+        assertFalse("The artifact should be unpinned.", store.isPinned(pinned.getId()));
+    }
+
+    @Test
+    public void testNothingIsEvictedWhenPinnedArtifactsFillTheQuota() throws IOException {
+        String first = store.store(ArtifactType.LOG, createContent('a', 40), "a.log").getId();
+        Artifact pinned = store.store(ArtifactType.LOG, createContent('b', 40), "b.log");
+        assertTrue("The artifact should be pinned.", store.pin(pinned.getFile()));
+
+        try {
+            store.store(ArtifactType.LOG, createContent('c', 70), "c.log");
+            fail("An artifact which does not fit besides the pinned ones should be rejected.");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertNotNull("No artifact should be evicted for a rejected one.", store.get(first));
+        assertNotNull("The pinned artifact should be kept.", store.get(pinned.getId()));
+    }
+
+    @Test
+    public void testNothingIsEvictedWhenTheDiskSpaceCanNotBeFreed() throws IOException {
+        store.store(ArtifactType.LOG, createContent('a', 40), "a.log");
+        store.store(ArtifactType.SCREEN_RECORD, createContent('b', 40), "b.mp4");
+
+        long minFreeSpace = storeDirectory.getUsableSpace() + FREE_SPACE_MARGIN;
+        ArtifactStore fullDiskStore = new ArtifactStore(storeDirectory, quotas, minFreeSpace);
+        try {
+            fullDiskStore.store(ArtifactType.SCREEN_RECORD, createContent('c', 40), "c.mp4");
+            fail("An artifact which does not fit on the disk should be rejected.");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals("No artifact should be evicted for a rejected one.", 2, fullDiskStore.size());
+    }
+
+    private static byte[] createContent(char character, int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) character;
+        }
+
+        return content;
+    }
+}
@@ -0,0 +1,93 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.gesture;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class GestureScriptTest {
+    private static final float DELTA = 0.01f;
+
+    @Test
+    public void testSequentialStatementsAreChained() {
+        GestureScript script = GestureScript.parse("tap 10 20; wait 100\nswipe 0 0 100 0 200");
+
+        List<List<TimedPoint>> tracks = script.getTracks();
+        assertEquals("Unexpected number of pointer tracks.", 2, tracks.size());
+
+        List<TimedPoint> swipe = tracks.get(1);
+        assertEquals("The swipe should start after the tap and the wait.", 150, swipe.get(0).getTime());
+        assertEquals("The swipe should last for its duration.", 350, swipe.get(swipe.size() - 1).getTime());
+        assertEquals("Unexpected script duration.", 350, script.getDuration());
+    }
+
+    @Test
+    public void testConcurrentStatementStartsWithPreviousOne() {
+        GestureScript script = GestureScript.parse("wait 40\nswipe 100 100 50 50 300\n& swipe 200 200 250 250 500");
+
+        List<TimedPoint> firstPointer = script.getTracks().get(0);
+        List<TimedPoint> secondPointer = script.getTracks().get(1);
+
+        assertEquals("Both pointers should touch the screen together.",
+                     firstPointer.get(0).getTime(),
+                     secondPointer.get(0).getTime());
+        assertEquals("Script should last until the longer statement ends.", 540, script.getDuration());
+    }
+
+    @Test
+    public void testLinearPathTimesFollowDistance() {
+        GestureScript script = GestureScript.parse("path 300 0 0 100 0 100 200");
+
+        List<TimedPoint> path = script.getTracks().get(0);
+        assertEquals("A linear path should contain only its points.", 3, path.size());
+        assertEquals("The first segment is a third of the path length.", 100, path.get(1).getTime());
+    }
+
+    @Test
+    public void testEasedPathIsSampled() {
+        GestureScript script = GestureScript.parse("# fling\nswipe 0 0 0 1000 320 ease-out");
+
+        List<TimedPoint> swipe = script.getTracks().get(0);
+        TimedPoint middle = swipe.get(swipe.size() / 2);
+        TimedPoint last = swipe.get(swipe.size() - 1);
+
+        assertEquals("Unexpected number of samples.", 21, swipe.size());
+        assertEquals("An ease out swipe should cover three quarters of the distance in half the time.",
+                     750,
+                     middle.getY(),
+                     DELTA);
+        assertEquals("The swipe should end at its target.", 1000, last.getY(), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCommandIsRejected() {
+        GestureScript.parse("tap 10 20\njump 30 40");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConcurrentFirstStatementIsRejected() {
+        GestureScript.parse("& tap 10 20");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScriptWithoutPointerStatementsIsRejected() {
+        GestureScript.parse("wait 100");
+    }
+}
@@ -0,0 +1,101 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.android.ddmlib.RawImage;
+
+public class ScreenThumbnailTest {
+    private static final int SCREEN_WIDTH = 320;
+
+    private static final int SCREEN_HEIGHT = 480;
+
+    private static final int THUMBNAIL_WIDTH = 32;
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void testThumbnailKeepsAspectRatio() {
+        ScreenThumbnail thumbnail = ScreenThumbnail.create(createRawImage((byte) 0), THUMBNAIL_WIDTH);
+
+        assertEquals("Unexpected thumbnail width.", THUMBNAIL_WIDTH, thumbnail.getWidth());
+        assertEquals("Unexpected thumbnail height.", 48, thumbnail.getHeight());
+    }
+
+    @Test
+    public void testIdenticalScreensHaveNoDifference() {
+        ScreenThumbnail first = ScreenThumbnail.create(createRawImage((byte) 0x40), THUMBNAIL_WIDTH);
+        ScreenThumbnail second = ScreenThumbnail.create(createRawImage((byte) 0x40), THUMBNAIL_WIDTH);
+
+        assertEquals("Identical screens should not differ.", 0, first.difference(second), DELTA);
+    }
+
+    @Test
+    public void testBlackAndWhiteScreensAreCompletelyDifferent() {
+        ScreenThumbnail black = ScreenThumbnail.create(createRawImage((byte) 0), THUMBNAIL_WIDTH);
+        ScreenThumbnail white = ScreenThumbnail.create(createRawImage((byte) 0xFF), THUMBNAIL_WIDTH);
+
+        assertEquals("Black and white screens should be completely different.", 1, black.difference(white), DELTA);
+    }
+
+    @Test
+    public void testSmallChangeHasSmallDifference() {
+        RawImage changedImage = createRawImage((byte) 0);
+        // a white 10x10 square, like a blinking cursor
+        for (int y = 100; y < 110; y++) {
+            int rowStart = (y * SCREEN_WIDTH + 100) * 4;
+            Arrays.fill(changedImage.data, rowStart, rowStart + 10 * 4, (byte) 0xFF);
+        }
+
+        ScreenThumbnail original = ScreenThumbnail.create(createRawImage((byte) 0), THUMBNAIL_WIDTH);
+        ScreenThumbnail changed = ScreenThumbnail.create(changedImage, THUMBNAIL_WIDTH);
+
+        double difference = original.difference(changed);
+        assertTrue("The change should be detected.", difference > 0);
+        assertTrue("A small change should have a small difference.", difference < 0.01);
+    }
+
+    /**
+     * Creates a 32 bpp RGBA framebuffer capture filled with the given gray level.
+     */
+    private RawImage createRawImage(byte grayLevel) {
+        RawImage rawImage = new RawImage();
+        rawImage.version = 1;
+        rawImage.bpp = 32;
+        rawImage.width = SCREEN_WIDTH;
+        rawImage.height = SCREEN_HEIGHT;
+        rawImage.size = SCREEN_WIDTH * SCREEN_HEIGHT * 4;
+        rawImage.red_offset = 0;
+        rawImage.red_length = 8;
+        rawImage.green_offset = 8;
+        rawImage.green_length = 8;
+        rawImage.blue_offset = 16;
+        rawImage.blue_length = 8;
+        rawImage.alpha_offset = 24;
+        rawImage.alpha_length = 8;
+        rawImage.data = new byte[rawImage.size];
+        Arrays.fill(rawImage.data, grayLevel);
+
+        return rawImage;
+    }
+}
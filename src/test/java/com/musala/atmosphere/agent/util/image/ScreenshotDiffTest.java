@@ -0,0 +1,125 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class ScreenshotDiffTest {
+    private static final int SCREEN_WIDTH = 200;
+
+    private static final int SCREEN_HEIGHT = 120;
+
+    private static final int TOLERANCE = 16;
+
+    private static final List<Rectangle> NO_IGNORED_REGIONS = new ArrayList<>();
+
+    @Test
+    public void testIdenticalScreenshotsHaveNoDifference() {
+        ScreenshotDiff diff = ScreenshotDiff.compare(createScreen(), createScreen(), NO_IGNORED_REGIONS, TOLERANCE);
+
+        assertEquals("Identical screenshots should not differ.", 0, diff.getDifferingPixelsCount());
+        assertEquals("All pixels should be compared.", SCREEN_WIDTH * SCREEN_HEIGHT, diff.getComparedPixelsCount());
+    }
+
+    @Test
+    public void testChangedPixelsAreDetected() {
+        BufferedImage current = createScreen();
+        fill(current, new Rectangle(40, 20, 5, 4), 0xFF0000);
+
+        ScreenshotDiff diff = ScreenshotDiff.compare(createScreen(), current, NO_IGNORED_REGIONS, TOLERANCE);
+
+        assertEquals("Unexpected number of differing pixels.", 20, diff.getDifferingPixelsCount());
+        assertEquals("Unexpected difference.", 20.0 / (SCREEN_WIDTH * SCREEN_HEIGHT), diff.getDifference(), 1e-9);
+    }
+
+    @Test
+    public void testSmallChangesAreTolerated() {
+        BufferedImage current = createScreen();
+        fill(current, new Rectangle(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT / 2), 0x8A8A8A);
+
+        ScreenshotDiff diff = ScreenshotDiff.compare(createScreen(), current, NO_IGNORED_REGIONS, TOLERANCE);
+
+        assertEquals("Changes within the tolerance should be ignored.", 0, diff.getDifferingPixelsCount());
+    }
+
+    @Test
+    public void testIgnoredRegionsAreNotCompared() {
+        BufferedImage current = createScreen();
+        fill(current, new Rectangle(40, 20, 5, 4), 0xFF0000);
+        fill(current, new Rectangle(150, 100, 3, 3), 0x00FF00);
+        List<Rectangle> ignoredRegions = Arrays.asList(new Rectangle(30, 10, 40, 40), new Rectangle(150, 100, 2, 3));
+
+        ScreenshotDiff diff = ScreenshotDiff.compare(createScreen(), current, ignoredRegions, TOLERANCE);
+
+        assertEquals("Only the pixels outside of the ignored regions should differ.",
+                     3,
+                     diff.getDifferingPixelsCount());
+        assertEquals("The ignored pixels should not be compared.",
+                     SCREEN_WIDTH * SCREEN_HEIGHT - 40 * 40 - 2 * 3,
+                     diff.getComparedPixelsCount());
+    }
+
+    @Test
+    public void testDiffMaskMarksChangedTiles() throws IOException {
+        BufferedImage current = createScreen();
+        fill(current, new Rectangle(40, 20, 5, 4), 0xFF0000);
+
+        ScreenshotDiff diff = ScreenshotDiff.compare(createScreen(), current, NO_IGNORED_REGIONS, TOLERANCE);
+        BufferedImage mask = ImageIO.read(new ByteArrayInputStream(diff.getDiffMask()));
+
+        int tileSize = ScreenshotDiff.TILE_SIZE;
+        assertEquals("Unexpected mask width.", (SCREEN_WIDTH + tileSize - 1) / tileSize, mask.getWidth());
+        assertEquals("Unexpected mask height.", (SCREEN_HEIGHT + tileSize - 1) / tileSize, mask.getHeight());
+        assertTrue("The changed tile should be marked.", (mask.getRGB(40 / tileSize, 20 / tileSize) & 0xFF0000) != 0);
+        assertEquals("Unchanged tiles should not be marked.", 0, mask.getRGB(0, 0) & 0xFFFFFF);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentSizesAreRejected() {
+        BufferedImage smallScreen = new BufferedImage(SCREEN_WIDTH / 2, SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+        ScreenshotDiff.compare(createScreen(), smallScreen, NO_IGNORED_REGIONS, TOLERANCE);
+    }
+
+    private BufferedImage createScreen() {
+        BufferedImage screen = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        fill(screen, new Rectangle(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT), 0x808080);
+
+        return screen;
+    }
+
+    private void fill(BufferedImage image, Rectangle region, int color) {
+        for (int y = region.y; y < region.y + region.height; y++) {
+            for (int x = region.x; x < region.x + region.width; x++) {
+                image.setRGB(x, y, color);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import com.android.ddmlib.RawImage;
+
+public class ScreenshotEncoderTest {
+    private static final int SCREEN_WIDTH = 40;
+
+    private static final int SCREEN_HEIGHT = 30;
+
+    private static final int RED_PIXEL_X = 12;
+
+    private static final int RED_PIXEL_Y = 7;
+
+    @Test
+    public void testCroppedRawScreenshot() throws IOException {
+        ScreenshotOptions options = new ScreenshotOptions();
+        options.setFormat(ScreenshotFormat.RAW);
+        options.setRegion(new Rectangle(10, 5, 4, 3));
+
+        byte[] screenshot = ScreenshotEncoder.encode(createRawImage(), options);
+
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(screenshot));
+        assertEquals("Unexpected width of the cropped image.", 4, input.readInt());
+        assertEquals("Unexpected height of the cropped image.", 3, input.readInt());
+
+        int redPixelOffset = ((RED_PIXEL_Y - 5) * 4 + (RED_PIXEL_X - 10)) * 3;
+        input.skipBytes(redPixelOffset);
+        assertEquals("The red pixel was not placed correctly.", 0xFF, input.readUnsignedByte());
+        assertEquals("The red pixel was not placed correctly.", 0, input.readUnsignedByte());
+        assertEquals("Unexpected size of the cropped image.", 8 + 4 * 3 * 3, screenshot.length);
+    }
+
+    @Test
+    public void testScaledJpegScreenshot() throws IOException {
+        ScreenshotOptions options = new ScreenshotOptions();
+        options.setFormat(ScreenshotFormat.JPEG);
+        options.setQuality(50);
+        options.setScale(0.5);
+
+        byte[] screenshot = ScreenshotEncoder.encode(createRawImage(), options);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(screenshot));
+
+        assertEquals("Unexpected width of the scaled image.", SCREEN_WIDTH / 2, image.getWidth());
+        assertEquals("Unexpected height of the scaled image.", SCREEN_HEIGHT / 2, image.getHeight());
+    }
+
+    @Test(expected = IOException.class)
+    public void testRegionOutsideOfScreenIsRejected() throws IOException {
+        ScreenshotOptions options = new ScreenshotOptions();
+        options.setRegion(new Rectangle(SCREEN_WIDTH - 5, 0, 10, 10));
+
+        ScreenshotEncoder.encode(createRawImage(), options);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidScaleIsRejected() {
+        new ScreenshotOptions().setScale(2);
+    }
+
+    /**
+     * Creates a 32 bpp RGBA framebuffer capture with a single red pixel on a black screen.
+     */
+    private RawImage createRawImage() {
+        RawImage rawImage = new RawImage();
+        rawImage.version = 1;
+        rawImage.bpp = 32;
+        rawImage.width = SCREEN_WIDTH;
+        rawImage.height = SCREEN_HEIGHT;
+        rawImage.size = SCREEN_WIDTH * SCREEN_HEIGHT * 4;
+        rawImage.red_offset = 0;
+        rawImage.red_length = 8;
+        rawImage.green_offset = 8;
+        rawImage.green_length = 8;
+        rawImage.blue_offset = 16;
+        rawImage.blue_length = 8;
+        rawImage.alpha_offset = 24;
+        rawImage.alpha_length = 8;
+        rawImage.data = new byte[rawImage.size];
+
+        int redPixelIndex = (RED_PIXEL_Y * SCREEN_WIDTH + RED_PIXEL_X) * 4;
+        rawImage.data[redPixelIndex] = (byte) 0xFF;
+        rawImage.data[redPixelIndex + 3] = (byte) 0xFF;
+
+        return rawImage;
+    }
+}
@@ -0,0 +1,83 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import com.android.ddmlib.RawImage;
+
+/**
+ * Measures the template search time against the screen resolution. Run it with
+ * <code>gradle benchmarkTemplateMatcher</code>.
+ */
+public class TemplateMatcherBenchmark {
+    private static final int[][] SCREEN_RESOLUTIONS = {{480, 800}, {720, 1280}, {1080, 1920}, {1440, 2560}};
+
+    private static final int TEMPLATE_SIZE = 96;
+
+    private static final int WARMUP_ITERATIONS = 3;
+
+    private static final int MEASURED_ITERATIONS = 10;
+
+    public static void main(String[] args) {
+        System.out.println(String.format("Parallelism: %d, template: %dx%d px",
+                                         Runtime.getRuntime().availableProcessors(),
+                                         TEMPLATE_SIZE,
+                                         TEMPLATE_SIZE));
+        System.out.println("resolution   scale 1 (ms)   scales 0.5-2 (ms)");
+
+        for (int[] resolution : SCREEN_RESOLUTIONS) {
+            int width = resolution[0];
+            int height = resolution[1];
+
+            BufferedImage screen = TemplateMatcherTest.createScreen(width, height, 42);
+            RawImage screenCapture = TemplateMatcherTest.toRawImage(screen);
+            BufferedImage template = screen.getSubimage(width / 3, height / 2, TEMPLATE_SIZE, TEMPLATE_SIZE);
+
+            double singleScaleTime = measure(screenCapture, template, 1, 1);
+            double multiScaleTime = measure(screenCapture, template, 0.5, 2);
+
+            System.out.println(String.format("%4dx%-4d    %12.1f   %17.1f",
+                                             width,
+                                             height,
+                                             singleScaleTime,
+                                             multiScaleTime));
+        }
+    }
+
+    private static double measure(RawImage screenCapture, BufferedImage template, double minScale, double maxScale) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            TemplateMatcher.findMatches(screenCapture, template, 0.9, 5, minScale, maxScale);
+        }
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            List<TemplateMatch> matches = TemplateMatcher.findMatches(screenCapture,
+                                                                      template,
+                                                                      0.9,
+                                                                      5,
+                                                                      minScale,
+                                                                      maxScale);
+            if (matches.isEmpty()) {
+                throw new IllegalStateException("The template was not found.");
+            }
+        }
+
+        return (System.nanoTime() - startTime) / 1e6 / MEASURED_ITERATIONS;
+    }
+}
@@ -0,0 +1,168 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+package com.musala.atmosphere.agent.util.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.android.ddmlib.RawImage;
+
+public class TemplateMatcherTest {
+    private static final int SCREEN_WIDTH = 360;
+
+    private static final int SCREEN_HEIGHT = 640;
+
+    private static final int TEMPLATE_X = 130;
+
+    private static final int TEMPLATE_Y = 270;
+
+    private static final int TEMPLATE_SIZE = 64;
+
+    private static final int POSITION_TOLERANCE = 3;
+
+    private static BufferedImage screen;
+
+    private static RawImage screenCapture;
+
+    @BeforeClass
+    public static void setUp() {
+        screen = createScreen(SCREEN_WIDTH, SCREEN_HEIGHT, 42);
+        screenCapture = toRawImage(screen);
+    }
+
+    @Test
+    public void testFindsExactTemplate() {
+        BufferedImage template = screen.getSubimage(TEMPLATE_X, TEMPLATE_Y, TEMPLATE_SIZE, TEMPLATE_SIZE);
+
+        List<TemplateMatch> matches = TemplateMatcher.findMatches(screenCapture, template, 0.95, 5, 1, 1);
+
+        assertEquals("Expected exactly one match.", 1, matches.size());
+        TemplateMatch match = matches.get(0);
+        assertEquals("Unexpected x coordinate of the match.", TEMPLATE_X, match.getX());
+        assertEquals("Unexpected y coordinate of the match.", TEMPLATE_Y, match.getY());
+        assertEquals("The exact template should match perfectly.", 1, match.getScore(), 0.001);
+    }
+
+    @Test
+    public void testFindsScaledTemplate() {
+        BufferedImage template = screen.getSubimage(TEMPLATE_X, TEMPLATE_Y, TEMPLATE_SIZE, TEMPLATE_SIZE);
+        // the template was taken on a screen with lower density
+        BufferedImage smallTemplate = scale(template, 0.8);
+
+        List<TemplateMatch> matches = TemplateMatcher.findMatches(screenCapture, smallTemplate, 0.8, 1, 0.5, 2);
+
+        assertEquals("Expected one match.", 1, matches.size());
+        TemplateMatch match = matches.get(0);
+        assertTrue("Unexpected x coordinate of the match.", Math.abs(match.getX() - TEMPLATE_X) <= POSITION_TOLERANCE);
+        assertTrue("Unexpected y coordinate of the match.", Math.abs(match.getY() - TEMPLATE_Y) <= POSITION_TOLERANCE);
+        assertEquals("Unexpected scale of the match.", 1.25, match.getScale(), 0.1);
+    }
+
+    @Test
+    public void testMissingTemplateIsNotFound() {
+        BufferedImage template = createScreen(TEMPLATE_SIZE, TEMPLATE_SIZE, 7);
+
+        List<TemplateMatch> matches = TemplateMatcher.findMatches(screenCapture, template, 0.95, 5, 0.5, 2);
+
+        assertTrue("A template which is not on the screen should not be found.", matches.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFlatTemplateIsRejected() {
+        BufferedImage template = new BufferedImage(TEMPLATE_SIZE, TEMPLATE_SIZE, BufferedImage.TYPE_INT_RGB);
+
+        TemplateMatcher.findMatches(screenCapture, template, 0.9, 5, 1, 1);
+    }
+
+    /**
+     * Creates a screen of random colored shapes, which stay recognizable when scaled.
+     */
+    static BufferedImage createScreen(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+
+        int shapesCount = width * height / 400;
+        for (int i = 0; i < shapesCount; i++) {
+            graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            int size = 6 + random.nextInt(24);
+            if (random.nextBoolean()) {
+                graphics.fillRect(x, y, size, size / 2 + 3);
+            } else {
+                graphics.fillOval(x, y, size, size);
+            }
+        }
+
+        graphics.dispose();
+        return image;
+    }
+
+    static RawImage toRawImage(BufferedImage image) {
+        RawImage rawImage = new RawImage();
+        rawImage.version = 1;
+        rawImage.bpp = 32;
+        rawImage.width = image.getWidth();
+        rawImage.height = image.getHeight();
+        rawImage.size = rawImage.width * rawImage.height * 4;
+        rawImage.red_offset = 0;
+        rawImage.red_length = 8;
+        rawImage.green_offset = 8;
+        rawImage.green_length = 8;
+        rawImage.blue_offset = 16;
+        rawImage.blue_length = 8;
+        rawImage.alpha_offset = 24;
+        rawImage.alpha_length = 8;
+        rawImage.data = new byte[rawImage.size];
+
+        int[] pixels = image.getRGB(0, 0, rawImage.width, rawImage.height, null, 0, rawImage.width);
+        for (int i = 0; i < pixels.length; i++) {
+            rawImage.data[i * 4] = (byte) (pixels[i] >> 16);
+            rawImage.data[i * 4 + 1] = (byte) (pixels[i] >> 8);
+            rawImage.data[i * 4 + 2] = (byte) pixels[i];
+            rawImage.data[i * 4 + 3] = (byte) 0xFF;
+        }
+
+        return rawImage;
+    }
+
+    private static BufferedImage scale(BufferedImage image, double scale) {
+        int width = (int) Math.round(image.getWidth() * scale);
+        int height = (int) Math.round(image.getHeight() * scale);
+
+        BufferedImage scaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaledImage.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+
+        return scaledImage;
+    }
+}
@@ -0,0 +1,108 @@
+// This file is part of the ATMOSPHERE mobile testing framework.
+// Copyright (C) 2016 MusalaSoft
+//
+// ATMOSPHERE is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+//
+// ATMOSPHERE is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with ATMOSPHERE.  If not, see <http://www.gnu.org/licenses/>.
+
+
+package com.musala.atmosphere.agent.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests the asynchronous sending of the screen stream frames.
+ */
+public class ScreenFrameSenderTest {
+    private static final String STREAM_ID = "stream";
+
+    private final List<ByteBuffer> sentMessages = new ArrayList<>();
+
+    private final List<SendHandler> sendHandlers = new ArrayList<>();
+
+    private ScreenFrameSender frameSender;
+
+    @Before
+    public void setUp() {
+        RemoteEndpoint.Async asyncRemote = mock(RemoteEndpoint.Async.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                sentMessages.add((ByteBuffer) invocation.getArguments()[0]);
+                sendHandlers.add((SendHandler) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(asyncRemote).sendBinary(any(ByteBuffer.class), any(SendHandler.class));
+
+        Session session = mock(Session.class);
+        when(session.getAsyncRemote()).thenReturn(asyncRemote);
+
+        frameSender = new ScreenFrameSender(session, "1", "agent_serial");
+    }
+
+    @Test
+    public void testOldFramesAreDroppedWhileAFrameIsSent() throws IOException {
+        for (int frameNumber = 1; frameNumber <= 4; frameNumber++) {
+            frameSender.sendFrame(STREAM_ID, frameNumber, new byte[] {(byte) frameNumber});
+        }
+
+        assertEquals("Only one frame should be sent at a time.", 1, sentMessages.size());
+
+        sendHandlers.get(0).onResult(new SendResult());
+        sendHandlers.get(1).onResult(new SendResult());
+        sendHandlers.get(2).onResult(new SendResult());
+
+        assertEquals("Unexpected number of sent frames.", 3, sentMessages.size());
+        assertEquals("Unexpected first frame.", 1, getFrameNumber(sentMessages.get(0)));
+        assertEquals("The oldest pending frame should be dropped.", 3, getFrameNumber(sentMessages.get(1)));
+        assertEquals("Unexpected last frame.", 4, getFrameNumber(sentMessages.get(2)));
+        assertEquals("Unexpected number of dropped frames.", 1, frameSender.getDroppedFramesCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailedSendStopsTheStream() throws IOException {
+        frameSender.sendFrame(STREAM_ID, 1, new byte[] {1});
+        sendHandlers.get(0).onResult(new SendResult(new IOException("The session is closed.")));
+
+        frameSender.sendFrame(STREAM_ID, 2, new byte[] {2});
+    }
+
+    private static long getFrameNumber(ByteBuffer message) throws IOException {
+        DataInputStream messageStream = new DataInputStream(new ByteArrayInputStream(message.array()));
+        messageStream.readUTF();
+        messageStream.readUTF();
+        messageStream.readUTF();
+
+        return messageStream.readLong();
+    }
+}